@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import opennlp.model.AbstractModel;
+import opennlp.model.EvalScratch;
+import opennlp.model.MaxentModel;
+
+/**
+ * A model which caches the outcome distributions of the contexts evaluated by another model,
+ * for applications which evaluate the same contexts many times.  A context is looked up by
+ * the indices of its predicates and its values, so the cache is bounded by the number of
+ * entries rather than by the number of distinct contexts.
+ * <p>
+ * The cache is a table of immutable entries in an <code>AtomicReferenceArray</code>, so
+ * lookups and insertions take no locks.  Each context can be stored in one of two slots.  A
+ * new entry replaces an entry which has not been hit since it was last spared, which keeps
+ * frequently repeated contexts in the cache.  The hash of a context does not depend on the
+ * order of its predicates, but a context only matches an entry with the same predicates and
+ * values in the same order, so cached distributions are identical to the ones the model
+ * computes.  Hits and misses are counted in striped counters.
+ * <p>
+ * The model can be replaced with {@link #setModel(MaxentModel)}, which invalidates all
+ * entries, so it can be used as the {@link ModelSetter} of an application.  Only
+ * {@link AbstractModel}s can be cached; other models are evaluated directly and every call
+ * counts as a miss.
+ */
+public class CachingModel implements MaxentModel, ModelSetter {
+
+  /** The number of stripes of the hit and miss counters. */
+  private static final int STRIPES = 16;
+  /** The distance between counters in the counter array, which keeps them on separate cache lines. */
+  private static final int PAD = 16;
+
+  private volatile MaxentModel model;
+  /** The generation of the current model, which is incremented when the model is replaced. */
+  private final AtomicInteger generation = new AtomicInteger();
+  private final AtomicReferenceArray<Entry> entries;
+  /** The mask which maps a hash code to the first slot of its pair. */
+  private final int mask;
+  /** The hit counter of each stripe, followed by its miss counter. */
+  private final AtomicLongArray counters = new AtomicLongArray(STRIPES * 2 * PAD);
+  private final ThreadLocal<EvalScratch> scratch = new ThreadLocal<EvalScratch>() {
+    protected EvalScratch initialValue() {
+      return new EvalScratch();
+    }
+  };
+
+  /**
+   * A cached context and its outcome distribution.
+   */
+  private static final class Entry {
+
+    final int generation;
+    final int hash;
+    final int[] context;
+    final float[] values;
+    final double[] probs;
+    /** Whether the entry has been hit since it was inserted or last spared. */
+    volatile boolean referenced;
+
+    Entry(int generation, int hash, int[] context, float[] values, double[] probs) {
+      this.generation = generation;
+      this.hash = hash;
+      this.context = context;
+      this.values = values;
+      this.probs = probs;
+    }
+  }
+
+  /**
+   * Creates a cache in front of the specified model.
+   * @param model The model.
+   * @param capacity The number of entries, which is rounded up to a power of two.
+   */
+  public CachingModel(MaxentModel model, int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity must be in the range [1,2^30]: " + capacity);
+    }
+    int size = 2;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    entries = new AtomicReferenceArray<Entry>(size);
+    mask = (size - 1) & ~1;
+    this.model = model;
+  }
+
+  /**
+   * Replaces the model and invalidates all cached distributions.
+   * @param m The new model.
+   */
+  public void setModel(MaxentModel m) {
+    // the model is published before the generation, so an entry computed with the old model
+    // is always tagged with an old generation
+    model = m;
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Returns the current model.
+   */
+  public MaxentModel getModel() {
+    return model;
+  }
+
+  /**
+   * Returns the number of evaluations which were answered from the cache.
+   */
+  public long getHits() {
+    return sum(0);
+  }
+
+  /**
+   * Returns the number of evaluations which were passed to the model.
+   */
+  public long getMisses() {
+    return sum(PAD);
+  }
+
+  private long sum(int offset) {
+    long total = 0;
+    for (int si = 0; si < STRIPES; si++) {
+      total += counters.get(si * 2 * PAD + offset);
+    }
+    return total;
+  }
+
+  private void count(boolean hit) {
+    int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    counters.incrementAndGet(stripe * 2 * PAD + (hit ? 0 : PAD));
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public void clear() {
+    for (int ei = 0; ei < entries.length(); ei++) {
+      entries.set(ei, null);
+    }
+  }
+
+  public double[] eval(String[] context) {
+    return eval(context, null, null);
+  }
+
+  public double[] eval(String[] context, double[] probs) {
+    return eval(context, null, probs);
+  }
+
+  public double[] eval(String[] context, float[] values) {
+    return eval(context, values, null);
+  }
+
+  public void evalBatch(String[][] contexts, float[][] values, double[][] out) {
+    for (int ci = 0; ci < contexts.length; ci++) {
+      eval(contexts[ci], values == null ? null : values[ci], out[ci]);
+    }
+  }
+
+  /**
+   * Evaluates a context, copying the distribution into <code>probs</code> if it is not null.
+   */
+  private double[] eval(String[] context, float[] values, double[] probs) {
+    int gen = generation.get();
+    MaxentModel current = model;
+    if (!(current instanceof AbstractModel)) {
+      count(false);
+      return copy(evaluate(current, context, values), probs);
+    }
+    AbstractModel abstractModel = (AbstractModel) current;
+    int length = context.length;
+    int[] ids = scratch.get().getContexts(length);
+    int hash = values == null ? length : ~length;
+    for (int ci = 0; ci < length; ci++) {
+      int id = abstractModel.getPredicateIndex(context[ci]);
+      ids[ci] = id;
+      int h = mix(id);
+      if (values != null) {
+        h = mix(h ^ Float.floatToRawIntBits(values[ci]));
+      }
+      hash += h;
+    }
+    hash = mix(hash);
+    int slot = hash & mask;
+    for (int wi = 0; wi < 2; wi++) {
+      Entry entry = entries.get(slot + wi);
+      if (entry != null && matches(entry, gen, hash, ids, length, values)) {
+        if (!entry.referenced) {
+          entry.referenced = true;
+        }
+        count(true);
+        return copy(entry.probs, probs);
+      }
+    }
+    count(false);
+    double[] result = evaluate(current, context, values);
+    int[] key = new int[length];
+    System.arraycopy(ids, 0, key, 0, length);
+    float[] keyValues = null;
+    if (values != null) {
+      keyValues = new float[length];
+      System.arraycopy(values, 0, keyValues, 0, length);
+    }
+    insert(slot, gen, new Entry(gen, hash, key, keyValues, result.clone()));
+    return copy(result, probs);
+  }
+
+  private static double[] evaluate(MaxentModel model, String[] context, float[] values) {
+    return values == null ? model.eval(context) : model.eval(context, values);
+  }
+
+  private static double[] copy(double[] result, double[] probs) {
+    if (probs == null) {
+      return result.clone();
+    }
+    System.arraycopy(result, 0, probs, 0, result.length);
+    return probs;
+  }
+
+  private static boolean matches(Entry entry, int generation, int hash, int[] ids, int length, float[] values) {
+    if (entry.generation != generation || entry.hash != hash || entry.context.length != length
+        || (entry.values == null) != (values == null)) {
+      return false;
+    }
+    for (int ci = 0; ci < length; ci++) {
+      if (entry.context[ci] != ids[ci]) {
+        return false;
+      }
+    }
+    if (values != null) {
+      for (int ci = 0; ci < length; ci++) {
+        if (Float.floatToRawIntBits(entry.values[ci]) != Float.floatToRawIntBits(values[ci])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stores an entry in one of the two slots starting at <code>slot</code>.  An empty or
+   * invalidated slot is used first, then a slot whose entry has not been hit.  If both
+   * entries have been hit they are spared once and the first one is replaced.
+   */
+  private void insert(int slot, int generation, Entry entry) {
+    Entry first = entries.get(slot);
+    Entry second = entries.get(slot + 1);
+    int victim;
+    if (first == null || first.generation != generation) {
+      victim = slot;
+    }
+    else if (second == null || second.generation != generation) {
+      victim = slot + 1;
+    }
+    else if (!first.referenced) {
+      victim = slot;
+    }
+    else if (!second.referenced) {
+      victim = slot + 1;
+    }
+    else {
+      second.referenced = false;
+      victim = slot;
+    }
+    entries.set(victim, entry);
+  }
+
+  /**
+   * Mixes the bits of a hash code, as in the finalizer of MurmurHash3.
+   */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  public String getBestOutcome(double[] outcomes) {
+    return model.getBestOutcome(outcomes);
+  }
+
+  public String getAllOutcomes(double[] outcomes) {
+    return model.getAllOutcomes(outcomes);
+  }
+
+  public String getOutcome(int i) {
+    return model.getOutcome(i);
+  }
+
+  public int getIndex(String outcome) {
+    return model.getIndex(outcome);
+  }
+
+  public Object[] getDataStructures() {
+    return model.getDataStructures();
+  }
+
+  public int getNumOutcomes() {
+    return model.getNumOutcomes();
+  }
+}
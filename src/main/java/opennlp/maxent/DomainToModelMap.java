@@ -26,7 +26,8 @@ import opennlp.model.MaxentModel;
  * This permits an application to replace an old model for a domain with a
  * newly trained one in a thread-safe manner.  By calling the getModel()
  * method, the application can create new instances of classes which use the
- * relevant models.
+ * relevant models.  All models stay in memory; for many domains whose models
+ * should be loaded on demand within a memory budget, use a {@link ModelRegistry}.
  *
  * @author  Jason Baldridge and Eric Friedman
  * @version $Revision: 1.1 $, $Date: 2009/01/22 23:23:34 $
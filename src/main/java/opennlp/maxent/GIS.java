@@ -17,10 +17,18 @@
 
 package opennlp.maxent;
 
+import java.io.File;
+import java.io.IOException;
+
 import opennlp.model.AbstractModel;
 import opennlp.model.DataIndexer;
+import opennlp.model.EventStore;
 import opennlp.model.EventStream;
+import opennlp.model.FileEventStore;
+import opennlp.model.IndexedDataWriter;
+import opennlp.model.IndexedLabels;
 import opennlp.model.Prior;
+import opennlp.model.UniformPrior;
 
 /**
  * A Factory class which uses instances of GISTrainer to create and train
@@ -159,17 +167,123 @@ public class GIS {
      *         to disk using an opennlp.maxent.io.GISModelWriter object.
      */
     public static GISModel trainModel(int iterations, DataIndexer indexer, boolean printMessagesWhileTraining, boolean smoothing, Prior modelPrior, int cutoff) {
+      return trainModel(iterations,indexer,printMessagesWhileTraining,smoothing,modelPrior,cutoff,1);
+    }
+
+    /**
+     * Train a model using the GIS algorithm with the specified number of threads.
+     * @param iterations The number of GIS iterations to perform.
+     * @param indexer The object which will be used for event compilation.
+     * @param threads The number of threads used to compute each iteration.
+     * @return The newly trained model, which can be used immediately or saved
+     *         to disk using an opennlp.maxent.io.GISModelWriter object.
+     */
+    public static GISModel trainModel(int iterations, DataIndexer indexer, int threads) {
+      return trainModel(iterations,indexer,true,false,null,0,threads);
+    }
+
+    /**
+     * Train a model using the GIS algorithm.
+     * @param iterations The number of GIS iterations to perform.
+     * @param indexer The object which will be used for event compilation.
+     * @param printMessagesWhileTraining Determines whether training status messages are written to STDOUT.
+     * @param smoothing Defines whether the created trainer will use smoothing while training the model.
+     * @param modelPrior The prior distribution for the model.
+     * @param cutoff The number of times a predicate must occur to be used in a model.
+     * @param threads The number of threads used to compute each iteration.  For a given number of
+     *                threads training is deterministic, and a single thread gives the same model
+     *                as earlier versions.
+     * @return The newly trained model, which can be used immediately or saved
+     *         to disk using an opennlp.maxent.io.GISModelWriter object.
+     */
+    public static GISModel trainModel(int iterations, DataIndexer indexer, boolean printMessagesWhileTraining, boolean smoothing, Prior modelPrior, int cutoff, int threads) {
       GISTrainer trainer = new GISTrainer(printMessagesWhileTraining);
       trainer.setSmoothing(smoothing);
       trainer.setSmoothingObservation(SMOOTHING_OBSERVATION);
+      trainer.setThreads(threads);
       if (modelPrior != null) {
         return trainer.trainModel(iterations, indexer, modelPrior,cutoff);
       }
       else {
         return trainer.trainModel(iterations, indexer,cutoff);
       }
-    }  
-}
+    }
 
+    /**
+     * Train a model using the GIS algorithm on events which were indexed and written by an
+     * {@link IndexedDataWriter}.  The events are read from the file for each iteration rather
+     * than held in memory, so the memory needed for training depends on the size of the model
+     * rather than on the number of events.  Only the names and the predicate counts are read
+     * when the file is opened.
+     * <p>
+     * Writing the file is not out of core: an {@link IndexedDataWriter} writes the data of a
+     * {@link DataIndexer}, which holds all of the indexed events in memory.  The file can be
+     * written once on a machine with enough memory and then used for many training runs.
+     * @param iterations The number of GIS iterations to perform.
+     * @param indexedData The file holding the indexed events.
+     * @param threads The number of threads used to compute each iteration.
+     * @return The newly trained model, which can be used immediately or saved
+     *         to disk using an opennlp.maxent.io.GISModelWriter object.
+     * @throws IOException If the file can not be read.
+     */
+    public static GISModel trainModel(int iterations, File indexedData, int threads) throws IOException {
+      FileEventStore events = new FileEventStore(indexedData);
+      try {
+        return trainModel(iterations,events,events,PRINT_MESSAGES,false,null,0,threads);
+      }
+      finally {
+        events.close();
+      }
+    }
+
+    /**
+     * Train a model using the GIS algorithm on events which are read from the specified store.
+     * @param iterations The number of GIS iterations to perform.
+     * @param labels The labels and predicate counts of the events, such as the {@link DataIndexer}
+     *               which indexed them or the {@link FileEventStore} which reads them.
+     * @param events The events, which are read once for each iteration.
+     * @param printMessagesWhileTraining Determines whether training status messages are written to STDOUT.
+     * @param smoothing Defines whether the created trainer will use smoothing while training the model.
+     * @param modelPrior The prior distribution for the model.
+     * @param cutoff The number of times a predicate must occur to be used in a model.
+     * @param threads The number of threads used to compute each iteration.
+     * @return The newly trained model, which can be used immediately or saved
+     *         to disk using an opennlp.maxent.io.GISModelWriter object.
+     */
+    public static GISModel trainModel(int iterations, IndexedLabels labels, EventStore events, boolean printMessagesWhileTraining, boolean smoothing, Prior modelPrior, int cutoff, int threads) {
+      GISTrainer trainer = new GISTrainer(printMessagesWhileTraining);
+      trainer.setSmoothing(smoothing);
+      trainer.setSmoothingObservation(SMOOTHING_OBSERVATION);
+      trainer.setThreads(threads);
+      return trainer.trainModel(iterations, labels, events, modelPrior != null ? modelPrior : new UniformPrior(), cutoff);
+    }
 
+    /**
+     * Train a model using the L-BFGS quasi-Newton method with a Gaussian prior on the
+     * parameters.  This usually needs far fewer passes over the data than GIS.
+     * @param iterations The maximum number of iterations to perform.
+     * @param indexer The object which will be used for event compilation.
+     * @return The newly trained model, which can be used immediately or saved
+     *         to disk using an opennlp.maxent.io.GISModelWriter object.
+     */
+    public static GISModel trainLBFGSModel(int iterations, DataIndexer indexer) {
+      return trainLBFGSModel(iterations,indexer,PRINT_MESSAGES,QNTrainer.DEFAULT_SIGMA,0);
+    }
 
+    /**
+     * Train a model using the L-BFGS quasi-Newton method with a Gaussian prior on the
+     * parameters.
+     * @param iterations The maximum number of iterations to perform.
+     * @param indexer The object which will be used for event compilation.
+     * @param printMessagesWhileTraining Determines whether training status messages are written to STDOUT.
+     * @param sigma The standard deviation of the Gaussian prior.  Smaller values give smaller parameters.
+     * @param cutoff The number of times a predicate must occur to be used in a model.
+     * @return The newly trained model, which can be used immediately or saved
+     *         to disk using an opennlp.maxent.io.GISModelWriter object.
+     */
+    public static GISModel trainLBFGSModel(int iterations, DataIndexer indexer, boolean printMessagesWhileTraining, double sigma, int cutoff) {
+      QNTrainer trainer = new QNTrainer(printMessagesWhileTraining);
+      trainer.setSigma(sigma);
+      return trainer.trainModel(iterations, indexer, cutoff);
+    }
+}
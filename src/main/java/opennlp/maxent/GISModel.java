@@ -21,10 +21,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
+import opennlp.model.AbstractContextTable;
 import opennlp.model.AbstractModel;
 import opennlp.model.Context;
+import opennlp.model.IndexTable;
 import opennlp.model.EvalParameters;
+import opennlp.model.EvalScratch;
 import opennlp.model.Prior;
 import opennlp.model.UniformPrior;
 
@@ -64,6 +68,51 @@ public final class GISModel extends AbstractModel {
       modelType = ModelType.Maxent;
     }
 
+    /**
+     * Creates a new model with the specified parameters, outcome names, and predicate/feature labels. 
+     * @param params The parameters of the model stored as a table.
+     * @param predLabels The names of the predicates used in this model.
+     * @param outcomeNames The names of the outcomes this model predicts.
+     * @param correctionConstant The maximum number of active features which occur in an event.
+     * @param correctionParam The parameter associated with the correction feature.
+     */
+    public GISModel (AbstractContextTable params, String[] predLabels, String[] outcomeNames, int correctionConstant, double correctionParam) {
+      this(params,predLabels,outcomeNames,correctionConstant,correctionParam, new UniformPrior());
+    }
+
+    /**
+     * Creates a new model with the specified parameters, outcome names, and predicate/feature labels. 
+     * @param params The parameters of the model stored as a table.
+     * @param predLabels The names of the predicates used in this model.
+     * @param outcomeNames The names of the outcomes this model predicts.
+     * @param correctionConstant The maximum number of active features which occur in an event.
+     * @param correctionParam The parameter associated with the correction feature.
+     * @param prior The prior to be used with this model.
+     */
+    public GISModel (AbstractContextTable params, String[] predLabels, String[] outcomeNames, int correctionConstant, double correctionParam, Prior prior) {
+      super(new EvalParameters(params,correctionParam,correctionConstant,outcomeNames.length),predLabels,outcomeNames);
+      this.prior = prior;
+      prior.setLabels(outcomeNames, predLabels);
+      modelType = ModelType.Maxent;
+    }
+
+    /**
+     * Creates a new model with the specified parameters, outcome names, and predicate/feature mapping.
+     * The model uses a uniform prior, which only needs the outcome names, so the predicate labels
+     * are never copied out of <code>pmap</code>.
+     * @param params The parameters of the model stored as a table.
+     * @param pmap The mapping from the names of the predicates used in this model to their index.
+     * @param outcomeNames The names of the outcomes this model predicts.
+     * @param correctionConstant The maximum number of active features which occur in an event.
+     * @param correctionParam The parameter associated with the correction feature.
+     */
+    public GISModel (AbstractContextTable params, IndexTable pmap, String[] outcomeNames, int correctionConstant, double correctionParam) {
+      super(new EvalParameters(params,correctionParam,correctionConstant,outcomeNames.length),pmap,outcomeNames);
+      this.prior = new UniformPrior();
+      prior.setLabels(outcomeNames, null);
+      modelType = ModelType.Maxent;
+    }
+
     /**
      * Use this model to evaluate a context and return an array of the
      * likelihood of each outcome given that context.
@@ -102,13 +151,13 @@ public final class GISModel extends AbstractModel {
      *                getOutcome(int i).
      */
     public final double[] eval(String[] context, float[] values, double[] outsums) {
-      int[] scontexts = new int[context.length];
-      for (int i=0; i<context.length; i++) {
-        Integer ci = pmap.get(context[i]);
-        scontexts[i] = ci == null ? -1 : ci;
-      }
+      return eval(context,values,outsums,new EvalScratch());
+    }
+
+    public final double[] eval(String[] context, float[] values, double[] outsums, EvalScratch scratch) {
+      int[] scontexts = indexContext(context,scratch);
       prior.logPrior(outsums, scontexts,values);
-      return GISModel.eval(scontexts,values,outsums,evalParams);
+      return GISModel.eval(scontexts,values,outsums,evalParams,scratch.getNumFeats(evalParams.getNumOutcomes()));
     }
 
     
@@ -144,46 +193,169 @@ public final class GISModel extends AbstractModel {
      *                getOutcome(int i).
      */
     public static double[] eval(int[] context, float[] values, double[] prior, EvalParameters model) {
-      Context[] params = model.getParams();
-      int numfeats[] = new int[model.getNumOutcomes()];
-      int[] activeOutcomes;
-      double[] activeParameters;
+      return eval(context,values,prior,model,new int[model.getNumOutcomes()]);
+    }
+
+    /**
+     * Use this model to evaluate a context and return an array of the
+     * likelihood of each outcome given the specified context and the specified parameters.
+     * @param context The integer values of the predicates which have been observed at
+     *                the present decision point.  Negative values are ignored.
+     * @param values The values for each of the parameters.
+     * @param prior The prior distribution for the specified context.
+     * @param model The set of parametes used in this computation.
+     * @param numfeats A buffer of at least as many entries as there are outcomes which is
+     *                used to count the features fired for each outcome.  It is cleared by this method.
+     * @return The normalized probabilities for the outcomes given the
+     *                context. The indexes of the double[] are the outcome
+     *                ids, and the actual string representation of the
+     *                outcomes can be obtained from the method
+     *                getOutcome(int i).
+     */
+    public static double[] eval(int[] context, float[] values, double[] prior, EvalParameters model, int[] numfeats) {
+      Arrays.fill(numfeats,0,model.getNumOutcomes(),0);
+      addParameters(context,0,context.length,values,model,prior,0,numfeats,0);
+      normalize(prior,numfeats,0,1,model);
+      return prior;
+    }
+
+    /**
+     * Evaluates the contexts of the rows <code>fromRow</code> (inclusive) to <code>toRow</code> (exclusive).
+     * The outcome scores of all rows are accumulated first and then normalized together.
+     */
+    protected void evalRows(int[] contexts, int[] offsets, float[] values, int fromRow, int toRow, double[] out, EvalScratch scratch) {
+      int numOutcomes = evalParams.getNumOutcomes();
+      int[] numfeats = scratch.getNumFeats((toRow-fromRow)*numOutcomes);
+      double[] dist = scratch.getProbs(numOutcomes);
+      for (int ri = fromRow; ri < toRow; ri++) {
+        int start = offsets[ri];
+        int length = offsets[ri+1] - start;
+        int[] rowContext = scratch.getContexts(length);
+        System.arraycopy(contexts,start,rowContext,0,length);
+        float[] rowValues = null;
+        if (values != null) {
+          rowValues = scratch.getValues(length);
+          System.arraycopy(values,start,rowValues,0,length);
+        }
+        prior.logPrior(dist,rowContext,rowValues);
+        System.arraycopy(dist,0,out,ri*numOutcomes,numOutcomes);
+      }
+      Arrays.fill(numfeats,0,(toRow-fromRow)*numOutcomes,0);
+      for (int ri = fromRow; ri < toRow; ri++) {
+        addParameters(contexts,offsets[ri],offsets[ri+1],values,evalParams,out,ri*numOutcomes,numfeats,(ri-fromRow)*numOutcomes);
+      }
+      normalize(out,numfeats,fromRow,toRow,evalParams);
+    }
+
+    /**
+     * Adds the parameters of the predicates <code>context[start]</code> to <code>context[end-1]</code>
+     * to the scores starting at <code>scoreOffset</code> and counts the features which fired for each
+     * outcome starting at <code>featOffset</code>.
+     */
+    private static void addParameters(int[] context, int start, int end, float[] values, EvalParameters model, double[] scores, int scoreOffset, int[] numfeats, int featOffset) {
       double value = 1;
-      for (int ci = 0; ci < context.length; ci++) {
-        if (context[ci] >= 0) {
-          Context predParams = params[context[ci]];
-          activeOutcomes = predParams.getOutcomes();
-          activeParameters = predParams.getParameters();
-          if (values != null) {
-            value = values[ci];
+      AbstractContextTable table = model.getContextTable();
+      if (table != null) {
+        for (int ci = start; ci < end; ci++) {
+          int pid = context[ci];
+          if (pid >= 0) {
+            if (values != null) {
+              value = values[ci];
+            }
+            table.addParameters(pid,value,scores,scoreOffset,numfeats,featOffset);
           }
-          for (int ai = 0; ai < activeOutcomes.length; ai++) {
-            int oid = activeOutcomes[ai];
-            numfeats[oid]++;
-            prior[oid] += activeParameters[ai] * value;
+        }
+      }
+      else {
+        Context[] params = model.getParams();
+        int[] activeOutcomes;
+        double[] activeParameters;
+        for (int ci = start; ci < end; ci++) {
+          if (context[ci] >= 0) {
+            Context predParams = params[context[ci]];
+            activeOutcomes = predParams.getOutcomes();
+            activeParameters = predParams.getParameters();
+            if (values != null) {
+              value = values[ci];
+            }
+            for (int ai = 0; ai < activeOutcomes.length; ai++) {
+              int oid = activeOutcomes[ai];
+              numfeats[oid + featOffset]++;
+              scores[oid + scoreOffset] += activeParameters[ai] * value;
+            }
           }
         }
       }
+    }
 
-      double normal = 0.0;
-      for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-        if (model.getCorrectionParam() != 0) {
-          prior[oid] = Math.exp(prior[oid]*model.getConstantInverse()+((1.0 - ((double) numfeats[oid] / model.getCorrectionConstant())) * model.getCorrectionParam()));
+    /**
+     * Turns the scores of the rows <code>fromRow</code> (inclusive) to <code>toRow</code> (exclusive)
+     * into probabilities.  All scores are exponentiated in one pass before each row is normalized.
+     * The feature counts are indexed relative to <code>fromRow</code>.
+     */
+    private static void normalize(double[] scores, int[] numfeats, int fromRow, int toRow, EvalParameters model) {
+      int numOutcomes = model.getNumOutcomes();
+      int start = fromRow * numOutcomes;
+      int end = toRow * numOutcomes;
+      toLogScores(scores,start,end,numfeats,model);
+      for (int si = start; si < end; si++) {
+        scores[si] = Math.exp(scores[si]);
+      }
+      for (int rowStart = start; rowStart < end; rowStart += numOutcomes) {
+        double normal = 0.0;
+        for (int si = rowStart; si < rowStart + numOutcomes; si++) {
+          normal += scores[si];
         }
-        else {
-          prior[oid] = Math.exp(prior[oid]*model.getConstantInverse());
+        for (int si = rowStart; si < rowStart + numOutcomes; si++) {
+          scores[si] /= normal;
         }
-        normal += prior[oid];
       }
+    }
 
-      for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-        prior[oid] /= normal;
+    /**
+     * Turns the accumulated parameters of the scores <code>start</code> to <code>end-1</code> into the
+     * unnormalized log probabilities of the outcomes, applying the correction feature.  The feature
+     * counts are indexed relative to <code>start</code>.
+     */
+    private static void toLogScores(double[] scores, int start, int end, int[] numfeats, EvalParameters model) {
+      if (model.getCorrectionParam() != 0) {
+        for (int si = start; si < end; si++) {
+          scores[si] = scores[si]*model.getConstantInverse()+((1.0 - ((double) numfeats[si-start] / model.getCorrectionConstant())) * model.getCorrectionParam());
+        }
+      }
+      else {
+        for (int si = start; si < end; si++) {
+          scores[si] = scores[si]*model.getConstantInverse();
+        }
+      }
+    }
+
+    protected double[] evalScores(String[] context, float[] values, EvalScratch scratch) {
+      int numOutcomes = evalParams.getNumOutcomes();
+      double[] scores = scratch.getProbs(numOutcomes);
+      int[] numfeats = scratch.getNumFeats(numOutcomes);
+      int[] scontexts = indexContext(context,scratch);
+      prior.logPrior(scores,scontexts,values);
+      Arrays.fill(numfeats,0,numOutcomes,0);
+      addParameters(scontexts,0,scontexts.length,values,evalParams,scores,0,numfeats,0);
+      toLogScores(scores,0,numOutcomes,numfeats,evalParams);
+      return scores;
+    }
+
+    /**
+     * The probabilities of the selected outcomes need the normalizer, so this is the only
+     * place where the scores of the other outcomes are exponentiated.
+     */
+    protected void toProbabilities(double[] scores, int[] outcomes, int count, double[] probs) {
+      double normal = 0.0;
+      for (int oid = 0; oid < scores.length; oid++) {
+        normal += Math.exp(scores[oid]);
+      }
+      for (int i = 0; i < count; i++) {
+        probs[i] = Math.exp(scores[outcomes[i]]) / normal;
       }
-      return prior;
     }
-        
 
-    
     public static void main(String[] args) throws java.io.IOException {
       if (args.length == 0) {
         System.err.println("Usage: GISModel modelname < contexts");
@@ -17,9 +17,24 @@
 
 package opennlp.maxent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.model.ArrayEventStore;
+import opennlp.model.ContextTable;
 import opennlp.model.DataIndexer;
 import opennlp.model.EvalParameters;
+import opennlp.model.EventCursor;
+import opennlp.model.EventStore;
 import opennlp.model.EventStream;
+import opennlp.model.FileEventStore;
+import opennlp.model.IndexedLabels;
 import opennlp.model.MutableContext;
 import opennlp.model.OnePassDataIndexer;
 import opennlp.model.Prior;
@@ -42,6 +57,15 @@ import opennlp.model.UniformPrior;
  * A prior can be used to train models which converge to the distribution which minimizes the
  * relative entropy between the distribution specified by the empirical constraints of the training
  * data and the specified prior.  By default, the uniform distribution is used as the prior.
+ * 
+ * The events are read through an {@link EventStore}, so instead of holding them in memory
+ * they can be read from disk for each iteration, for example using a {@link FileEventStore}.
+ * 
+ * Each iteration can be spread over several threads.  The events are split into one contiguous
+ * range per thread, each thread accumulates the model expectations of its range in its own
+ * buffer, and the buffers are summed in thread order, so a given number of threads always
+ * produces the same model.  The prior must allow concurrent calls to <code>logPrior</code>
+ * when more than one thread is used.
  *    
  * @author Tom Morton
  * @author  Jason Baldridge
@@ -70,6 +94,9 @@ class GISTrainer {
 
   private boolean printMessages = false;
 
+  /** The number of threads used to compute each iteration. */
+  private int threads = 1;
+
   /** Number of unique events which occured in the event set. */
   private int numUniqueEvents; 
   /** Number of predicates. */
@@ -77,17 +104,8 @@ class GISTrainer {
   /** Number of outcomes. */
   private int numOutcomes; 
 
-  /** Records the array of predicates seen in each event. */
-  private int[][] contexts;
-  
-  /** The value associated with each context. If null then context values are assumes to be 1. */
-  private float[][] values;
-  
-  /** List of outcomes for each event i, in context[i]. */
-  private int[] outcomeList;
-
-  /** Records the num of times an event has been seen for each event i, in context[i]. */
-  private int[] numTimesEventsSeen;
+  /** The predicates, values, outcome and number of times seen of each event. */
+  private EventStore events;
   
   /** The number of times a predicate occured in the training data. */
   private int[] predicateCounts;
@@ -114,6 +132,15 @@ class GISTrainer {
 
   /** Stores the expected values of the features based on the current models */
   private MutableContext[] modelExpects;
+
+  /** The position of the expectations of each predicate in the buffers of the workers, followed by their total number. */
+  private int[] expectOffsets;
+
+  /** The workers which compute the model expectations of a range of events. */
+  private ExpectationWorker[] workers;
+
+  /** Runs the workers and the parameter updates, or null if a single thread is used. */
+  private ExecutorService executor;
   
   /** This is the prior distribution that the model uses for training. */
   private Prior prior;
@@ -127,13 +154,6 @@ class GISTrainer {
   private final double NEAR_ZERO = 0.01;
   private final double LLThreshold = 0.0001;
 
-  /** Stores the output of the current model on a single event durring
-   *  training.  This we be reset for every event for every itteration.  */
-  double[] modelDistribution;
-  /** Stores the number of features that get fired per event. */
-  int[] numfeats;
-  /** Initial probability for all outcomes. */
-  
   EvalParameters evalParams;
   /**
    * Creates a new <code>GISTrainer</code> instance which does
@@ -177,6 +197,18 @@ class GISTrainer {
   public void setSmoothingObservation(double timesSeen) {
     _smoothingObservation = timesSeen;
   }
+
+  /**
+   * Sets the number of threads used to compute each iteration.
+   *
+   * @param threads the number of threads, which must be at least 1
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    }
+    this.threads = threads;
+  }
   
 
   /**
@@ -213,29 +245,43 @@ class GISTrainer {
    *         to disk using an opennlp.maxent.io.GISModelWriter object.
    */
   public GISModel trainModel(int iterations, DataIndexer di, Prior modelPrior, int cutoff) {
+    return trainModel(iterations,di,new ArrayEventStore(di),modelPrior,cutoff);
+  }
+
+  /**
+   * Train a model using the GIS algorithm on events which are read from the specified store.
+   *
+   * @param iterations  The number of GIS iterations to perform.
+   * @param labels The labels and predicate counts of the events.
+   * @param eventStore The events.
+   * @param modelPrior The prior distribution used to train this model.
+   * @return The newly trained model, which can be used immediately or saved
+   *         to disk using an opennlp.maxent.io.GISModelWriter object.
+   */
+  public GISModel trainModel(int iterations, IndexedLabels labels, EventStore eventStore, Prior modelPrior, int cutoff) {
     /************** Incorporate all of the needed info ******************/
     display("Incorporating indexed data for training...  \n");
-    contexts = di.getContexts();
-    values = di.getValues();
+    events = eventStore;
     this.cutoff = cutoff;
-    predicateCounts = di.getPredCounts();
-    numTimesEventsSeen = di.getNumTimesEventsSeen();
-    numUniqueEvents = contexts.length;
+    predicateCounts = labels.getPredCounts();
+    numUniqueEvents = events.size();
     this.prior = modelPrior;
-    //printTable(contexts);
 
     // determine the correction constant and its inverse
     int correctionConstant = 1;
-    for (int ci = 0; ci < contexts.length; ci++) {
-      if (values == null || values[ci] == null) {
-        if (contexts[ci].length > correctionConstant) {
-          correctionConstant = contexts[ci].length;
+    EventCursor cursor = events.getCursor(0,numUniqueEvents);
+    while (cursor.next()) {
+      float[] eventValues = cursor.getValues();
+      int length = cursor.getLength();
+      if (eventValues == null) {
+        if (length > correctionConstant) {
+          correctionConstant = length;
         }
       }
       else {
-        float cl = values[ci][0];
-        for (int vi=1;vi<values[ci].length;vi++) {
-          cl+=values[ci][vi];
+        float cl = eventValues[0];
+        for (int vi=1;vi<length;vi++) {
+          cl+=eventValues[vi];
         }
         
         if (cl > correctionConstant) {
@@ -245,11 +291,10 @@ class GISTrainer {
     }
     display("done.\n");
 
-    outcomeLabels = di.getOutcomeLabels();
-    outcomeList = di.getOutcomeList();
+    outcomeLabels = labels.getOutcomeLabels();
     numOutcomes = outcomeLabels.length;
 
-    predLabels = di.getPredLabels();
+    predLabels = labels.getPredLabels();
     prior.setLabels(outcomeLabels,predLabels);
     numPreds = predLabels.length;
 
@@ -257,21 +302,11 @@ class GISTrainer {
     display("\t    Number of Outcomes: " + numOutcomes + "\n");
     display("\t  Number of Predicates: " + numPreds + "\n");
 
-    // set up feature arrays
-    float[][] predCount = new float[numPreds][numOutcomes];
-    for (int ti = 0; ti < numUniqueEvents; ti++) {
-      for (int j = 0; j < contexts[ti].length; j++) {
-        if (values != null && values[ti] != null) {
-          predCount[contexts[ti][j]][outcomeList[ti]] += numTimesEventsSeen[ti]*values[ti][j];
-        }
-        else {          
-          predCount[contexts[ti][j]][outcomeList[ti]] += numTimesEventsSeen[ti];
-        }
-      }
-    }
+    // count the predicate/outcome pairs which occur
+    ObservedCounts predCount = new ObservedCounts(events,numPreds);
 
     //printTable(predCount);
-    di = null; // don't need it anymore
+    labels = null; // don't need it anymore
 
     // A fake "observation" to cover features which are not detected in
     // the data.  The default is to assume that we observed "1/10th" of a
@@ -293,18 +328,26 @@ class GISTrainer {
     for (int oi = 0; oi < numOutcomes; oi++) {
       allOutcomesPattern[oi] = oi;
     }
+    double[] observedCounts = new double[numOutcomes];
     int numActiveOutcomes = 0;
     for (int pi = 0; pi < numPreds; pi++) {
       numActiveOutcomes = 0;
       if (useSimpleSmoothing) {
         numActiveOutcomes = numOutcomes;
         outcomePattern = allOutcomesPattern;
+        java.util.Arrays.fill(observedCounts,0);
+        for (int ai = predCount.getStart(pi); ai < predCount.getStart(pi+1); ai++) {
+          observedCounts[predCount.getOutcome(ai)] = predCount.getCount(ai);
+        }
       }
       else { //determine active outcomes
-        for (int oi = 0; oi < numOutcomes; oi++) {
-          if (predCount[pi][oi] > 0 && predicateCounts[pi] >= cutoff) {
-            activeOutcomes[numActiveOutcomes] = oi;
-            numActiveOutcomes++;
+        if (predicateCounts[pi] >= cutoff) {
+          for (int ai = predCount.getStart(pi); ai < predCount.getStart(pi+1); ai++) {
+            if (predCount.getCount(ai) > 0) {
+              activeOutcomes[numActiveOutcomes] = predCount.getOutcome(ai);
+              observedCounts[numActiveOutcomes] = predCount.getCount(ai);
+              numActiveOutcomes++;
+            }
           }
         }
         if (numActiveOutcomes == numOutcomes) {
@@ -321,11 +364,12 @@ class GISTrainer {
       modelExpects[pi] = new MutableContext(outcomePattern,new double[numActiveOutcomes]);
       observedExpects[pi] = new MutableContext(outcomePattern,new double[numActiveOutcomes]);
       for (int aoi=0;aoi<numActiveOutcomes;aoi++) {
-        int oi = outcomePattern[aoi];
+        // with smoothing the counts are indexed by outcome, otherwise by active outcome
+        double observedCount = useSimpleSmoothing ? observedCounts[outcomePattern[aoi]] : observedCounts[aoi];
         params[pi].setParameter(aoi, 0.0);
         modelExpects[pi].setParameter(aoi, 0.0);
-        if (predCount[pi][oi] > 0) {
-            observedExpects[pi].setParameter(aoi, predCount[pi][oi]);
+        if (observedCount > 0) {
+            observedExpects[pi].setParameter(aoi, observedCount);
         }
         else if (useSimpleSmoothing) { 
           observedExpects[pi].setParameter(aoi,smoothingObservation);
@@ -336,14 +380,17 @@ class GISTrainer {
     // compute the expected value of correction
     if (useSlackParameter) {
       int cfvalSum = 0;
-      for (int ti = 0; ti < numUniqueEvents; ti++) {
-        for (int j = 0; j < contexts[ti].length; j++) {
-          int pi = contexts[ti][j];
-          if (!modelExpects[pi].contains(outcomeList[ti])) {
-            cfvalSum += numTimesEventsSeen[ti];
+      cursor = events.getCursor(0,numUniqueEvents);
+      while (cursor.next()) {
+        int[] context = cursor.getContext();
+        int length = cursor.getLength();
+        for (int j = 0; j < length; j++) {
+          int pi = context[j];
+          if (!modelExpects[pi].contains(cursor.getOutcome())) {
+            cfvalSum += cursor.getNumTimesSeen();
           }
         }
-        cfvalSum += (correctionConstant - contexts[ti].length) * numTimesEventsSeen[ti];
+        cfvalSum += (correctionConstant - length) * cursor.getNumTimesSeen();
       }
       if (cfvalSum == 0) {
         cfObservedExpect = Math.log(NEAR_ZERO); //nearly zero so log is defined
@@ -356,23 +403,51 @@ class GISTrainer {
 
     display("...done.\n");
 
-    modelDistribution = new double[numOutcomes];
-    numfeats = new int[numOutcomes];
+    expectOffsets = new int[numPreds+1];
+    for (int pi = 0; pi < numPreds; pi++) {
+      expectOffsets[pi+1] = expectOffsets[pi] + modelExpects[pi].getOutcomes().length;
+    }
+    int numWorkers = Math.max(1,Math.min(threads,numUniqueEvents));
+    workers = new ExpectationWorker[numWorkers];
+    for (int wi = 0; wi < numWorkers; wi++) {
+      workers[wi] = new ExpectationWorker((int) ((long) numUniqueEvents * wi / numWorkers),(int) ((long) numUniqueEvents * (wi+1) / numWorkers));
+    }
 
     /***************** Find the parameters ************************/
     display("Computing model parameters...\n");
     findParameters(iterations);
 
     /*************** Create and return the model ******************/
-    return new GISModel(params, predLabels, outcomeLabels, correctionConstant, evalParams.getCorrectionParam());
+    return new GISModel(ContextTable.fromContexts(params), predLabels, outcomeLabels, correctionConstant, evalParams.getCorrectionParam());
 
   }
 
   /* Estimate and return the model parameters. */
   private void findParameters(int iterations) {
+    display("Performing " + iterations + " iterations.\n");
+    if (workers.length > 1) {
+      executor = Executors.newFixedThreadPool(workers.length);
+    }
+    try {
+      iterate(iterations);
+    }
+    finally {
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
+    }
+
+    // kill a bunch of these big objects now that we don't need them
+    observedExpects = null;
+    modelExpects = null;
+    workers = null;
+    events = null;
+  }
+
+  private void iterate(int iterations) {
     double prevLL = 0.0;
     double currLL = 0.0;
-    display("Performing " + iterations + " iterations.\n");
     for (int i = 1; i <= iterations; i++) {
       if (i < 10)
         display("  " + i + ":  ");
@@ -392,12 +467,6 @@ class GISTrainer {
       }
       prevLL = currLL;
     }
-
-    // kill a bunch of these big objects now that we don't need them
-    observedExpects = null;
-    modelExpects = null;
-    numTimesEventsSeen = null;
-    contexts = null;
   }
   
   //modeled on implementation in  Zhang Le's maxent kit
@@ -431,46 +500,194 @@ class GISTrainer {
   private double nextIteration() {
     // compute contribution of p(a|b_i) for each feature and the new
     // correction parameter
+    if (executor == null) {
+      workers[0].call();
+    }
+    else {
+      invokeAll(Arrays.asList(workers));
+    }
     double loglikelihood = 0.0;
     CFMOD = 0.0;
     int numEvents = 0;
     int numCorrect = 0;
-    for (int ei = 0; ei < numUniqueEvents; ei++) {
-      if (values != null) {
-        prior.logPrior(modelDistribution,contexts[ei],values[ei]);
-        GISModel.eval(contexts[ei], values[ei], modelDistribution, evalParams);
+    for (int wi = 0; wi < workers.length; wi++) {
+      loglikelihood += workers[wi].loglikelihood;
+      CFMOD += workers[wi].cfmod;
+      numEvents += workers[wi].numEvents;
+      numCorrect += workers[wi].numCorrect;
+    }
+    display(".");
+
+    // compute the new parameter values
+    if (executor == null) {
+      updateParameters(0,numPreds,numEvents);
+    }
+    else {
+      final int n = numEvents;
+      List<Callable<Object>> updates = new ArrayList<Callable<Object>>(workers.length);
+      for (int wi = 0; wi < workers.length; wi++) {
+        final int start = (int) ((long) numPreds * wi / workers.length);
+        final int end = (int) ((long) numPreds * (wi+1) / workers.length);
+        updates.add(new Callable<Object>() {
+          public Object call() {
+            updateParameters(start,end,n);
+            return null;
+          }
+        });
+      }
+      invokeAll(updates);
+    }
+    if (CFMOD > 0.0 && useSlackParameter)
+        evalParams.setCorrectionParam(evalParams.getCorrectionParam() + (cfObservedExpect - Math.log(CFMOD)));
+
+    display(". loglikelihood=" + loglikelihood + "\t" + ((double) numCorrect / numEvents) + "\n");
+    return (loglikelihood);
+  }
+
+  /**
+   * Sums the expectations of the workers for the predicates <code>start</code> to <code>end-1</code>
+   * in worker order and updates the parameters of these predicates.
+   */
+  private void updateParameters(int start, int end, int numEvents) {
+    for (int pi = start; pi < end; pi++) {
+      double[] observed = observedExpects[pi].getParameters();
+      double[] model = modelExpects[pi].getParameters();
+      int[] activeOutcomes = params[pi].getOutcomes();
+      for (int aoi=0;aoi<activeOutcomes.length;aoi++) {
+        double expect = 0.0;
+        for (int wi = 0; wi < workers.length; wi++) {
+          expect += workers[wi].expects[expectOffsets[pi]+aoi];
+        }
+        model[aoi] = expect;
+        if (useGaussianSmoothing) {
+          params[pi].updateParameter(aoi,gaussianUpdate(pi,aoi,numEvents,evalParams.getCorrectionConstant()));
+        }
+        else {
+          if (model[aoi] == 0) {
+            System.err.println("Model expects == 0 for "+predLabels[pi]+" "+outcomeLabels[aoi]);
+          }
+          params[pi].updateParameter(aoi,(Math.log(observed[aoi]) - Math.log(model[aoi])));
+        }
+        modelExpects[pi].setParameter(aoi,0.0); // re-initialize to 0.0's
+      }
+    }
+  }
+
+  private void invokeAll(List<? extends Callable<Object>> tasks) {
+    try {
+      List<Future<Object>> futures = executor.invokeAll(tasks);
+      for (int fi = 0; fi < futures.size(); fi++) {
+        futures.get(fi).get();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Training was interrupted", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Computes the model distribution of a range of events and accumulates the model
+   * expectations, log-likelihood and correction feature of the range in its own storage.
+   */
+  private class ExpectationWorker implements Callable<Object> {
+
+    private final int start;
+    private final int end;
+
+    /** The model expectations of this range, laid out according to <code>expectOffsets</code>. */
+    final double[] expects;
+    /** Stores the output of the current model on a single event during training. */
+    private final double[] modelDistribution;
+    /** Stores the number of features that get fired per event. */
+    private final int[] numfeats;
+
+    double loglikelihood;
+    double cfmod;
+    int numEvents;
+    int numCorrect;
+
+    ExpectationWorker(int start, int end) {
+      this.start = start;
+      this.end = end;
+      expects = new double[expectOffsets[numPreds]];
+      modelDistribution = new double[numOutcomes];
+      numfeats = new int[numOutcomes];
+    }
+
+    public Object call() {
+      Arrays.fill(expects,0.0);
+      loglikelihood = 0.0;
+      cfmod = 0.0;
+      numEvents = 0;
+      numCorrect = 0;
+      EventCursor cursor = events.getCursor(start,end);
+      try {
+        while (cursor.next()) {
+          addEvent(cursor);
+        }
+      }
+      finally {
+        cursor.close();
+      }
+      return null;
+    }
+
+    /**
+     * Adds the model expectations of the current event of the cursor.
+     */
+    private void addEvent(EventCursor cursor) {
+      int[] context = cursor.getContext();
+      int length = cursor.getLength();
+      float[] eventValues = cursor.getValues();
+      int outcome = cursor.getOutcome();
+      int seen = cursor.getNumTimesSeen();
+      if (eventValues != null) {
+        prior.logPrior(modelDistribution,context,eventValues);
+        GISModel.eval(context, eventValues, modelDistribution, evalParams, numfeats);
       }
       else {
-        prior.logPrior(modelDistribution,contexts[ei]);
-        GISModel.eval(contexts[ei], modelDistribution, evalParams);
+        prior.logPrior(modelDistribution,context);
+        GISModel.eval(context, null, modelDistribution, evalParams, numfeats);
       }
-      for (int j = 0; j < contexts[ei].length; j++) {
-        int pi = contexts[ei][j];
+      for (int j = 0; j < length; j++) {
+        int pi = context[j];
         if (predicateCounts[pi] >= cutoff) {
           int[] activeOutcomes = modelExpects[pi].getOutcomes();
+          int offset = expectOffsets[pi];
           for (int aoi=0;aoi<activeOutcomes.length;aoi++) {
             int oi = activeOutcomes[aoi];
-            if (values != null && values[ei] != null) {
-              modelExpects[pi].updateParameter(aoi,modelDistribution[oi] * values[ei][j] * numTimesEventsSeen[ei]);
+            if (eventValues != null) {
+              expects[offset+aoi] += modelDistribution[oi] * eventValues[j] * seen;
             }
             else {
-              modelExpects[pi].updateParameter(aoi,modelDistribution[oi] * numTimesEventsSeen[ei]);
+              expects[offset+aoi] += modelDistribution[oi] * seen;
             }
           }
           if (useSlackParameter) {
             for (int oi = 0; oi < numOutcomes; oi++) {
               if (!modelExpects[pi].contains(oi)) {
-                CFMOD += modelDistribution[oi] * numTimesEventsSeen[ei];
+                cfmod += modelDistribution[oi] * seen;
               }
             }
           }
         }
       }
       if (useSlackParameter)
-        CFMOD += (evalParams.getCorrectionConstant() - contexts[ei].length) * numTimesEventsSeen[ei];
-      
-      loglikelihood += Math.log(modelDistribution[outcomeList[ei]]) * numTimesEventsSeen[ei];
-      numEvents += numTimesEventsSeen[ei];
+        cfmod += (evalParams.getCorrectionConstant() - length) * seen;
+
+      loglikelihood += Math.log(modelDistribution[outcome]) * seen;
+      numEvents += seen;
       if (printMessages) {
         int max = 0;
         for (int oi = 1; oi < numOutcomes; oi++) {
@@ -478,37 +695,11 @@ class GISTrainer {
             max = oi;
           }
         }
-        if (max == outcomeList[ei]) {
-          numCorrect += numTimesEventsSeen[ei];
+        if (max == outcome) {
+          numCorrect += seen;
         }
       }
-
     }
-    display(".");
-
-    // compute the new parameter values
-    for (int pi = 0; pi < numPreds; pi++) {
-      double[] observed = observedExpects[pi].getParameters();
-      double[] model = modelExpects[pi].getParameters();
-      int[] activeOutcomes = params[pi].getOutcomes();
-      for (int aoi=0;aoi<activeOutcomes.length;aoi++) {
-        if (useGaussianSmoothing) {
-          params[pi].updateParameter(aoi,gaussianUpdate(pi,aoi,numEvents,evalParams.getCorrectionConstant()));
-        }
-        else {
-          if (model[aoi] == 0) {
-            System.err.println("Model expects == 0 for "+predLabels[pi]+" "+outcomeLabels[aoi]);
-          }
-          params[pi].updateParameter(aoi,(Math.log(observed[aoi]) - Math.log(model[aoi])));
-        }
-        modelExpects[pi].setParameter(aoi,0.0); // re-initialize to 0.0's
-      }
-    }
-    if (CFMOD > 0.0 && useSlackParameter)
-        evalParams.setCorrectionParam(evalParams.getCorrectionParam() + (cfObservedExpect - Math.log(CFMOD)));
-
-    display(". loglikelihood=" + loglikelihood + "\t" + ((double) numCorrect / numEvents) + "\n");
-    return (loglikelihood);
   }
 
   private void display(String s) {
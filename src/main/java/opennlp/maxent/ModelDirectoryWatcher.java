@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import opennlp.model.GenericModelReader;
+import opennlp.model.MaxentModel;
+
+/**
+ * Serves the models stored in a directory and reloads a model when its file changes, so
+ * models can be redeployed by copying new files into the directory.  Each file whose name
+ * ends with the model suffix holds the model named by the rest of the file name, for example
+ * <code>tagger.bin.gz</code> holds the model <code>tagger</code>.
+ * <p>
+ * The directory is polled on a background thread, which reads changed files with a
+ * {@link GenericModelReader}, validates the models and swaps them in through a
+ * {@link SwappableModel} per name.  Request threads only look up the current model and never
+ * read files.  A file is loaded once its size and modification time are the same in two
+ * consecutive polls, so a file which is still being copied is not read; copying the file
+ * under another name and renaming it is safer still.  A model which can not be loaded or
+ * fails validation is reported and the previous model stays in use until the file changes
+ * again.  Deleting a file does not unload its model.
+ */
+public class ModelDirectoryWatcher {
+
+  /** The default suffix of model files. */
+  public static final String DEFAULT_SUFFIX = ".bin.gz";
+
+  private final File directory;
+  private final String suffix;
+  private final long pollInterval;
+  private final ModelReleaseListener listener;
+  private final ConcurrentHashMap<String, SwappableModel> models = new ConcurrentHashMap<String, SwappableModel>();
+  /** The state of each model file, which is only used by the polling thread. */
+  private final Map<String, FileState> files = new HashMap<String, FileState>();
+  private ScheduledExecutorService executor;
+
+  /**
+   * The size and modification time of a model file.
+   */
+  private static class FileState {
+
+    /** The size and modification time of the file when it was last loaded or failed to load. */
+    long loadedLength = -1;
+    long loadedModified = -1;
+    /** The size and modification time of the file in the last poll. */
+    long polledLength = -1;
+    long polledModified = -1;
+  }
+
+  /**
+   * Creates a watcher for the specified directory.  It does nothing until it is started.
+   * @param directory The directory holding the model files.
+   * @param suffix The suffix of the names of model files, which must be readable by {@link GenericModelReader}.
+   * @param pollInterval The number of milliseconds between polls.
+   * @param listener The listener which is notified when a replaced model is no longer used, or null.
+   */
+  public ModelDirectoryWatcher(File directory, String suffix, long pollInterval, ModelReleaseListener listener) {
+    if (pollInterval < 1) {
+      throw new IllegalArgumentException("pollInterval must be at least 1: " + pollInterval);
+    }
+    this.directory = directory;
+    this.suffix = suffix;
+    this.pollInterval = pollInterval;
+    this.listener = listener;
+  }
+
+  public ModelDirectoryWatcher(File directory, long pollInterval) {
+    this(directory, DEFAULT_SUFFIX, pollInterval, null);
+  }
+
+  /**
+   * Loads the models in the directory and starts polling it.  Files which are present when
+   * the watcher is started are loaded without waiting for a second poll.
+   * @throws IOException If the directory can not be read.
+   */
+  public synchronized void start() throws IOException {
+    if (executor != null) {
+      throw new IllegalStateException("The watcher has already been started");
+    }
+    if (!directory.isDirectory()) {
+      throw new IOException("Not a directory: " + directory);
+    }
+    poll(true);
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "ModelDirectoryWatcher " + directory);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        poll();
+      }
+    }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops polling the directory.  The models which have been loaded are still served.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Checks the directory once for new and changed model files.  This is called by the
+   * polling thread.
+   */
+  void poll() {
+    try {
+      poll(false);
+    }
+    catch (RuntimeException e) {
+      // an exception would cancel the polling
+      System.err.println("Unable to poll the model directory " + directory + ": " + e);
+    }
+  }
+
+  private synchronized void poll(boolean initial) {
+    File[] list = directory.listFiles();
+    if (list == null) {
+      System.err.println("Unable to list the model directory " + directory);
+      return;
+    }
+    for (int fi = 0; fi < list.length; fi++) {
+      File file = list[fi];
+      String fileName = file.getName();
+      if (!fileName.endsWith(suffix) || fileName.length() == suffix.length() || !file.isFile()) {
+        continue;
+      }
+      String name = fileName.substring(0, fileName.length() - suffix.length());
+      FileState state = files.get(name);
+      if (state == null) {
+        state = new FileState();
+        files.put(name, state);
+      }
+      long length = file.length();
+      long modified = file.lastModified();
+      if (length == state.loadedLength && modified == state.loadedModified) {
+        continue;
+      }
+      boolean stable = length == state.polledLength && modified == state.polledModified;
+      state.polledLength = length;
+      state.polledModified = modified;
+      if (!stable && !initial) {
+        continue;
+      }
+      state.loadedLength = length;
+      state.loadedModified = modified;
+      try {
+        MaxentModel model = loadModel(file);
+        validate(name, model);
+        SwappableModel current = models.get(name);
+        if (current == null) {
+          models.put(name, new SwappableModel(model, listener));
+        }
+        else {
+          current.replaceModel(model);
+        }
+      }
+      catch (IOException e) {
+        System.err.println("Unable to load the model " + file + ": " + e.getMessage());
+      }
+      catch (RuntimeException e) {
+        System.err.println("Unable to load the model " + file + ": " + e);
+      }
+    }
+  }
+
+  /**
+   * Reads the model stored in the specified file.
+   * @param file A model file.
+   * @return The model.
+   * @throws IOException If the model can not be read.
+   */
+  protected MaxentModel loadModel(File file) throws IOException {
+    return GenericModelReader.readModel(file);
+  }
+
+  /**
+   * Checks that a model which has been loaded may replace the current model with the same
+   * name.  This implementation only checks that the model has outcomes.
+   * @param name The name of the model.
+   * @param model The model which has been loaded.
+   * @throws IOException If the model must not be used.
+   */
+  protected void validate(String name, MaxentModel model) throws IOException {
+    if (model.getNumOutcomes() == 0) {
+      throw new IOException("The model has no outcomes");
+    }
+  }
+
+  /**
+   * Returns the current model with the specified name.  For several calls which must use the
+   * same model, acquire a lease with {@link #acquire(String)} instead.
+   * @param name The name of the model.
+   * @return The model.
+   * @throws NoSuchElementException If no model with the name has been loaded.
+   */
+  public MaxentModel getModel(String name) {
+    return getSwappableModel(name).getModel();
+  }
+
+  /**
+   * Returns the current model of the specified domain, which is the model named by the domain.
+   */
+  public MaxentModel getModel(ModelDomain domain) {
+    return getModel(domain.getName());
+  }
+
+  /**
+   * Acquires a lease on the current model with the specified name, which must be released
+   * when the model is no longer needed.
+   * @param name The name of the model.
+   * @return A lease on the model.
+   * @throws NoSuchElementException If no model with the name has been loaded.
+   */
+  public SwappableModel.Lease acquire(String name) {
+    return getSwappableModel(name).acquire();
+  }
+
+  private SwappableModel getSwappableModel(String name) {
+    SwappableModel model = models.get(name);
+    if (model == null) {
+      throw new NoSuchElementException("No model has been loaded for: " + name);
+    }
+    return model;
+  }
+
+  /**
+   * Returns a view of the names of the models which have been loaded.
+   */
+  public Set<String> getNames() {
+    return models.keySet();
+  }
+}
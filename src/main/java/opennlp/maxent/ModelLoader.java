@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import java.io.IOException;
+
+import opennlp.model.MaxentModel;
+
+/**
+ * Loads the model of a domain for a {@link ModelRegistry}, for example by reading it from
+ * a file named after the domain.
+ */
+public interface ModelLoader {
+
+  /**
+   * Loads the model of the specified domain.  This may be called from several threads at
+   * once, but only once at a time for each domain.
+   * @param domain The domain.
+   * @return The model of the domain.
+   * @throws IOException If the model can not be loaded.
+   */
+  public MaxentModel loadModel(ModelDomain domain) throws IOException;
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import opennlp.model.AbstractModel;
+import opennlp.model.MaxentModel;
+
+/**
+ * A concurrent mapping from {@link ModelDomain}s to their models, which loads the model of a
+ * domain when it is first requested and keeps the memory used by the resident models within
+ * a budget.  It is intended for applications with more domains than models fit in memory,
+ * where {@link DomainToModelMap} would keep every model resident.
+ * <p>
+ * Requests for resident models take no locks.  When several threads request a domain which
+ * is not resident, its model is loaded only once by the first of them and the others wait
+ * for it.  If loading fails, every waiting thread gets the error and the next request tries
+ * again.
+ * <p>
+ * The size of each model is estimated when it has been loaded, by default with
+ * {@link AbstractModel#getHeapSize()}.  When the total exceeds the budget, models are
+ * evicted until it fits again, using the clock approximation of least recently used: a
+ * request for a resident model only marks it as referenced, and eviction passes over the
+ * models in the order in which they were loaded, giving referenced ones a second chance.
+ * Requests therefore write to no shared state, and each eviction takes constant time on
+ * average.  The model just loaded is never
+ * evicted, so a single model larger than the budget stays resident until another one is
+ * loaded.  An evicted model is only removed from the registry, so threads which still use
+ * it are not affected.
+ */
+public class ModelRegistry {
+
+  private final ModelLoader loader;
+  private final long budget;
+  private final ConcurrentHashMap<ModelDomain, Entry> entries = new ConcurrentHashMap<ModelDomain, Entry>();
+  /**
+   * The entries in the order in which the clock passes over them, guarded by <code>this</code>.
+   * Entries which have been removed from the registry are dropped when the clock reaches them.
+   */
+  private final LinkedList<Entry> clock = new LinkedList<Entry>();
+  /** The number of entries in the clock which have been removed from the registry, guarded by <code>this</code>. */
+  private int removedInClock;
+  /** The total estimated size of the resident models, guarded by <code>this</code>. */
+  private long size;
+
+  /**
+   * The model of a domain, which may still be loading.
+   */
+  private static class Entry {
+
+    final ModelDomain domain;
+    final FutureTask<MaxentModel> task;
+    /** Whether the model has been requested since the clock last passed over it. */
+    volatile boolean referenced;
+    /** The estimated size of the model, or -1 until it has been added to the total, guarded by the registry. */
+    long size = -1;
+
+    Entry(ModelDomain domain, FutureTask<MaxentModel> task) {
+      this.domain = domain;
+      this.task = task;
+    }
+  }
+
+  /**
+   * Creates an empty registry.
+   * @param loader The loader of the models.
+   * @param budget The number of bytes which the resident models may use.
+   */
+  public ModelRegistry(ModelLoader loader, long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("budget must not be negative: " + budget);
+    }
+    this.loader = loader;
+    this.budget = budget;
+  }
+
+  /**
+   * Returns the model of the specified domain, loading it if it is not resident.
+   * @param domain The domain.
+   * @return The model of the domain.
+   * @throws IOException If the model can not be loaded.
+   */
+  public MaxentModel getModel(final ModelDomain domain) throws IOException {
+    Entry entry = entries.get(domain);
+    boolean loaded = false;
+    if (entry == null) {
+      Entry created = new Entry(domain, new FutureTask<MaxentModel>(new Callable<MaxentModel>() {
+        public MaxentModel call() throws IOException {
+          return loader.loadModel(domain);
+        }
+      }));
+      entry = entries.putIfAbsent(domain, created);
+      if (entry == null) {
+        entry = created;
+        entry.task.run();
+        loaded = true;
+      }
+    }
+    MaxentModel model;
+    try {
+      model = entry.task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while loading the model of " + domain.getName(), e);
+    }
+    catch (ExecutionException e) {
+      // let the next request try again
+      entries.remove(domain, entry);
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException("Unable to load the model of " + domain.getName(), cause);
+    }
+    if (loaded) {
+      added(domain, entry, estimateSize(model));
+    }
+    else if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    return model;
+  }
+
+  /**
+   * Makes the specified model the model of the domain, replacing a resident one.
+   * @param domain The domain.
+   * @param model The model.
+   */
+  public void setModel(ModelDomain domain, MaxentModel model) {
+    FutureTask<MaxentModel> task = new FutureTask<MaxentModel>(new Runnable() {
+      public void run() {
+      }
+    }, model);
+    task.run();
+    Entry entry = new Entry(domain, task);
+    long entrySize = estimateSize(model);
+    synchronized (this) {
+      Entry old = entries.put(domain, entry);
+      if (old != null) {
+        removed(old);
+      }
+      added(domain, entry, entrySize);
+    }
+  }
+
+  /**
+   * Removes the model of the specified domain if it is resident.
+   * @param domain The domain.
+   */
+  public synchronized void removeModel(ModelDomain domain) {
+    Entry entry = entries.remove(domain);
+    if (entry != null) {
+      removed(entry);
+    }
+  }
+
+  /**
+   * Returns whether the model of the specified domain is resident or being loaded.
+   */
+  public boolean isResident(ModelDomain domain) {
+    return entries.containsKey(domain);
+  }
+
+  /**
+   * Returns a view of the domains whose models are resident or being loaded.
+   */
+  public Set<ModelDomain> getDomains() {
+    return entries.keySet();
+  }
+
+  /**
+   * Returns the total estimated size of the resident models in bytes.
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of bytes which the resident models may use.
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Estimates the number of bytes of memory used by the specified model.  This
+   * implementation uses {@link AbstractModel#getHeapSize()} and counts other models as 0.
+   * @param model A model which has been loaded.
+   * @return The estimated size of the model.
+   */
+  protected long estimateSize(MaxentModel model) {
+    if (model instanceof AbstractModel) {
+      return ((AbstractModel) model).getHeapSize();
+    }
+    return 0;
+  }
+
+  /**
+   * Adds a loaded model to the total size and evicts other models until the total fits
+   * into the budget.
+   */
+  private synchronized void added(ModelDomain domain, Entry entry, long entrySize) {
+    if (entries.get(domain) != entry) {
+      // removed or replaced while it was loading
+      return;
+    }
+    entry.size = entrySize;
+    size += entrySize;
+    clock.addLast(entry);
+    // every other entry gets at most one second chance before it is evicted
+    int remaining = 2 * clock.size();
+    while (size > budget && remaining-- > 0) {
+      Entry candidate = clock.removeFirst();
+      if (candidate.size == -1) {
+        removedInClock--;
+      }
+      else if (candidate == entry || candidate.referenced) {
+        candidate.referenced = false;
+        clock.addLast(candidate);
+      }
+      else {
+        // counted entries only leave the map under this lock, so the remove succeeds
+        entries.remove(candidate.domain, candidate);
+        size -= candidate.size;
+        candidate.size = -1;
+      }
+    }
+  }
+
+  private synchronized void removed(Entry entry) {
+    if (entry.size != -1) {
+      size -= entry.size;
+      entry.size = -1;
+      removedInClock++;
+      if (removedInClock > clock.size() / 2) {
+        // drop the removed entries so that the clock does not grow without evictions
+        for (Iterator<Entry> ci = clock.iterator(); ci.hasNext();) {
+          if (ci.next().size == -1) {
+            ci.remove();
+          }
+        }
+        removedInClock = 0;
+      }
+    }
+  }
+}
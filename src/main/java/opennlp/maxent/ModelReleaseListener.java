@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import opennlp.model.MaxentModel;
+
+/**
+ * Is notified by a {@link SwappableModel} when a model which has been replaced is no longer
+ * used by any reader, so that resources held by the model, such as a memory mapped file,
+ * can be released.
+ */
+public interface ModelReleaseListener {
+
+  /**
+   * Called once for each replaced model after its last reader has released it.  It is
+   * called on the thread which released the model last, which may be the thread which
+   * replaced it or a reader thread.
+   * @param model The model which is no longer used.
+   */
+  public void modelReleased(MaxentModel model);
+}
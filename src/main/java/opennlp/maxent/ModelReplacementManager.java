@@ -82,7 +82,11 @@ import opennlp.model.MaxentModel;
  *
  * @author      Jason Baldridge
  * @version     $Revision: 1.1 $, $Date: 2009/01/22 23:23:34 $
+ * @deprecated The user count and the replacement flag are not synchronized, so a
+ * replacement can race with readers, and it spins until no reader is active.  Use
+ * {@link SwappableModel}, which publishes a new model atomically and never blocks readers.
  */
+@Deprecated
 public class ModelReplacementManager {
     private ModelSetter setter;
     
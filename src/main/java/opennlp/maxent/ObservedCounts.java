@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0 
+ * (the "License"); you may not use this file except in compliance with 
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import opennlp.model.ArrayEventStore;
+import opennlp.model.EventCursor;
+import opennlp.model.EventStore;
+
+/**
+ * The number of times each predicate occurred with each outcome in the training data,
+ * stored sparsely.  Only the predicate/outcome pairs which occur are stored, so the
+ * memory needed grows with the number of these pairs rather than with the number of
+ * predicates times the number of outcomes.
+ * <p>
+ * The pairs are counted in an open addressing hash table and then sorted into compressed
+ * sparse row form: the outcomes of predicate <code>pid</code> are found, in increasing
+ * order, between <code>getStart(pid)</code> (inclusive) and <code>getStart(pid+1)</code>
+ * (exclusive).  The counts are accumulated as floats in event order, so they are the
+ * same as the counts of a dense <code>float[numPreds][numOutcomes]</code> table.
+ */
+class ObservedCounts {
+
+  private static final long EMPTY = -1;
+
+  /** The start of the pairs of each predicate, followed by the number of pairs. */
+  private final int[] offsets;
+  /** The outcome of each pair. */
+  private final int[] outcomes;
+  /** The count of each pair. */
+  private final float[] counts;
+
+  /**
+   * Counts the predicate/outcome pairs of the specified events.
+   * @param contexts The predicates of each event.
+   * @param values The values of the predicates of each event, or null if all values are 1.
+   * @param outcomeList The outcome of each event.
+   * @param numTimesEventsSeen The number of times each event occurred.
+   * @param numPreds The number of predicates.
+   */
+  ObservedCounts(int[][] contexts, float[][] values, int[] outcomeList, int[] numTimesEventsSeen, int numPreds) {
+    this(new ArrayEventStore(contexts,values,outcomeList,numTimesEventsSeen),numPreds);
+  }
+
+  /**
+   * Counts the predicate/outcome pairs of the events of the specified store.
+   * @param events The events.
+   * @param numPreds The number of predicates.
+   */
+  ObservedCounts(EventStore events, int numPreds) {
+    PairTable table = new PairTable();
+    EventCursor cursor = events.getCursor(0,events.size());
+    while (cursor.next()) {
+      int[] context = cursor.getContext();
+      float[] values = cursor.getValues();
+      int outcome = cursor.getOutcome();
+      int seen = cursor.getNumTimesSeen();
+      for (int j = 0, length = cursor.getLength(); j < length; j++) {
+        if (values != null) {
+          table.add(context[j],outcome,seen*values[j]);
+        }
+        else {
+          table.add(context[j],outcome,seen);
+        }
+      }
+    }
+
+    offsets = new int[numPreds+1];
+    for (int si = 0; si < table.keys.length; si++) {
+      if (table.keys[si] != EMPTY) {
+        offsets[(int) (table.keys[si] >>> 32) + 1]++;
+      }
+    }
+    for (int pi = 0; pi < numPreds; pi++) {
+      offsets[pi+1] += offsets[pi];
+    }
+    outcomes = new int[table.size];
+    counts = new float[table.size];
+    int[] next = new int[numPreds];
+    System.arraycopy(offsets,0,next,0,numPreds);
+    for (int si = 0; si < table.keys.length; si++) {
+      long key = table.keys[si];
+      if (key != EMPTY) {
+        int ai = next[(int) (key >>> 32)]++;
+        outcomes[ai] = (int) key;
+        counts[ai] = table.counts[si];
+      }
+    }
+    table = null;
+    for (int pi = 0; pi < numPreds; pi++) {
+      sort(offsets[pi],offsets[pi+1]);
+    }
+  }
+
+  /**
+   * Sorts the pairs from <code>start</code> to <code>end-1</code> by outcome.  A predicate
+   * rarely occurs with many outcomes, so an insertion sort is used.
+   */
+  private void sort(int start, int end) {
+    for (int i = start + 1; i < end; i++) {
+      int outcome = outcomes[i];
+      float count = counts[i];
+      int j = i - 1;
+      while (j >= start && outcomes[j] > outcome) {
+        outcomes[j+1] = outcomes[j];
+        counts[j+1] = counts[j];
+        j--;
+      }
+      outcomes[j+1] = outcome;
+      counts[j+1] = count;
+    }
+  }
+
+  /**
+   * Returns the number of the first pair of the specified predicate.
+   * @param pid The predicate, or the number of predicates to get the number of pairs.
+   * @return The number of the first pair of the predicate.
+   */
+  int getStart(int pid) {
+    return offsets[pid];
+  }
+
+  /**
+   * Returns the outcome of the specified pair.
+   * @param pair The number of the pair.
+   * @return The outcome of the pair.
+   */
+  int getOutcome(int pair) {
+    return outcomes[pair];
+  }
+
+  /**
+   * Returns the count of the specified pair.
+   * @param pair The number of the pair.
+   * @return The count of the pair.
+   */
+  float getCount(int pair) {
+    return counts[pair];
+  }
+
+  /**
+   * Maps a predicate/outcome pair, packed into a long, to its count.
+   */
+  private static class PairTable {
+
+    long[] keys;
+    float[] counts;
+    int size;
+    private int mask;
+
+    PairTable() {
+      allocate(1024);
+    }
+
+    private void allocate(int capacity) {
+      keys = new long[capacity];
+      counts = new float[capacity];
+      java.util.Arrays.fill(keys,EMPTY);
+      mask = capacity - 1;
+    }
+
+    void add(int pid, int oid, float count) {
+      long key = ((long) pid << 32) | oid;
+      int si = slot(key);
+      while (keys[si] != EMPTY) {
+        if (keys[si] == key) {
+          counts[si] += count;
+          return;
+        }
+        si = (si + 1) & mask;
+      }
+      keys[si] = key;
+      counts[si] = count;
+      if (++size > keys.length * 0.7) {
+        grow();
+      }
+    }
+
+    private int slot(long key) {
+      long hash = key * 0x9E3779B97F4A7C15L;
+      return (int) (hash >>> 32) & mask;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      float[] oldCounts = counts;
+      allocate(oldKeys.length * 2);
+      for (int oi = 0; oi < oldKeys.length; oi++) {
+        if (oldKeys[oi] != EMPTY) {
+          int si = slot(oldKeys[oi]);
+          while (keys[si] != EMPTY) {
+            si = (si + 1) & mask;
+          }
+          keys[si] = oldKeys[oi];
+          counts[si] = oldCounts[oi];
+        }
+      }
+    }
+  }
+}
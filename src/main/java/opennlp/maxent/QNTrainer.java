@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0 
+ * (the "License"); you may not use this file except in compliance with 
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import java.util.Arrays;
+
+import opennlp.model.ContextTable;
+import opennlp.model.DataIndexer;
+import opennlp.model.EvalParameters;
+
+/**
+ * Trains a maximum entropy model with the limited memory BFGS quasi-Newton method.
+ * The trainer minimizes the negative log-likelihood of the training data plus a Gaussian
+ * prior on the parameters, <code>sum(w^2) / (2 sigma^2)</code>, which keeps the parameters
+ * of rare features small.  Each iteration evaluates the model on the training data once,
+ * plus any extra evaluations the line search needs, and typically reaches the
+ * log-likelihood of GIS in far fewer passes.
+ * <p>
+ * The parameters are the same predicate/outcome pairs GIS uses, and the result is a
+ * {@link GISModel} with a correction constant of 1 and no correction feature, so it can be
+ * used and saved like any other GIS model.
+ */
+class QNTrainer {
+
+  /** The default number of corrections kept to approximate the inverse Hessian. */
+  static final int DEFAULT_MEMORY = 15;
+  /** The default standard deviation of the Gaussian prior. */
+  static final double DEFAULT_SIGMA = 2.0;
+
+  /** Training stops when the objective improves by less than this fraction in an iteration. */
+  private static final double TOLERANCE = 1e-5;
+  /** The fraction of the decrease predicted by the gradient which a step must achieve. */
+  private static final double SUFFICIENT_DECREASE = 1e-4;
+  private static final int MAX_LINE_SEARCH_STEPS = 30;
+
+  private boolean printMessages = false;
+  private double sigma = DEFAULT_SIGMA;
+  private int memory = DEFAULT_MEMORY;
+
+  private int numUniqueEvents;
+  private int numOutcomes;
+  private int[][] contexts;
+  private float[][] values;
+  private int[] outcomeList;
+  private int[] numTimesEventsSeen;
+
+  /** The start of the parameters of each predicate, followed by the number of parameters. */
+  private int[] offsets;
+  /** The outcome of each parameter. */
+  private int[] outcomes;
+  /** The observed count of each predicate/outcome pair. */
+  private double[] observed;
+  /** The parameters being evaluated, shared with <code>evalParams</code>. */
+  private double[] parameters;
+  private EvalParameters evalParams;
+
+  private double[] modelDistribution;
+  private int[] numfeats;
+
+  QNTrainer(boolean printMessages) {
+    this.printMessages = printMessages;
+  }
+
+  /**
+   * Sets the standard deviation of the Gaussian prior on the parameters.
+   *
+   * @param sigma the standard deviation, which must be positive
+   */
+  public void setSigma(double sigma) {
+    if (sigma <= 0) {
+      throw new IllegalArgumentException("sigma must be positive: " + sigma);
+    }
+    this.sigma = sigma;
+  }
+
+  /**
+   * Sets the number of corrections kept to approximate the inverse Hessian.
+   *
+   * @param memory the number of corrections, which must be at least 1
+   */
+  public void setMemory(int memory) {
+    if (memory < 1) {
+      throw new IllegalArgumentException("memory must be at least 1: " + memory);
+    }
+    this.memory = memory;
+  }
+
+  /**
+   * Train a model using L-BFGS.
+   *
+   * @param iterations The maximum number of iterations to perform.
+   * @param di The data indexer used to compress events in memory.
+   * @param cutoff The number of times a predicate must occur to be used in the model.
+   * @return The newly trained model, which can be used immediately or saved
+   *         to disk using an opennlp.maxent.io.GISModelWriter object.
+   */
+  public GISModel trainModel(int iterations, DataIndexer di, int cutoff) {
+    display("Incorporating indexed data for training...  \n");
+    contexts = di.getContexts();
+    values = di.getValues();
+    numTimesEventsSeen = di.getNumTimesEventsSeen();
+    outcomeList = di.getOutcomeList();
+    numUniqueEvents = contexts.length;
+    int[] predicateCounts = di.getPredCounts();
+    String[] outcomeLabels = di.getOutcomeLabels();
+    String[] predLabels = di.getPredLabels();
+    numOutcomes = outcomeLabels.length;
+    int numPreds = predLabels.length;
+    display("done.\n");
+    display("\tNumber of Event Tokens: " + numUniqueEvents + "\n");
+    display("\t    Number of Outcomes: " + numOutcomes + "\n");
+    display("\t  Number of Predicates: " + numPreds + "\n");
+
+    ObservedCounts predCount = new ObservedCounts(contexts,values,outcomeList,numTimesEventsSeen,numPreds);
+
+    // the parameters are the predicate/outcome pairs which were observed, as in GIS
+    offsets = new int[numPreds+1];
+    for (int pi = 0; pi < numPreds; pi++) {
+      offsets[pi+1] = offsets[pi];
+      if (predicateCounts[pi] >= cutoff) {
+        for (int ai = predCount.getStart(pi); ai < predCount.getStart(pi+1); ai++) {
+          if (predCount.getCount(ai) > 0) {
+            offsets[pi+1]++;
+          }
+        }
+      }
+    }
+    int numParams = offsets[numPreds];
+    outcomes = new int[numParams];
+    observed = new double[numParams];
+    for (int pi = 0; pi < numPreds; pi++) {
+      int pai = offsets[pi];
+      if (predicateCounts[pi] >= cutoff) {
+        for (int ai = predCount.getStart(pi); ai < predCount.getStart(pi+1); ai++) {
+          if (predCount.getCount(ai) > 0) {
+            outcomes[pai] = predCount.getOutcome(ai);
+            observed[pai] = predCount.getCount(ai);
+            pai++;
+          }
+        }
+      }
+    }
+    predCount = null;
+
+    parameters = new double[numParams];
+    evalParams = new EvalParameters(new ContextTable(offsets,outcomes,parameters),0,1,numOutcomes);
+    modelDistribution = new double[numOutcomes];
+    numfeats = new int[numOutcomes];
+
+    display("Computing model parameters...\n");
+    double[] result = findParameters(iterations);
+
+    contexts = null;
+    values = null;
+    return new GISModel(new ContextTable(offsets,outcomes,result),predLabels,outcomeLabels,1,0);
+  }
+
+  /**
+   * The most recent correction pairs, the steps <code>s</code> and the changes of the
+   * gradient <code>y</code>, kept in a ring which approximates the inverse Hessian.
+   */
+  static class Corrections {
+
+    private final int memory;
+    private final double[][] s;
+    private final double[][] y;
+    private final double[] rho;
+    private final double[] alpha;
+    /** The pair being computed, which only enters the ring when it is accepted. */
+    private double[] sNew;
+    private double[] yNew;
+    private int size;
+    private int newest = -1;
+
+    Corrections(int memory, int n) {
+      this.memory = memory;
+      s = new double[memory][n];
+      y = new double[memory][n];
+      rho = new double[memory];
+      alpha = new double[memory];
+      sNew = new double[n];
+      yNew = new double[n];
+    }
+
+    /**
+     * Adds the pair of a step from <code>x</code> to <code>xNew</code>, replacing the
+     * oldest pair when the ring is full.  A pair without positive curvature would not keep
+     * the approximation positive definite, so it is rejected and the ring is left as it was.
+     * @return Whether the pair has been added.
+     */
+    boolean add(double[] x, double[] xNew, double[] g, double[] gNew) {
+      double sy = 0;
+      for (int i = 0; i < sNew.length; i++) {
+        sNew[i] = xNew[i] - x[i];
+        yNew[i] = gNew[i] - g[i];
+        sy += sNew[i] * yNew[i];
+      }
+      if (sy <= 1e-10) {
+        return false;
+      }
+      newest = (newest + 1) % memory;
+      double[] swap = s[newest];
+      s[newest] = sNew;
+      sNew = swap;
+      swap = y[newest];
+      y[newest] = yNew;
+      yNew = swap;
+      rho[newest] = 1 / sy;
+      size = Math.min(size + 1, memory);
+      return true;
+    }
+
+    /** Forgets all pairs. */
+    void clear() {
+      size = 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * Computes the search direction for the gradient <code>g</code> with the two loop recursion.
+     */
+    void direction(double[] g, double[] direction) {
+      System.arraycopy(g,0,direction,0,g.length);
+      for (int k = 0; k < size; k++) {
+        int c = (newest - k + memory) % memory;
+        alpha[c] = rho[c] * dot(s[c],direction);
+        addScaled(direction,y[c],-alpha[c]);
+      }
+      if (size > 0) {
+        scale(direction,dot(s[newest],y[newest]) / dot(y[newest],y[newest]));
+      }
+      for (int k = size - 1; k >= 0; k--) {
+        int c = (newest - k + memory) % memory;
+        double beta = rho[c] * dot(y[c],direction);
+        addScaled(direction,s[c],alpha[c] - beta);
+      }
+      scale(direction,-1);
+    }
+  }
+
+  /* Minimize the objective with L-BFGS and return the parameters. */
+  private double[] findParameters(int iterations) {
+    int n = parameters.length;
+    double[] x = new double[n];
+    double[] g = new double[n];
+    double[] xNew = new double[n];
+    double[] gNew = new double[n];
+    double[] direction = new double[n];
+    Corrections corrections = new Corrections(memory,n);
+
+    double f = evaluate(x,g);
+    display("Performing " + iterations + " iterations.\n");
+    for (int iteration = 1; iteration <= iterations; iteration++) {
+      corrections.direction(g,direction);
+
+      double slope = dot(g,direction);
+      if (slope >= 0) {
+        // not a descent direction, so start over from steepest descent
+        corrections.clear();
+        System.arraycopy(g,0,direction,0,n);
+        scale(direction,-1);
+        slope = dot(g,direction);
+      }
+      if (slope == 0) {
+        break;
+      }
+
+      double step = corrections.size() == 0 ? 1 / Math.sqrt(dot(g,g)) : 1;
+      double fNew = 0;
+      boolean accepted = false;
+      for (int ls = 0; ls < MAX_LINE_SEARCH_STEPS; ls++) {
+        for (int i = 0; i < n; i++) {
+          xNew[i] = x[i] + step * direction[i];
+        }
+        fNew = evaluate(xNew,gNew);
+        if (fNew <= f + SUFFICIENT_DECREASE * step * slope) {
+          accepted = true;
+          break;
+        }
+        step *= 0.5;
+      }
+      if (!accepted) {
+        display("Line search failed to decrease the objective\n");
+        break;
+      }
+
+      corrections.add(x,xNew,g,gNew);
+
+      double improvement = (f - fNew) / Math.max(1.0,Math.max(Math.abs(f),Math.abs(fNew)));
+      double[] swap = x;
+      x = xNew;
+      xNew = swap;
+      swap = g;
+      g = gNew;
+      gNew = swap;
+      f = fNew;
+      if (iteration < 10)
+        display("  " + iteration + ":  ");
+      else if (iteration < 100)
+        display(" " + iteration + ":  ");
+      else
+        display(iteration + ":  ");
+      display("objective=" + f + "\n");
+      if (improvement < TOLERANCE) {
+        break;
+      }
+    }
+    return x;
+  }
+
+  /**
+   * Computes the negative log-likelihood of the training data plus the Gaussian prior for
+   * the specified parameters, and stores the gradient of this objective in <code>gradient</code>.
+   */
+  private double evaluate(double[] x, double[] gradient) {
+    System.arraycopy(x,0,parameters,0,parameters.length);
+    double variance = sigma * sigma;
+    double objective = 0;
+    for (int ai = 0; ai < parameters.length; ai++) {
+      objective += parameters[ai] * parameters[ai] / (2 * variance);
+      gradient[ai] = parameters[ai] / variance - observed[ai];
+    }
+    double loglikelihood = 0;
+    for (int ei = 0; ei < numUniqueEvents; ei++) {
+      float[] eventValues = values == null ? null : values[ei];
+      Arrays.fill(modelDistribution,0);
+      GISModel.eval(contexts[ei],eventValues,modelDistribution,evalParams,numfeats);
+      for (int j = 0; j < contexts[ei].length; j++) {
+        int pi = contexts[ei][j];
+        double weight = numTimesEventsSeen[ei];
+        if (eventValues != null) {
+          weight *= eventValues[j];
+        }
+        for (int ai = offsets[pi]; ai < offsets[pi+1]; ai++) {
+          gradient[ai] += weight * modelDistribution[outcomes[ai]];
+        }
+      }
+      loglikelihood += Math.log(modelDistribution[outcomeList[ei]]) * numTimesEventsSeen[ei];
+    }
+    return objective - loglikelihood;
+  }
+
+  private static double dot(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  private static void addScaled(double[] a, double[] b, double factor) {
+    for (int i = 0; i < a.length; i++) {
+      a[i] += factor * b[i];
+    }
+  }
+
+  private static void scale(double[] a, double factor) {
+    for (int i = 0; i < a.length; i++) {
+      a[i] *= factor;
+    }
+  }
+
+  private void display(String s) {
+    if (printMessages)
+      System.out.print(s);
+  }
+}
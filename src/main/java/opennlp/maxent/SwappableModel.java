@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import opennlp.model.MaxentModel;
+
+/**
+ * Holds the model used by an application and allows it to be replaced while requests are
+ * being served.  The current model is published through an atomic reference, so a
+ * replacement is a single atomic step and readers never wait for it.
+ * <p>
+ * A reader which needs the same model for several calls, for example to evaluate a context
+ * and then look up the name of the best outcome, acquires a lease on the current model and
+ * releases it when it is done:
+ * <pre>
+ *   SwappableModel.Lease lease = swappableModel.acquire();
+ *   try {
+ *     MaxentModel model = lease.getModel();
+ *     double[] probs = model.eval(context);
+ *     String outcome = model.getBestOutcome(probs);
+ *     ...
+ *   }
+ *   finally {
+ *     lease.release();
+ *   }
+ * </pre>
+ * Each model counts the leases acquired minus the leases released.  The count is spread
+ * over padded stripes chosen by thread, so readers on different threads update different
+ * cache lines rather than all contending for one counter.  When a model has been replaced
+ * and its last lease is released, the {@link ModelReleaseListener} is notified, so
+ * resources held by the model can be released safely.  Acquiring and releasing a lease
+ * allocate no memory.
+ * <p>
+ * This replaces {@link ModelReplacementManager}, whose readers wait for a replacement to
+ * finish and whose replacement waits for all readers to finish.
+ */
+public class SwappableModel {
+
+  /** The number of stripes of the lease counts, which must be a power of two. */
+  private static final int STRIPES = 16;
+  /** The distance between stripes, so that each stripe is on a cache line of its own. */
+  private static final int PAD = 16;
+
+  /**
+   * A reader's reference to a model, which keeps the model from being released.
+   */
+  public final class Lease {
+
+    private final MaxentModel model;
+    /**
+     * The leases acquired minus the leases released, by stripe.  A stripe may be negative
+     * when a lease is released on a different thread than the one which acquired it.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * PAD);
+    /** Whether the model has been replaced. */
+    private volatile boolean retired;
+    /** Whether the listener has been notified. */
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Lease(MaxentModel model) {
+      this.model = model;
+    }
+
+    /**
+     * Returns the leased model.
+     */
+    public MaxentModel getModel() {
+      return model;
+    }
+
+    /**
+     * Releases this lease.  It must be called exactly once for each call to
+     * {@link SwappableModel#acquire()}, and the model must not be used afterwards.
+     */
+    public void release() {
+      SwappableModel.this.release(this);
+    }
+  }
+
+  private final AtomicReference<Lease> current;
+  private final ModelReleaseListener listener;
+
+  /**
+   * Creates a holder for the specified model.
+   * @param model The initial model.
+   * @param listener The listener which is notified when a replaced model is no longer used, or null.
+   */
+  public SwappableModel(MaxentModel model, ModelReleaseListener listener) {
+    this.listener = listener;
+    current = new AtomicReference<Lease>(newLease(model));
+  }
+
+  public SwappableModel(MaxentModel model) {
+    this(model, null);
+  }
+
+  private Lease newLease(MaxentModel model) {
+    if (model == null) {
+      throw new IllegalArgumentException("The model must not be null");
+    }
+    return new Lease(model);
+  }
+
+  /**
+   * Acquires a lease on the current model.  The lease must be released once the model is
+   * no longer needed.  This never blocks and does not wait for other readers: it counts
+   * the lease on the stripe of the current thread, and only tries again if the model was
+   * replaced in the meantime.
+   * @return A lease on the current model.
+   */
+  public Lease acquire() {
+    int stripe = stripe();
+    while (true) {
+      Lease lease = current.get();
+      lease.counts.incrementAndGet(stripe);
+      if (current.get() == lease) {
+        return lease;
+      }
+      // the model was replaced before the lease was counted, so it may be released already
+      lease.counts.decrementAndGet(stripe);
+      releaseIfUnused(lease);
+    }
+  }
+
+  /**
+   * Returns the current model without leasing it.  The model may be replaced and released
+   * at any time, so this should only be used for single calls on models which hold no
+   * resources that a {@link ModelReleaseListener} releases.
+   * @return The current model.
+   */
+  public MaxentModel getModel() {
+    return current.get().model;
+  }
+
+  /**
+   * Makes the specified model the current model.  Readers which acquire a lease afterwards
+   * get the new model, while leases on the old model remain valid until they are released.
+   * @param model The new model.
+   * @return The model which was replaced.
+   */
+  public MaxentModel replaceModel(MaxentModel model) {
+    Lease old = current.getAndSet(newLease(model));
+    old.retired = true;
+    releaseIfUnused(old);
+    return old.model;
+  }
+
+  private static int stripe() {
+    return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+  }
+
+  private void release(Lease lease) {
+    if (lease.released.get()) {
+      throw new IllegalStateException("A lease on the model has been released more than once");
+    }
+    lease.counts.decrementAndGet(stripe());
+    if (lease.retired) {
+      releaseIfUnused(lease);
+    }
+  }
+
+  /**
+   * Notifies the listener if the specified model has been replaced and has no leases.
+   * Once a model has been replaced, {@link #acquire()} only counts a lease on it for as
+   * long as it takes to see the replacement and take the lease back, without using the
+   * model, so a count of 0 means that the model is no longer used.
+   */
+  private void releaseIfUnused(Lease lease) {
+    if (!lease.retired) {
+      return;
+    }
+    long count = 0;
+    for (int si = 0; si < STRIPES; si++) {
+      count += lease.counts.get(si * PAD);
+    }
+    if (count < 0) {
+      throw new IllegalStateException("A lease on the model has been released more than once");
+    }
+    if (count == 0 && lease.released.compareAndSet(false, true)) {
+      if (listener != null) {
+        listener.modelReleased(lease.model);
+      }
+    }
+  }
+}
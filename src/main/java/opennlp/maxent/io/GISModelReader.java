@@ -23,7 +23,7 @@ import java.io.IOException;
 import opennlp.maxent.GISModel;
 import opennlp.model.AbstractModel;
 import opennlp.model.AbstractModelReader;
-import opennlp.model.Context;
+import opennlp.model.ContextTable;
 import opennlp.model.DataReader;
 
 /**
@@ -71,7 +71,7 @@ public class GISModelReader extends AbstractModelReader {
       String[] outcomeLabels = getOutcomes();
       int[][] outcomePatterns = getOutcomePatterns();
       String[] predLabels = getPredicates();
-      Context[] params = getParameters(outcomePatterns);
+      ContextTable params = getParameters(outcomePatterns);
     
       return new GISModel(params,
                           predLabels,
@@ -21,12 +21,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import opennlp.model.AbstractModel;
 import opennlp.model.AbstractModelWriter;
 import opennlp.model.ComparablePredicate;
 import opennlp.model.Context;
+import opennlp.model.IndexTable;
 
 /**
  * Abstract parent class for GISModel writers.  It provides the persist method
@@ -48,15 +48,12 @@ public abstract class GISModelWriter extends AbstractModelWriter {
       Object[] data = model.getDataStructures();
       
       PARAMS = (Context[]) data[0];
-      Map<String,Integer> pmap = (Map<String,Integer>)data[1];
+      IndexTable pmap = (IndexTable) data[1];
       OUTCOME_LABELS = (String[])data[2];
       CORRECTION_CONSTANT = ((Integer)data[3]).intValue();
       CORRECTION_PARAM = ((Double)data[4]).doubleValue();
       
-      PRED_LABELS = new String[pmap.size()];
-      for (String pred : pmap.keySet()) {
-        PRED_LABELS[pmap.get(pred)] = pred;
-      }
+      PRED_LABELS = pmap.toArray();
     }
 
 
@@ -24,7 +24,7 @@ import java.io.IOException;
 import java.util.zip.GZIPInputStream;
 
 import opennlp.model.AbstractModelReader;
-import opennlp.model.Context;
+import opennlp.model.ContextTable;
 
 /**
  * A reader for GIS models stored in the format used in v1.0 of Maxent. It
@@ -50,34 +50,46 @@ public class OldFormatGISModelReader extends PlainTextGISModelReader {
     }
 
     /**
-     * Reads the parameters from a file and populates an array of context objects.
+     * Reads the parameters from the binary parameter file and populates a compressed
+     * sparse row table with them.
      * @param outcomePatterns The outcomes patterns for the model.  The first index refers to which 
      * outcome pattern (a set of outcomes that occurs with a context) is being specified.  The
      * second index specifies the number of contexts which use this pattern at index 0, and the
      * index of each outcomes which make up this pattern in indicies 1-n.  
-     * @return An array of context objects.
+     * @return A table holding the parameters of each context.
      * @throws java.io.IOException when the model file does not match the outcome patterns or can not be read.
      */
-    protected Context[] getParameters (int[][] outcomePatterns) throws java.io.IOException {
-      Context[] params = new Context[NUM_PREDS];
+    protected ContextTable getParameters (int[][] outcomePatterns) throws java.io.IOException {
+      int[] offsets = new int[NUM_PREDS+1];
+      int numPreds = 0;
+      int numParams = 0;
+      for (int i=0; i<outcomePatterns.length; i++) {
+        numPreds += outcomePatterns[i][0];
+        numParams += outcomePatterns[i][0] * (outcomePatterns[i].length-1);
+      }
+      if (numPreds != NUM_PREDS) {
+        paramsInput.close();
+        throw new IOException("The outcome patterns describe "+numPreds+" predicates but the model has "+NUM_PREDS);
+      }
+      int[] outcomes = new int[numParams];
+      double[] parameters = new double[numParams];
       int pid=0;
+      int ai=0;
       for (int i=0; i<outcomePatterns.length; i++) {
-        //construct outcome pattern
-        int[] outcomePattern = new int[outcomePatterns[i].length-1];
-        for (int k=1; k<outcomePatterns[i].length; k++) {
-          outcomePattern[k-1] = outcomePatterns[i][k];
-        }
         //populate parameters for each context which uses this outcome pattern. 
         for (int j=0; j<outcomePatterns[i][0]; j++) {
-          double[] contextParameters = new double[outcomePatterns[i].length-1];
+          offsets[pid] = ai;
           for (int k=1; k<outcomePatterns[i].length; k++) {
-            contextParameters[k-1] = readDouble();
+            outcomes[ai] = outcomePatterns[i][k];
+            parameters[ai] = paramsInput.readDouble();
+            ai++;
           }
-          params[pid] = new Context(outcomePattern,contextParameters);
           pid++;
         }
       }
-      return params;
+      offsets[pid] = ai;
+      paramsInput.close();
+      return new ContextTable(offsets,outcomes,parameters);
     }
 
     /**
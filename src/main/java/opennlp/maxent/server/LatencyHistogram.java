@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds.  Values below 32 have a bucket of
+ * their own and every power of two above that is split into 32 buckets, so a percentile is
+ * accurate to about 3% whatever the magnitude of the values.  Recording a value takes no
+ * locks and allocates nothing.
+ */
+public class LatencyHistogram {
+
+  /** The number of bits of a value which select its bucket within a power of two. */
+  private static final int SUB_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  private static int index(long value) {
+    int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * Returns the largest value which falls into the specified bucket.
+   */
+  private static long highestValue(int index) {
+    int shift = Math.max(0, index / SUB_BUCKETS - 1);
+    long mantissa = index - shift * SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+  /**
+   * Records a latency.
+   * @param nanos The latency in nanoseconds.  Negative values are recorded as 0.
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(index(nanos));
+    count.incrementAndGet();
+    sum.addAndGet(nanos);
+    long current;
+    while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+    }
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   * @return The number of recorded latencies.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the mean of the recorded latencies.
+   * @return The mean latency in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+   * Returns the largest recorded latency.
+   * @return The largest latency in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the latency below which the specified percentage of the recorded latencies fall.
+   * Latencies recorded while this is computed may or may not be included.
+   * @param percentile The percentage, between 0 and 100.
+   * @return The latency in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be in the range [0,100]: " + percentile);
+    }
+    long total = 0;
+    for (int bi = 0; bi < counts.length(); bi++) {
+      total += counts.get(bi);
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int bi = 0; bi < counts.length(); bi++) {
+      seen += counts.get(bi);
+      if (seen >= rank) {
+        return Math.min(highestValue(bi), max.get());
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns a summary of the latencies in microseconds.
+   */
+  public String toString() {
+    return "count=" + getCount() + " mean=" + micros((long) getMean()) + " p50=" + micros(getPercentile(50))
+        + " p99=" + micros(getPercentile(99)) + " p999=" + micros(getPercentile(99.9)) + " max=" + micros(getMax());
+  }
+
+  private static String micros(long nanos) {
+    return (nanos / 1000) + "us";
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import opennlp.model.Event;
+import opennlp.model.FileEventStream;
+
+/**
+ * Measures the throughput and latency of a {@link ScoringServer} by sending it requests from
+ * several connections at once.  Each connection sends its next request as soon as the reply
+ * to the previous one has arrived, and the contexts of the requests are taken in turn from
+ * a fixed list.
+ */
+public class LoadGenerator {
+
+  private final String host;
+  private final int port;
+  private final String model;
+  private final String[][] contexts;
+
+  /**
+   * Creates a load generator.
+   * @param host The host of the server.
+   * @param port The port of the server.
+   * @param model The name of the model to request.
+   * @param contexts The contexts to send.
+   */
+  public LoadGenerator(String host, int port, String model, String[][] contexts) {
+    if (contexts.length == 0) {
+      throw new IllegalArgumentException("There must be at least one context.");
+    }
+    this.host = host;
+    this.port = port;
+    this.model = model;
+    this.contexts = contexts;
+  }
+
+  /**
+   * Sends the requests and waits for all of them to be answered.
+   * @param connections The number of connections which send requests concurrently.
+   * @param requests The number of requests which each connection sends.
+   * @param batchSize The number of contexts in each request.
+   * @return The latencies of the requests as seen by the clients.
+   * @throws IOException If a connection can not be made or a request fails.
+   * @throws InterruptedException If the thread is interrupted while it waits.
+   */
+  public LatencyHistogram run(int connections, final int requests, final int batchSize) throws IOException, InterruptedException {
+    final LatencyHistogram latencies = new LatencyHistogram();
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    final AtomicInteger next = new AtomicInteger();
+    final ScoringClient[] clients = new ScoringClient[connections];
+    Thread[] threads = new Thread[connections];
+    try {
+      for (int ti = 0; ti < connections; ti++) {
+        clients[ti] = new ScoringClient(host, port);
+      }
+      for (int ti = 0; ti < connections; ti++) {
+        final ScoringClient client = clients[ti];
+        threads[ti] = new Thread("LoadGenerator-" + ti) {
+          public void run() {
+            String[][] batch = new String[batchSize][];
+            try {
+              for (int ri = 0; ri < requests; ri++) {
+                int first = next.getAndAdd(batchSize);
+                for (int ci = 0; ci < batchSize; ci++) {
+                  batch[ci] = contexts[(first + ci) % contexts.length];
+                }
+                long start = System.nanoTime();
+                client.eval(model, batch);
+                latencies.record(System.nanoTime() - start);
+              }
+            }
+            catch (Throwable e) {
+              synchronized (errors) {
+                errors.add(e);
+              }
+            }
+          }
+        };
+        threads[ti].start();
+      }
+      for (int ti = 0; ti < connections; ti++) {
+        threads[ti].join();
+      }
+    }
+    finally {
+      for (int ti = 0; ti < connections; ti++) {
+        if (clients[ti] != null) {
+          clients[ti].close();
+        }
+      }
+    }
+    if (!errors.isEmpty()) {
+      Throwable error = errors.get(0);
+      if (error instanceof IOException) {
+        throw (IOException) error;
+      }
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      throw new RuntimeException("Unable to send a request: " + error.getMessage(), error);
+    }
+    return latencies;
+  }
+
+  /**
+   * Sends the contexts of the events in an event file to a server and prints the throughput and latencies.
+   * @param args [-connections n] [-requests n] [-batch n] host port model eventfile
+   * @throws IOException If the event file can not be read or a request fails.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int connections = 8;
+    int requests = 10000;
+    int batchSize = 1;
+    int ai = 0;
+    while (ai < args.length && args[ai].startsWith("-")) {
+      if (args[ai].equals("-connections")) {
+        connections = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-requests")) {
+        requests = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-batch")) {
+        batchSize = Integer.parseInt(args[++ai]);
+      }
+      else {
+        break;
+      }
+      ai++;
+    }
+    if (args.length - ai != 4) {
+      System.err.println("Usage: LoadGenerator [-connections n] [-requests n] [-batch n] host port model eventfile");
+      System.exit(1);
+    }
+    List<String[]> contexts = new ArrayList<String[]>();
+    // a plain event stream keeps the values attached to the predicates for the server to parse
+    FileEventStream events = new FileEventStream(args[ai + 3]);
+    while (events.hasNext()) {
+      Event event = events.next();
+      contexts.add(event.getContext());
+    }
+    LoadGenerator generator = new LoadGenerator(args[ai], Integer.parseInt(args[ai + 1]), args[ai + 2],
+        contexts.toArray(new String[contexts.size()][]));
+    // warm up the server and the connections
+    generator.run(connections, Math.max(1, requests / 10), batchSize);
+    long start = System.nanoTime();
+    LatencyHistogram latencies = generator.run(connections, requests, batchSize);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long total = (long) connections * requests;
+    System.out.println(total + " requests of " + batchSize + " contexts in " + seconds + "s: "
+        + (long) (total / seconds) + " requests/s, " + (long) (total * batchSize / seconds) + " contexts/s");
+    System.out.println("latency " + latencies);
+  }
+}
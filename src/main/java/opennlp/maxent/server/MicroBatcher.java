@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import opennlp.maxent.ModelDomain;
+import opennlp.maxent.ModelRegistry;
+import opennlp.model.MaxentModel;
+
+/**
+ * Coalesces the contexts which concurrent threads want evaluated against a model into
+ * batches, so that the model is called once per batch through
+ * {@link MaxentModel#evalBatch(String[][], float[][], double[][])} rather than once per
+ * context.
+ * <p>
+ * A single thread evaluates the batches.  While it evaluates one batch, new requests queue
+ * up and form the next one, so the batches grow with the load without delaying requests
+ * when the load is light.  A maximum delay may be given to wait for more requests before a
+ * batch which is not full is evaluated.  A request is never split, so a request with more
+ * contexts than the maximum batch size forms a batch of its own.
+ * <p>
+ * The thread is started by the first request and stops when no request has arrived for the
+ * idle timeout, to be started again by the next one, so a batcher which is no longer used
+ * does not keep a thread.
+ * <p>
+ * When the batcher serves a domain of a {@link ModelRegistry}, the model is looked up for
+ * every batch, so a model which is replaced or evicted in the registry is picked up by the
+ * next batch.
+ */
+public class MicroBatcher {
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+  /** The default time in milliseconds after which an idle batch thread stops. */
+  public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+  private final MaxentModel model;
+  private final ModelRegistry registry;
+  private final ModelDomain domain;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+
+  private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+  /** The batch thread, or null when it is not running.  Guarded by this. */
+  private Thread thread;
+  private volatile long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT;
+  private volatile boolean closed;
+
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong contexts = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+
+  /** Tells the batch thread to stop. */
+  private static final Request END = new Request(new String[0][], null);
+
+  /**
+   * The contexts of one call to {@link MicroBatcher#eval(String[][], float[][])}.
+   */
+  private static class Request {
+
+    final String[][] contexts;
+    final float[][] values;
+    final CountDownLatch done = new CountDownLatch(1);
+    double[][] probs;
+    Throwable error;
+
+    Request(String[][] contexts, float[][] values) {
+      this.contexts = contexts;
+      this.values = values;
+    }
+  }
+
+  private MicroBatcher(MaxentModel model, ModelRegistry registry, ModelDomain domain, int maxBatchSize, long maxDelayMicros) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+    }
+    if (maxDelayMicros < 0) {
+      throw new IllegalArgumentException("maxDelayMicros must not be negative: " + maxDelayMicros);
+    }
+    this.model = model;
+    this.registry = registry;
+    this.domain = domain;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+  }
+
+  /**
+   * Creates a batcher for the specified model.
+   * @param model The model.
+   * @param maxBatchSize The number of contexts above which requests are not combined.
+   * @param maxDelayMicros How long to wait for more requests before a batch which is not full is evaluated.
+   */
+  public MicroBatcher(MaxentModel model, int maxBatchSize, long maxDelayMicros) {
+    this(model, null, null, maxBatchSize, maxDelayMicros);
+  }
+
+  /**
+   * Creates a batcher for the model of the specified domain.
+   * @param registry The registry which holds the model.
+   * @param domain The domain of the model.
+   * @param maxBatchSize The number of contexts above which requests are not combined.
+   * @param maxDelayMicros How long to wait for more requests before a batch which is not full is evaluated.
+   */
+  public MicroBatcher(ModelRegistry registry, ModelDomain domain, int maxBatchSize, long maxDelayMicros) {
+    this(null, registry, domain, maxBatchSize, maxDelayMicros);
+  }
+
+  /**
+   * Sets how long the batch thread waits for a request before it stops.
+   * @param millis The idle timeout in milliseconds.
+   */
+  public void setIdleTimeout(long millis) {
+    if (millis <= 0) {
+      throw new IllegalArgumentException("The idle timeout must be positive: " + millis);
+    }
+    idleTimeoutMillis = millis;
+  }
+
+  /**
+   * Evaluates the specified contexts as part of the next batch, and waits for the result.
+   * @param contexts The contexts to evaluate.
+   * @param values The values of the predicates of each context or null if all values are 1.
+   *               An individual row may also be null.
+   * @return The probabilities of the outcomes of each context.
+   * @throws IOException If the model can not be loaded.
+   * @throws InterruptedException If the thread is interrupted while it waits.
+   */
+  public double[][] eval(String[][] contexts, float[][] values) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    Request request = new Request(contexts, values);
+    if (closed) {
+      throw new IllegalStateException("The batcher has been closed.");
+    }
+    queue.add(request);
+    startThread();
+    // the batch thread may have stopped before it saw the request
+    if (closed && queue.remove(request)) {
+      throw new IllegalStateException("The batcher has been closed.");
+    }
+    request.done.await();
+    latencies.record(System.nanoTime() - start);
+    requests.incrementAndGet();
+    this.contexts.addAndGet(contexts.length);
+    Throwable error = request.error;
+    if (error != null) {
+      if (error instanceof IOException) {
+        throw (IOException) error;
+      }
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      if (error instanceof Error) {
+        throw (Error) error;
+      }
+      throw new RuntimeException("Unable to evaluate the batch: " + error.getMessage(), error);
+    }
+    return request.probs;
+  }
+
+  /**
+   * Returns the model which the next batch is evaluated with.
+   * @return The model.
+   * @throws IOException If the model can not be loaded.
+   */
+  public MaxentModel getModel() throws IOException {
+    return registry != null ? registry.getModel(domain) : model;
+  }
+
+  /**
+   * Starts the batch thread unless it is running.  Called after a request has been queued,
+   * so either the running thread sees the request or a new one is started for it.
+   */
+  private synchronized void startThread() {
+    if (thread == null && !closed) {
+      thread = new Thread("MicroBatcher-" + (domain != null ? domain.getName() : "model")) {
+        public void run() {
+          evaluateBatches();
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Stops the batch thread unless a request has been queued since it last looked.
+   * @return Whether the thread stops.
+   */
+  private synchronized boolean stopIfIdle() {
+    if (queue.isEmpty()) {
+      thread = null;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether the batch thread is running.
+   */
+  synchronized boolean isRunning() {
+    return thread != null;
+  }
+
+  private void evaluateBatches() {
+    List<Request> batch = new ArrayList<Request>();
+    Request next = null;
+    boolean stopping = false;
+    try {
+      while (!stopping) {
+        if (next == null) {
+          next = queue.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+          if (next == null) {
+            if (stopIfIdle()) {
+              return;
+            }
+            continue;
+          }
+        }
+        if (next == END) {
+          break;
+        }
+        batch.clear();
+        batch.add(next);
+        int size = next.contexts.length;
+        next = null;
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (size < maxBatchSize) {
+          long wait = deadline - System.nanoTime();
+          next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          if (next == END) {
+            stopping = true;
+            next = null;
+            break;
+          }
+          if (size + next.contexts.length > maxBatchSize) {
+            // keep it for the next batch
+            break;
+          }
+          batch.add(next);
+          size += next.contexts.length;
+          next = null;
+        }
+        evaluate(batch, size);
+      }
+    }
+    catch (InterruptedException e) {
+      // stop like close does
+    }
+    if (next != null && next != END) {
+      fail(next);
+    }
+    Request request;
+    while ((request = queue.poll()) != null) {
+      if (request != END) {
+        fail(request);
+      }
+    }
+  }
+
+  private void fail(Request request) {
+    request.error = new IllegalStateException("The batcher has been closed.");
+    request.done.countDown();
+  }
+
+  private void evaluate(List<Request> batch, int size) {
+    try {
+      MaxentModel model = getModel();
+      String[][] batchContexts = new String[size][];
+      float[][] batchValues = null;
+      double[][] out = new double[size][model.getNumOutcomes()];
+      int ri = 0;
+      for (int bi = 0; bi < batch.size(); bi++) {
+        Request request = batch.get(bi);
+        System.arraycopy(request.contexts, 0, batchContexts, ri, request.contexts.length);
+        if (request.values != null) {
+          if (batchValues == null) {
+            batchValues = new float[size][];
+          }
+          System.arraycopy(request.values, 0, batchValues, ri, request.contexts.length);
+        }
+        ri += request.contexts.length;
+      }
+      model.evalBatch(batchContexts, batchValues, out);
+      batches.incrementAndGet();
+      ri = 0;
+      for (int bi = 0; bi < batch.size(); bi++) {
+        Request request = batch.get(bi);
+        request.probs = new double[request.contexts.length][];
+        System.arraycopy(out, ri, request.probs, 0, request.contexts.length);
+        ri += request.contexts.length;
+      }
+    }
+    catch (Throwable e) {
+      for (int bi = 0; bi < batch.size(); bi++) {
+        batch.get(bi).error = e;
+      }
+    }
+    for (int bi = 0; bi < batch.size(); bi++) {
+      batch.get(bi).done.countDown();
+    }
+  }
+
+  /**
+   * Returns the latencies of the requests, from when they were made until their result was available.
+   * @return The latencies of the requests.
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * Returns the number of requests which have been answered.
+   * @return The number of requests.
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Returns the number of contexts which have been answered.
+   * @return The number of contexts.
+   */
+  public long getContexts() {
+    return contexts.get();
+  }
+
+  /**
+   * Returns the number of batches which have been evaluated.
+   * @return The number of batches.
+   */
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * Returns the number of requests which wait for a batch to be evaluated.
+   */
+  int getQueueLength() {
+    return queue.size();
+  }
+
+  /**
+   * Stops the batch thread for good.  Requests which have not been evaluated fail with an
+   * <code>IllegalStateException</code>, as do later ones.
+   */
+  public void close() {
+    closed = true;
+    queue.add(END);
+  }
+}
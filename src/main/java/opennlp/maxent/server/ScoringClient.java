@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+
+/**
+ * A connection to a {@link ScoringServer}.  A client is not thread safe, so threads which
+ * make requests concurrently should each use a client of their own.
+ */
+public class ScoringClient {
+
+  private final Socket socket;
+  private final BufferedReader in;
+  private final Writer out;
+  private final StringBuilder request = new StringBuilder();
+
+  /**
+   * Connects to a server.
+   * @param host The host of the server.
+   * @param port The port of the server.
+   * @throws IOException If the connection can not be made.
+   */
+  public ScoringClient(String host, int port) throws IOException {
+    socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+    out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+  }
+
+  /**
+   * Returns the names of the outcomes of a model.
+   * @param model The name of the model.
+   * @return The names of the outcomes, in the order of the probabilities returned by <code>eval</code>.
+   * @throws IOException If the request fails.
+   */
+  public String[] getOutcomes(String model) throws IOException {
+    String reply = send("OUTCOMES " + model + "\n");
+    return reply.length() == 0 ? new String[0] : reply.split(" ");
+  }
+
+  /**
+   * Evaluates a context.
+   * @param model The name of the model.
+   * @param context The predicates of the context.  A predicate may be followed by <code>=</code> and its value.
+   * @return The probabilities of the outcomes.
+   * @throws IOException If the request fails.
+   */
+  public double[] eval(String model, String[] context) throws IOException {
+    return eval(model, new String[][] {context})[0];
+  }
+
+  /**
+   * Evaluates several contexts in one request.
+   * @param model The name of the model.
+   * @param contexts The predicates of each context.  A predicate may be followed by <code>=</code> and its value.
+   * @return The probabilities of the outcomes of each context.
+   * @throws IOException If the request fails.
+   */
+  public double[][] eval(String model, String[][] contexts) throws IOException {
+    request.setLength(0);
+    request.append("EVAL ").append(model).append(' ').append(contexts.length).append('\n');
+    for (int ci = 0; ci < contexts.length; ci++) {
+      String[] context = contexts[ci];
+      for (int pi = 0; pi < context.length; pi++) {
+        String predicate = context[pi];
+        if (predicate.length() == 0 || predicate.indexOf(' ') != -1 || predicate.indexOf('\n') != -1 || predicate.indexOf('\r') != -1) {
+          throw new IllegalArgumentException("Predicates must be non empty and must not contain spaces or line breaks: \"" + predicate + "\"");
+        }
+        if (pi != 0) {
+          request.append(' ');
+        }
+        request.append(predicate);
+      }
+      request.append('\n');
+    }
+    String reply = send(request.toString());
+    int numContexts = Integer.parseInt(reply);
+    if (numContexts != contexts.length) {
+      throw new IOException("Expected " + contexts.length + " distributions but got " + numContexts);
+    }
+    double[][] probs = new double[numContexts][];
+    for (int ci = 0; ci < numContexts; ci++) {
+      String line = in.readLine();
+      if (line == null) {
+        throw new IOException("The server closed the connection.");
+      }
+      String[] fields = line.split(" ");
+      probs[ci] = new double[fields.length];
+      for (int oi = 0; oi < fields.length; oi++) {
+        probs[ci][oi] = Double.parseDouble(fields[oi]);
+      }
+    }
+    return probs;
+  }
+
+  /**
+   * Returns the request, context and batch counts and the latencies of a model as reported by the server.
+   * @param model The name of the model.
+   * @return The statistics of the model.
+   * @throws IOException If the request fails.
+   */
+  public String getStats(String model) throws IOException {
+    return send("STATS " + model + "\n");
+  }
+
+  /**
+   * Sends a request and returns the rest of the first line of the reply after <code>OK</code>.
+   */
+  private String send(String request) throws IOException {
+    out.write(request);
+    out.flush();
+    String reply = in.readLine();
+    if (reply == null) {
+      throw new IOException("The server closed the connection.");
+    }
+    if (reply.startsWith("ERROR")) {
+      throw new IOException(reply.length() > 6 ? reply.substring(6) : reply);
+    }
+    if (!reply.startsWith("OK")) {
+      throw new IOException("Unexpected reply: " + reply);
+    }
+    return reply.length() > 3 ? reply.substring(3) : "";
+  }
+
+  /**
+   * Closes the connection.
+   */
+  public void close() {
+    try {
+      out.write("QUIT\n");
+      out.flush();
+    }
+    catch (IOException e) {
+      // the connection is closed anyway
+    }
+    try {
+      socket.close();
+    }
+    catch (IOException e) {
+      // nothing more to do with it
+    }
+  }
+}
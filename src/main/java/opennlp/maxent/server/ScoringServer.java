@@ -0,0 +1,647 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.maxent.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import opennlp.maxent.ModelDomain;
+import opennlp.maxent.ModelLoader;
+import opennlp.maxent.ModelRegistry;
+import opennlp.model.GenericModelReader;
+import opennlp.model.MaxentModel;
+import opennlp.model.RealValueFileEventStream;
+
+/**
+ * A server which evaluates contexts against the models of a {@link ModelRegistry} for
+ * clients connected over a socket.  Requests for the same model from all connections are
+ * combined into batches by a {@link MicroBatcher}, and the latency of the requests of each
+ * model is kept in a {@link LatencyHistogram}.
+ * <p>
+ * The protocol is line based and uses UTF-8.  A client sends one of the following commands
+ * and reads the reply before it sends the next one:
+ * <ul>
+ * <li><code>EVAL <i>model</i> <i>n</i></code> followed by <i>n</i> lines, each holding the
+ * predicates of a context separated by spaces.  As in the event files, a predicate may be
+ * followed by <code>=</code> and its value.  The reply is <code>OK <i>n</i></code> followed by
+ * one line per context with the probabilities of the outcomes separated by spaces.</li>
+ * <li><code>OUTCOMES <i>model</i></code>, which is answered by <code>OK</code> followed by the
+ * names of the outcomes, in the order in which <code>EVAL</code> returns their probabilities.</li>
+ * <li><code>STATS <i>model</i></code>, which is answered by <code>OK</code> followed by the
+ * number of requests, contexts and batches and a summary of the latencies.</li>
+ * <li><code>QUIT</code>, which closes the connection.</li>
+ * </ul>
+ * A request which fails is answered by <code>ERROR</code> followed by a message.  An
+ * <code>EVAL</code> request with more contexts than {@link #setMaxContexts(int)} allows is
+ * answered the same way, but the connection is closed since the contexts are not read.
+ * A line longer than {@link #setMaxLineLength(int)} allows is also answered by
+ * <code>ERROR</code> and closes the connection, as does a connection which sends nothing for
+ * {@link #setReadTimeout(int)} milliseconds.
+ * <p>
+ * Unless another address is given the server only listens on the loopback address.  Each
+ * connection is served by a thread of its own, and a connection which is accepted while
+ * {@link #setMaxConnections(int)} others are open is answered by <code>ERROR</code> and
+ * closed.  The threads are not daemon threads, so a running server keeps the virtual
+ * machine alive until it is stopped.
+ */
+public class ScoringServer {
+
+  /** The default number of connections which may be open at the same time. */
+  public static final int DEFAULT_MAX_CONNECTIONS = 64;
+  /** The default number of characters which a line of a request may hold. */
+  public static final int DEFAULT_MAX_LINE_LENGTH = 1 << 20;
+  /** The default number of milliseconds a connection may wait between two lines. */
+  public static final int DEFAULT_READ_TIMEOUT = 60000;
+
+  private final ModelRegistry registry;
+  private final InetAddress address;
+  private final int port;
+  private final int maxBatchSize;
+  private final long maxDelayMicros;
+  private volatile int maxContexts;
+  private volatile int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+  private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+  private final ConcurrentHashMap<String, MicroBatcher> batchers = new ConcurrentHashMap<String, MicroBatcher>();
+  /** The open connections, so that they can be closed when the server stops. */
+  private final ConcurrentHashMap<Socket, Boolean> connections = new ConcurrentHashMap<Socket, Boolean>();
+  private ServerSocket serverSocket;
+  private Semaphore connectionPermits;
+  private ExecutorService executor;
+  private volatile boolean stopped;
+
+  /**
+   * The domain of a model which is requested by name.
+   */
+  private static class NamedDomain implements ModelDomain {
+
+    private final String name;
+
+    NamedDomain(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof NamedDomain && ((NamedDomain) o).name.equals(name);
+    }
+
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+  /**
+   * Creates a server for the models of the specified registry.  A request may hold up to
+   * 16 times <code>maxBatchSize</code> contexts unless {@link #setMaxContexts(int)} is called.
+   * @param registry The registry which holds the models.
+   * @param address The address to listen on, or <code>null</code> for the loopback address.
+   * @param port The port to listen on, or 0 for any free port.
+   * @param maxBatchSize The number of contexts above which requests are not combined.
+   * @param maxDelayMicros How long to wait for more requests before a batch which is not full is evaluated.
+   */
+  public ScoringServer(ModelRegistry registry, InetAddress address, int port, int maxBatchSize, long maxDelayMicros) {
+    this.registry = registry;
+    this.address = address;
+    this.port = port;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayMicros = maxDelayMicros;
+    this.maxContexts = (int) Math.min(Integer.MAX_VALUE, 16L * maxBatchSize);
+  }
+
+  public ScoringServer(ModelRegistry registry, int port, int maxBatchSize, long maxDelayMicros) {
+    this(registry, null, port, maxBatchSize, maxDelayMicros);
+  }
+
+  public ScoringServer(ModelRegistry registry, int port) {
+    this(registry, port, MicroBatcher.DEFAULT_MAX_BATCH_SIZE, 0);
+  }
+
+  /**
+   * Sets the largest number of contexts which a single <code>EVAL</code> request may hold.
+   * @param maxContexts The largest number of contexts.
+   */
+  public void setMaxContexts(int maxContexts) {
+    if (maxContexts <= 0) {
+      throw new IllegalArgumentException("maxContexts must be positive: " + maxContexts);
+    }
+    this.maxContexts = maxContexts;
+  }
+
+  /**
+   * Sets the largest number of characters which a line of a request may hold, not counting
+   * the line terminator.
+   * @param maxLineLength The largest number of characters.
+   */
+  public void setMaxLineLength(int maxLineLength) {
+    if (maxLineLength <= 0) {
+      throw new IllegalArgumentException("maxLineLength must be positive: " + maxLineLength);
+    }
+    this.maxLineLength = maxLineLength;
+  }
+
+  /**
+   * Sets how long a connection may wait for the next line of a request before it is closed.
+   * This applies to the connections which are accepted afterwards.
+   * @param readTimeout The timeout in milliseconds.
+   */
+  public void setReadTimeout(int readTimeout) {
+    if (readTimeout <= 0) {
+      throw new IllegalArgumentException("readTimeout must be positive: " + readTimeout);
+    }
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * Sets the largest number of connections which may be open at the same time.  This must
+   * be called before the server is started.
+   * @param maxConnections The largest number of connections.
+   */
+  public synchronized void setMaxConnections(int maxConnections) {
+    if (maxConnections <= 0) {
+      throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+    }
+    if (serverSocket != null) {
+      throw new IllegalStateException("The server has already been started.");
+    }
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Binds the server socket and starts accepting connections.
+   * @throws IOException If the socket can not be bound.
+   */
+  public synchronized void start() throws IOException {
+    if (serverSocket != null) {
+      throw new IllegalStateException("The server has already been started.");
+    }
+    // getByName(null) returns the loopback address
+    InetAddress bindAddress = address != null ? address : InetAddress.getByName(null);
+    connectionPermits = new Semaphore(maxConnections);
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(bindAddress, port));
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "ScoringServer-" + serverSocket.getLocalPort());
+        return thread;
+      }
+    });
+    executor.execute(new Runnable() {
+      public void run() {
+        accept();
+      }
+    });
+  }
+
+  /**
+   * Returns the port which the server listens on.
+   * @return The port, which is only known once the server has been started if it was created with port 0.
+   */
+  public synchronized int getPort() {
+    return serverSocket != null ? serverSocket.getLocalPort() : port;
+  }
+
+  /**
+   * Returns the address which the server listens on.
+   * @return The address, or <code>null</code> if the server has not been started.
+   */
+  public synchronized InetAddress getAddress() {
+    return serverSocket != null ? serverSocket.getInetAddress() : null;
+  }
+
+  /**
+   * Returns the batcher of the specified model, creating it when the model is first requested.
+   * Names which could refer to a file outside of a model directory, that is names holding
+   * <code>/</code>, <code>\</code> or <code>..</code>, are rejected.
+   * @param name The name of the model.
+   * @return The batcher of the model.
+   * @throws IOException If the name is rejected or the model can not be loaded.
+   */
+  public MicroBatcher getBatcher(String name) throws IOException {
+    MicroBatcher batcher = batchers.get(name);
+    if (batcher == null) {
+      if (name.length() == 0 || name.indexOf('/') != -1 || name.indexOf('\\') != -1 || name.indexOf("..") != -1) {
+        throw new IOException("Invalid model name: " + name);
+      }
+      ModelDomain domain = new NamedDomain(name);
+      // load the model first so that unknown names do not leave batchers behind
+      registry.getModel(domain);
+      MicroBatcher created = new MicroBatcher(registry, domain, maxBatchSize, maxDelayMicros);
+      batcher = batchers.putIfAbsent(name, created);
+      if (batcher == null) {
+        batcher = created;
+        if (stopped) {
+          batchers.remove(name, batcher);
+          batcher.close();
+        }
+      }
+      else {
+        created.close();
+      }
+    }
+    return batcher;
+  }
+
+  /**
+   * Stops accepting connections, closes the open ones and stops the batchers.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    if (serverSocket != null) {
+      try {
+        serverSocket.close();
+      }
+      catch (IOException e) {
+        System.err.println("Unable to close the server socket: " + e.getMessage());
+      }
+      executor.shutdown();
+    }
+    for (Iterator<Socket> it = connections.keySet().iterator(); it.hasNext();) {
+      close(it.next());
+    }
+    for (Iterator<MicroBatcher> it = batchers.values().iterator(); it.hasNext();) {
+      it.next().close();
+    }
+    batchers.clear();
+  }
+
+  private void accept() {
+    while (!stopped) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      }
+      catch (IOException e) {
+        if (stopped || serverSocket.isClosed()) {
+          break;
+        }
+        System.err.println("Unable to accept a connection: " + e.getMessage());
+        continue;
+      }
+      connections.put(socket, Boolean.TRUE);
+      if (stopped) {
+        close(socket);
+        break;
+      }
+      if (!connectionPermits.tryAcquire()) {
+        try {
+          error(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), "Too many connections");
+        }
+        catch (IOException e) {
+          // the connection is closed anyway
+        }
+        close(socket);
+        continue;
+      }
+      try {
+        executor.execute(new Runnable() {
+          public void run() {
+            try {
+              serve(socket);
+            }
+            catch (IOException e) {
+              if (!stopped) {
+                System.err.println("Connection from " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+              }
+            }
+            finally {
+              close(socket);
+              connectionPermits.release();
+            }
+          }
+        });
+      }
+      catch (RuntimeException e) {
+        // the executor has been shut down
+        close(socket);
+        connectionPermits.release();
+      }
+    }
+  }
+
+  private void close(Socket socket) {
+    connections.remove(socket);
+    try {
+      socket.close();
+    }
+    catch (IOException e) {
+      // nothing more to do with it
+    }
+  }
+
+  /**
+   * Answers the requests of a connection until the client quits or disconnects.
+   */
+  private void serve(Socket socket) throws IOException {
+    socket.setTcpNoDelay(true);
+    int timeout = readTimeout;
+    socket.setSoTimeout(timeout);
+    LineReader in = new LineReader(new InputStreamReader(socket.getInputStream(), "UTF-8"), maxLineLength);
+    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+    try {
+      serve(in, out);
+    }
+    catch (LineTooLongException e) {
+      error(out, e.getMessage());
+    }
+    catch (SocketTimeoutException e) {
+      error(out, "No request within " + timeout + " ms");
+    }
+  }
+
+  /**
+   * Answers the requests read from the specified reader.
+   */
+  private void serve(LineReader in, Writer out) throws IOException {
+    StringBuilder reply = new StringBuilder();
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] parts = line.split(" ");
+      String command = parts[0];
+      reply.setLength(0);
+      if (command.equals("QUIT")) {
+        break;
+      }
+      else if (command.equals("EVAL") && parts.length == 3) {
+        int numContexts;
+        try {
+          numContexts = Integer.parseInt(parts[2]);
+        }
+        catch (NumberFormatException e) {
+          numContexts = -1;
+        }
+        if (numContexts < 0) {
+          // the contexts which follow can not be skipped
+          error(out, "Invalid number of contexts: " + parts[2]);
+          break;
+        }
+        if (numContexts > maxContexts) {
+          error(out, "Too many contexts: " + numContexts + " is more than " + maxContexts);
+          break;
+        }
+        String[][] contexts = new String[numContexts][];
+        float[][] values = null;
+        String failure = null;
+        for (int ci = 0; ci < numContexts; ci++) {
+          String context = in.readLine();
+          if (context == null) {
+            return;
+          }
+          contexts[ci] = context.length() == 0 ? new String[0] : context.split(" ");
+          try {
+            float[] contextValues = RealValueFileEventStream.parseContexts(contexts[ci]);
+            if (contextValues != null) {
+              if (values == null) {
+                values = new float[numContexts][];
+              }
+              values[ci] = contextValues;
+            }
+          }
+          catch (RuntimeException e) {
+            failure = e.getMessage();
+          }
+        }
+        if (failure != null) {
+          error(out, failure);
+          continue;
+        }
+        try {
+          double[][] probs = getBatcher(parts[1]).eval(contexts, values);
+          reply.append("OK ").append(numContexts).append('\n');
+          for (int ci = 0; ci < probs.length; ci++) {
+            for (int oi = 0; oi < probs[ci].length; oi++) {
+              if (oi != 0) {
+                reply.append(' ');
+              }
+              reply.append(probs[ci][oi]);
+            }
+            reply.append('\n');
+          }
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        catch (Exception e) {
+          error(out, "Unable to evaluate with model " + parts[1] + ": " + e.getMessage());
+          continue;
+        }
+      }
+      else if (command.equals("OUTCOMES") && parts.length == 2) {
+        try {
+          MaxentModel model = getBatcher(parts[1]).getModel();
+          reply.append("OK");
+          for (int oi = 0; oi < model.getNumOutcomes(); oi++) {
+            reply.append(' ').append(model.getOutcome(oi));
+          }
+          reply.append('\n');
+        }
+        catch (Exception e) {
+          error(out, "Unable to load model " + parts[1] + ": " + e.getMessage());
+          continue;
+        }
+      }
+      else if (command.equals("STATS") && parts.length == 2) {
+        MicroBatcher batcher = batchers.get(parts[1]);
+        if (batcher == null) {
+          error(out, "Model " + parts[1] + " has not been used.");
+          continue;
+        }
+        reply.append("OK requests=").append(batcher.getRequests()).append(" contexts=").append(batcher.getContexts())
+            .append(" batches=").append(batcher.getBatches()).append(' ').append(batcher.getLatencies()).append('\n');
+      }
+      else {
+        error(out, "Unknown command: " + line);
+        continue;
+      }
+      out.write(reply.toString());
+      out.flush();
+    }
+    out.flush();
+  }
+
+  private static void error(Writer out, String message) throws IOException {
+    out.write("ERROR " + String.valueOf(message).replace('\n', ' ') + "\n");
+    out.flush();
+  }
+
+  /**
+   * Thrown when a line is longer than the connection allows.
+   */
+  private static class LineTooLongException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    LineTooLongException(int maxLineLength) {
+      super("Line too long: more than " + maxLineLength + " characters");
+    }
+  }
+
+  /**
+   * Reads lines of a bounded length, ended by <code>\n</code>, <code>\r</code> or
+   * <code>\r\n</code> as in {@link BufferedReader#readLine()}.
+   */
+  private static class LineReader {
+
+    private final BufferedReader in;
+    private final int maxLineLength;
+    private final StringBuilder line = new StringBuilder();
+    /** Whether the previous line ended with <code>\r</code>, so that a <code>\n</code> which follows is skipped. */
+    private boolean skipLF;
+
+    LineReader(Reader in, int maxLineLength) {
+      this.in = new BufferedReader(in);
+      this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Returns the next line without its terminator.
+     * @return The line, or <code>null</code> at the end of the stream.
+     * @throws LineTooLongException If the line holds more than the allowed number of characters.
+     */
+    String readLine() throws IOException {
+      line.setLength(0);
+      int c;
+      while ((c = in.read()) != -1) {
+        if (skipLF) {
+          skipLF = false;
+          if (c == '\n') {
+            continue;
+          }
+        }
+        if (c == '\n') {
+          return line.toString();
+        }
+        if (c == '\r') {
+          // the \n which may follow is not waited for
+          skipLF = true;
+          return line.toString();
+        }
+        if (line.length() == maxLineLength) {
+          throw new LineTooLongException(maxLineLength);
+        }
+        line.append((char) c);
+      }
+      return line.length() > 0 ? line.toString() : null;
+    }
+  }
+
+  /**
+   * Serves the models in a directory.  The model of name <code>n</code> is read from the
+   * file <code>n.bin.gz</code>, <code>n.bin</code>, <code>n.txt.gz</code> or <code>n.txt</code>,
+   * whichever is found first.
+   * The server listens on the loopback address unless <code>-bind</code> gives another one.
+   * @param args [-bind address] [-port n] [-budget megabytes] [-batch n] [-delay microseconds]
+   *   [-contexts n] [-connections n] [-line characters] [-timeout milliseconds] modeldir
+   * @throws IOException If the server can not be started.
+   */
+  public static void main(String[] args) throws IOException {
+    InetAddress address = null;
+    int port = 8765;
+    long budget = 1024;
+    int maxBatchSize = MicroBatcher.DEFAULT_MAX_BATCH_SIZE;
+    long maxDelay = 0;
+    int maxContexts = 0;
+    int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+    int readTimeout = DEFAULT_READ_TIMEOUT;
+    int ai = 0;
+    while (ai < args.length - 1 && args[ai].startsWith("-")) {
+      if (args[ai].equals("-bind")) {
+        address = InetAddress.getByName(args[++ai]);
+      }
+      else if (args[ai].equals("-port")) {
+        port = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-budget")) {
+        budget = Long.parseLong(args[++ai]);
+      }
+      else if (args[ai].equals("-batch")) {
+        maxBatchSize = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-delay")) {
+        maxDelay = Long.parseLong(args[++ai]);
+      }
+      else if (args[ai].equals("-contexts")) {
+        maxContexts = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-connections")) {
+        maxConnections = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-line")) {
+        maxLineLength = Integer.parseInt(args[++ai]);
+      }
+      else if (args[ai].equals("-timeout")) {
+        readTimeout = Integer.parseInt(args[++ai]);
+      }
+      else {
+        break;
+      }
+      ai++;
+    }
+    if (ai != args.length - 1) {
+      System.err.println("Usage: ScoringServer [-bind address] [-port n] [-budget megabytes] [-batch n] [-delay microseconds]"
+          + " [-contexts n] [-connections n] [-line characters] [-timeout milliseconds] modeldir");
+      System.exit(1);
+    }
+    final File dir = new File(args[ai]);
+    ModelLoader loader = new ModelLoader() {
+      public MaxentModel loadModel(ModelDomain domain) throws IOException {
+        String[] suffixes = new String[] {".bin.gz", ".bin", ".txt.gz", ".txt"};
+        for (int si = 0; si < suffixes.length; si++) {
+          File file = new File(dir, domain.getName() + suffixes[si]);
+          if (file.isFile()) {
+            return GenericModelReader.readModel(file);
+          }
+        }
+        throw new IOException("No model named " + domain.getName() + " in " + dir);
+      }
+    };
+    ScoringServer server = new ScoringServer(new ModelRegistry(loader, budget * 1024 * 1024), address, port, maxBatchSize, maxDelay);
+    if (maxContexts > 0) {
+      server.setMaxContexts(maxContexts);
+    }
+    server.setMaxConnections(maxConnections);
+    server.setMaxLineLength(maxLineLength);
+    server.setReadTimeout(readTimeout);
+    server.start();
+    System.out.println("Serving the models in " + dir + " on " + server.getAddress().getHostAddress() + " port " + server.getPort());
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * The parameters of a model stored by predicate.  The entries of predicate <code>pid</code>
+ * are numbered from <code>getEntryStart(pid)</code> (inclusive) to <code>getEntryStart(pid+1)</code>
+ * (exclusive), and each entry holds an outcome and its parameter.  Subclasses decide where
+ * the entries are stored, for example in arrays on the heap or in a memory mapped file.
+ * <p>
+ * The eval methods of the models use {@link #addParameters} so that subclasses can provide a
+ * loop over their own storage.
+ */
+public abstract class AbstractContextTable {
+
+  /**
+   * Returns the number of contexts in this table.
+   * @return The number of contexts in this table.
+   */
+  public abstract int getNumContexts();
+
+  /**
+   * Returns the number of the first entry of the specified context.
+   * @param pid The context, or the number of contexts to get the total number of entries.
+   * @return The number of the first entry of the context.
+   */
+  public abstract int getEntryStart(int pid);
+
+  /**
+   * Returns the outcome of the specified entry.
+   * @param entry The number of the entry.
+   * @return The outcome of the entry.
+   */
+  public abstract int getOutcome(int entry);
+
+  /**
+   * Returns the parameter of the specified entry.
+   * @param entry The number of the entry.
+   * @return The parameter of the entry.
+   */
+  public abstract double getParameter(int entry);
+
+  /**
+   * Returns the total number of entries in this table.
+   * @return The total number of entries in this table.
+   */
+  public int getNumEntries() {
+    return getEntryStart(getNumContexts());
+  }
+
+  /**
+   * Estimates the number of bytes of heap memory used by this table.  This implementation
+   * assumes an int offset per context and an int outcome and a double parameter per entry.
+   * @return The estimated heap memory used by this table.
+   */
+  public long getHeapSize() {
+    return 4L * (getNumContexts() + 1) + 12L * getNumEntries();
+  }
+
+  /**
+   * Adds the parameters of the specified context, multiplied by <code>value</code>, to the scores
+   * of their outcomes.
+   * @param pid The context.
+   * @param value The value of the context.
+   * @param scores The scores.
+   * @param scoreOffset The position of the score of outcome 0.
+   */
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset) {
+    for (int ai = getEntryStart(pid), end = getEntryStart(pid+1); ai < end; ai++) {
+      scores[getOutcome(ai) + scoreOffset] += getParameter(ai) * value;
+    }
+  }
+
+  /**
+   * Adds the parameters of the specified context, multiplied by <code>value</code>, to the scores
+   * of their outcomes and counts one feature for each of these outcomes.
+   * @param pid The context.
+   * @param value The value of the context.
+   * @param scores The scores.
+   * @param scoreOffset The position of the score of outcome 0.
+   * @param numfeats The feature counts.
+   * @param featOffset The position of the feature count of outcome 0.
+   */
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset, int[] numfeats, int featOffset) {
+    for (int ai = getEntryStart(pid), end = getEntryStart(pid+1); ai < end; ai++) {
+      int oid = getOutcome(ai);
+      numfeats[oid + featOffset]++;
+      scores[oid + scoreOffset] += getParameter(ai) * value;
+    }
+  }
+
+  /**
+   * Creates a {@link Context} object for each context in this table.  This is intended for code
+   * which needs the object form, such as model writers, and allocates a copy of the whole table.
+   * @return The contexts, indexed by predicate.
+   */
+  public Context[] toContexts() {
+    Context[] contexts = new Context[getNumContexts()];
+    for (int pid=0;pid<contexts.length;pid++) {
+      int start = getEntryStart(pid);
+      int length = getEntryStart(pid+1) - start;
+      int[] activeOutcomes = new int[length];
+      double[] activeParameters = new double[length];
+      for (int ai=0;ai<length;ai++) {
+        activeOutcomes[ai] = getOutcome(start+ai);
+        activeParameters[ai] = getParameter(start+ai);
+      }
+      contexts[pid] = new Context(activeOutcomes,activeParameters);
+    }
+    return contexts;
+  }
+}
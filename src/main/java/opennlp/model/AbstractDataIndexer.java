@@ -17,6 +17,7 @@
 
 package opennlp.model;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,8 @@ import java.util.Set;
 public abstract class AbstractDataIndexer implements DataIndexer {
 
   private int numEvents;
+  /** Whether duplicate events are found using a hash table rather than by sorting. */
+  private boolean hashMerge;
   /** The integer contexts associated with each unique event. */ 
   protected int[][] contexts;
   /** The integer outcome associated with each unique event. */ 
@@ -72,7 +75,9 @@ public abstract class AbstractDataIndexer implements DataIndexer {
   /**
    * Sorts and uniques the array of comparable events and return the number of unique events.
    * This method will alter the eventsToCompare array -- it does an in place
-   * sort, followed by an in place edit to remove duplicates.
+   * sort, followed by an in place edit to remove duplicates.  If hash merging
+   * is enabled the events are not sorted; duplicates are removed in a single pass
+   * and the unique events keep the order in which they were first seen.
    *
    * @param eventsToCompare a <code>ComparableEvent[]</code> value
    * @return The number of unique events in the specified list.
@@ -81,8 +86,11 @@ public abstract class AbstractDataIndexer implements DataIndexer {
   protected int sortAndMerge(List eventsToCompare, boolean sort) {
     int numUniqueEvents = 1;
     numEvents = eventsToCompare.size();
-    if (sort) {
-      Collections.sort(eventsToCompare);
+    if (sort && hashMerge) {
+      numUniqueEvents = hashAndMerge(eventsToCompare);
+    }
+    else if (sort) {
+      sortEvents(eventsToCompare);
       if (numEvents <= 1) {
         return numUniqueEvents; // nothing to do; edge case (see assertion)
       }
@@ -124,6 +132,99 @@ public abstract class AbstractDataIndexer implements DataIndexer {
   }
   
   
+  /**
+   * Sorts the specified comparable events into their natural order.  The sort must be stable.
+   * @param eventsToCompare The events to sort.
+   */
+  @SuppressWarnings("unchecked")
+  protected void sortEvents(List<ComparableEvent> eventsToCompare) {
+    // ComparableEvent implements the raw Comparable
+    Collections.sort(eventsToCompare);
+  }
+
+  /**
+   * Specifies whether {@link #sortAndMerge(List, boolean)} removes duplicate events using a
+   * hash table rather than by sorting the events.
+   * @param hashMerge Whether duplicates are found using a hash table.
+   */
+  protected void setHashMerge(boolean hashMerge) {
+    this.hashMerge = hashMerge;
+  }
+
+  /**
+   * Removes the duplicates from the specified comparable events in one pass over the events.
+   * The first occurrence of each event is kept in place and counts its duplicates, which
+   * are replaced by <code>null</code>.  Two events are duplicates if they compare as equal,
+   * so as for sorting an event without values is the same as one whose values are all 1.
+   * <p>
+   * The hash table uses open addressing with linear probing and holds the list index
+   * and hash code of each unique event in primitive arrays.
+   *
+   * @param eventsToCompare The events.
+   * @return The number of unique events in the specified list.
+   */
+  private static int hashAndMerge(List eventsToCompare) {
+    int numEvents = eventsToCompare.size();
+    int[] slots = new int[16];
+    int[] hashes = new int[16];
+    Arrays.fill(slots,-1);
+    int mask = slots.length - 1;
+    int numUniqueEvents = 0;
+    for (int i = 0; i < numEvents; i++) {
+      ComparableEvent ce = (ComparableEvent) eventsToCompare.get(i);
+      int hash = hashCode(ce);
+      int si = IndexHashTable.spread(hash) & mask;
+      int ui;
+      while ((ui = slots[si]) != -1) {
+        if (hashes[si] == hash && ((ComparableEvent) eventsToCompare.get(ui)).compareTo(ce) == 0) {
+          break;
+        }
+        si = (si + 1) & mask;
+      }
+      if (ui != -1) {
+        ((ComparableEvent) eventsToCompare.get(ui)).seen++; // increment the seen count
+        eventsToCompare.set(i, null); // kill the duplicate
+        continue;
+      }
+      slots[si] = i;
+      hashes[si] = hash;
+      numUniqueEvents++;
+      if (numUniqueEvents > slots.length * IndexHashTable.DEFAULT_LOAD_FACTOR) {
+        int[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new int[oldSlots.length * 2];
+        hashes = new int[slots.length];
+        Arrays.fill(slots,-1);
+        mask = slots.length - 1;
+        for (int oi = 0; oi < oldSlots.length; oi++) {
+          if (oldSlots[oi] != -1) {
+            int ni = IndexHashTable.spread(oldHashes[oi]) & mask;
+            while (slots[ni] != -1) {
+              ni = (ni + 1) & mask;
+            }
+            slots[ni] = oldSlots[oi];
+            hashes[ni] = oldHashes[oi];
+          }
+        }
+      }
+    }
+    return numUniqueEvents;
+  }
+
+  /**
+   * Returns a hash code for an event which is consistent with {@link ComparableEvent#compareTo(Object)}.
+   */
+  private static int hashCode(ComparableEvent ce) {
+    int hash = ce.outcome;
+    for (int i = 0; i < ce.predIndexes.length; i++) {
+      hash = 31 * hash + ce.predIndexes[i];
+      float value = ce.values == null ? 1f : ce.values[i];
+      // 0 and -0 compare as equal
+      hash = 31 * hash + (value == 0 ? 0 : Float.floatToIntBits(value));
+    }
+    return hash;
+  }
+
   public int getNumEvents() {
     return numEvents;
   }
@@ -168,6 +269,67 @@ public abstract class AbstractDataIndexer implements DataIndexer {
     return array;
   }
 
+  /**
+   * Converts an event to a comparable event which contains the indices of those of its
+   * predicates which are in the specified index.
+   * @param ev The event.
+   * @param outcome The index of the outcome of the event.
+   * @param predicateIndex The index of each predicate used by the model.
+   * @param keepValues Whether the values of the predicates which are kept are copied to the comparable event.
+   * @return The comparable event, or null if none of the predicates of the event are in the index.
+   */
+  protected static ComparableEvent indexEvent(Event ev, int outcome, Map<String,Integer> predicateIndex, boolean keepValues) {
+    String[] econtext = ev.getContext();
+    float[] evalues = keepValues ? ev.getValues() : null;
+    int[] cons = new int[econtext.length];
+    float[] vals = evalues != null ? new float[econtext.length] : null;
+    int length = 0;
+    for (int i = 0; i < econtext.length; i++) {
+      Integer pid = predicateIndex.get(econtext[i]);
+      if (pid != null) {
+        if (vals != null) {
+          vals[length] = evalues[i];
+        }
+        cons[length++] = pid.intValue();
+      }
+    }
+    // drop events with no active features
+    if (length == 0) {
+      System.err.println("Dropped event " + ev.getOutcome() + ":" + Arrays.asList(econtext));
+      return null;
+    }
+    if (length < cons.length) {
+      int[] trimmed = new int[length];
+      System.arraycopy(cons,0,trimmed,0,length);
+      cons = trimmed;
+      if (vals != null) {
+        float[] trimmedValues = new float[length];
+        System.arraycopy(vals,0,trimmedValues,0,length);
+        vals = trimmedValues;
+      }
+    }
+    return new ComparableEvent(outcome, cons, vals);
+  }
+
+  /**
+   * Collects the values of the unique events left by {@link #sortAndMerge(List, boolean)}.
+   * @param eventsToCompare The events, in which duplicates have been replaced by null.
+   * @param numUniqueEvents The number of unique events.
+   * @return The values of each unique event.
+   */
+  protected static float[][] collectValues(List<?> eventsToCompare, int numUniqueEvents) {
+    float[][] values = new float[numUniqueEvents][];
+    int numEvents = eventsToCompare.size();
+    for (int i = 0, j = 0; i < numEvents; i++) {
+      ComparableEvent evt = (ComparableEvent) eventsToCompare.get(i);
+      if (null == evt) {
+        continue; // this was a dupe, skip over it.
+      }
+      values[j++] = evt.values;
+    }
+    return values;
+  }
+
   public float[][] getValues() {
     return null;
   }
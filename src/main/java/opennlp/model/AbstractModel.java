@@ -18,26 +18,28 @@
 package opennlp.model;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public abstract class AbstractModel implements MaxentModel {
 
   /** Mapping between predicates/contexts and an integer representing them. */
-  protected Map<String,Integer> pmap;
+  protected IndexTable pmap;
   /** The names of the outcomes. */
   protected String[] outcomeNames;
   /** Parameters for the model. */
   protected EvalParameters evalParams;
   /** Prior distribution for this model. */
   protected Prior prior;
+
+  /** The number of scores which {@link #evalBatch} computes before normalizing them. */
+  protected static final int BATCH_BLOCK_SIZE = 4096;
   
   public enum ModelType {Maxent,Perceptron};
   
   /** The type of the model. */
   protected ModelType modelType;
   
-  public AbstractModel(Context[] params, String[] predLabels, Map<String,Integer> pmap, String[] outcomeNames) {
+  public AbstractModel(Context[] params, String[] predLabels, IndexTable pmap, String[] outcomeNames) {
     this.pmap = pmap;
     this.outcomeNames =  outcomeNames;
     this.evalParams = new EvalParameters(params,outcomeNames.length);
@@ -52,16 +54,324 @@ public abstract class AbstractModel implements MaxentModel {
     init(predLabels,outcomeNames);
     this.evalParams = new EvalParameters(params,correctionParam,correctionConstant,outcomeNames.length);
   }
+
+  public AbstractModel(EvalParameters evalParams, String[] predLabels, String[] outcomeNames) {
+    init(predLabels,outcomeNames);
+    this.evalParams = evalParams;
+  }
   
+  public AbstractModel(EvalParameters evalParams, IndexTable pmap, String[] outcomeNames) {
+    this.pmap = pmap;
+    this.outcomeNames =  outcomeNames;
+    this.evalParams = evalParams;
+  }
+
   private void init(String[] predLabels, String[] outcomeNames){
-    this.pmap = new HashMap<String,Integer>(predLabels.length);
-    for (int i=0; i<predLabels.length; i++) {
-      pmap.put(predLabels[i], i);
-    }
+    this.pmap = new IndexHashTable(predLabels);
     this.outcomeNames =  outcomeNames;
   }
 
 
+  /**
+   * Evaluates a context using the specified scratch object for all working storage, so that no
+   * memory is allocated per call.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param values The values associated with each context or null if all values are 1.
+   * @param outsums This is where the distribution is stored.
+   * @param scratch The working storage to use.  This must not be shared between threads.
+   * @return The normalized probabilities for the outcomes given the context.
+   */
+  public abstract double[] eval(String[] context, float[] values, double[] outsums, EvalScratch scratch);
+
+  /**
+   * Evaluates a context using the specified scratch object for all working storage, so that no
+   * memory is allocated per call.  The returned distribution is owned by the scratch object and
+   * is overwritten by the next evaluation which uses it.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param scratch The working storage to use.  This must not be shared between threads.
+   * @return The normalized probabilities for the outcomes given the context.
+   */
+  public final double[] eval(String[] context, EvalScratch scratch) {
+    return eval(context,null,scratch.getProbs(evalParams.getNumOutcomes()),scratch);
+  }
+
+  /**
+   * Evaluates many contexts in one call, giving the same probabilities as <code>eval</code>
+   * gives for each context.  Row <code>r</code> of <code>contexts</code>, <code>values</code>
+   * and <code>out</code> belong to the same context.  The rows are evaluated in blocks of about
+   * {@link #BATCH_BLOCK_SIZE} scores: the predicates of a whole block are looked up before
+   * its parameters are read, and the scores of the block are normalized while they are still
+   * in cache.
+   *
+   * @param contexts The contexts to evaluate.  No row may be null, but a row may be empty.
+   * @param values The values associated with each context or null if all values are 1.  A null
+   *               row gives each predicate of its context the value 1, and any other row must
+   *               have one value per predicate of its context.
+   * @param out The arrays which are populated with the probabilities of each context.  It must
+   *            have at least <code>contexts.length</code> rows, each with at least
+   *            {@link #getNumOutcomes()} entries.
+   */
+  public void evalBatch(String[][] contexts, float[][] values, double[][] out) {
+    int numOutcomes = evalParams.getNumOutcomes();
+    int blockRows = getBatchBlockRows();
+    EvalScratch scratch = new EvalScratch(numOutcomes);
+    double[] scores = new double[Math.min(blockRows,contexts.length)*numOutcomes];
+    int[] offsets = new int[Math.min(blockRows,contexts.length)+1];
+    int[] ids = new int[0];
+    float[] vals = null;
+    for (int from = 0; from < contexts.length; from += blockRows) {
+      int to = Math.min(from+blockRows,contexts.length);
+      int length = 0;
+      for (int ri = from; ri < to; ri++) {
+        length += contexts[ri].length;
+      }
+      if (ids.length < length) {
+        ids = new int[length];
+      }
+      if (values != null && (vals == null || vals.length < length)) {
+        vals = new float[length];
+      }
+      // resolve all the predicates of the block before touching the parameters
+      int ci = 0;
+      for (int ri = from; ri < to; ri++) {
+        offsets[ri-from] = ci;
+        String[] context = contexts[ri];
+        for (int pi = 0; pi < context.length; pi++) {
+          ids[ci+pi] = pmap.get(context[pi]);
+        }
+        if (values != null) {
+          if (values[ri] != null) {
+            System.arraycopy(values[ri],0,vals,ci,context.length);
+          }
+          else {
+            Arrays.fill(vals,ci,ci+context.length,1f);
+          }
+        }
+        ci += context.length;
+      }
+      offsets[to-from] = ci;
+      evalRows(ids,offsets,vals,0,to-from,scores,scratch);
+      for (int ri = from; ri < to; ri++) {
+        System.arraycopy(scores,(ri-from)*numOutcomes,out[ri],0,numOutcomes);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the most likely outcome for the specified context.  This is the same
+   * outcome as <code>getBestOutcome(eval(context))</code> picks, but the scores of the outcomes are
+   * compared without computing the probabilities.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @return The index of the most likely outcome.
+   */
+  public final int evalBest(String[] context) {
+    return evalBest(context,null,new EvalScratch(evalParams.getNumOutcomes()));
+  }
+
+  /**
+   * Returns the index of the most likely outcome for the specified context.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param values The values associated with each context or null if all values are 1.
+   * @param scratch The working storage to use.  This must not be shared between threads.
+   * @return The index of the most likely outcome.
+   */
+  public int evalBest(String[] context, float[] values, EvalScratch scratch) {
+    double[] scores = evalScores(context,values,scratch);
+    int best = 0;
+    for (int oid = 1; oid < scores.length; oid++) {
+      if (scores[oid] > scores[best]) {
+        best = oid;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the indices of the <code>k</code> most likely outcomes for the specified context,
+   * most likely first.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param k The number of outcomes to return, which must be positive.
+   * @return The indices of the most likely outcomes.  There are fewer than <code>k</code>
+   *         if the model has fewer outcomes.
+   */
+  public final int[] evalTopK(String[] context, int k) {
+    return evalTopK(context,null,k,null);
+  }
+
+  /**
+   * Returns the indices of the <code>k</code> most likely outcomes for the specified context,
+   * most likely first.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param values The values associated with each context or null if all values are 1.
+   * @param k The number of outcomes to return, which must be positive.
+   * @param probs An array which is populated with the probabilities of the returned outcomes
+   *              or null if they are not needed.
+   * @return The indices of the most likely outcomes.  There are fewer than <code>k</code>
+   *         if the model has fewer outcomes.
+   */
+  public final int[] evalTopK(String[] context, float[] values, int k, double[] probs) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive: " + k);
+    }
+    int[] outcomes = new int[Math.min(k,evalParams.getNumOutcomes())];
+    evalTopK(context,values,outcomes,probs,new EvalScratch(evalParams.getNumOutcomes()));
+    return outcomes;
+  }
+
+  /**
+   * Finds the most likely outcomes for the specified context, most likely first.  Outcomes
+   * with the same score are ordered by their index.  Computing probabilities requires the
+   * normalizer over all outcomes, so pass null for <code>probs</code> if only the ranking is needed.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param values The values associated with each context or null if all values are 1.
+   * @param outcomes An array which is populated with the indices of the most likely outcomes.
+   *                 Its length is the number of outcomes to find.
+   * @param probs An array which is populated with the probabilities of the found outcomes
+   *              or null if they are not needed.
+   * @param scratch The working storage to use.  This must not be shared between threads.
+   * @return The number of outcomes found, which is less than the length of <code>outcomes</code>
+   *         if the model has fewer outcomes.
+   */
+  public int evalTopK(String[] context, float[] values, int[] outcomes, double[] probs, EvalScratch scratch) {
+    double[] scores = evalScores(context,values,scratch);
+    int count = selectTopK(scores,outcomes);
+    if (probs != null) {
+      toProbabilities(scores,outcomes,count,probs);
+    }
+    return count;
+  }
+
+  /**
+   * Selects the indices of the highest scores in descending order of score.  Equal scores
+   * are ordered by their index.
+   *
+   * @param scores The scores.
+   * @param best An array which is populated with the indices of the highest scores.
+   * @return The number of indices selected.
+   */
+  protected static int selectTopK(double[] scores, int[] best) {
+    int count = 0;
+    for (int oid = 0; oid < scores.length; oid++) {
+      double score = scores[oid];
+      if (count == best.length && (count == 0 || score <= scores[best[count-1]])) {
+        continue;
+      }
+      int pos = count < best.length ? count++ : count - 1;
+      while (pos > 0 && score > scores[best[pos-1]]) {
+        best[pos] = best[pos-1];
+        pos--;
+      }
+      best[pos] = oid;
+    }
+    return count;
+  }
+
+  /**
+   * Computes the unnormalized scores of the outcomes for the specified context.  The scores
+   * order the outcomes in the same way as their probabilities.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param values The values associated with each context or null if all values are 1.
+   * @param scratch The working storage to use.
+   * @return The scores, in a buffer owned by the scratch object.
+   */
+  protected abstract double[] evalScores(String[] context, float[] values, EvalScratch scratch);
+
+  /**
+   * Turns the scores of selected outcomes into their probabilities.
+   *
+   * @param scores The scores of all outcomes as returned by {@link #evalScores}.  They may be overwritten.
+   * @param outcomes The selected outcomes.
+   * @param count The number of selected outcomes.
+   * @param probs An array which is populated with the probabilities of the selected outcomes.
+   */
+  protected abstract void toProbabilities(double[] scores, int[] outcomes, int count, double[] probs);
+
+  /**
+   * Evaluates many contexts which have already been mapped to their integer representation.
+   * The predicates of context <code>r</code> are found between <code>offsets[r]</code> (inclusive)
+   * and <code>offsets[r+1]</code> (exclusive) of <code>contexts</code>, and unknown predicates are -1.
+   *
+   * @param contexts The integer representation of the predicates of all contexts.
+   * @param offsets The start of each context in <code>contexts</code>, followed by the total number of predicates.
+   * @param values The value of each predicate or null if all values are 1.
+   * @param out The array which is populated with the probabilities of each context.  The distribution
+   *            of context <code>r</code> starts at <code>r*getNumOutcomes()</code>.
+   */
+  public void evalBatch(int[] contexts, int[] offsets, float[] values, double[] out) {
+    int numRows = offsets.length - 1;
+    int blockRows = getBatchBlockRows();
+    EvalScratch scratch = new EvalScratch(evalParams.getNumOutcomes());
+    for (int from = 0; from < numRows; from += blockRows) {
+      evalRows(contexts,offsets,values,from,Math.min(from+blockRows,numRows),out,scratch);
+    }
+  }
+
+  /**
+   * Evaluates the contexts <code>fromRow</code> (inclusive) to <code>toRow</code> (exclusive) of a batch.
+   * The arguments are laid out as described for {@link #evalBatch(int[], int[], float[], double[])}.
+   *
+   * @param contexts The integer representation of the predicates of all contexts.
+   * @param offsets The start of each context in <code>contexts</code>, followed by the total number of predicates.
+   * @param values The value of each predicate or null if all values are 1.
+   * @param fromRow The first context to evaluate.
+   * @param toRow The context after the last one to evaluate.
+   * @param out The array which is populated with the probabilities of each context.
+   * @param scratch The working storage to use.
+   */
+  protected abstract void evalRows(int[] contexts, int[] offsets, float[] values, int fromRow, int toRow, double[] out, EvalScratch scratch);
+
+  /**
+   * Returns the number of contexts which are evaluated together, chosen so that the scores
+   * of a block stay in cache while they are normalized.
+   */
+  private int getBatchBlockRows() {
+    return Math.max(1,BATCH_BLOCK_SIZE / Math.max(1,evalParams.getNumOutcomes()));
+  }
+
+  /**
+   * Returns the integer representation of the specified predicate.
+   *
+   * @param predicate The name of a predicate.
+   * @return The index of the predicate or -1 if it is unknown to this model.
+   */
+  public int getPredicateIndex(String predicate) {
+    return pmap.get(predicate);
+  }
+
+  /**
+   * Maps the predicates of the specified context to their integer representation.  Predicates
+   * which are unknown to this model are mapped to -1.
+   *
+   * @param context The names of the predicates which have been observed at
+   *                the present decision point.
+   * @param scratch The scratch object which provides the buffer.
+   * @return The buffer of the scratch object holding the integer representation of the context,
+   *         which has the length of the context.
+   */
+  protected final int[] indexContext(String[] context, EvalScratch scratch) {
+    int[] scontexts = scratch.getContexts(context.length);
+    for (int i=0; i<context.length; i++) {
+      scontexts[i] = pmap.get(context[i]);
+    }
+    return scontexts;
+  }
+
   /**
    * Return the name of the outcome corresponding to the highest likelihood
    * in the parameter ocs.
@@ -138,15 +448,58 @@ public abstract class AbstractModel implements MaxentModel {
     return(evalParams.getNumOutcomes());
   }
 
+  /**
+   * Estimates the number of bytes of heap memory used by the parameters, the predicate table
+   * and the outcome names of this model.  Memory mapped parameters and predicate tables are
+   * not counted, and object headers are approximated, so the result is only suitable for
+   * budgeting the memory of many models.
+   * @return The estimated heap memory used by this model.
+   */
+  public long getHeapSize() {
+    long size = 0;
+    AbstractContextTable table = evalParams.getContextTable();
+    if (table != null) {
+      size += table.getHeapSize();
+    }
+    else {
+      Context[] params = evalParams.getParams();
+      for (int pid = 0; pid < params.length; pid++) {
+        // the context and its outcome and parameter arrays
+        size += 56 + 12L * params[pid].getOutcomes().length;
+      }
+    }
+    if (!(pmap instanceof MappedIndexHashTable)) {
+      if (pmap instanceof IndexHashTable) {
+        size += 8L * ((IndexHashTable) pmap).getSlots().length;
+      }
+      for (int pid = 0, numPreds = pmap.size(); pid < numPreds; pid++) {
+        size += getHeapSize(pmap.getKey(pid));
+      }
+    }
+    for (int oid = 0; oid < outcomeNames.length; oid++) {
+      size += getHeapSize(outcomeNames[oid]);
+    }
+    return size;
+  }
+
+  private static long getHeapSize(String s) {
+    // the string and its character array
+    return 56 + 2L * s.length();
+  }
+
   /**
    * Provides the fundamental data structures which encode the maxent model
    * information.  This method will usually only be needed by
    * GISModelWriters.  The following values are held in the Object array
    * which is returned by this method:
    *
-   * <li>index 0: opennlp.maxent.Context[] containing the model
-   *            parameters  
-   * <li>index 1: java.util.Map containing the mapping of model predicates
+   * <li>index 0: opennlp.model.Context[] containing the model
+   *            parameters.  Models whose parameters are held in a 
+   *            ContextTable build this array from the table on each
+   *            call, which copies the whole model, so this method
+   *            should not be called on hot paths.  See
+   *            {@link EvalParameters#getParams()}.
+   * <li>index 1: opennlp.model.IndexTable containing the mapping of model predicates
    *            to unique integers
    * <li>index 2: java.lang.String[] containing the names of the outcomes,
    *            stored in the index of the array which represents their
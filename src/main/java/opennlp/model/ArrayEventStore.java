@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * An event store over the arrays returned by a {@link DataIndexer}.  The cursors
+ * return the arrays of each event without copying them.
+ */
+public class ArrayEventStore implements EventStore {
+
+  private final int[][] contexts;
+  private final float[][] values;
+  private final int[] outcomeList;
+  private final int[] numTimesEventsSeen;
+
+  /**
+   * Creates a store over the specified arrays, which are not copied.
+   * @param contexts The predicates of each event.
+   * @param values The values of the predicates of each event, or null if all values are 1.
+   * @param outcomeList The outcome of each event.
+   * @param numTimesEventsSeen The number of times each event occurred.
+   */
+  public ArrayEventStore(int[][] contexts, float[][] values, int[] outcomeList, int[] numTimesEventsSeen) {
+    this.contexts = contexts;
+    this.values = values;
+    this.outcomeList = outcomeList;
+    this.numTimesEventsSeen = numTimesEventsSeen;
+  }
+
+  public ArrayEventStore(DataIndexer indexer) {
+    this(indexer.getContexts(),indexer.getValues(),indexer.getOutcomeList(),indexer.getNumTimesEventsSeen());
+  }
+
+  public int size() {
+    return contexts.length;
+  }
+
+  public EventCursor getCursor(final int start, final int end) {
+    return new EventCursor() {
+
+      private int ei = start - 1;
+
+      public boolean next() {
+        return ++ei < end;
+      }
+
+      public int[] getContext() {
+        return contexts[ei];
+      }
+
+      public int getLength() {
+        return contexts[ei].length;
+      }
+
+      public float[] getValues() {
+        return values == null ? null : values[ei];
+      }
+
+      public int getOutcome() {
+        return outcomeList[ei];
+      }
+
+      public int getNumTimesSeen() {
+        return numTimesEventsSeen[ei];
+      }
+
+      public void close() {
+      }
+    };
+  }
+}
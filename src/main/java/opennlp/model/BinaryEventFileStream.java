@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the events of a file written by a {@link BinaryEventFileWriter}.  The string table
+ * is read when the stream is opened, so the events share their outcome and predicate
+ * strings.  The events are read through a {@link FileChannel} into a reusable buffer and the
+ * file is closed when the last event has been read.
+ */
+public class BinaryEventFileStream extends AbstractEventStream {
+
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final long numEvents;
+  private final long tablePosition;
+  private final String[] outcomes;
+  private final String[] predicates;
+  private ByteBuffer buffer;
+  /** The bitmap of the values of the current event which are not 1. */
+  private byte[] bitmap = new byte[16];
+  /** The file position of the first byte after the buffer. */
+  private long position;
+  private long eventsRead;
+  private boolean closed;
+
+  /**
+   * Opens the specified file and reads its string table.
+   * @param file A file written by a {@link BinaryEventFileWriter}.
+   * @throws IOException If the file can not be read or is not a complete binary event file.
+   */
+  public BinaryEventFileStream(File file) throws IOException {
+    raf = new RandomAccessFile(file, "r");
+    channel = raf.getChannel();
+    try {
+      if (raf.length() < BinaryEventFileWriter.HEADER_SIZE || raf.readInt() != BinaryEventFileWriter.MAGIC) {
+        throw new IOException("Not a complete binary event file: " + file);
+      }
+      int version = raf.readInt();
+      if (version != BinaryEventFileWriter.VERSION) {
+        throw new IOException("Unsupported binary event file version: " + version);
+      }
+      numEvents = raf.readLong();
+      tablePosition = raf.readLong();
+      outcomes = new String[raf.readInt()];
+      predicates = new String[raf.readInt()];
+      buffer = ByteBuffer.allocate(1 << 16);
+      buffer.flip();
+      position = tablePosition;
+      for (int oi = 0; oi < outcomes.length; oi++) {
+        outcomes[oi] = readString();
+      }
+      for (int pi = 0; pi < predicates.length; pi++) {
+        predicates[pi] = readString();
+      }
+      buffer.clear();
+      buffer.flip();
+      position = BinaryEventFileWriter.HEADER_SIZE;
+    }
+    catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of events in the file.
+   */
+  public long getNumEvents() {
+    return numEvents;
+  }
+
+  /**
+   * Returns the outcomes of the file, indexed by their id.
+   */
+  public String[] getOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * Returns the predicates of the file, indexed by their id.
+   */
+  public String[] getPredicates() {
+    return predicates;
+  }
+
+  public boolean hasNext() {
+    if (eventsRead < numEvents) {
+      return true;
+    }
+    try {
+      close();
+    }
+    catch (IOException e) {
+      // the file was only read
+    }
+    return false;
+  }
+
+  public Event next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    try {
+      int header = readVarint();
+      int length = header >>> 1;
+      String outcome = outcomes[readVarint()];
+      String[] context = new String[length];
+      for (int ci = 0; ci < length; ci++) {
+        context[ci] = predicates[readVarint()];
+      }
+      float[] values = null;
+      if ((header & 1) != 0) {
+        values = new float[length];
+        int bitmapLength = (length + 7) >>> 3;
+        if (bitmap.length < bitmapLength) {
+          bitmap = new byte[Math.max(bitmapLength, bitmap.length * 2)];
+        }
+        require(bitmapLength);
+        buffer.get(bitmap, 0, bitmapLength);
+        for (int ci = 0; ci < length; ci++) {
+          if ((bitmap[ci >>> 3] & (1 << (ci & 7))) != 0) {
+            require(4);
+            values[ci] = buffer.getFloat();
+          }
+          else {
+            values[ci] = 1;
+          }
+        }
+      }
+      eventsRead++;
+      return new Event(outcome, context, values);
+    }
+    catch (IOException e) {
+      throw new RuntimeException("Unable to read the binary event file: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Makes at least the specified number of bytes available in the buffer.
+   */
+  private void require(int length) throws IOException {
+    if (buffer.remaining() >= length) {
+      return;
+    }
+    buffer.compact();
+    if (buffer.capacity() < length) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+    while (buffer.position() < length) {
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        throw new EOFException("The binary event file is truncated");
+      }
+      position += n;
+    }
+    buffer.flip();
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      require(1);
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private String readString() throws IOException {
+    int length = readVarint();
+    require(length);
+    int start = buffer.position();
+    String s = new String(buffer.array(), buffer.arrayOffset() + start, length, "UTF-8");
+    buffer.position(start + length);
+    return s;
+  }
+
+  /**
+   * Closes the file.  This is done automatically once all events have been read.
+   * @throws IOException If the file can not be closed.
+   */
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      raf.close();
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes events to a binary event file, which is read by {@link BinaryEventFileStream}.  The
+ * outcomes and predicates are written once in a string table at the end of the file and the
+ * events refer to them by id, so the file is much smaller than the text formats and reading
+ * it requires no parsing or string decoding per event.
+ * <p>
+ * All fixed size values are written big-endian.  The file starts with a header of
+ * {@link #HEADER_SIZE} bytes: the magic number and the format version, the number of events,
+ * the file position of the string table and the number of outcomes and predicates.  The
+ * events follow the header.  Each event is written as:
+ * <ul>
+ * <li>a varint holding the number of predicates, shifted left by one, with the low bit set
+ * if the event has values,</li>
+ * <li>a varint holding the id of the outcome,</li>
+ * <li>a varint holding the id of each predicate,</li>
+ * <li>if the event has values, a bitmap with a bit for each predicate, which is set if its
+ * value is not 1, followed by those values as 4 byte floats.</li>
+ * </ul>
+ * The string table holds the outcomes followed by the predicates in the order of their ids,
+ * each as the varint length of its UTF-8 encoding followed by the encoded bytes.  Ids are
+ * assigned in the order in which the strings first occur.  Varints hold 7 bits per byte,
+ * least significant group first, with the high bit set on all but the last byte.
+ * <p>
+ * The header is completed when the writer is closed, so a file whose writer was not closed
+ * is rejected by the reader.
+ */
+public class BinaryEventFileWriter {
+
+  static final int MAGIC = 0x4d584556;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+
+  private final File file;
+  private final DataOutputStream output;
+  private final Map<String, Integer> outcomeIds = new HashMap<String, Integer>();
+  private final List<String> outcomes = new ArrayList<String>();
+  private final Map<String, Integer> predicateIds = new HashMap<String, Integer>();
+  private final List<String> predicates = new ArrayList<String>();
+  private long numEvents;
+  /** The number of bytes written so far. */
+  private long position;
+
+  /**
+   * Creates the specified file.
+   * @param file The file to write.
+   * @throws IOException If the file can not be created.
+   */
+  public BinaryEventFileWriter(File file) throws IOException {
+    this.file = file;
+    output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),1 << 16));
+    // the header is written when the file is closed
+    output.write(new byte[HEADER_SIZE]);
+    position = HEADER_SIZE;
+  }
+
+  /**
+   * Writes the specified event.
+   * @param event The event.
+   * @throws IOException If the event can not be written.
+   */
+  public void write(Event event) throws IOException {
+    String[] context = event.getContext();
+    float[] values = event.getValues();
+    writeVarint((context.length << 1) | (values != null ? 1 : 0));
+    writeVarint(id(event.getOutcome(), outcomeIds, outcomes));
+    for (int ci = 0; ci < context.length; ci++) {
+      writeVarint(id(context[ci], predicateIds, predicates));
+    }
+    if (values != null) {
+      int one = Float.floatToRawIntBits(1);
+      for (int ci = 0; ci < context.length; ci += 8) {
+        int bits = 0;
+        for (int bi = 0; bi < 8 && ci + bi < context.length; bi++) {
+          if (Float.floatToRawIntBits(values[ci + bi]) != one) {
+            bits |= 1 << bi;
+          }
+        }
+        output.writeByte(bits);
+        position++;
+      }
+      for (int ci = 0; ci < context.length; ci++) {
+        int bits = Float.floatToRawIntBits(values[ci]);
+        if (bits != one) {
+          output.writeInt(bits);
+          position += 4;
+        }
+      }
+    }
+    numEvents++;
+  }
+
+  /**
+   * Writes all events of the specified stream.
+   * @param events The events.
+   * @return The number of events written.
+   * @throws IOException If the events can not be written.
+   */
+  public long write(EventStream events) throws IOException {
+    long count = 0;
+    while (events.hasNext()) {
+      write(events.next());
+      count++;
+    }
+    return count;
+  }
+
+  private static int id(String s, Map<String, Integer> ids, List<String> strings) {
+    Integer id = ids.get(s);
+    if (id == null) {
+      id = Integer.valueOf(strings.size());
+      ids.put(s, id);
+      strings.add(s);
+    }
+    return id.intValue();
+  }
+
+  private void writeVarint(int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      output.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+      position++;
+    }
+    output.writeByte(value);
+    position++;
+  }
+
+  private void writeString(String s) throws IOException {
+    byte[] bytes = s.getBytes("UTF-8");
+    writeVarint(bytes.length);
+    output.write(bytes);
+    position += bytes.length;
+  }
+
+  /**
+   * Writes the string table and the header and closes the file.
+   * @throws IOException If the file can not be written.
+   */
+  public void close() throws IOException {
+    long tablePosition = position;
+    for (int oi = 0; oi < outcomes.size(); oi++) {
+      writeString(outcomes.get(oi));
+    }
+    for (int pi = 0; pi < predicates.size(); pi++) {
+      writeString(predicates.get(pi));
+    }
+    output.close();
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+      raf.writeLong(numEvents);
+      raf.writeLong(tablePosition);
+      raf.writeInt(outcomes.size());
+      raf.writeInt(predicates.size());
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Converts an event file in the format read by {@link FileEventStream} or
+   * {@link RealValueFileEventStream} to a binary event file.
+   * @param args [-real] eventfile binaryfile
+   * @throws IOException If the event file can not be read or the binary file can not be written.
+   */
+  public static void main(String[] args) throws IOException {
+    int ai = 0;
+    boolean real = false;
+    if (args.length > 0 && args[0].equals("-real")) {
+      real = true;
+      ai++;
+    }
+    if (args.length - ai != 2) {
+      System.err.println("Usage: BinaryEventFileWriter [-real] eventfile binaryfile");
+      System.exit(1);
+    }
+    ByteFileEventStream events = new ByteFileEventStream(new File(args[ai++]), real);
+    long count;
+    try {
+      BinaryEventFileWriter writer = new BinaryEventFileWriter(new File(args[ai++]));
+      try {
+        count = writer.write(events);
+      }
+      finally {
+        writer.close();
+      }
+    }
+    finally {
+      events.close();
+    }
+    System.out.println("Wrote " + count + " events");
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a UTF-8 encoded event file in the format read by {@link FileEventStream} or
+ * {@link RealValueFileEventStream}, without decoding it into characters first.  The file is
+ * read through a {@link FileChannel} into a large direct buffer, copied in bulk into a byte
+ * array and each line is split on white space and parsed in place.  Values are parsed without creating strings, and the
+ * outcome and predicates are interned so each distinct string is decoded only once and
+ * the events share their string instances.
+ * <p>
+ * Besides returning events, the stream can hand out the current event as interned ids
+ * with {@link #nextIds()}.  Ids are assigned to the outcomes and predicates in the order
+ * in which they first occur in the file, and only strings not seen before cause an
+ * allocation.
+ * <p>
+ * Blank lines are skipped, and in real valued files runs of white space separate
+ * predicates in the same way as single spaces.
+ */
+public class ByteFileEventStream extends AbstractEventStream {
+
+  /** The default size of the read buffer in bytes. */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private FileChannel channel;
+  /** The buffer which the file is read into. */
+  private final ByteBuffer buffer;
+  /** The bytes which are parsed, of which <code>bytes[position..limit)</code> have not been parsed yet. */
+  private byte[] bytes;
+  private int position;
+  private int limit;
+  private boolean eof;
+  private final EventLineParser parser;
+  /** Whether the parser holds an event which has not been handed out. */
+  private boolean pending;
+
+  /**
+   * Creates a stream reading the specified file.
+   * @param file The event file.
+   * @param realValued Whether <code>=value</code> suffixes of predicates are parsed as values.
+   * @param bufferSize The size of the read buffer in bytes.  The parse buffer grows if a line does not fit into it.
+   * @throws IOException When the file can not be opened.
+   */
+  public ByteFileEventStream(File file, boolean realValued, int bufferSize) throws IOException {
+    channel = new FileInputStream(file).getChannel();
+    buffer = ByteBuffer.allocateDirect(bufferSize);
+    bytes = new byte[bufferSize];
+    parser = new EventLineParser(realValued);
+  }
+
+  public ByteFileEventStream(File file, boolean realValued) throws IOException {
+    this(file, realValued, DEFAULT_BUFFER_SIZE);
+  }
+
+  public ByteFileEventStream(String fileName) throws IOException {
+    this(new File(fileName), false);
+  }
+
+  public boolean hasNext() {
+    if (!pending) {
+      pending = parseLine();
+    }
+    return pending;
+  }
+
+  public Event next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    pending = false;
+    return parser.toEvent();
+  }
+
+  /**
+   * Advances to the next event, which is then described by {@link #getOutcomeId()},
+   * {@link #getPredicateIds()}, {@link #getValues()} and {@link #getLength()}.
+   * @return false if there are no more events.
+   */
+  public boolean nextIds() {
+    if (pending) {
+      pending = false;
+      return true;
+    }
+    return parseLine();
+  }
+
+  /**
+   * Returns the id of the outcome of the current event.
+   */
+  public int getOutcomeId() {
+    return parser.outcome;
+  }
+
+  /**
+   * Returns a buffer whose first {@link #getLength()} entries are the predicate ids of the
+   * current event.  The buffer is reused for the following events.
+   */
+  public int[] getPredicateIds() {
+    return parser.ids;
+  }
+
+  /**
+   * Returns a buffer whose first {@link #getLength()} entries are the values of the
+   * predicates of the current event, or null if none of them has a value.  The buffer is
+   * reused for the following events.
+   */
+  public float[] getValues() {
+    return parser.hasValues ? parser.values : null;
+  }
+
+  /**
+   * Returns the number of predicates of the current event.
+   */
+  public int getLength() {
+    return parser.length;
+  }
+
+  /**
+   * Returns the outcome with the specified id.
+   */
+  public String getOutcome(int id) {
+    return parser.outcomes.get(id);
+  }
+
+  /**
+   * Returns the predicate with the specified id.
+   */
+  public String getPredicate(int id) {
+    return parser.predicates.get(id);
+  }
+
+  /**
+   * Returns the number of distinct outcomes read so far.
+   */
+  public int getNumOutcomes() {
+    return parser.outcomes.size();
+  }
+
+  /**
+   * Returns the number of distinct predicates read so far.
+   */
+  public int getNumPredicates() {
+    return parser.predicates.size();
+  }
+
+  /**
+   * Parses the next line which is not blank.
+   * @return false if the end of the file is reached first.
+   */
+  private boolean parseLine() {
+    try {
+      while (true) {
+        int start = position;
+        int end = findLineEnd(start);
+        if (end != -1) {
+          position = end + 1;
+        }
+        else if (fill()) {
+          continue;
+        }
+        else if (start == limit) {
+          close();
+          return false;
+        }
+        else {
+          // the last line has no terminator
+          end = limit;
+          position = end;
+        }
+        if (parser.parse(bytes, start, end)) {
+          return true;
+        }
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException("Unable to read the event file: " + e.getMessage(), e);
+    }
+  }
+
+  private int findLineEnd(int start) {
+    for (int i = start; i < limit; i++) {
+      if (bytes[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads more of the file behind the unparsed bytes, growing the parse buffer if they fill it.
+   * @return false if the end of the file has been reached.
+   */
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    int unparsed = limit - position;
+    if (unparsed == bytes.length) {
+      byte[] grown = new byte[bytes.length * 2];
+      System.arraycopy(bytes, position, grown, 0, unparsed);
+      bytes = grown;
+    }
+    else {
+      System.arraycopy(bytes, position, bytes, 0, unparsed);
+    }
+    position = 0;
+    limit = unparsed;
+    buffer.clear();
+    buffer.limit(Math.min(buffer.capacity(), bytes.length - limit));
+    if (channel.read(buffer) == -1) {
+      eof = true;
+    }
+    buffer.flip();
+    int read = buffer.remaining();
+    buffer.get(bytes, limit, read);
+    limit += read;
+    return true;
+  }
+
+  /**
+   * Closes the file.  This is done automatically when the last event has been read.
+   */
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Assigns consecutive ids to UTF-8 encoded strings which are read from a byte array, in the
+ * order in which they are first added.  A string which is already in the table is found by
+ * comparing its bytes, so it is not decoded again and the same <code>String</code> instance
+ * is returned for it.
+ * <p>
+ * The table uses open addressing with linear probing like {@link IndexHashTable}, but picks
+ * the first slot from the high bits of the hash code multiplied by a large odd constant, as
+ * the hash codes of similar keys such as numbered predicates are clustered.  The bytes of
+ * all keys are kept in one array.  A table is not thread safe.
+ */
+class ByteStringTable {
+
+  /** The bytes of all keys. */
+  private byte[] pool = new byte[1 << 12];
+  private int poolLength;
+  /** The start of each key in the pool, followed by the end of the last key. */
+  private int[] keyOffsets = new int[17];
+  private String[] strings = new String[16];
+  private int size;
+  /** The id of the key stored in each slot or -1 if the slot is empty. */
+  private int[] slots;
+  /** The hash code of the key stored in each slot. */
+  private int[] hashes;
+  private int mask;
+  /** The shift which leaves as many high bits of a hash code as the number of slots has. */
+  private int shift;
+
+  ByteStringTable() {
+    slots = new int[32];
+    hashes = new int[32];
+    Arrays.fill(slots, -1);
+    mask = slots.length - 1;
+    shift = 32 - 5;
+  }
+
+  /**
+   * Updates a hash code computed by this table with the next byte of a key.
+   */
+  static int hash(int hash, byte b) {
+    return 31 * hash + (b & 0xff);
+  }
+
+  private int slot(int hash) {
+    return (hash * 0x9e3779b9) >>> shift;
+  }
+
+  /**
+   * Returns the id of the key held in <code>bytes[start..end)</code>, adding it if it is not in the table.
+   * @param hash The hash code of the key, computed with {@link #hash(int, byte)} starting from 0.
+   * @return The id of the key.
+   */
+  int intern(byte[] bytes, int start, int end, int hash) {
+    int si = slot(hash);
+    int id;
+    while ((id = slots[si]) != -1) {
+      if (hashes[si] == hash && keyEquals(id, bytes, start, end)) {
+        return id;
+      }
+      si = (si + 1) & mask;
+    }
+    id = add(bytes, start, end);
+    slots[si] = id;
+    hashes[si] = hash;
+    if (size > slots.length * IndexHashTable.DEFAULT_LOAD_FACTOR) {
+      rehash();
+    }
+    return id;
+  }
+
+  private boolean keyEquals(int id, byte[] bytes, int start, int end) {
+    int keyStart = keyOffsets[id];
+    if (keyOffsets[id + 1] - keyStart != end - start) {
+      return false;
+    }
+    for (int i = start, ki = keyStart; i < end; i++, ki++) {
+      if (bytes[i] != pool[ki]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int add(byte[] bytes, int start, int end) {
+    int length = end - start;
+    if (poolLength + length > pool.length) {
+      byte[] grown = new byte[Math.max(pool.length * 2, poolLength + length)];
+      System.arraycopy(pool, 0, grown, 0, poolLength);
+      pool = grown;
+    }
+    System.arraycopy(bytes, start, pool, poolLength, length);
+    poolLength += length;
+    if (size == strings.length) {
+      String[] grownStrings = new String[size * 2];
+      System.arraycopy(strings, 0, grownStrings, 0, size);
+      strings = grownStrings;
+      int[] grownOffsets = new int[size * 2 + 1];
+      System.arraycopy(keyOffsets, 0, grownOffsets, 0, size + 1);
+      keyOffsets = grownOffsets;
+    }
+    try {
+      strings[size] = new String(pool, poolLength - length, length, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      // every Java platform supports UTF-8
+      throw new IllegalStateException(e.getMessage());
+    }
+    keyOffsets[size + 1] = poolLength;
+    return size++;
+  }
+
+  private void rehash() {
+    int[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new int[oldSlots.length * 2];
+    hashes = new int[slots.length];
+    Arrays.fill(slots, -1);
+    mask = slots.length - 1;
+    shift--;
+    for (int oi = 0; oi < oldSlots.length; oi++) {
+      if (oldSlots[oi] != -1) {
+        int si = slot(oldHashes[oi]);
+        while (slots[si] != -1) {
+          si = (si + 1) & mask;
+        }
+        slots[si] = oldSlots[oi];
+        hashes[si] = oldHashes[oi];
+      }
+    }
+  }
+
+  /**
+   * Returns the key with the specified id.
+   */
+  String get(int id) {
+    return strings[id];
+  }
+
+  /**
+   * Returns the number of keys in the table.
+   */
+  int size() {
+    return size;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.util.Arrays;
+
+/**
+ * An in-memory event store which packs all events into one byte array.  Rather than an
+ * <code>int[]</code> and a <code>float[]</code> object per event, each event is stored as:
+ * <ul>
+ * <li>a varint holding the number of predicates, shifted left by one, with the low bit set
+ *     if the event has a value other than 1,</li>
+ * <li>varints holding the outcome and the number of times the event was seen,</li>
+ * <li>a varint for each predicate holding the zigzag encoded difference from the previous
+ *     predicate, starting from 0,</li>
+ * <li>if the low bit was set, a bitmap with a bit for each predicate whose value is not 1,
+ *     followed by these values as 4 byte floats.</li>
+ * </ul>
+ * The predicates of indexed events are sorted, so most differences are small and fit into
+ * a single byte.  The difference is signed so that the predicates keep their order even if
+ * they are not sorted.  Varints hold 7 bits per byte, least significant group first.  The
+ * start of each event is kept in an index so that a cursor can start at any event.
+ * <p>
+ * The cursors decode into buffers which they reuse, so iterating the events does not
+ * allocate any memory.  Values of 1 are not stored, so an event whose values are all 1 is
+ * returned without values.
+ */
+public class CompactEventStore implements EventStore {
+
+  /** The encoded events. */
+  private final byte[] data;
+  /** The start of each event in <code>data</code>, followed by the length of the data. */
+  private final int[] offsets;
+
+  /**
+   * Creates a store holding the events of the specified store, for example a
+   * {@link FileEventStore}, so that they can be stored compactly without first being
+   * read into arrays.
+   * @param events The events.
+   */
+  public CompactEventStore(EventStore events) {
+    int numEvents = events.size();
+    offsets = new int[numEvents + 1];
+    Encoder encoder = new Encoder();
+    EventCursor cursor = events.getCursor(0, numEvents);
+    try {
+      for (int ei = 0; cursor.next(); ei++) {
+        offsets[ei] = encoder.length;
+        encoder.add(cursor.getContext(), cursor.getLength(), cursor.getValues(), cursor.getOutcome(), cursor.getNumTimesSeen());
+      }
+    }
+    finally {
+      cursor.close();
+    }
+    offsets[numEvents] = encoder.length;
+    data = new byte[encoder.length];
+    System.arraycopy(encoder.data, 0, data, 0, encoder.length);
+  }
+
+  /**
+   * Creates a store holding the events of the specified indexer.
+   * @param indexer The indexed events.
+   */
+  public CompactEventStore(DataIndexer indexer) {
+    this(new ArrayEventStore(indexer));
+  }
+
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * Returns the number of bytes used by the encoded events.
+   * @return The number of bytes used by the encoded events.
+   */
+  public int getDataSize() {
+    return data.length;
+  }
+
+  public EventCursor getCursor(int start, int end) {
+    return new Cursor(offsets[start], offsets[end]);
+  }
+
+  /**
+   * Appends encoded events to a growing buffer.
+   */
+  private static class Encoder {
+
+    byte[] data = new byte[1 << 16];
+    int length;
+
+    void add(int[] context, int numPreds, float[] values, int outcome, int seen) {
+      int numValues = 0;
+      if (values != null) {
+        for (int ci = 0; ci < numPreds; ci++) {
+          if (values[ci] != 1f) {
+            numValues++;
+          }
+        }
+      }
+      ensure(5 * (numPreds + 3) + (numPreds + 7) / 8 + 4 * numValues);
+      writeVarint((numPreds << 1) | (numValues > 0 ? 1 : 0));
+      writeVarint(outcome);
+      writeVarint(seen);
+      int previous = 0;
+      for (int ci = 0; ci < numPreds; ci++) {
+        int delta = context[ci] - previous;
+        writeVarint((delta << 1) ^ (delta >> 31));
+        previous = context[ci];
+      }
+      if (numValues > 0) {
+        int bitmap = length;
+        int bitmapLength = (numPreds + 7) / 8;
+        Arrays.fill(data, bitmap, bitmap + bitmapLength, (byte) 0);
+        length += bitmapLength;
+        for (int ci = 0; ci < numPreds; ci++) {
+          if (values[ci] != 1f) {
+            data[bitmap + (ci >>> 3)] |= 1 << (ci & 7);
+            int bits = Float.floatToRawIntBits(values[ci]);
+            data[length++] = (byte) (bits >>> 24);
+            data[length++] = (byte) (bits >>> 16);
+            data[length++] = (byte) (bits >>> 8);
+            data[length++] = (byte) bits;
+          }
+        }
+      }
+    }
+
+    private void ensure(int needed) {
+      if ((long) length + needed > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("The events do not fit into a single array");
+      }
+      if (length + needed > data.length) {
+        long capacity = Math.max((long) data.length * 2, (long) length + needed);
+        byte[] grown = new byte[(int) Math.min(capacity, Integer.MAX_VALUE - 8)];
+        System.arraycopy(data, 0, grown, 0, length);
+        data = grown;
+      }
+    }
+
+    private void writeVarint(int value) {
+      while ((value & ~0x7f) != 0) {
+        data[length++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      data[length++] = (byte) value;
+    }
+  }
+
+  /**
+   * A cursor which decodes the events between two positions of the data.
+   */
+  private class Cursor implements EventCursor {
+
+    private int position;
+    private final int end;
+    /** Provides a context and a values buffer of the exact length for each event. */
+    private final EvalScratch scratch = new EvalScratch();
+    private int[] context = new int[0];
+    private float[] values;
+    private boolean hasValues;
+    private int outcome;
+    private int seen;
+
+    Cursor(int position, int end) {
+      this.position = position;
+      this.end = end;
+    }
+
+    public boolean next() {
+      if (position >= end) {
+        return false;
+      }
+      int header = readVarint();
+      int numPreds = header >>> 1;
+      hasValues = (header & 1) != 0;
+      outcome = readVarint();
+      seen = readVarint();
+      context = scratch.getContexts(numPreds);
+      int pid = 0;
+      for (int ci = 0; ci < numPreds; ci++) {
+        int zigzag = readVarint();
+        pid += (zigzag >>> 1) ^ -(zigzag & 1);
+        context[ci] = pid;
+      }
+      if (hasValues) {
+        values = scratch.getValues(numPreds);
+        int bitmap = position;
+        position += (numPreds + 7) / 8;
+        for (int ci = 0; ci < numPreds; ci++) {
+          if ((data[bitmap + (ci >>> 3)] & (1 << (ci & 7))) != 0) {
+            int bits = (data[position] << 24) | ((data[position + 1] & 0xff) << 16)
+                | ((data[position + 2] & 0xff) << 8) | (data[position + 3] & 0xff);
+            values[ci] = Float.intBitsToFloat(bits);
+            position += 4;
+          }
+          else {
+            values[ci] = 1f;
+          }
+        }
+      }
+      return true;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = data[position++];
+        value |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    public int[] getContext() {
+      return context;
+    }
+
+    public int getLength() {
+      return context.length;
+    }
+
+    public float[] getValues() {
+      return hasValues ? values : null;
+    }
+
+    public int getOutcome() {
+      return outcome;
+    }
+
+    public int getNumTimesSeen() {
+      return seen;
+    }
+
+    public void close() {
+      position = end;
+    }
+  }
+}
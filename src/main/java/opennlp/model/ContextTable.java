@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * The parameters of a model stored in compressed sparse row form.  Rather than one
+ * {@link Context} object per predicate, the outcomes and parameters of all predicates
+ * are stored in two parallel arrays.  The entries for predicate <code>pid</code> are
+ * found between <code>offsets[pid]</code> (inclusive) and <code>offsets[pid+1]</code>
+ * (exclusive).  For a large model this replaces millions of small objects with three
+ * arrays, and evaluating a predicate reads contiguous memory.
+ * <p>
+ * A context table is immutable once constructed.  Trainers which update their
+ * parameters in place use {@link MutableContext}s and convert them to a table using
+ * {@link #fromContexts(Context[])} when the model is created.
+ */
+public class ContextTable extends AbstractContextTable {
+
+  /** The start of the entries of each context, with a final entry which is the total number of entries. */
+  private final int[] offsets;
+  /** The outcome of each entry. */
+  private final int[] outcomes;
+  /** The parameter of each entry. */
+  private final double[] parameters;
+
+  /**
+   * Creates a table from the specified arrays.  The arrays are not copied.
+   * @param offsets The start of the entries of each context, followed by the total number of entries.
+   * @param outcomes The outcome of each entry.
+   * @param parameters The parameter of each entry.
+   */
+  public ContextTable(int[] offsets, int[] outcomes, double[] parameters) {
+    if (outcomes.length != parameters.length || offsets[offsets.length-1] != outcomes.length) {
+      throw new IllegalArgumentException("The offsets, outcomes and parameters do not describe the same entries.");
+    }
+    this.offsets = offsets;
+    this.outcomes = outcomes;
+    this.parameters = parameters;
+  }
+
+  /**
+   * Creates a table holding a copy of the outcomes and parameters of the specified contexts.
+   * @param contexts The contexts, indexed by predicate.
+   * @return A table with the same outcomes and parameters as the specified contexts.
+   */
+  public static ContextTable fromContexts(Context[] contexts) {
+    int[] offsets = new int[contexts.length+1];
+    for (int pid=0;pid<contexts.length;pid++) {
+      offsets[pid+1] = offsets[pid] + contexts[pid].getOutcomes().length;
+    }
+    int[] outcomes = new int[offsets[contexts.length]];
+    double[] parameters = new double[outcomes.length];
+    for (int pid=0;pid<contexts.length;pid++) {
+      int[] activeOutcomes = contexts[pid].getOutcomes();
+      System.arraycopy(activeOutcomes,0,outcomes,offsets[pid],activeOutcomes.length);
+      System.arraycopy(contexts[pid].getParameters(),0,parameters,offsets[pid],activeOutcomes.length);
+    }
+    return new ContextTable(offsets,outcomes,parameters);
+  }
+
+  /**
+   * Creates a table holding a copy of the outcomes and parameters of the specified table.
+   * @param table The parameters.
+   * @return A table with the same outcomes and parameters as the specified table.
+   */
+  public static ContextTable fromTable(AbstractContextTable table) {
+    int numContexts = table.getNumContexts();
+    int[] offsets = new int[numContexts+1];
+    for (int pid=0;pid<=numContexts;pid++) {
+      offsets[pid] = table.getEntryStart(pid);
+    }
+    int[] outcomes = new int[offsets[numContexts]];
+    double[] parameters = new double[outcomes.length];
+    for (int ai=0;ai<outcomes.length;ai++) {
+      outcomes[ai] = table.getOutcome(ai);
+      parameters[ai] = table.getParameter(ai);
+    }
+    return new ContextTable(offsets,outcomes,parameters);
+  }
+
+  /**
+   * Returns the number of contexts in this table.
+   * @return The number of contexts in this table.
+   */
+  public int getNumContexts() {
+    return offsets.length - 1;
+  }
+
+  public int getEntryStart(int pid) {
+    return offsets[pid];
+  }
+
+  public int getOutcome(int entry) {
+    return outcomes[entry];
+  }
+
+  public double getParameter(int entry) {
+    return parameters[entry];
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset) {
+    for (int ai = offsets[pid], end = offsets[pid+1]; ai < end; ai++) {
+      scores[outcomes[ai] + scoreOffset] += parameters[ai] * value;
+    }
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset, int[] numfeats, int featOffset) {
+    for (int ai = offsets[pid], end = offsets[pid+1]; ai < end; ai++) {
+      int oid = outcomes[ai];
+      numfeats[oid + featOffset]++;
+      scores[oid + scoreOffset] += parameters[ai] * value;
+    }
+  }
+
+  /**
+   * Returns the start of the entries of each context, followed by the total number of entries.
+   * @return The start of the entries of each context.
+   */
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  /**
+   * Returns the outcome of each entry.
+   * @return The outcome of each entry.
+   */
+  public int[] getOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * Returns the parameter of each entry.
+   * @return The parameter of each entry.
+   */
+  public double[] getParameters() {
+    return parameters;
+  }
+}
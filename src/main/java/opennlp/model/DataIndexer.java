@@ -18,8 +18,9 @@
 package opennlp.model;
 
 /** Object which compresses events in memory and performs feature selection.
+ * The labels and predicate counts of the events are declared by {@link IndexedLabels}.
  */
-public interface DataIndexer {
+public interface DataIndexer extends IndexedLabels {
   /**
    * Returns the array of predicates seen in each event. 
    * @return a 2-D array whose first dimension is the event index and array this refers to contains
@@ -39,34 +40,9 @@ public interface DataIndexer {
    */
   public int[] getOutcomeList();
   
-  /**
-   * Returns an array of predicate/context names.
-   * @return an array of predicate/context names indexed by context index.  These indices are the
-   * value of the array returned by <code>getContexts</code>.
-   */
-  public String[] getPredLabels();
-  
-  /**
-   * Returns an array of the count of each predicate in the events.
-   * @return an array of the count of each predicate in the events.
-   */
-  public int[] getPredCounts();
-  
-  /**
-    * Returns an array of outcome names.
-    * @return an array of outcome names indexed by outcome index.
-    */
-  public String[] getOutcomeLabels(); 
-  
   /**
    * Returns the values associated with each event context or null if integer values are to be used. 
    * @return the values associated with each event context.
    */
   public float[][] getValues();
-  
-  /**
-   * Returns the number of total events indexed.
-   * @return The number of total events indexed.
-   */
-  public int getNumEvents();
 }
\ No newline at end of file
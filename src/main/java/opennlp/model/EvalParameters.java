@@ -28,6 +28,8 @@ public class EvalParameters {
  /** Mapping between outcomes and paramater values for each context. 
    * The integer representation of the context can be found using <code>pmap</code>.*/
   private Context[] params;
+  /** The same mapping stored as a table, or null if <code>params</code> is used. */
+  private AbstractContextTable table;
   /** The number of outcomes being predicted. */
   private final int numOutcomes;
   /** The maximum number of feattures fired in an event. Usually refered to a C.
@@ -57,14 +59,48 @@ public class EvalParameters {
   public EvalParameters(Context[] params, int numOutcomes) {
     this(params,0,0,numOutcomes);
   }
+
+  /**
+   * Creates a set of paramters stored in a table which can be evaulated with the eval method.
+   * @param table The parameters of the model.
+   * @param correctionParam The correction paramter.
+   * @param correctionConstant The correction constant.
+   * @param numOutcomes The number of outcomes.
+   */
+  public EvalParameters(AbstractContextTable table, double correctionParam, double correctionConstant, int numOutcomes) {
+    this((Context[]) null,correctionParam,correctionConstant,numOutcomes);
+    this.table = table;
+  }
+
+  public EvalParameters(AbstractContextTable table, int numOutcomes) {
+    this(table,0,0,numOutcomes);
+  }
   
-  /* (non-Javadoc)
-   * @see opennlp.model.EvalParameters#getParams()
+  /**
+   * Returns the parameters of the model as context objects.  If the parameters are stored
+   * in a table, as they are for most trained, read and mapped models, every call builds a
+   * new context object for each predicate, which takes as much time and memory as copying
+   * the whole model.  Keep such calls off hot paths: code which reads the parameters should
+   * use {@link #getContextTable()} when it is not null, and this method is meant for code
+   * which needs the context objects, such as the model writers.
+   * @return The parameters of the model, indexed by predicate.  For a table this is a copy,
+   *         so changing it does not change the model.
    */
   public Context[] getParams() {
+    if (params == null) {
+      return table.toContexts();
+    }
     return params;
   }
 
+  /**
+   * Returns the parameters of the model as a table.
+   * @return The parameters of the model or null if they are stored as context objects.
+   */
+  public AbstractContextTable getContextTable() {
+    return table;
+  }
+
   /* (non-Javadoc)
    * @see opennlp.model.EvalParameters#getNumOutcomes()
    */
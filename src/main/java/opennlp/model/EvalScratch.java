@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * Working storage which allows a model to be evaluated without allocating
+ * any memory per call.  The buffers grow as needed and are then reused, so
+ * once a scratch object has seen the contexts and outcome sets it will be
+ * used with, evaluation is allocation free.
+ * <p>
+ * The context and value buffers have exactly the requested length, so they
+ * can be handed to a {@link Prior} as they are.  One buffer is kept for each
+ * length up to {@link #MAX_CACHED_LENGTH}; a longer context gets a new buffer
+ * on every call.
+ * <p>
+ * A scratch object is not thread safe.  Each thread should own its own
+ * instance, for example by keeping it in a <code>ThreadLocal</code>.
+ */
+public class EvalScratch {
+
+  /** The longest context for which buffers are kept. */
+  public static final int MAX_CACHED_LENGTH = 1024;
+
+  /** Buffers for the integer representation of the predicates of a context, by length. */
+  private int[][] contexts;
+  /** Buffers for the values of the predicates of a context, by length. */
+  private float[][] values;
+  /** Buffer for the number of features which fired for each outcome. */
+  private int[] numfeats;
+  /** Buffer for the outcome distribution. */
+  private double[] probs;
+
+  /**
+   * Creates a scratch object sized for models with the specified number of outcomes.
+   * @param numOutcomes The number of outcomes of the models this will be used with.
+   */
+  public EvalScratch(int numOutcomes) {
+    contexts = new int[0][];
+    values = new float[0][];
+    numfeats = new int[numOutcomes];
+    probs = new double[numOutcomes];
+  }
+
+  public EvalScratch() {
+    this(0);
+  }
+
+  /**
+   * Returns a buffer for the integer representation of a context with the specified number of predicates.
+   * The contents are overwritten by every eval call which uses a context of the same length.
+   * @param length The number of predicates in the context.
+   * @return A buffer of exactly <code>length</code> entries.
+   */
+  public int[] getContexts(int length) {
+    if (length > MAX_CACHED_LENGTH) {
+      return new int[length];
+    }
+    if (contexts.length <= length) {
+      int[][] grown = new int[Math.min(MAX_CACHED_LENGTH + 1, Math.max(length + 1, contexts.length * 2))][];
+      System.arraycopy(contexts, 0, grown, 0, contexts.length);
+      contexts = grown;
+    }
+    int[] buffer = contexts[length];
+    if (buffer == null) {
+      buffer = new int[length];
+      contexts[length] = buffer;
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer for the values of a context with the specified number of predicates.
+   * @param length The number of predicates in the context.
+   * @return A buffer of exactly <code>length</code> entries.
+   */
+  public float[] getValues(int length) {
+    if (length > MAX_CACHED_LENGTH) {
+      return new float[length];
+    }
+    if (values.length <= length) {
+      float[][] grown = new float[Math.min(MAX_CACHED_LENGTH + 1, Math.max(length + 1, values.length * 2))][];
+      System.arraycopy(values, 0, grown, 0, values.length);
+      values = grown;
+    }
+    float[] buffer = values[length];
+    if (buffer == null) {
+      buffer = new float[length];
+      values[length] = buffer;
+    }
+    return buffer;
+  }
+  /**
+   * Returns a buffer for the per outcome feature counts.
+   * @param numOutcomes The number of outcomes of the model.
+   * @return A buffer of at least <code>numOutcomes</code> entries.
+   */
+  public int[] getNumFeats(int numOutcomes) {
+    if (numfeats.length < numOutcomes) {
+      numfeats = new int[numOutcomes];
+    }
+    return numfeats;
+  }
+
+  /**
+   * Returns a buffer for an outcome distribution.  The contents are overwritten
+   * by every eval call which uses this buffer.
+   * @param numOutcomes The number of outcomes of the model.
+   * @return A buffer of exactly <code>numOutcomes</code> entries.
+   */
+  public double[] getProbs(int numOutcomes) {
+    if (probs.length != numOutcomes) {
+      probs = new double[numOutcomes];
+    }
+    return probs;
+  }
+}
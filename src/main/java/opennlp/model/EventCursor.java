@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * Iterates over a range of the indexed events of an {@link EventStore}.  The accessors
+ * describe the current event and are valid until the next call to {@link #next()}.  The
+ * arrays they return may be buffers which are reused for the next event, so a cursor
+ * does not need to allocate any memory per event.
+ */
+public interface EventCursor {
+
+  /**
+   * Moves to the next event.
+   * @return false if there are no more events.
+   */
+  public boolean next();
+
+  /**
+   * Returns the predicates of the current event.
+   * @return The predicates of the current event, one entry per predicate.
+   */
+  public int[] getContext();
+
+  /**
+   * Returns the number of predicates of the current event, which is the length of
+   * {@link #getContext()}.
+   * @return The number of predicates of the current event.
+   */
+  public int getLength();
+
+  /**
+   * Returns the values of the predicates of the current event.
+   * @return The values of the predicates, or null if all values are 1.
+   */
+  public float[] getValues();
+
+  /**
+   * Returns the outcome of the current event.
+   * @return The outcome of the current event.
+   */
+  public int getOutcome();
+
+  /**
+   * Returns the number of times the current event occurred.
+   * @return The number of times the current event occurred.
+   */
+  public int getNumTimesSeen();
+
+  /**
+   * Releases the resources of this cursor.  A cursor which has returned all of its
+   * events releases them itself, but one which is abandoned early must be closed.
+   */
+  public void close();
+}
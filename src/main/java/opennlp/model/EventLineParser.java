@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Parses the UTF-8 encoded lines of an event file directly from a byte array.  A line holds
+ * the outcome followed by the predicates, separated by white space.  When real values are
+ * parsed, a predicate may end with <code>=value</code>, as read by
+ * {@link RealValueFileEventStream}.  The outcome and the predicates are interned into
+ * {@link ByteStringTable}s, so each distinct string is decoded only once.
+ * <p>
+ * The fields describe the last line parsed and are overwritten by the next call to
+ * {@link #parse(byte[], int, int)}.  A parser is not thread safe.
+ */
+class EventLineParser {
+
+  /** Powers of 10 which are exactly representable as floats. */
+  private static final float[] POWERS_OF_TEN = new float[] {
+      1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+
+  final ByteStringTable outcomes = new ByteStringTable();
+  final ByteStringTable predicates = new ByteStringTable();
+  private final boolean realValued;
+
+  /** The outcome id of the last line. */
+  int outcome;
+  /** The predicate ids of the last line. */
+  int[] ids = new int[16];
+  /** The values of the predicates of the last line, which are valid if <code>hasValues</code> is set. */
+  float[] values = new float[16];
+  /** The number of predicates of the last line. */
+  int length;
+  /** Whether any predicate of the last line has a value. */
+  boolean hasValues;
+
+  /**
+   * Creates a parser.
+   * @param realValued Whether <code>=value</code> suffixes are parsed as values.
+   */
+  EventLineParser(boolean realValued) {
+    this.realValued = realValued;
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f';
+  }
+
+  /**
+   * Parses the line held in <code>bytes[start..end)</code>, without its line terminator.
+   * @return false if the line is blank.
+   */
+  boolean parse(byte[] bytes, int start, int end) {
+    length = 0;
+    hasValues = false;
+    boolean first = true;
+    int i = start;
+    while (true) {
+      while (i < end && isSpace(bytes[i])) {
+        i++;
+      }
+      if (i == end) {
+        return !first;
+      }
+      int tokenStart = i;
+      int hash = 0;
+      int split = -1;
+      int splitHash = 0;
+      byte b;
+      while (i < end && !isSpace(b = bytes[i])) {
+        if (b == '=') {
+          split = i;
+          splitHash = hash;
+        }
+        hash = ByteStringTable.hash(hash, b);
+        i++;
+      }
+      if (first) {
+        outcome = outcomes.intern(bytes, tokenStart, i, hash);
+        first = false;
+        continue;
+      }
+      if (length == ids.length) {
+        int[] grownIds = new int[length * 2];
+        System.arraycopy(ids, 0, grownIds, 0, length);
+        ids = grownIds;
+        float[] grownValues = new float[length * 2];
+        System.arraycopy(values, 0, grownValues, 0, length);
+        values = grownValues;
+      }
+      float value = 1;
+      if (realValued && split > tokenStart && split + 1 < i) {
+        try {
+          value = parseFloat(bytes, split + 1, i);
+          if (value < 0) {
+            throw new RuntimeException("Negitive values are not allowed: " + decode(bytes, tokenStart, i));
+          }
+          hasValues = true;
+          hash = splitHash;
+          i = split;
+        }
+        catch (NumberFormatException e) {
+          System.err.println("Unable to determine value in context:" + decode(bytes, tokenStart, i));
+          value = 1;
+          split = -1;
+        }
+      }
+      ids[length] = predicates.intern(bytes, tokenStart, i, hash);
+      values[length] = value;
+      length++;
+      if (i == split) {
+        // skip the value
+        while (i < end && !isSpace(bytes[i])) {
+          i++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates an event for the last line parsed.
+   */
+  Event toEvent() {
+    String[] context = new String[length];
+    for (int ci = 0; ci < length; ci++) {
+      context[ci] = predicates.get(ids[ci]);
+    }
+    float[] eventValues = null;
+    if (hasValues) {
+      eventValues = new float[length];
+      System.arraycopy(values, 0, eventValues, 0, length);
+    }
+    return new Event(outcomes.get(outcome), context, eventValues);
+  }
+
+  /**
+   * Parses the decimal number held in <code>bytes[start..end)</code> and returns the same
+   * value as <code>Float.parseFloat</code>.  Numbers with at most 24 bits of significant
+   * digits and at most 10 digits after or trailing zeros before the decimal point are
+   * converted with a single correctly rounded float operation.  Other numbers, including
+   * those with an exponent, are decoded and passed to <code>Float.parseFloat</code>.
+   * @throws NumberFormatException If the bytes are not a number.
+   */
+  static float parseFloat(byte[] bytes, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int exponent = 0;
+    boolean point = false;
+    boolean digits = false;
+    for (; i < end; i++) {
+      byte b = bytes[i];
+      if (b >= '0' && b <= '9') {
+        digits = true;
+        if (mantissa > (1 << 24)) {
+          return Float.parseFloat(decode(bytes, start, end));
+        }
+        mantissa = mantissa * 10 + (b - '0');
+        if (point) {
+          exponent--;
+        }
+      }
+      else if (b == '.' && !point) {
+        point = true;
+      }
+      else {
+        return Float.parseFloat(decode(bytes, start, end));
+      }
+    }
+    if (!digits) {
+      return Float.parseFloat(decode(bytes, start, end));
+    }
+    while (exponent < 0 && mantissa != 0 && mantissa % 10 == 0) {
+      mantissa /= 10;
+      exponent++;
+    }
+    float value;
+    if (mantissa == 0) {
+      value = 0;
+    }
+    else if (mantissa <= (1 << 24) && exponent >= -10 && exponent <= 10) {
+      // both operands are exact, so the result is correctly rounded
+      value = exponent < 0 ? (float) mantissa / POWERS_OF_TEN[-exponent] : (float) mantissa * POWERS_OF_TEN[exponent];
+    }
+    else {
+      return Float.parseFloat(decode(bytes, start, end));
+    }
+    return negative ? -value : value;
+  }
+
+  static String decode(byte[] bytes, int start, int end) {
+    try {
+      return new String(bytes, start, end - start, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      // every Java platform supports UTF-8
+      throw new IllegalStateException(e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the events written by an {@link EventSpoolWriter}.  The file is read through a
+ * {@link FileChannel} into a reusable buffer, which grows if an event does not fit into it.
+ * The file is closed when the last event has been read.
+ */
+class EventSpoolReader extends AbstractEventStream {
+
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private boolean eof;
+
+  EventSpoolReader(File file) throws IOException {
+    channel = new FileInputStream(file).getChannel();
+    buffer = ByteBuffer.allocate(1 << 16);
+    buffer.flip();
+  }
+
+  public boolean hasNext() {
+    try {
+      if (ensure(1)) {
+        return true;
+      }
+      close();
+      return false;
+    }
+    catch (IOException e) {
+      throw new RuntimeException("Unable to read the event spool: " + e.getMessage(), e);
+    }
+  }
+
+  public Event next() {
+    try {
+      String outcome = readString();
+      boolean hasValues = readByte() != 0;
+      int length = readVarint();
+      String[] context = new String[length];
+      float[] values = hasValues ? new float[length] : null;
+      for (int ci = 0; ci < length; ci++) {
+        context[ci] = readString();
+        if (hasValues) {
+          require(4);
+          values[ci] = buffer.getFloat();
+        }
+      }
+      return new Event(outcome,context,values);
+    }
+    catch (IOException e) {
+      throw new RuntimeException("Unable to read the event spool: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Makes at least the specified number of bytes available in the buffer.
+   * @return false if the end of the file is reached first.
+   */
+  private boolean ensure(int length) throws IOException {
+    if (buffer.remaining() >= length) {
+      return true;
+    }
+    if (eof) {
+      return false;
+    }
+    buffer.compact();
+    if (buffer.capacity() < length) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(length,buffer.capacity() * 2));
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+    while (buffer.position() < length) {
+      if (channel.read(buffer) < 0) {
+        eof = true;
+        break;
+      }
+    }
+    buffer.flip();
+    return buffer.remaining() >= length;
+  }
+
+  private void require(int length) throws IOException {
+    if (!ensure(length)) {
+      throw new EOFException("Truncated event");
+    }
+  }
+
+  private byte readByte() throws IOException {
+    require(1);
+    return buffer.get();
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = readByte();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private String readString() throws IOException {
+    int length = readVarint();
+    require(length);
+    int position = buffer.position();
+    String s = new String(buffer.array(),buffer.arrayOffset() + position,length,"UTF-8");
+    buffer.position(position + length);
+    return s;
+  }
+
+  /**
+   * Closes the file.  This is done automatically once all events have been read.
+   */
+  void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes events to a temporary file in a compact binary form which is read back by
+ * {@link EventSpoolReader}.  Each event is written as:
+ * <ul>
+ * <li>the outcome,</li>
+ * <li>a flag byte which is 1 if the event has values and 0 otherwise,</li>
+ * <li>the number of predicates as a varint,</li>
+ * <li>each predicate, followed by its value as a 4 byte float if the event has values.</li>
+ * </ul>
+ * Strings are written as the varint length of their UTF-8 encoding followed by the encoded bytes.
+ * Varints hold 7 bits per byte, least significant group first, with the high bit set on all
+ * but the last byte.  The format has no header and is not intended to be kept.
+ */
+class EventSpoolWriter {
+
+  private final DataOutputStream output;
+
+  EventSpoolWriter(File file) throws IOException {
+    output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),1 << 16));
+  }
+
+  void write(Event event) throws IOException {
+    writeString(event.getOutcome());
+    String[] context = event.getContext();
+    float[] values = event.getValues();
+    output.writeByte(values == null ? 0 : 1);
+    writeVarint(context.length);
+    for (int ci = 0; ci < context.length; ci++) {
+      writeString(context[ci]);
+      if (values != null) {
+        output.writeFloat(values[ci]);
+      }
+    }
+  }
+
+  private void writeString(String s) throws IOException {
+    byte[] bytes = s.getBytes("UTF-8");
+    writeVarint(bytes.length);
+    output.write(bytes);
+  }
+
+  private void writeVarint(int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      output.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte(value);
+  }
+
+  void close() throws IOException {
+    output.close();
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * The unique events of a {@link DataIndexer}, which trainers read through
+ * {@link EventCursor}s rather than as arrays.  This allows the events to be stored
+ * in a more compact form, or to be read from disk for each pass of training.
+ */
+public interface EventStore {
+
+  /**
+   * Returns the number of unique events.
+   * @return The number of unique events.
+   */
+  public int size();
+
+  /**
+   * Returns a cursor over the events <code>start</code> (inclusive) to <code>end</code> (exclusive).
+   * Several cursors may be used at the same time, each from a single thread.
+   * @param start The first event.
+   * @param end The end of the range.
+   * @return A cursor which is positioned before the first event.
+   */
+  public EventCursor getCursor(int start, int end);
+}
@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An event store which reads the events of a file written by an {@link IndexedDataWriter}
+ * from disk for each cursor, so that a trainer can make many passes over more events than
+ * fit into memory.
+ * <p>
+ * Each cursor reads its range of events sequentially in blocks.  The blocks are read on a
+ * separate thread, which stays up to a configurable number of blocks ahead of the cursor,
+ * so reading the file overlaps with the processing of the events.  The memory used is
+ * bounded by the block size and the read ahead depth rather than by the number of events.
+ * <p>
+ * Opening a store reads the names of the outcomes and predicates and the predicate counts,
+ * which are needed for training, but none of the events.
+ * <p>
+ * The file must not be modified while the store is in use, and the store should be closed
+ * once it is no longer needed.
+ */
+public class FileEventStore implements EventStore, IndexedLabels {
+
+  /** The default number of events in a block. */
+  public static final int DEFAULT_BLOCK_SIZE = 8192;
+  /** The default number of blocks which are read ahead of a cursor. */
+  public static final int DEFAULT_DEPTH = 2;
+
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final int numEvents;
+  private final int numUniqueEvents;
+  private final String[] outcomeLabels;
+  private final String[] predLabels;
+  private final int[] predCounts;
+  private final boolean hasValues;
+  private final long[] sections;
+  private final int blockSize;
+  private final int depth;
+
+  /**
+   * Opens the specified file.
+   * @param file A file written by an {@link IndexedDataWriter}.
+   * @param blockSize The number of events read at a time.
+   * @param depth The number of blocks which may be read ahead of a cursor.
+   * @throws IOException If the file can not be read or was not written by an {@link IndexedDataWriter}.
+   */
+  public FileEventStore(File file, int blockSize, int depth) throws IOException {
+    if (blockSize < 1 || depth < 1) {
+      throw new IllegalArgumentException("blockSize and depth must be at least 1: " + blockSize + ", " + depth);
+    }
+    this.blockSize = blockSize;
+    this.depth = depth;
+    raf = new RandomAccessFile(file, "r");
+    channel = raf.getChannel();
+    try {
+      ByteBuffer header = ByteBuffer.allocate(IndexedDataWriter.HEADER_SIZE);
+      read(channel, header, 0);
+      header.flip();
+      if (header.getInt() != IndexedDataWriter.MAGIC) {
+        throw new IOException("Not an indexed data file: " + file);
+      }
+      int version = header.getInt();
+      if (version != IndexedDataWriter.VERSION) {
+        throw new IOException("Unsupported indexed data version: " + version);
+      }
+      numEvents = header.getInt();
+      int numOutcomes = header.getInt();
+      int numPreds = header.getInt();
+      numUniqueEvents = header.getInt();
+      header.getInt(); // the number of context entries
+      int outcomeChars = header.getInt();
+      int predChars = header.getInt();
+      hasValues = header.getInt() != 0;
+      header.position(IndexedDataWriter.SECTIONS_POSITION);
+      sections = new long[IndexedDataWriter.NUM_SECTIONS];
+      for (int si = 0; si < sections.length; si++) {
+        sections[si] = header.getLong();
+      }
+      // only the names and the predicate counts are read here, the events are read by the cursors
+      outcomeLabels = MappedDataIndexer.readNames(readSection(sections[0], 4L * (numOutcomes + 1)).asIntBuffer(),
+          readSection(sections[1], 2L * outcomeChars).asCharBuffer());
+      predLabels = MappedDataIndexer.readNames(readSection(sections[2], 4L * (numPreds + 1)).asIntBuffer(),
+          readSection(sections[3], 2L * predChars).asCharBuffer());
+      predCounts = new int[numPreds];
+      readSection(sections[4], 4L * numPreds).asIntBuffer().get(predCounts);
+    }
+    catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  public FileEventStore(File file) throws IOException {
+    this(file, DEFAULT_BLOCK_SIZE, DEFAULT_DEPTH);
+  }
+
+  /**
+   * Fills the specified buffer from the specified file position.
+   */
+  private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        throw new EOFException("The indexed data file is truncated");
+      }
+      position += n;
+    }
+  }
+
+  /**
+   * Reads a whole section into a heap buffer.
+   */
+  private ByteBuffer readSection(long position, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Section of " + size + " bytes is too large to be read");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    read(channel, buffer, position);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Returns the number of events which were indexed, counting repeated events each time.
+   * @return The number of events.
+   */
+  public int getNumEvents() {
+    return numEvents;
+  }
+
+  /**
+   * Returns the names of the outcomes, indexed by the outcomes of the events.
+   * @return The outcome names.
+   */
+  public String[] getOutcomeLabels() {
+    return outcomeLabels;
+  }
+
+  /**
+   * Returns the names of the predicates, indexed by the predicates of the contexts.
+   * @return The predicate names.
+   */
+  public String[] getPredLabels() {
+    return predLabels;
+  }
+
+  /**
+   * Returns the number of times each predicate occurred.
+   * @return The predicate counts.
+   */
+  public int[] getPredCounts() {
+    return predCounts;
+  }
+
+  public int size() {
+    return numUniqueEvents;
+  }
+
+  public EventCursor getCursor(int start, int end) {
+    return new ReadAheadCursor(start, end);
+  }
+
+  /**
+   * Closes the file.  Cursors must not be used after the store has been closed.
+   * @throws IOException If the file can not be closed.
+   */
+  public void close() throws IOException {
+    raf.close();
+  }
+
+  /**
+   * The events of one block, decoded into arrays.
+   */
+  private static class Block {
+
+    /** The number of events in the block, or -1 for the block which marks the end of the range. */
+    int count;
+    /** The start of the context of each event in <code>contexts</code>, followed by the number of entries. */
+    int[] offsets;
+    int[] contexts = new int[0];
+    int[] outcomes;
+    int[] seen;
+    byte[] flags;
+    float[] values = new float[0];
+
+    Block(int size, boolean hasValues) {
+      offsets = new int[size + 1];
+      outcomes = new int[size];
+      seen = new int[size];
+      flags = hasValues ? new byte[size] : null;
+    }
+  }
+
+  /**
+   * A cursor whose blocks are read by a separate thread.  The blocks are passed to the cursor
+   * through the <code>full</code> queue and returned through the <code>free</code> queue.
+   */
+  private class ReadAheadCursor implements EventCursor, Runnable {
+
+    private final int start;
+    private final int end;
+    private final BlockingQueue<Block> free;
+    private final BlockingQueue<Block> full;
+    private final Block endMarker = new Block(0, false);
+    private volatile boolean closed;
+    private volatile Throwable error;
+
+    private Block block;
+    private int index;
+    /** Provides a context and a values buffer of the exact length for each event. */
+    private final EvalScratch scratch = new EvalScratch();
+    private int[] context = new int[0];
+    private float[] currentValues;
+
+    ReadAheadCursor(int start, int end) {
+      this.start = start;
+      this.end = end;
+      free = new ArrayBlockingQueue<Block>(depth);
+      full = new ArrayBlockingQueue<Block>(depth + 1);
+      for (int bi = 0; bi < depth; bi++) {
+        free.add(new Block(blockSize, hasValues));
+      }
+      endMarker.count = -1;
+      Thread reader = new Thread(this, "FileEventStore reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    public void run() {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(4 * (blockSize + 1));
+      try {
+        for (int bs = start; bs < end && !closed; bs += blockSize) {
+          Block b = free.take();
+          if (closed) {
+            break;
+          }
+          int count = Math.min(blockSize, end - bs);
+          buffer = readInts(buffer, sections[5] + 4L * bs, b.offsets, count + 1);
+          int first = b.offsets[0];
+          int numEntries = b.offsets[count] - first;
+          for (int ei = 0; ei <= count; ei++) {
+            b.offsets[ei] -= first;
+          }
+          if (b.contexts.length < numEntries) {
+            b.contexts = new int[Math.max(numEntries, b.contexts.length * 2)];
+          }
+          buffer = readInts(buffer, sections[6] + 4L * first, b.contexts, numEntries);
+          buffer = readInts(buffer, sections[7] + 4L * bs, b.outcomes, count);
+          buffer = readInts(buffer, sections[8] + 4L * bs, b.seen, count);
+          if (hasValues) {
+            buffer = fill(buffer, sections[9] + bs, count);
+            buffer.get(b.flags, 0, count);
+            if (b.values.length < numEntries) {
+              b.values = new float[Math.max(numEntries, b.values.length * 2)];
+            }
+            buffer = fill(buffer, sections[10] + 4L * first, 4 * numEntries);
+            buffer.asFloatBuffer().get(b.values, 0, numEntries);
+          }
+          b.count = count;
+          full.put(b);
+        }
+      }
+      catch (Throwable t) {
+        error = t;
+      }
+      finally {
+        // the queue has room for the marker as there are only depth blocks
+        full.offer(endMarker);
+      }
+    }
+
+    private ByteBuffer readInts(ByteBuffer buffer, long position, int[] ints, int count) throws IOException {
+      buffer = fill(buffer, position, 4 * count);
+      buffer.asIntBuffer().get(ints, 0, count);
+      return buffer;
+    }
+
+    /**
+     * Reads the specified number of bytes into the buffer, which is replaced if it is too small.
+     */
+    private ByteBuffer fill(ByteBuffer buffer, long position, int length) throws IOException {
+      if (buffer.capacity() < length) {
+        buffer = ByteBuffer.allocateDirect(Math.max(length, buffer.capacity() * 2));
+      }
+      buffer.clear();
+      buffer.limit(length);
+      read(channel, buffer, position);
+      buffer.flip();
+      return buffer;
+    }
+
+    public boolean next() {
+      if (block == null || ++index >= block.count) {
+        if (block == endMarker) {
+          return false;
+        }
+        if (block != null) {
+          free.offer(block);
+        }
+        try {
+          block = full.take();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          close();
+          throw new RuntimeException("Interrupted while reading events", e);
+        }
+        if (block == endMarker) {
+          if (error != null) {
+            throw new RuntimeException("Unable to read events: " + error.getMessage(), error);
+          }
+          return false;
+        }
+        index = 0;
+      }
+      int from = block.offsets[index];
+      int length = block.offsets[index + 1] - from;
+      context = scratch.getContexts(length);
+      System.arraycopy(block.contexts, from, context, 0, length);
+      if (hasValues && block.flags[index] != 0) {
+        currentValues = scratch.getValues(length);
+        System.arraycopy(block.values, from, currentValues, 0, length);
+      }
+      else {
+        currentValues = null;
+      }
+      return true;
+    }
+
+    public int[] getContext() {
+      return context;
+    }
+
+    public int getLength() {
+      return context.length;
+    }
+
+    public float[] getValues() {
+      return currentValues;
+    }
+
+    public int getOutcome() {
+      return block.outcomes[index];
+    }
+
+    public int getNumTimesSeen() {
+      return block.seen[index];
+    }
+
+    public void close() {
+      closed = true;
+      // hand the blocks back so that a reader waiting for a free block sees that the cursor is closed
+      Block b;
+      while ((b = full.poll()) != null) {
+        if (b != endMarker) {
+          free.offer(b);
+        }
+      }
+      if (block != null && block != endMarker) {
+        free.offer(block);
+      }
+      block = endMarker;
+    }
+  }
+}
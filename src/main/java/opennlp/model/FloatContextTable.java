@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A context table which stores each parameter as a 32 bit floating point number.
+ * The layout is the same compressed sparse row form as {@link ContextTable}.  The
+ * buffers may wrap arrays on the heap or be views of a memory mapped model file.
+ * <p>
+ * Only absolute gets are used, so the table is safe to use from multiple threads.
+ */
+public class FloatContextTable extends AbstractContextTable {
+
+  /** The start of the entries of each context, followed by the total number of entries. */
+  private final IntBuffer offsets;
+  /** The outcome of each entry. */
+  private final IntBuffer outcomes;
+  /** The parameter of each entry. */
+  private final FloatBuffer parameters;
+
+  /**
+   * Creates a table which reads its entries from the specified buffers.  The buffers are not copied.
+   * @param offsets The start of the entries of each context, followed by the total number of entries.
+   * @param outcomes The outcome of each entry.
+   * @param parameters The parameter of each entry.
+   */
+  public FloatContextTable(IntBuffer offsets, IntBuffer outcomes, FloatBuffer parameters) {
+    if (outcomes.capacity() != parameters.capacity() || offsets.get(offsets.capacity()-1) != outcomes.capacity()) {
+      throw new IllegalArgumentException("The offsets, outcomes and parameters do not describe the same entries.");
+    }
+    this.offsets = offsets;
+    this.outcomes = outcomes;
+    this.parameters = parameters;
+  }
+
+  /**
+   * Creates a table on the heap holding the parameters of the specified table rounded to 32 bits.
+   * @param table The parameters.
+   * @return A table with the same outcomes and rounded parameters.
+   */
+  public static FloatContextTable fromTable(AbstractContextTable table) {
+    int numContexts = table.getNumContexts();
+    int[] offsets = new int[numContexts+1];
+    for (int pid=0;pid<=numContexts;pid++) {
+      offsets[pid] = table.getEntryStart(pid);
+    }
+    int[] outcomes = new int[offsets[numContexts]];
+    float[] parameters = new float[outcomes.length];
+    for (int ai=0;ai<outcomes.length;ai++) {
+      outcomes[ai] = table.getOutcome(ai);
+      parameters[ai] = (float) table.getParameter(ai);
+    }
+    return new FloatContextTable(IntBuffer.wrap(offsets),IntBuffer.wrap(outcomes),FloatBuffer.wrap(parameters));
+  }
+
+  public int getNumContexts() {
+    return offsets.capacity() - 1;
+  }
+
+  public int getEntryStart(int pid) {
+    return offsets.get(pid);
+  }
+
+  /**
+   * Returns the size of the buffers of this table which are on the heap.  Mapped buffers are not counted.
+   */
+  public long getHeapSize() {
+    return (offsets.isDirect() ? 0 : 4L * offsets.capacity())
+        + (outcomes.isDirect() ? 0 : 4L * outcomes.capacity())
+        + (parameters.isDirect() ? 0 : 4L * parameters.capacity());
+  }
+
+  public int getOutcome(int entry) {
+    return outcomes.get(entry);
+  }
+
+  public double getParameter(int entry) {
+    return parameters.get(entry);
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset) {
+    for (int ai = offsets.get(pid), end = offsets.get(pid+1); ai < end; ai++) {
+      scores[outcomes.get(ai) + scoreOffset] += parameters.get(ai) * value;
+    }
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset, int[] numfeats, int featOffset) {
+    for (int ai = offsets.get(pid), end = offsets.get(pid+1); ai < end; ai++) {
+      int oid = outcomes.get(ai);
+      numfeats[oid + featOffset]++;
+      scores[oid + scoreOffset] += parameters.get(ai) * value;
+    }
+  }
+}
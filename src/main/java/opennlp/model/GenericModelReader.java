@@ -17,8 +17,12 @@
 
 package opennlp.model;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 import opennlp.maxent.io.GISModelReader;
 import opennlp.perceptron.PerceptronModelReader;
@@ -53,6 +57,37 @@ public class GenericModelReader extends AbstractModelReader {
     return delegateModelReader.constructModel();
   }
   
+  /**
+   * Reads the model stored in the specified file.  As in {@link #GenericModelReader(File)}
+   * and {@link GenericModelWriter}, a name which ends in <code>.gz</code> is read through a
+   * gzip stream, and a name which then ends in <code>.bin</code> is read as a binary model,
+   * any other as a plain text model.  The file is closed when the model has been read.
+   * @param file A model file.
+   * @return The model.
+   * @throws IOException If the model can not be read.
+   */
+  public static AbstractModel readModel(File file) throws IOException {
+    String fileName = file.getName();
+    InputStream input = new BufferedInputStream(new FileInputStream(file));
+    try {
+      if (fileName.endsWith(".gz")) {
+        input = new BufferedInputStream(new GZIPInputStream(input));
+        fileName = fileName.substring(0, fileName.length() - 3);
+      }
+      DataReader reader;
+      if (fileName.endsWith(".bin")) {
+        reader = new BinaryFileDataReader(input);
+      }
+      else {
+        reader = new PlainTextFileDataReader(input);
+      }
+      return new GenericModelReader(reader).getModel();
+    }
+    finally {
+      input.close();
+    }
+  }
+
   public static void main(String[] args) throws IOException {
     AbstractModel m =  new GenericModelReader(new File(args[0])).getModel();
     new GenericModelWriter( m, new File(args[1])).persist();
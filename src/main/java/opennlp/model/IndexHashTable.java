@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * An immutable mapping from strings to their index in an array of strings.
+ * It is used to map predicate names to the integers which represent them in a model.
+ * <p>
+ * The table uses open addressing with linear probing.  Each slot holds the index of
+ * its key and the key's hash code in primitive arrays, so there are no entry objects or
+ * boxed integers, and most failed probes are rejected without calling <code>equals</code>.
+ * The table is built once and is safe to use from multiple threads.
+ */
+public class IndexHashTable implements IndexTable {
+
+  /** The default fraction of slots which may be occupied. */
+  public static final double DEFAULT_LOAD_FACTOR = 0.7;
+
+  /** The keys, indexed by their value. */
+  private final String[] keys;
+  /** The index of the key stored in each slot or -1 if the slot is empty. */
+  private final int[] slots;
+  /** The hash code of the key stored in each slot. */
+  private final int[] hashes;
+  private final int mask;
+
+  /**
+   * Creates a table which maps each of the specified keys to its index in the array.
+   * If a key occurs more than once it is mapped to its last index.
+   * @param keys The keys.  The array is not copied and must not be modified.
+   * @param loadFactor The fraction of slots which may be occupied.
+   */
+  public IndexHashTable(String[] keys, double loadFactor) {
+    if (loadFactor <= 0 || loadFactor >= 1) {
+      throw new IllegalArgumentException("loadFactor must be in the range (0,1): " + loadFactor);
+    }
+    this.keys = keys;
+    int capacity = 1;
+    while (capacity * loadFactor < keys.length) {
+      capacity <<= 1;
+    }
+    mask = capacity - 1;
+    slots = new int[capacity];
+    hashes = new int[capacity];
+    for (int si = 0; si < capacity; si++) {
+      slots[si] = -1;
+    }
+    for (int ki = 0; ki < keys.length; ki++) {
+      int hash = keys[ki].hashCode();
+      int si = spread(hash) & mask;
+      while (slots[si] != -1) {
+        if (hashes[si] == hash && keys[slots[si]].equals(keys[ki])) {
+          break;
+        }
+        si = (si + 1) & mask;
+      }
+      slots[si] = ki;
+      hashes[si] = hash;
+    }
+  }
+
+  public IndexHashTable(String[] keys) {
+    this(keys, DEFAULT_LOAD_FACTOR);
+  }
+
+  static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Retrieves the index of the specified key.
+   * @param key The key.
+   * @return The index of the key or -1 if the key is not in the table.
+   */
+  public int get(String key) {
+    int hash = key.hashCode();
+    int si = spread(hash) & mask;
+    int ki;
+    while ((ki = slots[si]) != -1) {
+      if (hashes[si] == hash && keys[ki].equals(key)) {
+        return ki;
+      }
+      si = (si + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the key with the specified index.
+   * @param index The index of the key.
+   * @return The key.
+   */
+  public String getKey(int index) {
+    return keys[index];
+  }
+
+  /**
+   * Returns the number of keys in the table.
+   * @return The number of keys in the table.
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * Returns the slots of the table, which hold the index of a key or -1.
+   * @return The slots of the table.
+   */
+  int[] getSlots() {
+    return slots;
+  }
+
+  /**
+   * Returns the hash code of the key stored in each slot.
+   * @return The hash codes of the slots.
+   */
+  int[] getHashes() {
+    return hashes;
+  }
+
+  /**
+   * Returns a copy of the keys, indexed by their value.
+   * @return The keys.
+   */
+  public String[] toArray() {
+    String[] array = new String[keys.length];
+    System.arraycopy(keys, 0, array, 0, keys.length);
+    return array;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * A mapping from strings to their index in a table of strings.  It is used to map
+ * predicate names to the integers which represent them in a model.
+ */
+public interface IndexTable {
+
+  /**
+   * Retrieves the index of the specified key.
+   * @param key The key.
+   * @return The index of the key or -1 if the key is not in the table.
+   */
+  public int get(String key);
+
+  /**
+   * Returns the key with the specified index.
+   * @param index The index of the key.
+   * @return The key.
+   */
+  public String getKey(int index);
+
+  /**
+   * Returns the number of keys in the table.
+   * @return The number of keys in the table.
+   */
+  public int size();
+
+  /**
+   * Returns a copy of the keys, indexed by their value.
+   * @return The keys.
+   */
+  public String[] toArray();
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the data of a {@link DataIndexer} in a format which {@link MappedDataIndexer} can
+ * memory map, so that the same events can be used for many training runs without being
+ * indexed again.
+ * <p>
+ * All values are written big-endian.  The file starts with a header of {@link #HEADER_SIZE} bytes:
+ * <ul>
+ * <li>the magic number and the format version</li>
+ * <li>the number of events, outcomes, predicates, unique events and context entries</li>
+ * <li>the number of characters in the outcome names and in the predicate names</li>
+ * <li>1 if the events have values and 0 otherwise</li>
+ * <li>the file position of each of the {@link #NUM_SECTIONS} sections</li>
+ * </ul>
+ * The sections follow, each starting at a multiple of 8 bytes: the start of each outcome name,
+ * the characters of the outcome names, the start of each predicate name, the characters of the
+ * predicate names, the count of each predicate, the start of the context of each unique event,
+ * the predicates of all contexts, the outcome and the number of times seen of each unique
+ * event, and if the events have values a flag byte for each unique event, which is 0 if the
+ * event has no values, and the value of each context entry.  Names are stored as UTF-16
+ * characters, as in the {@link MappedModelWriter} format.
+ * <p>
+ * {@link MappedDataIndexer} maps each section as a single buffer, so no section may be larger
+ * than <code>Integer.MAX_VALUE</code> bytes.  The contexts and the values take 4 bytes per
+ * context entry, which limits the data to about 536 million entries.  The writer rejects data
+ * which does not fit before it writes the file.
+ */
+public class IndexedDataWriter {
+
+  static final int MAGIC = 0x4d584458;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 128;
+  static final int NUM_SECTIONS = 11;
+  /** The position of the section offsets in the header. */
+  static final int SECTIONS_POSITION = 40;
+
+  private final DataIndexer indexer;
+  private final File file;
+  /** The largest section in bytes, which is only lowered by tests. */
+  private final long maxSectionSize;
+  /** The number of bytes written so far. */
+  private long position;
+
+  /**
+   * Creates a writer for the data of the specified indexer.
+   * @param indexer The indexed events.
+   * @param file The file to write.
+   */
+  public IndexedDataWriter(DataIndexer indexer, File file) {
+    this(indexer, file, Integer.MAX_VALUE);
+  }
+
+  IndexedDataWriter(DataIndexer indexer, File file, long maxSectionSize) {
+    this.indexer = indexer;
+    this.file = file;
+    this.maxSectionSize = maxSectionSize;
+  }
+
+  /**
+   * Writes the data to the file.
+   * @throws IOException If the data can not be written.
+   */
+  public void persist() throws IOException {
+    String[] outcomeLabels = indexer.getOutcomeLabels();
+    String[] predLabels = indexer.getPredLabels();
+    int[] predCounts = indexer.getPredCounts();
+    int[][] contexts = indexer.getContexts();
+    float[][] values = indexer.getValues();
+    int[] outcomeList = indexer.getOutcomeList();
+    int[] numTimesEventsSeen = indexer.getNumTimesEventsSeen();
+    int numUniqueEvents = contexts.length;
+    long numEntries = 0;
+    for (int ei = 0; ei < numUniqueEvents; ei++) {
+      numEntries += contexts[ei].length;
+    }
+    if (numEntries > Integer.MAX_VALUE) {
+      throw new IOException("The events have too many predicates to be mapped: " + numEntries);
+    }
+    int outcomeChars = countChars(outcomeLabels);
+    int predChars = countChars(predLabels);
+    boolean hasValues = values != null;
+
+    long[] sizes = new long[] {
+        4L * (outcomeLabels.length + 1), 2L * outcomeChars,
+        4L * (predLabels.length + 1), 2L * predChars, 4L * predLabels.length,
+        4L * (numUniqueEvents + 1), 4L * numEntries,
+        4L * numUniqueEvents, 4L * numUniqueEvents,
+        hasValues ? numUniqueEvents : 0, hasValues ? 4L * numEntries : 0
+    };
+    long[] sections = new long[NUM_SECTIONS];
+    long end = HEADER_SIZE;
+    for (int si = 0; si < NUM_SECTIONS; si++) {
+      if (sizes[si] > maxSectionSize) {
+        throw new IOException("Section of " + sizes[si] + " bytes is too large to be mapped");
+      }
+      sections[si] = end;
+      end = MappedModelWriter.align(end + sizes[si]);
+    }
+
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),1 << 16));
+    try {
+      position = 0;
+      writeInt(output, MAGIC);
+      writeInt(output, VERSION);
+      writeInt(output, indexer.getNumEvents());
+      writeInt(output, outcomeLabels.length);
+      writeInt(output, predLabels.length);
+      writeInt(output, numUniqueEvents);
+      writeInt(output, (int) numEntries);
+      writeInt(output, outcomeChars);
+      writeInt(output, predChars);
+      writeInt(output, hasValues ? 1 : 0);
+      pad(output, SECTIONS_POSITION);
+      for (int si = 0; si < NUM_SECTIONS; si++) {
+        output.writeLong(sections[si]);
+        position += 8;
+      }
+
+      pad(output, sections[0]);
+      writeOffsets(output, outcomeLabels);
+      pad(output, sections[1]);
+      writeChars(output, outcomeLabels);
+      pad(output, sections[2]);
+      writeOffsets(output, predLabels);
+      pad(output, sections[3]);
+      writeChars(output, predLabels);
+      pad(output, sections[4]);
+      for (int pi = 0; pi < predLabels.length; pi++) {
+        writeInt(output, predCounts[pi]);
+      }
+
+      pad(output, sections[5]);
+      int offset = 0;
+      for (int ei = 0; ei < numUniqueEvents; ei++) {
+        writeInt(output, offset);
+        offset += contexts[ei].length;
+      }
+      writeInt(output, offset);
+      pad(output, sections[6]);
+      for (int ei = 0; ei < numUniqueEvents; ei++) {
+        for (int ci = 0; ci < contexts[ei].length; ci++) {
+          writeInt(output, contexts[ei][ci]);
+        }
+      }
+      pad(output, sections[7]);
+      for (int ei = 0; ei < numUniqueEvents; ei++) {
+        writeInt(output, outcomeList[ei]);
+      }
+      pad(output, sections[8]);
+      for (int ei = 0; ei < numUniqueEvents; ei++) {
+        writeInt(output, numTimesEventsSeen[ei]);
+      }
+
+      if (hasValues) {
+        pad(output, sections[9]);
+        for (int ei = 0; ei < numUniqueEvents; ei++) {
+          output.writeByte(values[ei] == null ? 0 : 1);
+          position++;
+        }
+        pad(output, sections[10]);
+        for (int ei = 0; ei < numUniqueEvents; ei++) {
+          for (int ci = 0; ci < contexts[ei].length; ci++) {
+            output.writeFloat(values[ei] == null ? 1f : values[ei][ci]);
+            position += 4;
+          }
+        }
+      }
+      pad(output, end);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  private static int countChars(String[] names) throws IOException {
+    long count = 0;
+    for (int i = 0; i < names.length; i++) {
+      count += names[i].length();
+    }
+    if (count > Integer.MAX_VALUE) {
+      throw new IOException("The names have too many characters to be mapped: " + count);
+    }
+    return (int) count;
+  }
+
+  private void writeInt(DataOutputStream output, int value) throws IOException {
+    output.writeInt(value);
+    position += 4;
+  }
+
+  private void writeOffsets(DataOutputStream output, String[] names) throws IOException {
+    int offset = 0;
+    for (int i = 0; i < names.length; i++) {
+      writeInt(output, offset);
+      offset += names[i].length();
+    }
+    writeInt(output, offset);
+  }
+
+  private void writeChars(DataOutputStream output, String[] names) throws IOException {
+    for (int i = 0; i < names.length; i++) {
+      output.writeChars(names[i]);
+      position += 2L * names[i].length();
+    }
+  }
+
+  /**
+   * Writes zeros up to the specified position.
+   */
+  private void pad(DataOutputStream output, long target) throws IOException {
+    while (position < target) {
+      output.writeByte(0);
+      position++;
+    }
+  }
+
+  /**
+   * Indexes the events in the specified event file and writes the indexed data.
+   */
+  public static void main(String[] args) throws IOException {
+    int ai = 0;
+    boolean real = false;
+    if (args.length > 0 && args[0].equals("-real")) {
+      real = true;
+      ai++;
+    }
+    if (args.length - ai < 2 || args.length - ai > 3) {
+      System.err.println("Usage: IndexedDataWriter [-real] eventfile datafile [cutoff]");
+      System.exit(1);
+    }
+    String eventFile = args[ai++];
+    File dataFile = new File(args[ai++]);
+    int cutoff = ai < args.length ? Integer.parseInt(args[ai++]) : 0;
+    DataIndexer indexer;
+    if (real) {
+      indexer = new TwoPassRealValueDataIndexer(new RealValueFileEventStream(eventFile),cutoff);
+    }
+    else {
+      indexer = new TwoPassDataIndexer(new FileEventStream(eventFile),cutoff);
+    }
+    new IndexedDataWriter(indexer,dataFile).persist();
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * The labels and predicate counts of indexed events, which is all that a trainer needs
+ * besides the events themselves.  A {@link FileEventStore} provides them without reading
+ * the events, so that a trainer can take its events from an {@link EventStore}.
+ */
+public interface IndexedLabels {
+
+  /**
+   * Returns an array of predicate/context names.
+   * @return an array of predicate/context names indexed by context index.  These indices are the
+   * values of the contexts of the events.
+   */
+  public String[] getPredLabels();
+
+  /**
+   * Returns an array of the count of each predicate in the events.
+   * @return an array of the count of each predicate in the events.
+   */
+  public int[] getPredCounts();
+
+  /**
+    * Returns an array of outcome names.
+    * @return an array of outcome names indexed by outcome index.
+    */
+  public String[] getOutcomeLabels();
+
+  /**
+   * Returns the number of total events indexed.
+   * @return The number of total events indexed.
+   */
+  public int getNumEvents();
+}
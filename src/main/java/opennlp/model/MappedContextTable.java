@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A context table whose entries are read in place from buffers, typically views of a
+ * memory mapped model file written by {@link MappedModelWriter}.  The layout is the same
+ * compressed sparse row form as {@link ContextTable}, but nothing is copied onto the heap.
+ * <p>
+ * Only absolute gets are used, so the table is safe to use from multiple threads.
+ */
+public class MappedContextTable extends AbstractContextTable {
+
+  /** The start of the entries of each context, followed by the total number of entries. */
+  private final IntBuffer offsets;
+  /** The outcome of each entry. */
+  private final IntBuffer outcomes;
+  /** The parameter of each entry. */
+  private final DoubleBuffer parameters;
+
+  /**
+   * Creates a table which reads its entries from the specified buffers.  The buffers are not copied.
+   * @param offsets The start of the entries of each context, followed by the total number of entries.
+   * @param outcomes The outcome of each entry.
+   * @param parameters The parameter of each entry.
+   */
+  public MappedContextTable(IntBuffer offsets, IntBuffer outcomes, DoubleBuffer parameters) {
+    if (outcomes.capacity() != parameters.capacity() || offsets.get(offsets.capacity()-1) != outcomes.capacity()) {
+      throw new IllegalArgumentException("The offsets, outcomes and parameters do not describe the same entries.");
+    }
+    this.offsets = offsets;
+    this.outcomes = outcomes;
+    this.parameters = parameters;
+  }
+
+  public int getNumContexts() {
+    return offsets.capacity() - 1;
+  }
+
+  public int getEntryStart(int pid) {
+    return offsets.get(pid);
+  }
+
+  /**
+   * Returns the size of the buffers of this table which are on the heap.  Mapped buffers are not counted.
+   */
+  public long getHeapSize() {
+    return (offsets.isDirect() ? 0 : 4L * offsets.capacity())
+        + (outcomes.isDirect() ? 0 : 4L * outcomes.capacity())
+        + (parameters.isDirect() ? 0 : 8L * parameters.capacity());
+  }
+
+  public int getOutcome(int entry) {
+    return outcomes.get(entry);
+  }
+
+  public double getParameter(int entry) {
+    return parameters.get(entry);
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset) {
+    for (int ai = offsets.get(pid), end = offsets.get(pid+1); ai < end; ai++) {
+      scores[outcomes.get(ai) + scoreOffset] += parameters.get(ai) * value;
+    }
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset, int[] numfeats, int featOffset) {
+    for (int ai = offsets.get(pid), end = offsets.get(pid+1); ai < end; ai++) {
+      int oid = outcomes.get(ai);
+      numfeats[oid + featOffset]++;
+      scores[oid + scoreOffset] += parameters.get(ai) * value;
+    }
+  }
+}
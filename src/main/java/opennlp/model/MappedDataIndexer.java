@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A data indexer which reads events which were indexed earlier and written by an
+ * {@link IndexedDataWriter}.  The file is memory mapped, so opening it only reads the header,
+ * and the arrays returned by the {@link DataIndexer} methods are copied from the mapping in
+ * bulk when they are first requested.  Training several models from the same data therefore
+ * indexes the events only once.
+ * <p>
+ * The file must not be modified while the indexer is in use.
+ */
+public class MappedDataIndexer implements DataIndexer {
+
+  private final int numEvents;
+  private final String[] outcomeLabels;
+  private final String[] predLabels;
+  private final IntBuffer predCountBuffer;
+  /** The start of the context of each unique event, followed by the number of context entries. */
+  private final IntBuffer eventOffsets;
+  private final IntBuffer contextBuffer;
+  private final IntBuffer outcomeBuffer;
+  private final IntBuffer seenBuffer;
+  /** A byte for each unique event which is 0 if the event has no values, or null if no event has values. */
+  private final ByteBuffer valueFlags;
+  private final FloatBuffer valueBuffer;
+
+  private int[] predCounts;
+  private int[][] contexts;
+  private int[] outcomeList;
+  private int[] numTimesEventsSeen;
+  private float[][] values;
+
+  /**
+   * Maps the specified file.
+   * @param file A file written by an {@link IndexedDataWriter}.
+   * @throws IOException If the file can not be mapped or was not written by an {@link IndexedDataWriter}.
+   */
+  public MappedDataIndexer(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() < IndexedDataWriter.HEADER_SIZE) {
+        throw new IOException("Not an indexed data file: " + file);
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, IndexedDataWriter.HEADER_SIZE);
+      if (header.getInt() != IndexedDataWriter.MAGIC) {
+        throw new IOException("Not an indexed data file: " + file);
+      }
+      int version = header.getInt();
+      if (version != IndexedDataWriter.VERSION) {
+        throw new IOException("Unsupported indexed data version: " + version);
+      }
+      numEvents = header.getInt();
+      int numOutcomes = header.getInt();
+      int numPreds = header.getInt();
+      int numUniqueEvents = header.getInt();
+      int numEntries = header.getInt();
+      int outcomeChars = header.getInt();
+      int predChars = header.getInt();
+      boolean hasValues = header.getInt() != 0;
+      header.position(IndexedDataWriter.SECTIONS_POSITION);
+      long[] sections = new long[IndexedDataWriter.NUM_SECTIONS];
+      for (int si = 0; si < sections.length; si++) {
+        sections[si] = header.getLong();
+      }
+
+      outcomeLabels = readNames(map(channel, sections[0], 4L * (numOutcomes + 1)).asIntBuffer(),
+          map(channel, sections[1], 2L * outcomeChars).asCharBuffer());
+      predLabels = readNames(map(channel, sections[2], 4L * (numPreds + 1)).asIntBuffer(),
+          map(channel, sections[3], 2L * predChars).asCharBuffer());
+      predCountBuffer = map(channel, sections[4], 4L * numPreds).asIntBuffer();
+      eventOffsets = map(channel, sections[5], 4L * (numUniqueEvents + 1)).asIntBuffer();
+      contextBuffer = map(channel, sections[6], 4L * numEntries).asIntBuffer();
+      outcomeBuffer = map(channel, sections[7], 4L * numUniqueEvents).asIntBuffer();
+      seenBuffer = map(channel, sections[8], 4L * numUniqueEvents).asIntBuffer();
+      if (hasValues) {
+        valueFlags = map(channel, sections[9], numUniqueEvents);
+        valueBuffer = map(channel, sections[10], 4L * numEntries).asFloatBuffer();
+      }
+      else {
+        valueFlags = null;
+        valueBuffer = null;
+      }
+    }
+    finally {
+      // the mappings stay valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  static String[] readNames(IntBuffer offsets, CharBuffer chars) {
+    String[] names = new String[offsets.capacity() - 1];
+    for (int ni = 0; ni < names.length; ni++) {
+      chars.limit(offsets.get(ni + 1)).position(offsets.get(ni));
+      names[ni] = chars.toString();
+    }
+    return names;
+  }
+
+  private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      // the writer does not produce such files
+      throw new IOException("Section of " + size + " bytes is too large to be mapped");
+    }
+    if (position + size > channel.size()) {
+      throw new IOException("The indexed data file is truncated");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    int[] array = new int[buffer.capacity()];
+    buffer.duplicate().get(array);
+    return array;
+  }
+
+  public synchronized int[][] getContexts() {
+    if (contexts == null) {
+      int numUniqueEvents = outcomeBuffer.capacity();
+      int[][] cs = new int[numUniqueEvents][];
+      IntBuffer buffer = contextBuffer.duplicate();
+      for (int ei = 0; ei < numUniqueEvents; ei++) {
+        cs[ei] = new int[eventOffsets.get(ei + 1) - eventOffsets.get(ei)];
+        buffer.get(cs[ei]);
+      }
+      contexts = cs;
+    }
+    return contexts;
+  }
+
+  public synchronized int[] getNumTimesEventsSeen() {
+    if (numTimesEventsSeen == null) {
+      numTimesEventsSeen = toArray(seenBuffer);
+    }
+    return numTimesEventsSeen;
+  }
+
+  public synchronized int[] getOutcomeList() {
+    if (outcomeList == null) {
+      outcomeList = toArray(outcomeBuffer);
+    }
+    return outcomeList;
+  }
+
+  public String[] getPredLabels() {
+    return predLabels;
+  }
+
+  public synchronized int[] getPredCounts() {
+    if (predCounts == null) {
+      predCounts = toArray(predCountBuffer);
+    }
+    return predCounts;
+  }
+
+  public String[] getOutcomeLabels() {
+    return outcomeLabels;
+  }
+
+  public synchronized float[][] getValues() {
+    if (values == null && valueBuffer != null) {
+      int numUniqueEvents = outcomeBuffer.capacity();
+      float[][] vs = new float[numUniqueEvents][];
+      FloatBuffer buffer = valueBuffer.duplicate();
+      for (int ei = 0; ei < numUniqueEvents; ei++) {
+        int length = eventOffsets.get(ei + 1) - eventOffsets.get(ei);
+        if (valueFlags.get(ei) == 0) {
+          buffer.position(buffer.position() + length);
+        }
+        else {
+          vs[ei] = new float[length];
+          buffer.get(vs[ei]);
+        }
+      }
+      values = vs;
+    }
+    return values;
+  }
+
+  public int getNumEvents() {
+    return numEvents;
+  }
+}
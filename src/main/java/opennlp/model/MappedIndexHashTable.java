@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * An index table which is read in place from buffers, typically views of a memory mapped
+ * model file written by {@link MappedModelWriter}.  The slots use the same open addressing
+ * scheme as {@link IndexHashTable}, and the keys are stored as UTF-16 characters, so a
+ * lookup compares the key with the stored characters without creating any strings.
+ * <p>
+ * Only absolute gets are used, so the table is safe to use from multiple threads.
+ */
+public class MappedIndexHashTable implements IndexTable {
+
+  /** The start of each key in <code>chars</code>, followed by the total number of characters. */
+  private final IntBuffer keyOffsets;
+  /** The characters of all keys. */
+  private final CharBuffer chars;
+  /** The index of the key stored in each slot or -1 if the slot is empty. */
+  private final IntBuffer slots;
+  /** The hash code of the key stored in each slot. */
+  private final IntBuffer hashes;
+  private final int mask;
+
+  /**
+   * Creates a table which reads its keys and slots from the specified buffers.  The buffers are not copied.
+   * @param keyOffsets The start of each key in <code>chars</code>, followed by the total number of characters.
+   * @param chars The characters of all keys.
+   * @param slots The index of the key stored in each slot or -1 if the slot is empty.  The number of slots
+   *              must be a power of 2.
+   * @param hashes The hash code of the key stored in each slot.
+   */
+  public MappedIndexHashTable(IntBuffer keyOffsets, CharBuffer chars, IntBuffer slots, IntBuffer hashes) {
+    int capacity = slots.capacity();
+    if (capacity == 0 || (capacity & (capacity - 1)) != 0 || hashes.capacity() != capacity) {
+      throw new IllegalArgumentException("The number of slots must be a power of 2: " + capacity);
+    }
+    if (keyOffsets.get(keyOffsets.capacity()-1) != chars.capacity()) {
+      throw new IllegalArgumentException("The key offsets do not match the characters.");
+    }
+    this.keyOffsets = keyOffsets;
+    this.chars = chars;
+    this.slots = slots;
+    this.hashes = hashes;
+    this.mask = capacity - 1;
+  }
+
+  public int get(String key) {
+    int hash = key.hashCode();
+    int si = IndexHashTable.spread(hash) & mask;
+    int ki;
+    while ((ki = slots.get(si)) != -1) {
+      if (hashes.get(si) == hash && keyEquals(ki, key)) {
+        return ki;
+      }
+      si = (si + 1) & mask;
+    }
+    return -1;
+  }
+
+  private boolean keyEquals(int index, String key) {
+    int start = keyOffsets.get(index);
+    int length = keyOffsets.get(index+1) - start;
+    if (length != key.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (chars.get(start + i) != key.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String getKey(int index) {
+    int start = keyOffsets.get(index);
+    char[] key = new char[keyOffsets.get(index+1) - start];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = chars.get(start + i);
+    }
+    return new String(key);
+  }
+
+  public int size() {
+    return keyOffsets.capacity() - 1;
+  }
+
+  public String[] toArray() {
+    String[] array = new String[size()];
+    for (int ki = 0; ki < array.length; ki++) {
+      array[ki] = getKey(ki);
+    }
+    return array;
+  }
+}
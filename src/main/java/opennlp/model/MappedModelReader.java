@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import opennlp.maxent.GISModel;
+import opennlp.perceptron.PerceptronModel;
+
+/**
+ * Reads a model written by {@link MappedModelWriter} by memory mapping the file.  The parameters,
+ * in any {@link ParameterEncoding}, their outcomes and the predicate table are used in place, so
+ * loading takes the same short time for any size of model, the parameters do not occupy the heap,
+ * and processes which map the same file share its pages.  Only the outcome names are copied onto
+ * the heap.
+ * <p>
+ * The file must not be modified while a model read from it is in use.
+ */
+public class MappedModelReader {
+
+  private final File file;
+
+  public MappedModelReader(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Maps the file and creates a model which reads its parameters from the mapping.
+   * @return The model.
+   * @throws IOException If the file can not be mapped or is not a mapped model.
+   */
+  public AbstractModel getModel() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() < MappedModelWriter.HEADER_SIZE) {
+        throw new IOException("Not a mapped model: " + file);
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, MappedModelWriter.HEADER_SIZE);
+      if (header.getInt() != MappedModelWriter.MAGIC) {
+        throw new IOException("Not a mapped model: " + file);
+      }
+      int version = header.getInt();
+      if (version != MappedModelWriter.VERSION) {
+        throw new IOException("Unsupported mapped model version: " + version);
+      }
+      int modelType = header.getInt();
+      int encodingCode = header.getInt();
+      if (encodingCode < 0 || encodingCode >= ParameterEncoding.values().length) {
+        throw new IOException("Unknown parameter encoding: " + encodingCode);
+      }
+      ParameterEncoding encoding = ParameterEncoding.values()[encodingCode];
+      int correctionConstant = header.getInt();
+      double correctionParam = header.getDouble();
+      int numOutcomes = header.getInt();
+      int numPreds = header.getInt();
+      int numEntries = header.getInt();
+      int capacity = header.getInt();
+      int outcomeChars = header.getInt();
+      int predChars = header.getInt();
+      header.position(MappedModelWriter.SECTIONS_POSITION);
+      long[] sections = new long[MappedModelWriter.NUM_SECTIONS];
+      for (int si = 0; si < sections.length; si++) {
+        sections[si] = header.getLong();
+      }
+
+      IntBuffer outcomeOffsets = map(channel, sections[0], 4L * (numOutcomes + 1)).asIntBuffer();
+      CharBuffer outcomeCharBuffer = map(channel, sections[1], 2L * outcomeChars).asCharBuffer();
+      String[] outcomeNames = new String[numOutcomes];
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        outcomeCharBuffer.limit(outcomeOffsets.get(oi + 1)).position(outcomeOffsets.get(oi));
+        outcomeNames[oi] = outcomeCharBuffer.toString();
+      }
+
+      IndexTable pmap = new MappedIndexHashTable(
+          map(channel, sections[2], 4L * (numPreds + 1)).asIntBuffer(),
+          map(channel, sections[3], 2L * predChars).asCharBuffer(),
+          map(channel, sections[4], 4L * capacity).asIntBuffer(),
+          map(channel, sections[5], 4L * capacity).asIntBuffer());
+      IntBuffer offsets = map(channel, sections[6], 4L * (numPreds + 1)).asIntBuffer();
+      IntBuffer outcomes = map(channel, sections[7], 4L * numEntries).asIntBuffer();
+      ByteBuffer parameters = map(channel, sections[8], (long) encoding.getBytesPerParameter() * numEntries);
+      AbstractContextTable params;
+      if (encoding == ParameterEncoding.Float32) {
+        params = new FloatContextTable(offsets, outcomes, parameters.asFloatBuffer());
+      }
+      else if (encoding == ParameterEncoding.Int8) {
+        params = new QuantizedContextTable(offsets, outcomes, parameters,
+            map(channel, sections[9], 4L * numPreds).asFloatBuffer());
+      }
+      else {
+        params = new MappedContextTable(offsets, outcomes, parameters.asDoubleBuffer());
+      }
+
+      if (modelType == MappedModelWriter.GIS_MODEL) {
+        return new GISModel(params, pmap, outcomeNames, correctionConstant, correctionParam);
+      }
+      else if (modelType == MappedModelWriter.PERCEPTRON_MODEL) {
+        return new PerceptronModel(params, pmap, outcomeNames);
+      }
+      else {
+        throw new IOException("Unknown model type: " + modelType);
+      }
+    }
+    finally {
+      // the mappings stay valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      // the writer does not produce such files
+      throw new IOException("Section of " + size + " bytes is too large to be mapped");
+    }
+    if (position + size > channel.size()) {
+      throw new IOException("The mapped model is truncated");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import opennlp.model.AbstractModel.ModelType;
+
+/**
+ * Writes a model in a format which {@link MappedModelReader} can memory map and use in place.
+ * <p>
+ * All values are written big-endian.  The file starts with a header of {@link #HEADER_SIZE} bytes:
+ * <ul>
+ * <li>the magic number, the format version, the model type and the parameter encoding</li>
+ * <li>the correction constant and the correction parameter</li>
+ * <li>the number of outcomes, predicates, parameter entries and hash table slots</li>
+ * <li>the number of characters in the outcome names and in the predicate names</li>
+ * <li>the file position of each of the {@link #NUM_SECTIONS} sections</li>
+ * </ul>
+ * The sections follow, each starting at a multiple of 8 bytes: the start of each outcome name,
+ * the characters of the outcome names, the start of each predicate name, the characters of the
+ * predicate names, the slots and hash codes of the predicate hash table, the start of the
+ * parameters of each predicate, the outcome and the parameter of each entry, and for the
+ * {@link ParameterEncoding#Int8} encoding the scale of each predicate.  Names are
+ * stored as UTF-16 characters and the hash table uses the layout of {@link IndexHashTable}, so
+ * predicates can be looked up without decoding the table.
+ * <p>
+ * Each section is mapped as a single buffer, so no section may be larger than
+ * <code>Integer.MAX_VALUE</code> bytes.  This limits the number of parameter entries to
+ * {@link #getMaxEntries(ParameterEncoding)}, about 268 million in the
+ * {@link ParameterEncoding#Float64} encoding and 536 million in the others.  The writer
+ * rejects a model which does not fit before it writes the file.
+ */
+public class MappedModelWriter {
+
+  static final int MAGIC = 0x4d584d4d;
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 256;
+  static final int NUM_SECTIONS = 10;
+  /** The position of the section offsets in the header. */
+  static final int SECTIONS_POSITION = 56;
+
+  static final int GIS_MODEL = 0;
+  static final int PERCEPTRON_MODEL = 1;
+
+  private final AbstractModel model;
+  private final File file;
+  private final ParameterEncoding encoding;
+  /** The number of bytes written so far. */
+  private long position;
+
+  /**
+   * Creates a writer which stores the parameters of the model in the specified encoding.
+   * @param model The model.
+   * @param file The file to write.
+   * @param encoding The encoding of the parameters.
+   */
+  public MappedModelWriter(AbstractModel model, File file, ParameterEncoding encoding) {
+    this.model = model;
+    this.file = file;
+    this.encoding = encoding;
+  }
+
+  public MappedModelWriter(AbstractModel model, File file) {
+    this(model,file,ParameterEncoding.Float64);
+  }
+
+  /**
+   * Returns the largest number of parameter entries which a mapped model can hold in the
+   * specified encoding.
+   * @param encoding The encoding of the parameters.
+   * @return The largest number of entries.
+   */
+  public static int getMaxEntries(ParameterEncoding encoding) {
+    // the outcome of each entry takes 4 bytes in a section of its own
+    return Integer.MAX_VALUE / Math.max(4, encoding.getBytesPerParameter());
+  }
+
+  /**
+   * Returns the specified position rounded up to a multiple of 8.
+   */
+  static long align(long position) {
+    return (position + 7) & ~7L;
+  }
+
+  /**
+   * Writes the model to the file.
+   * @throws IOException If the model can not be written.
+   */
+  public void persist() throws IOException {
+    String[] outcomeNames = model.outcomeNames;
+    IndexTable pmap = model.pmap;
+    AbstractContextTable table = model.evalParams.getContextTable();
+    if (table == null) {
+      table = ContextTable.fromContexts(model.evalParams.getParams());
+    }
+    IndexHashTable hashTable = pmap instanceof IndexHashTable ? (IndexHashTable) pmap : new IndexHashTable(pmap.toArray());
+    int numOutcomes = outcomeNames.length;
+    int numPreds = pmap.size();
+    int numEntries = table.getNumEntries();
+    int capacity = hashTable.getSlots().length;
+    if (table.getNumContexts() != numPreds) {
+      throw new IOException("The model has " + numPreds + " predicates but parameters for " + table.getNumContexts());
+    }
+    if (numEntries > getMaxEntries(encoding)) {
+      throw new IOException("The model has " + numEntries + " parameter entries but at most " + getMaxEntries(encoding)
+          + " can be mapped in the " + encoding + " encoding");
+    }
+    int outcomeChars = countChars(outcomeNames);
+    int predChars = countChars(pmap);
+
+    long[] sizes = new long[] {
+        4L * (numOutcomes + 1), 2L * outcomeChars,
+        4L * (numPreds + 1), 2L * predChars,
+        4L * capacity, 4L * capacity,
+        4L * (numPreds + 1), 4L * numEntries, (long) encoding.getBytesPerParameter() * numEntries,
+        encoding == ParameterEncoding.Int8 ? 4L * numPreds : 0
+    };
+    long[] sections = new long[NUM_SECTIONS];
+    long end = HEADER_SIZE;
+    for (int si = 0; si < NUM_SECTIONS; si++) {
+      if (sizes[si] > Integer.MAX_VALUE) {
+        throw new IOException("Section " + si + " of " + sizes[si] + " bytes is too large to be mapped");
+      }
+      sections[si] = end;
+      end = align(end + sizes[si]);
+    }
+
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      position = 0;
+      writeInt(output, MAGIC);
+      writeInt(output, VERSION);
+      writeInt(output, model.getModelType() == ModelType.Perceptron ? PERCEPTRON_MODEL : GIS_MODEL);
+      writeInt(output, encoding.ordinal());
+      writeInt(output, (int) model.evalParams.getCorrectionConstant());
+      writeDouble(output, model.evalParams.getCorrectionParam());
+      writeInt(output, numOutcomes);
+      writeInt(output, numPreds);
+      writeInt(output, numEntries);
+      writeInt(output, capacity);
+      writeInt(output, outcomeChars);
+      writeInt(output, predChars);
+      pad(output, SECTIONS_POSITION);
+      for (int si = 0; si < NUM_SECTIONS; si++) {
+        writeLong(output, sections[si]);
+      }
+
+      pad(output, sections[0]);
+      int offset = 0;
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        writeInt(output, offset);
+        offset += outcomeNames[oi].length();
+      }
+      writeInt(output, offset);
+      pad(output, sections[1]);
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        writeChars(output, outcomeNames[oi]);
+      }
+
+      pad(output, sections[2]);
+      offset = 0;
+      for (int pi = 0; pi < numPreds; pi++) {
+        writeInt(output, offset);
+        offset += pmap.getKey(pi).length();
+      }
+      writeInt(output, offset);
+      pad(output, sections[3]);
+      for (int pi = 0; pi < numPreds; pi++) {
+        writeChars(output, pmap.getKey(pi));
+      }
+
+      pad(output, sections[4]);
+      int[] slots = hashTable.getSlots();
+      for (int si = 0; si < capacity; si++) {
+        writeInt(output, slots[si]);
+      }
+      pad(output, sections[5]);
+      int[] hashes = hashTable.getHashes();
+      for (int si = 0; si < capacity; si++) {
+        writeInt(output, hashes[si]);
+      }
+
+      pad(output, sections[6]);
+      for (int pi = 0; pi <= numPreds; pi++) {
+        writeInt(output, table.getEntryStart(pi));
+      }
+      pad(output, sections[7]);
+      for (int ai = 0; ai < numEntries; ai++) {
+        writeInt(output, table.getOutcome(ai));
+      }
+      pad(output, sections[8]);
+      if (encoding == ParameterEncoding.Int8) {
+        float[] scales = new float[numPreds];
+        for (int pi = 0; pi < numPreds; pi++) {
+          scales[pi] = QuantizedContextTable.getScale(table, pi);
+          for (int ai = table.getEntryStart(pi), aend = table.getEntryStart(pi+1); ai < aend; ai++) {
+            output.writeByte(QuantizedContextTable.quantize(table.getParameter(ai), scales[pi]));
+            position++;
+          }
+        }
+        pad(output, sections[9]);
+        for (int pi = 0; pi < numPreds; pi++) {
+          output.writeFloat(scales[pi]);
+          position += 4;
+        }
+      }
+      else {
+        for (int ai = 0; ai < numEntries; ai++) {
+          if (encoding == ParameterEncoding.Float32) {
+            output.writeFloat((float) table.getParameter(ai));
+            position += 4;
+          }
+          else {
+            writeDouble(output, table.getParameter(ai));
+          }
+        }
+      }
+      pad(output, end);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  private static int countChars(String[] names) throws IOException {
+    long count = 0;
+    for (int i = 0; i < names.length; i++) {
+      count += names[i].length();
+    }
+    return checkChars(count);
+  }
+
+  private static int countChars(IndexTable names) throws IOException {
+    long count = 0;
+    for (int i = 0; i < names.size(); i++) {
+      count += names.getKey(i).length();
+    }
+    return checkChars(count);
+  }
+
+  private static int checkChars(long count) throws IOException {
+    if (count > Integer.MAX_VALUE) {
+      throw new IOException("The names have too many characters to be mapped: " + count);
+    }
+    return (int) count;
+  }
+
+  private void writeInt(DataOutputStream output, int value) throws IOException {
+    output.writeInt(value);
+    position += 4;
+  }
+
+  private void writeLong(DataOutputStream output, long value) throws IOException {
+    output.writeLong(value);
+    position += 8;
+  }
+
+  private void writeDouble(DataOutputStream output, double value) throws IOException {
+    output.writeDouble(value);
+    position += 8;
+  }
+
+  private void writeChars(DataOutputStream output, String value) throws IOException {
+    output.writeChars(value);
+    position += 2L * value.length();
+  }
+
+  /**
+   * Writes zeros up to the specified position.
+   */
+  private void pad(DataOutputStream output, long target) throws IOException {
+    while (position < target) {
+      output.writeByte(0);
+      position++;
+    }
+  }
+
+  /**
+   * Converts a model in any of the formats read by {@link GenericModelReader} to the mapped format.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: MappedModelWriter model mapped_model [Float64|Float32|Int8]");
+      System.exit(1);
+    }
+    AbstractModel m = new GenericModelReader(new File(args[0])).getModel();
+    ParameterEncoding encoding = args.length == 3 ? ParameterEncoding.valueOf(args[2]) : ParameterEncoding.Float64;
+    new MappedModelWriter(m, new File(args[1]), encoding).persist();
+  }
+}
@@ -56,6 +56,19 @@ public interface MaxentModel {
    */
   public double[] eval(String[] context, float[] values);
 
+  /**
+   * Evaluates many contexts in one call.  This gives the same probabilities as calling
+   * <code>eval</code> for each context but lets the model share lookups and working
+   * storage between the contexts.
+   *
+   * @param contexts The contexts to evaluate.
+   * @param values The values associated with each context or null if all values are 1.
+   *               An individual row may also be null.
+   * @param out The arrays which are populated with the probabilities of each context.
+   *            Each row must have one entry per outcome.
+   */
+  public void evalBatch(String[][] contexts, float[][] values, double[][] out);
+
   /**
    * Simple function to return the outcome associated with the index
    * containing the highest probability in the double[].
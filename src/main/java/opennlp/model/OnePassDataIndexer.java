@@ -61,6 +61,22 @@ public class OnePassDataIndexer extends AbstractDataIndexer  {
      *               observed in order to be included in the model.
      */
     public OnePassDataIndexer(EventStream eventStream, int cutoff, boolean sort) {
+      this(eventStream,cutoff,sort,false);
+    }
+
+    /**
+     * Creates an indexer which optionally finds duplicate events using a hash table.
+     *
+     * @param eventStream The events.
+     * @param cutoff The minimum number of times a predicate must have been
+     *               observed in order to be included in the model.
+     * @param sort Whether duplicate events are merged.
+     * @param hashMerge Whether duplicates are found using a hash table, which keeps the
+     *               unique events in the order in which they were first seen, rather than
+     *               by sorting the events.
+     */
+    public OnePassDataIndexer(EventStream eventStream, int cutoff, boolean sort, boolean hashMerge) {
+        setHashMerge(hashMerge);
         Map<String,Integer> predicateIndex = new HashMap<String,Integer>();
         LinkedList<Event> events;
         List eventsToCompare;
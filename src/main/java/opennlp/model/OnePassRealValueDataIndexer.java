@@ -18,7 +18,6 @@
 package opennlp.model;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,6 +37,10 @@ public class OnePassRealValueDataIndexer extends OnePassDataIndexer {
   public OnePassRealValueDataIndexer(EventStream eventStream, int cutoff, boolean sort) {
     super(eventStream,cutoff,sort);
   }
+
+  public OnePassRealValueDataIndexer(EventStream eventStream, int cutoff, boolean sort, boolean hashMerge) {
+    super(eventStream,cutoff,sort,hashMerge);
+  }
   
   /**
    * Two argument constructor for DataIndexer.
@@ -56,15 +59,7 @@ public class OnePassRealValueDataIndexer extends OnePassDataIndexer {
 
   protected int sortAndMerge(List eventsToCompare,boolean sort) {
     int numUniqueEvents = super.sortAndMerge(eventsToCompare,sort);
-    values = new float[numUniqueEvents][];
-    int numEvents = eventsToCompare.size();
-    for (int i = 0, j = 0; i < numEvents; i++) {
-      ComparableEvent evt = (ComparableEvent) eventsToCompare.get(i);
-      if (null == evt) {
-        continue; // this was a dupe, skip over it.
-      }
-      values[j++] = evt.values;
-    }
+    values = collectValues(eventsToCompare,numUniqueEvents);
     return numUniqueEvents;
   }
   
@@ -74,13 +69,9 @@ public class OnePassRealValueDataIndexer extends OnePassDataIndexer {
     int numEvents = events.size();
     int outcomeCount = 0;
     List eventsToCompare = new ArrayList(numEvents);
-    List<Integer> indexedContext = new ArrayList<Integer>();
     
     for (int eventIndex=0; eventIndex<numEvents; eventIndex++) {
       Event ev = (Event)events.removeFirst();
-      String[] econtext = ev.getContext();
-      ComparableEvent ce;
-      
       int ocID;
       String oc = ev.getOutcome();
       
@@ -91,27 +82,10 @@ public class OnePassRealValueDataIndexer extends OnePassDataIndexer {
         omap.put(oc, ocID);
       }
       
-      for (int i=0; i<econtext.length; i++) {
-        String pred = econtext[i];
-        if (predicateIndex.containsKey(pred)) {
-          indexedContext.add(predicateIndex.get(pred));
-        }
-      }
-      
-      //drop events with no active features
-      if (indexedContext.size() > 0) {
-        int[] cons = new int[indexedContext.size()];
-        for (int ci=0;ci<cons.length;ci++) {
-          cons[ci] = indexedContext.get(ci);
-        }
-        ce = new ComparableEvent(ocID, cons, ev.getValues());
+      ComparableEvent ce = indexEvent(ev, ocID, predicateIndex, true);
+      if (ce != null) {
         eventsToCompare.add(ce);
       }
-      else {
-        System.err.println("Dropped event "+ev.getOutcome()+":"+Arrays.asList(ev.getContext()));
-      }
-//    recycle the TIntArrayList
-      indexedContext.clear();
     }
     outcomeLabels = toIndexedStringArray(omap);
     predLabels = toIndexedStringArray(predicateIndex);
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads an uncompressed, UTF-8 encoded event file in the format read by
+ * {@link ByteFileEventStream} on several threads.  The file is split into chunks of a fixed
+ * number of bytes.  A chunk holds the lines which start within it, so its last line may
+ * extend into the next chunk.  Each worker thread reads whole chunks with positional reads
+ * and parses them with its own {@link EventLineParser}.
+ * <p>
+ * The events of a chunk are returned together, either in the order of the chunks in the
+ * file, in which case the events are the same as those of a {@link ByteFileEventStream}, or
+ * in the order in which the chunks are parsed, which keeps the consumer from waiting for a
+ * slow chunk.  At most two chunks per thread are parsed ahead of the consumer, which bounds
+ * the memory used.
+ * <p>
+ * The workers are started by the constructor and stop when the last chunk has been parsed.
+ * A stream which is not read to the end should be closed.
+ */
+public class ParallelFileEventStream extends AbstractEventStream {
+
+  /** The default number of bytes in a chunk. */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final int chunkSize;
+  private final int numChunks;
+  private final boolean ordered;
+  private final boolean realValued;
+
+  /** Limits the number of chunks which are parsed ahead of the consumer. */
+  private final Semaphore window;
+  /** The next chunk to be claimed by a worker, guarded by <code>this</code>. */
+  private int nextChunk;
+  /** The parsed chunks which have not been taken yet, indexed by chunk, guarded by <code>this</code>. */
+  private final ArrayList<List<Event>> parsed;
+  /** The chunks in the order in which they were parsed, if they are not returned in file order, guarded by <code>this</code>. */
+  private final LinkedList<Integer> completed = new LinkedList<Integer>();
+  /** The number of chunks which have been taken by the consumer. */
+  private int taken;
+  private volatile boolean closed;
+  private volatile Throwable error;
+
+  private List<Event> batch;
+  private int index;
+
+  /**
+   * Opens the specified file and starts parsing it.
+   * @param file The event file.
+   * @param realValued Whether <code>=value</code> suffixes of predicates are parsed as values.
+   * @param threads The number of worker threads.
+   * @param ordered Whether the events are returned in the order of the file.
+   * @param chunkSize The number of bytes in a chunk.
+   * @throws IOException When the file can not be opened.
+   */
+  public ParallelFileEventStream(File file, boolean realValued, int threads, boolean ordered, int chunkSize) throws IOException {
+    if (threads < 1 || chunkSize < 1) {
+      throw new IllegalArgumentException("threads and chunkSize must be at least 1: " + threads + ", " + chunkSize);
+    }
+    channel = new FileInputStream(file).getChannel();
+    fileSize = channel.size();
+    this.chunkSize = chunkSize;
+    this.ordered = ordered;
+    this.realValued = realValued;
+    long chunks = (fileSize + chunkSize - 1) / chunkSize;
+    if (chunks > Integer.MAX_VALUE) {
+      channel.close();
+      throw new IllegalArgumentException("The chunk size is too small for a file of " + fileSize + " bytes");
+    }
+    numChunks = (int) chunks;
+    parsed = new ArrayList<List<Event>>(numChunks);
+    for (int ci = 0; ci < numChunks; ci++) {
+      parsed.add(null);
+    }
+    window = new Semaphore(2 * threads);
+    for (int ti = 0; ti < threads; ti++) {
+      Thread worker = new Thread(new Worker(), "ParallelFileEventStream worker");
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  public ParallelFileEventStream(File file, boolean realValued, int threads, boolean ordered) throws IOException {
+    this(file, realValued, threads, ordered, DEFAULT_CHUNK_SIZE);
+  }
+
+  public boolean hasNext() {
+    while (batch == null || index == batch.size()) {
+      if (taken == numChunks) {
+        close();
+        return false;
+      }
+      batch = take();
+      index = 0;
+    }
+    return true;
+  }
+
+  public Event next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Event event = batch.get(index);
+    batch.set(index++, null);
+    return event;
+  }
+
+  /**
+   * Waits for the next chunk to be handed to the consumer and returns its events.
+   */
+  private synchronized List<Event> take() {
+    try {
+      while (true) {
+        if (error != null) {
+          close();
+          throw new RuntimeException("Unable to read events: " + error.getMessage(), error);
+        }
+        if (closed) {
+          throw new IllegalStateException("The stream has been closed");
+        }
+        int chunk = -1;
+        if (ordered) {
+          if (parsed.get(taken) != null) {
+            chunk = taken;
+          }
+        }
+        else if (!completed.isEmpty()) {
+          chunk = completed.removeFirst().intValue();
+        }
+        if (chunk != -1) {
+          List<Event> events = parsed.set(chunk, null);
+          taken++;
+          window.release();
+          return events;
+        }
+        wait();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new RuntimeException("Interrupted while reading events", e);
+    }
+  }
+
+  /**
+   * Claims the next chunk for a worker.
+   * @return The chunk or -1 if there are no more chunks.
+   */
+  private synchronized int claim() {
+    if (closed || error != null || nextChunk == numChunks) {
+      return -1;
+    }
+    return nextChunk++;
+  }
+
+  private synchronized void complete(int chunk, List<Event> events) {
+    parsed.set(chunk, events);
+    if (!ordered) {
+      completed.add(Integer.valueOf(chunk));
+    }
+    notifyAll();
+  }
+
+  private synchronized void fail(Throwable t) {
+    if (error == null) {
+      error = t;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Stops the workers and closes the file.  This is done automatically when the last event
+   * has been read.
+   */
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    // wake up the workers waiting for the window, they see that the stream is closed
+    window.release(numChunks);
+    try {
+      channel.close();
+    }
+    catch (IOException e) {
+      // the file was only read
+    }
+  }
+
+  /**
+   * Parses chunks until there are none left.
+   */
+  private class Worker implements Runnable {
+
+    private final EventLineParser parser = new EventLineParser(realValued);
+    private final byte[] block = new byte[1 << 16];
+    private byte[] bytes = new byte[0];
+
+    public void run() {
+      try {
+        while (true) {
+          window.acquire();
+          int chunk = claim();
+          if (chunk == -1) {
+            break;
+          }
+          complete(chunk, parse(chunk));
+        }
+      }
+      catch (Throwable t) {
+        if (!closed) {
+          fail(t);
+        }
+      }
+    }
+
+    /**
+     * Parses the lines which start within the specified chunk.
+     */
+    private List<Event> parse(int chunk) throws IOException {
+      long from = (long) chunk * chunkSize;
+      long to = Math.min(from + chunkSize, fileSize);
+      // the byte before the chunk shows whether a line starts at its first byte
+      long readFrom = from == 0 ? 0 : from - 1;
+      int length = (int) (to - readFrom);
+      ensureCapacity(length);
+      read(ByteBuffer.wrap(bytes, 0, length), readFrom);
+      // complete the last line
+      while (bytes[length - 1] != '\n' && readFrom + length < fileSize) {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        buffer.limit((int) Math.min(block.length, fileSize - readFrom - length));
+        read(buffer, readFrom + length);
+        int n = 0;
+        while (n < buffer.limit() && block[n++] != '\n') {
+          // n counts the bytes up to and including the line terminator
+        }
+        ensureCapacity(length + n);
+        System.arraycopy(block, 0, bytes, length, n);
+        length += n;
+      }
+      int start = 0;
+      if (from != 0) {
+        int chunkEnd = (int) (to - readFrom);
+        while (start < chunkEnd && bytes[start] != '\n') {
+          start++;
+        }
+        start++;
+        if (start >= chunkEnd) {
+          // no line starts within this chunk
+          return new ArrayList<Event>(0);
+        }
+      }
+      List<Event> events = new ArrayList<Event>();
+      while (start < length && !closed) {
+        int end = start;
+        while (end < length && bytes[end] != '\n') {
+          end++;
+        }
+        if (parser.parse(bytes, start, end)) {
+          events.add(parser.toEvent());
+        }
+        start = end + 1;
+      }
+      return events;
+    }
+
+    private void ensureCapacity(int length) {
+      if (bytes.length < length) {
+        byte[] grown = new byte[Math.max(length, bytes.length * 2)];
+        System.arraycopy(bytes, 0, grown, 0, bytes.length);
+        bytes = grown;
+      }
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+      while (buffer.hasRemaining()) {
+        int n = channel.read(buffer, position);
+        if (n < 0) {
+          throw new IOException("The event file was truncated while it was read");
+        }
+        position += n;
+      }
+    }
+  }
+}
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An indexer which produces the same data as {@link OnePassDataIndexer} using several threads.
+ * <p>
+ * The events are read from the stream and split into one contiguous shard per thread.  Each
+ * shard counts its predicates in maps partitioned by hash code, and each partition is merged
+ * across the shards in shard order.  The serial indexer assigns predicate indices by iterating
+ * a hash set, whose order depends on the order in which the predicates were added, so the
+ * predicates are added to the set in the order in which they reached the cutoff in the event
+ * stream.  Outcomes are numbered in the order in which they first occur, the events are
+ * converted to integer contexts shard by shard, and the events are sorted with a parallel
+ * stable merge sort.  The resulting contexts, labels and counts are identical to those of
+ * {@link OnePassDataIndexer}.
+ */
+public class ParallelOnePassDataIndexer extends AbstractDataIndexer {
+
+  private final int threads;
+  private ExecutorService executor;
+
+  public ParallelOnePassDataIndexer(EventStream eventStream, int cutoff, int threads) {
+    this(eventStream,cutoff,true,threads);
+  }
+
+  /**
+   * Creates an indexer for the specified events.
+   *
+   * @param eventStream The events.
+   * @param cutoff The minimum number of times a predicate must have been
+   *               observed in order to be included in the model.
+   * @param sort Whether the events are sorted and duplicates merged.
+   * @param threads The number of threads to use.
+   */
+  public ParallelOnePassDataIndexer(EventStream eventStream, int cutoff, boolean sort, int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    }
+    this.threads = threads;
+    System.out.println("Indexing events using cutoff of " + cutoff + "\n");
+
+    System.out.print("\tComputing event counts...  ");
+    List<Event> events = new ArrayList<Event>();
+    while (eventStream.hasNext()) {
+      events.add(eventStream.next());
+    }
+    executor = Executors.newFixedThreadPool(threads);
+    try {
+      Shard[] shards = new Shard[Math.max(1,Math.min(threads,events.size()))];
+      for (int si = 0; si < shards.length; si++) {
+        shards[si] = new Shard(events,(int) ((long) events.size() * si / shards.length),(int) ((long) events.size() * (si+1) / shards.length));
+      }
+      Map<String,Integer> predicateIndex = computePredicateIndex(shards,cutoff);
+      System.out.println("done. "+events.size()+" events");
+
+      System.out.print("\tIndexing...  ");
+      List<ComparableEvent> eventsToCompare = index(shards,predicateIndex);
+      events = null;
+      shards = null;
+      System.out.println("done.");
+
+      System.out.print("Sorting and merging events... ");
+      sortAndMerge(eventsToCompare,sort);
+      System.out.println("Done indexing.");
+    }
+    finally {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Counts the predicates of all shards and assigns an index to each predicate which occurs
+   * at least <code>cutoff</code> times, in the same way as the serial indexer.
+   */
+  private Map<String,Integer> computePredicateIndex(final Shard[] shards, int cutoff) {
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int si = 0; si < shards.length; si++) {
+      final Shard shard = shards[si];
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          shard.count();
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+
+    // a predicate is added to the set at its k-th occurrence
+    final int k = Math.max(cutoff,1);
+    final List<List<PredicateCount>> selected = new ArrayList<List<PredicateCount>>();
+    tasks.clear();
+    for (int pi = 0; pi < threads; pi++) {
+      final int partition = pi;
+      final List<PredicateCount> partitionSelected = new ArrayList<PredicateCount>();
+      selected.add(partitionSelected);
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          merge(shards,partition,k,partitionSelected);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+
+    if (k > 1) {
+      tasks.clear();
+      for (int si = 0; si < shards.length; si++) {
+        final Shard shard = shards[si];
+        tasks.add(new Callable<Object>() {
+          public Object call() {
+            shard.findTargets();
+            return null;
+          }
+        });
+      }
+      invokeAll(tasks);
+    }
+
+    List<PredicateCount> predicates = new ArrayList<PredicateCount>();
+    for (int pi = 0; pi < selected.size(); pi++) {
+      predicates.addAll(selected.get(pi));
+    }
+    PredicateCount[] ordered = predicates.toArray(new PredicateCount[predicates.size()]);
+    Arrays.sort(ordered);
+    Set<String> predicateSet = new HashSet<String>();
+    Map<String,PredicateCount> byName = new HashMap<String,PredicateCount>();
+    for (int pi = 0; pi < ordered.length; pi++) {
+      predicateSet.add(ordered[pi].predicate);
+      byName.put(ordered[pi].predicate,ordered[pi]);
+    }
+    predCounts = new int[predicateSet.size()];
+    Map<String,Integer> predicateIndex = new HashMap<String,Integer>();
+    int index = 0;
+    for (Iterator<String> pi = predicateSet.iterator(); pi.hasNext(); index++) {
+      String predicate = pi.next();
+      predCounts[index] = byName.get(predicate).count;
+      predicateIndex.put(predicate,index);
+    }
+    return predicateIndex;
+  }
+
+  /**
+   * Sums the counts of the predicates of one partition over the shards, in shard order, and
+   * selects those which occur at least <code>k</code> times.  The shard which holds the k-th
+   * occurrence of a selected predicate is asked to find its position.
+   */
+  private void merge(Shard[] shards, int partition, int k, List<PredicateCount> selected) {
+    Map<String,PredicateCount> totals = new HashMap<String,PredicateCount>();
+    for (int si = 0; si < shards.length; si++) {
+      for (Map.Entry<String,int[]> entry : shards[si].counts.get(partition).entrySet()) {
+        int[] local = entry.getValue();
+        PredicateCount total = totals.get(entry.getKey());
+        if (total == null) {
+          total = new PredicateCount(entry.getKey());
+          totals.put(entry.getKey(),total);
+        }
+        int before = total.count;
+        total.count += local[0];
+        if (before < k && total.count >= k) {
+          if (before + 1 == k) {
+            // the k-th occurrence is the first one in this shard
+            total.position = ((long) local[1] << 32) | local[2];
+          }
+          else {
+            shards[si].targets.get(partition).put(entry.getKey(),total);
+            total.target = k - before;
+          }
+          selected.add(total);
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts the events of all shards to comparable events and numbers the outcomes in the
+   * order in which they first occur.
+   */
+  private List<ComparableEvent> index(Shard[] shards, final Map<String,Integer> predicateIndex) {
+    final Map<String,Integer> omap = new HashMap<String,Integer>();
+    for (int si = 0; si < shards.length; si++) {
+      for (String outcome : shards[si].outcomes) {
+        if (!omap.containsKey(outcome)) {
+          omap.put(outcome,omap.size());
+        }
+      }
+    }
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int si = 0; si < shards.length; si++) {
+      final Shard shard = shards[si];
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          shard.index(predicateIndex,omap);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+
+    int numEvents = 0;
+    for (int si = 0; si < shards.length; si++) {
+      numEvents += shards[si].eventsToCompare.size();
+    }
+    List<ComparableEvent> eventsToCompare = new ArrayList<ComparableEvent>(numEvents);
+    for (int si = 0; si < shards.length; si++) {
+      eventsToCompare.addAll(shards[si].eventsToCompare);
+      for (String dropped : shards[si].dropped) {
+        System.err.println(dropped);
+      }
+    }
+    outcomeLabels = toIndexedStringArray(omap);
+    predLabels = toIndexedStringArray(predicateIndex);
+    return eventsToCompare;
+  }
+
+  /**
+   * Sorts the events by sorting one run per thread and merging adjacent runs in parallel.
+   * Both steps are stable, so the order is the same as that of <code>Collections.sort</code>.
+   */
+  protected void sortEvents(List<ComparableEvent> eventsToCompare) {
+    ComparableEvent[] src = eventsToCompare.toArray(new ComparableEvent[eventsToCompare.size()]);
+    int numRuns = Math.max(1,Math.min(threads,src.length));
+    int[] bounds = new int[numRuns+1];
+    for (int ri = 0; ri <= numRuns; ri++) {
+      bounds[ri] = (int) ((long) src.length * ri / numRuns);
+    }
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int ri = 0; ri < numRuns; ri++) {
+      final ComparableEvent[] a = src;
+      final int from = bounds[ri];
+      final int to = bounds[ri+1];
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          Arrays.sort(a,from,to);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+
+    ComparableEvent[] dst = new ComparableEvent[src.length];
+    while (numRuns > 1) {
+      tasks.clear();
+      int[] merged = new int[(numRuns+1)/2+1];
+      for (int ri = 0; ri < numRuns; ri += 2) {
+        final ComparableEvent[] from = src;
+        final ComparableEvent[] to = dst;
+        final int lo = bounds[ri];
+        final int mid = bounds[Math.min(ri+1,numRuns)];
+        final int hi = bounds[Math.min(ri+2,numRuns)];
+        merged[ri/2] = lo;
+        tasks.add(new Callable<Object>() {
+          public Object call() {
+            mergeRuns(from,to,lo,mid,hi);
+            return null;
+          }
+        });
+      }
+      invokeAll(tasks);
+      numRuns = (numRuns+1)/2;
+      merged[numRuns] = src.length;
+      bounds = merged;
+      ComparableEvent[] swap = src;
+      src = dst;
+      dst = swap;
+    }
+    for (int i = 0; i < src.length; i++) {
+      eventsToCompare.set(i,src[i]);
+    }
+  }
+
+  /**
+   * Merges the sorted runs <code>from[lo..mid)</code> and <code>from[mid..hi)</code> into
+   * <code>to[lo..hi)</code>, taking equal elements from the first run first.
+   */
+  private static void mergeRuns(ComparableEvent[] from, ComparableEvent[] to, int lo, int mid, int hi) {
+    int li = lo;
+    int ri = mid;
+    for (int ti = lo; ti < hi; ti++) {
+      if (ri >= hi || (li < mid && from[li].compareTo(from[ri]) <= 0)) {
+        to[ti] = from[li++];
+      }
+      else {
+        to[ti] = from[ri++];
+      }
+    }
+  }
+
+  private void invokeAll(List<Callable<Object>> tasks) {
+    try {
+      List<Future<Object>> futures = executor.invokeAll(tasks);
+      for (int fi = 0; fi < futures.size(); fi++) {
+        futures.get(fi).get();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Indexing was interrupted", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * The total count of a predicate and the position in the event stream at which it reached the cutoff.
+   */
+  private static class PredicateCount implements Comparable<PredicateCount> {
+
+    final String predicate;
+    int count;
+    /** The event number in the upper and the context position in the lower 32 bits. */
+    long position;
+    /** The occurrence within the shard holding the k-th occurrence whose position is needed. */
+    int target;
+
+    PredicateCount(String predicate) {
+      this.predicate = predicate;
+    }
+
+    public int compareTo(PredicateCount pc) {
+      return position < pc.position ? -1 : (position == pc.position ? 0 : 1);
+    }
+  }
+
+  /**
+   * A contiguous range of events and the results computed for it.
+   */
+  private class Shard {
+
+    private final List<Event> events;
+    private final int start;
+    private final int end;
+
+    /** The number of occurrences and the position of the first occurrence of each predicate, by partition. */
+    final List<Map<String,int[]>> counts;
+    /** The predicates whose position of the <code>target</code>-th occurrence in this shard is needed, by partition. */
+    final List<Map<String,PredicateCount>> targets;
+    /** The outcomes in the order in which they first occur. */
+    final Set<String> outcomes = new LinkedHashSet<String>();
+    List<ComparableEvent> eventsToCompare;
+    final List<String> dropped = new ArrayList<String>();
+
+    Shard(List<Event> events, int start, int end) {
+      this.events = events;
+      this.start = start;
+      this.end = end;
+      counts = new ArrayList<Map<String,int[]>>(threads);
+      targets = new ArrayList<Map<String,PredicateCount>>(threads);
+      for (int pi = 0; pi < threads; pi++) {
+        counts.add(new HashMap<String,int[]>());
+        targets.add(new HashMap<String,PredicateCount>());
+      }
+    }
+
+    private int partition(String predicate) {
+      int hash = predicate.hashCode();
+      return ((hash ^ (hash >>> 16)) & 0x7fffffff) % threads;
+    }
+
+    void count() {
+      for (int ei = start; ei < end; ei++) {
+        Event ev = events.get(ei);
+        outcomes.add(ev.getOutcome());
+        String[] context = ev.getContext();
+        for (int ci = 0; ci < context.length; ci++) {
+          Map<String,int[]> partitionCounts = counts.get(partition(context[ci]));
+          int[] count = partitionCounts.get(context[ci]);
+          if (count == null) {
+            partitionCounts.put(context[ci],new int[] {1,ei,ci});
+          }
+          else {
+            count[0]++;
+          }
+        }
+      }
+    }
+
+    void findTargets() {
+      Map<String,int[]> seen = new HashMap<String,int[]>();
+      boolean hasTargets = false;
+      for (int pi = 0; pi < threads; pi++) {
+        hasTargets |= !targets.get(pi).isEmpty();
+      }
+      for (int ei = start; ei < end && hasTargets; ei++) {
+        String[] context = events.get(ei).getContext();
+        for (int ci = 0; ci < context.length; ci++) {
+          PredicateCount target = targets.get(partition(context[ci])).get(context[ci]);
+          if (target != null) {
+            int[] occurrences = seen.get(context[ci]);
+            if (occurrences == null) {
+              occurrences = new int[1];
+              seen.put(context[ci],occurrences);
+            }
+            if (++occurrences[0] == target.target) {
+              target.position = ((long) ei << 32) | ci;
+            }
+          }
+        }
+      }
+    }
+
+    void index(Map<String,Integer> predicateIndex, Map<String,Integer> omap) {
+      eventsToCompare = new ArrayList<ComparableEvent>(end - start);
+      int[] indexedContext = new int[16];
+      for (int ei = start; ei < end; ei++) {
+        Event ev = events.get(ei);
+        String[] econtext = ev.getContext();
+        int ocID = omap.get(ev.getOutcome());
+        int length = 0;
+        for (int i = 0; i < econtext.length; i++) {
+          Integer pred = predicateIndex.get(econtext[i]);
+          if (pred != null) {
+            if (length == indexedContext.length) {
+              int[] grown = new int[length * 2];
+              System.arraycopy(indexedContext,0,grown,0,length);
+              indexedContext = grown;
+            }
+            indexedContext[length++] = pred;
+          }
+        }
+        // drop events with no active features
+        if (length > 0) {
+          int[] cons = new int[length];
+          System.arraycopy(indexedContext,0,cons,0,length);
+          eventsToCompare.add(new ComparableEvent(ocID,cons));
+        }
+        else {
+          dropped.add("Dropped event "+ev.getOutcome()+":"+Arrays.asList(ev.getContext()));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+/**
+ * The ways in which the parameters of a model can be stored.  Smaller encodings use less
+ * memory and make evaluation read less memory, at the cost of precision.
+ * <p>
+ * The ordinal of an encoding is stored in model files, so new encodings must be added at the end.
+ */
+public enum ParameterEncoding {
+
+  /** Each parameter is stored as a 64 bit floating point number. */
+  Float64(8),
+  /** Each parameter is stored as a 32 bit floating point number. */
+  Float32(4),
+  /** Each parameter is stored as an 8 bit integer which is multiplied by a scale stored per predicate. */
+  Int8(1);
+
+  private final int bytesPerParameter;
+
+  private ParameterEncoding(int bytesPerParameter) {
+    this.bytesPerParameter = bytesPerParameter;
+  }
+
+  /**
+   * Returns the number of bytes used to store each parameter.
+   * @return The number of bytes used to store each parameter.
+   */
+  public int getBytesPerParameter() {
+    return bytesPerParameter;
+  }
+
+  /**
+   * Creates a table on the heap holding the parameters of the specified table in this encoding.
+   * @param table The parameters.
+   * @return A table holding the parameters in this encoding.
+   */
+  public AbstractContextTable encode(AbstractContextTable table) {
+    switch (this) {
+      case Float32:
+        return FloatContextTable.fromTable(table);
+      case Int8:
+        return QuantizedContextTable.fromTable(table);
+      default:
+        return ContextTable.fromTable(table);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An event stream which reads the events of another stream on a separate thread, so that
+ * the work done by the underlying stream, such as reading a file and generating contexts,
+ * overlaps with the work of the consumer, such as indexing the events.
+ * <p>
+ * The events are passed to the consumer in batches.  A fixed number of batches is
+ * allocated, which are passed to the consumer through the <code>full</code> queue and
+ * returned through the <code>free</code> queue, so the producer stays at most the configured
+ * number of batches ahead of the consumer.  An exception thrown by the underlying stream is
+ * rethrown by {@link #hasNext()} once the events read before it have been consumed.
+ * <p>
+ * The producer thread is started by the constructor, so the underlying stream must not be
+ * used by any other thread afterwards.  The thread stops when the underlying stream is
+ * exhausted or when {@link #close()} is called.
+ */
+public class PrefetchingEventStream extends AbstractEventStream {
+
+  /** The default number of events in a batch. */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+  /** The default number of batches which are read ahead of the consumer. */
+  public static final int DEFAULT_DEPTH = 4;
+
+  private final EventStream events;
+  private final BlockingQueue<Batch> free;
+  private final BlockingQueue<Batch> full;
+  private final Batch endMarker = new Batch(0);
+  private volatile boolean closed;
+  private volatile Throwable error;
+
+  private Batch batch;
+  private int index;
+
+  /**
+   * Starts reading the specified stream.
+   * @param events The underlying stream.
+   * @param batchSize The number of events in a batch.
+   * @param depth The number of batches which may be read ahead of the consumer.
+   */
+  public PrefetchingEventStream(EventStream events, int batchSize, int depth) {
+    if (batchSize < 1 || depth < 1) {
+      throw new IllegalArgumentException("batchSize and depth must be at least 1: " + batchSize + ", " + depth);
+    }
+    this.events = events;
+    free = new ArrayBlockingQueue<Batch>(depth);
+    full = new ArrayBlockingQueue<Batch>(depth + 1);
+    for (int bi = 0; bi < depth; bi++) {
+      free.add(new Batch(batchSize));
+    }
+    endMarker.count = -1;
+    Thread producer = new Thread(new Producer(), "PrefetchingEventStream producer");
+    producer.setDaemon(true);
+    producer.start();
+  }
+
+  public PrefetchingEventStream(EventStream events) {
+    this(events, DEFAULT_BATCH_SIZE, DEFAULT_DEPTH);
+  }
+
+  /**
+   * The events of one batch.
+   */
+  private static class Batch {
+
+    /** The number of events in the batch, or -1 for the batch which marks the end of the stream. */
+    int count;
+    final Event[] events;
+
+    Batch(int size) {
+      events = new Event[size];
+    }
+  }
+
+  /**
+   * Reads the underlying stream into the free batches.
+   */
+  private class Producer implements Runnable {
+
+    public void run() {
+      Batch b = null;
+      try {
+        boolean more = true;
+        while (more && !closed) {
+          b = free.take();
+          if (closed) {
+            break;
+          }
+          b.count = 0;
+          while (b.count < b.events.length && (more = events.hasNext())) {
+            b.events[b.count++] = events.next();
+          }
+          if (b.count > 0) {
+            full.put(b);
+          }
+          b = null;
+        }
+      }
+      catch (Throwable t) {
+        error = t;
+        if (b != null && b.count > 0) {
+          // pass on the events read before the failure
+          full.offer(b);
+        }
+      }
+      finally {
+        // the queue has room for the marker as there are only depth batches
+        full.offer(endMarker);
+      }
+    }
+  }
+
+  public boolean hasNext() {
+    if (batch != null && index < batch.count) {
+      return true;
+    }
+    if (batch == endMarker) {
+      return end();
+    }
+    if (batch != null) {
+      free.offer(batch);
+    }
+    try {
+      batch = full.take();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new RuntimeException("Interrupted while reading events", e);
+    }
+    index = 0;
+    if (batch == endMarker) {
+      return end();
+    }
+    return true;
+  }
+
+  /**
+   * Reports the end of the stream, which is an error on every call if the producer failed.
+   */
+  private boolean end() {
+    if (error != null) {
+      throw new RuntimeException("Unable to read events: " + error.getMessage(), error);
+    }
+    return false;
+  }
+
+  public Event next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Event event = batch.events[index];
+    batch.events[index++] = null;
+    return event;
+  }
+
+  /**
+   * Stops the producer thread.  It finishes the batch it is reading, so the underlying
+   * stream may have been advanced past the events returned by this stream.
+   */
+  public void close() {
+    closed = true;
+    // hand the batches back so that a producer waiting for a free batch sees that the stream is closed
+    Batch b;
+    while ((b = full.poll()) != null) {
+      if (b != endMarker) {
+        free.offer(b);
+      }
+    }
+    if (batch != null && batch != endMarker) {
+      free.offer(batch);
+    }
+    batch = endMarker;
+  }
+}
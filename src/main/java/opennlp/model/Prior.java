@@ -36,7 +36,8 @@ public interface Prior {
    * Populates the specified array with the the log of the distribution for the specified context.  
    * The returned array will be overwritten and needs to be re-initialized with every call to this method.  
    * @param dist An array to be populated with the log of the prior distribution.
-   * @param context The indices of the contextual predicates for an event.
+   * @param context The indices of the contextual predicates for an event.  Negative indices 
+   * represent predicates which are unknown to the model and should be ignored.
    * @param values The values associated with the context. 
    */
   public void logPrior(double[] dist, int[] context, float[] values);
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A context table which stores each parameter as an 8 bit integer.  The parameters of a
+ * predicate share a scale, chosen so that the parameter with the largest magnitude maps
+ * to 127, and a parameter is its integer multiplied by the scale of its predicate.  The
+ * layout is otherwise the same compressed sparse row form as {@link ContextTable}.  The
+ * buffers may wrap arrays on the heap or be views of a memory mapped model file.
+ * <p>
+ * Only absolute gets are used, so the table is safe to use from multiple threads.
+ */
+public class QuantizedContextTable extends AbstractContextTable {
+
+  /** The largest magnitude of a quantized parameter. */
+  private static final int MAX_LEVEL = 127;
+
+  /** The start of the entries of each context, followed by the total number of entries. */
+  private final IntBuffer offsets;
+  /** The outcome of each entry. */
+  private final IntBuffer outcomes;
+  /** The quantized parameter of each entry. */
+  private final ByteBuffer parameters;
+  /** The scale of the parameters of each context. */
+  private final FloatBuffer scales;
+
+  /**
+   * Creates a table which reads its entries from the specified buffers.  The buffers are not copied.
+   * @param offsets The start of the entries of each context, followed by the total number of entries.
+   * @param outcomes The outcome of each entry.
+   * @param parameters The quantized parameter of each entry.
+   * @param scales The scale of the parameters of each context.
+   */
+  public QuantizedContextTable(IntBuffer offsets, IntBuffer outcomes, ByteBuffer parameters, FloatBuffer scales) {
+    if (outcomes.capacity() != parameters.capacity() || offsets.get(offsets.capacity()-1) != outcomes.capacity()) {
+      throw new IllegalArgumentException("The offsets, outcomes and parameters do not describe the same entries.");
+    }
+    if (scales.capacity() != offsets.capacity()-1) {
+      throw new IllegalArgumentException("There must be one scale per context.");
+    }
+    this.offsets = offsets;
+    this.outcomes = outcomes;
+    this.parameters = parameters;
+    this.scales = scales;
+  }
+
+  /**
+   * Creates a table on the heap holding the quantized parameters of the specified table.
+   * @param table The parameters.
+   * @return A table with the same outcomes and quantized parameters.
+   */
+  public static QuantizedContextTable fromTable(AbstractContextTable table) {
+    int numContexts = table.getNumContexts();
+    int[] offsets = new int[numContexts+1];
+    for (int pid=0;pid<=numContexts;pid++) {
+      offsets[pid] = table.getEntryStart(pid);
+    }
+    int[] outcomes = new int[offsets[numContexts]];
+    byte[] parameters = new byte[outcomes.length];
+    float[] scales = new float[numContexts];
+    for (int pid=0;pid<numContexts;pid++) {
+      scales[pid] = getScale(table,pid);
+      for (int ai=offsets[pid];ai<offsets[pid+1];ai++) {
+        outcomes[ai] = table.getOutcome(ai);
+        parameters[ai] = quantize(table.getParameter(ai),scales[pid]);
+      }
+    }
+    return new QuantizedContextTable(IntBuffer.wrap(offsets),IntBuffer.wrap(outcomes),ByteBuffer.wrap(parameters),FloatBuffer.wrap(scales));
+  }
+
+  /**
+   * Returns the scale which maps the parameter of the specified context with the largest magnitude to 127.
+   * @param table The parameters.
+   * @param pid The context.
+   * @return The scale of the parameters of the context, which is 0 if they are all 0.
+   */
+  static float getScale(AbstractContextTable table, int pid) {
+    double max = 0;
+    for (int ai = table.getEntryStart(pid), end = table.getEntryStart(pid+1); ai < end; ai++) {
+      max = Math.max(max,Math.abs(table.getParameter(ai)));
+    }
+    return (float) (max / MAX_LEVEL);
+  }
+
+  /**
+   * Returns the integer which multiplied by the specified scale is closest to the specified parameter.
+   * @param parameter The parameter.
+   * @param scale The scale of the parameters of its context.
+   * @return The quantized parameter.
+   */
+  static byte quantize(double parameter, float scale) {
+    if (scale == 0) {
+      return 0;
+    }
+    long level = Math.round(parameter / scale);
+    return (byte) Math.max(-MAX_LEVEL,Math.min(MAX_LEVEL,level));
+  }
+
+  public int getNumContexts() {
+    return offsets.capacity() - 1;
+  }
+
+  public int getEntryStart(int pid) {
+    return offsets.get(pid);
+  }
+
+  /**
+   * Returns the size of the buffers of this table which are on the heap.  Mapped buffers are not counted.
+   */
+  public long getHeapSize() {
+    return (offsets.isDirect() ? 0 : 4L * offsets.capacity())
+        + (outcomes.isDirect() ? 0 : 4L * outcomes.capacity())
+        + (parameters.isDirect() ? 0 : parameters.capacity())
+        + (scales.isDirect() ? 0 : 4L * scales.capacity());
+  }
+
+  public int getOutcome(int entry) {
+    return outcomes.get(entry);
+  }
+
+  public double getParameter(int entry) {
+    int pid = findContext(entry);
+    return parameters.get(entry) * (double) scales.get(pid);
+  }
+
+  /**
+   * Returns the context which holds the specified entry.
+   */
+  private int findContext(int entry) {
+    int low = 0;
+    int high = getNumContexts() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (offsets.get(mid) <= entry) {
+        low = mid;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the scale of the parameters of the specified context.
+   * @param pid The context.
+   * @return The scale of the parameters of the context.
+   */
+  public float getScale(int pid) {
+    return scales.get(pid);
+  }
+
+  /**
+   * Returns the quantized parameter of the specified entry.
+   * @param entry The number of the entry.
+   * @return The quantized parameter of the entry.
+   */
+  public byte getLevel(int entry) {
+    return parameters.get(entry);
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset) {
+    double scaledValue = scales.get(pid) * value;
+    for (int ai = offsets.get(pid), end = offsets.get(pid+1); ai < end; ai++) {
+      scores[outcomes.get(ai) + scoreOffset] += parameters.get(ai) * scaledValue;
+    }
+  }
+
+  public void addParameters(int pid, double value, double[] scores, int scoreOffset, int[] numfeats, int featOffset) {
+    double scaledValue = scales.get(pid) * value;
+    for (int ai = offsets.get(pid), end = offsets.get(pid+1); ai < end; ai++) {
+      int oid = outcomes.get(ai);
+      numfeats[oid + featOffset]++;
+      scores[oid + scoreOffset] += parameters.get(ai) * scaledValue;
+    }
+  }
+
+  public Context[] toContexts() {
+    Context[] contexts = new Context[getNumContexts()];
+    for (int pid=0;pid<contexts.length;pid++) {
+      int start = offsets.get(pid);
+      int length = offsets.get(pid+1) - start;
+      double scale = scales.get(pid);
+      int[] activeOutcomes = new int[length];
+      double[] activeParameters = new double[length];
+      for (int ai=0;ai<length;ai++) {
+        activeOutcomes[ai] = outcomes.get(start+ai);
+        activeParameters[ai] = parameters.get(start+ai) * scale;
+      }
+      contexts[pid] = new Context(activeOutcomes,activeParameters);
+    }
+    return contexts;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.maxent.GISModel;
+import opennlp.model.AbstractModel.ModelType;
+import opennlp.perceptron.PerceptronModel;
+
+/**
+ * Reports how storing the parameters of a model in each {@link ParameterEncoding} changes
+ * its accuracy on a file of held-out events.  For each encoding the accuracy is compared with
+ * that of the 64 bit model, along with how often the two models predict the same outcome and
+ * the largest difference between their probabilities.
+ */
+public class QuantizedModelEval {
+
+  /**
+   * Creates a copy of the specified model which stores its parameters in the specified encoding.
+   * @param model The model.
+   * @param encoding The encoding of the parameters.
+   * @return A model with the same predicates and outcomes and encoded parameters.
+   */
+  public static AbstractModel encode(AbstractModel model, ParameterEncoding encoding) {
+    AbstractContextTable encoded = encoding.encode(getTable(model));
+    if (model.getModelType() == ModelType.Perceptron) {
+      return new PerceptronModel(encoded,model.pmap,model.outcomeNames);
+    }
+    else {
+      return new GISModel(encoded,model.pmap,model.outcomeNames,(int) model.evalParams.getCorrectionConstant(),model.evalParams.getCorrectionParam());
+    }
+  }
+
+  private static AbstractContextTable getTable(AbstractModel model) {
+    AbstractContextTable table = model.evalParams.getContextTable();
+    if (table == null) {
+      table = ContextTable.fromContexts(model.evalParams.getParams());
+    }
+    return table;
+  }
+
+  private static long getParameterBytes(AbstractModel model, ParameterEncoding encoding) {
+    AbstractContextTable table = getTable(model);
+    long bytes = (long) table.getNumEntries() * encoding.getBytesPerParameter();
+    if (encoding == ParameterEncoding.Int8) {
+      bytes += 4L * table.getNumContexts();
+    }
+    return bytes;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: QuantizedModelEval [-real] model held_out_events");
+      System.exit(1);
+    }
+    int ai = 0;
+    boolean real = false;
+    if (args[ai].equals("-real")) {
+      real = true;
+      ai++;
+    }
+    AbstractModel model = new GenericModelReader(new File(args[ai++])).getModel();
+    EventStream es = real ? new RealValueFileEventStream(args[ai]) : new FileEventStream(args[ai]);
+    List<Event> events = new ArrayList<Event>();
+    while (es.hasNext()) {
+      events.add(es.next());
+    }
+
+    double[][] reference = new double[events.size()][];
+    int referenceCorrect = 0;
+    for (int ei = 0; ei < events.size(); ei++) {
+      Event event = events.get(ei);
+      reference[ei] = model.eval(event.getContext(),event.getValues());
+      if (model.getBestOutcome(reference[ei]).equals(event.getOutcome())) {
+        referenceCorrect++;
+      }
+    }
+
+    System.out.println("encoding\tparameter_bytes\taccuracy\taccuracy_delta\tagreement\tmax_prob_delta");
+    ParameterEncoding[] encodings = ParameterEncoding.values();
+    for (int ni = 0; ni < encodings.length; ni++) {
+      AbstractModel encoded = encode(model,encodings[ni]);
+      int correct = 0;
+      int agree = 0;
+      double maxDelta = 0;
+      for (int ei = 0; ei < events.size(); ei++) {
+        Event event = events.get(ei);
+        double[] probs = encoded.eval(event.getContext(),event.getValues());
+        String best = encoded.getBestOutcome(probs);
+        if (best.equals(event.getOutcome())) {
+          correct++;
+        }
+        if (best.equals(model.getBestOutcome(reference[ei]))) {
+          agree++;
+        }
+        for (int oi = 0; oi < probs.length; oi++) {
+          maxDelta = Math.max(maxDelta,Math.abs(probs[oi] - reference[ei][oi]));
+        }
+      }
+      double accuracy = (double) correct / events.size();
+      double referenceAccuracy = (double) referenceCorrect / events.size();
+      System.out.println(encodings[ni] + "\t" + getParameterBytes(model,encodings[ni]) + "\t" + accuracy + "\t"
+          + (accuracy - referenceAccuracy) + "\t" + ((double) agree / events.size()) + "\t" + maxDelta);
+    }
+  }
+}
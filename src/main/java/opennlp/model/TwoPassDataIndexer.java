@@ -17,14 +17,9 @@
 
 package opennlp.model;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -66,6 +61,22 @@ public class TwoPassDataIndexer extends AbstractDataIndexer{
    *               observed in order to be included in the model.
    */
   public TwoPassDataIndexer(EventStream eventStream, int cutoff, boolean sort) throws IOException {
+    this(eventStream,cutoff,sort,false);
+  }
+
+  /**
+   * Creates an indexer which optionally finds duplicate events using a hash table.
+   *
+   * @param eventStream The events.
+   * @param cutoff The minimum number of times a predicate must have been
+   *               observed in order to be included in the model.
+   * @param sort Whether duplicate events are merged.
+   * @param hashMerge Whether duplicates are found using a hash table, which keeps the
+   *               unique events in the order in which they were first seen, rather than
+   *               by sorting the events.
+   */
+  public TwoPassDataIndexer(EventStream eventStream, int cutoff, boolean sort, boolean hashMerge) throws IOException {
+    setHashMerge(hashMerge);
     Map<String,Integer> predicateIndex = new HashMap<String,Integer>();
     List eventsToCompare;
 
@@ -75,13 +86,19 @@ public class TwoPassDataIndexer extends AbstractDataIndexer{
     try {
       File tmp = File.createTempFile("events", null);
       tmp.deleteOnExit();
-      Writer osw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),"UTF8"));
-      int numEvents = computeEventCounts(eventStream, osw, predicateIndex, cutoff);
+      EventSpoolWriter spool = new EventSpoolWriter(tmp);
+      int numEvents = computeEventCounts(eventStream, spool, predicateIndex, cutoff);
       System.out.println("done. " + numEvents + " events");
 
       System.out.print("\tIndexing...  ");
 
-      eventsToCompare = index(numEvents, new FileEventStream(tmp), predicateIndex);
+      EventSpoolReader spooled = new EventSpoolReader(tmp);
+      try {
+        eventsToCompare = index(numEvents, spooled, predicateIndex);
+      }
+      finally {
+        spooled.close();
+      }
       // done with predicates
       predicateIndex = null;
       tmp.delete();
@@ -108,18 +125,18 @@ public class TwoPassDataIndexer extends AbstractDataIndexer{
       * <tt>predicatesInOut</tt> map along with a unique integer index.
       *
       * @param eventStream an <code>EventStream</code> value
-      * @param eventStore a writer to which the events are written to for later processing.
+      * @param eventStore a spool to which the events are written for later processing.
       * @param predicatesInOut a <code>TObjectIntHashMap</code> value
       * @param cutoff an <code>int</code> value
       */
-  private int computeEventCounts(EventStream eventStream, Writer eventStore, Map<String,Integer> predicatesInOut, int cutoff) throws IOException {
+  private int computeEventCounts(EventStream eventStream, EventSpoolWriter eventStore, Map<String,Integer> predicatesInOut, int cutoff) throws IOException {
     Map<String,Integer> counter = new HashMap<String,Integer>();
     int eventCount = 0;
     Set predicateSet = new HashSet();
     while (eventStream.hasNext()) {
       Event ev = eventStream.next();
       eventCount++;
-      eventStore.write(FileEventStream.toLine(ev));
+      eventStore.write(ev);
       String[] ec = ev.getContext();
       update(ec,predicateSet,counter,cutoff);
     }
@@ -134,16 +151,21 @@ public class TwoPassDataIndexer extends AbstractDataIndexer{
     return eventCount;
   }
 
-  private List index(int numEvents, EventStream es, Map<String,Integer> predicateIndex) {
+  /**
+   * Converts the events of the specified stream to comparable events which contain the
+   * indices of the predicates in the specified index.  Events without any of these
+   * predicates are dropped.
+   * @param numEvents The number of events in the stream.
+   * @param es The events.
+   * @param predicateIndex The index of each predicate used by the model.
+   * @return The comparable events.
+   */
+  protected List index(int numEvents, EventStream es, Map<String,Integer> predicateIndex) {
     Map<String,Integer> omap = new HashMap<String,Integer>();
     int outcomeCount = 0;
     List eventsToCompare = new ArrayList(numEvents);
-    List<Integer> indexedContext = new ArrayList<Integer>();
     while (es.hasNext()) {
       Event ev = es.next();
-      String[] econtext = ev.getContext();
-      ComparableEvent ce;
-
       int ocID;
       String oc = ev.getOutcome();
 
@@ -155,32 +177,22 @@ public class TwoPassDataIndexer extends AbstractDataIndexer{
         omap.put(oc, ocID);
       }
 
-      for (int i = 0; i < econtext.length; i++) {
-        String pred = econtext[i];
-        if (predicateIndex.containsKey(pred)) {
-          indexedContext.add(predicateIndex.get(pred));
-        }
-      }
-
-      // drop events with no active features
-      if (indexedContext.size() > 0) {
-        int[] cons = new int[indexedContext.size()];
-        for (int ci=0;ci<cons.length;ci++) {
-          cons[ci] = indexedContext.get(ci);
-        }
-        ce = new ComparableEvent(ocID, cons);
+      ComparableEvent ce = indexEvent(ev, ocID, predicateIndex, keepsValues());
+      if (ce != null) {
         eventsToCompare.add(ce);
       }
-      else {
-        System.err.println("Dropped event " + ev.getOutcome() + ":" + Arrays.asList(ev.getContext()));
-      }
-      // recycle the TIntArrayList
-      indexedContext.clear();
     }
     outcomeLabels = toIndexedStringArray(omap);
     predLabels = toIndexedStringArray(predicateIndex);
     return eventsToCompare;
   }
 
+  /**
+   * Returns whether the values of the events are kept.  This implementation returns false.
+   * @return Whether the values of the events are kept.
+   */
+  protected boolean keepsValues() {
+    return false;
+  }
 }
 
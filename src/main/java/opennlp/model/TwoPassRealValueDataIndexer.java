@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package opennlp.model;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A two pass indexer which maintains event values, so that real valued events such as those
+ * read by a {@link RealValueFileEventStream} can be indexed without keeping the events in
+ * memory.  The values are written to the temporary event file along with the predicates.
+ */
+public class TwoPassRealValueDataIndexer extends TwoPassDataIndexer {
+
+  float[][] values;
+
+  public TwoPassRealValueDataIndexer(EventStream eventStream, int cutoff, boolean sort) throws IOException {
+    super(eventStream,cutoff,sort);
+  }
+
+  public TwoPassRealValueDataIndexer(EventStream eventStream, int cutoff, boolean sort, boolean hashMerge) throws IOException {
+    super(eventStream,cutoff,sort,hashMerge);
+  }
+
+  /**
+   * Two argument constructor for DataIndexer.
+   * @param eventStream An Event[] which contains the a list of all the Events
+   *               seen in the training data.
+   * @param cutoff The minimum number of times a predicate must have been
+   *               observed in order to be included in the model.
+   */
+  public TwoPassRealValueDataIndexer(EventStream eventStream, int cutoff) throws IOException {
+    super(eventStream,cutoff);
+  }
+
+  public float[][] getValues() {
+    return values;
+  }
+
+  protected int sortAndMerge(List eventsToCompare,boolean sort) {
+    int numUniqueEvents = super.sortAndMerge(eventsToCompare,sort);
+    values = collectValues(eventsToCompare,numUniqueEvents);
+    return numUniqueEvents;
+  }
+
+  protected boolean keepsValues() {
+    return true;
+  }
+}
@@ -21,16 +21,18 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
-import java.util.Map;
 
+import opennlp.model.AbstractContextTable;
 import opennlp.model.AbstractModel;
 import opennlp.model.Context;
 import opennlp.model.EvalParameters;
+import opennlp.model.EvalScratch;
+import opennlp.model.IndexTable;
 
 public class PerceptronModel extends AbstractModel {
 
-  public PerceptronModel(Context[] params, String[] predLabels, Map<String,Integer> pmap, String[] outcomeNames) {
-    super(params,predLabels,outcomeNames);
+  public PerceptronModel(Context[] params, String[] predLabels, IndexTable pmap, String[] outcomeNames) {
+    super(params,predLabels,pmap,outcomeNames);
     modelType = ModelType.Perceptron;
   }
   
@@ -38,6 +40,16 @@ public class PerceptronModel extends AbstractModel {
     super(params,predLabels,outcomeNames);
     modelType = ModelType.Perceptron;
   }
+
+  public PerceptronModel(AbstractContextTable params, String[] predLabels, String[] outcomeNames) {
+    super(new EvalParameters(params,outcomeNames.length),predLabels,outcomeNames);
+    modelType = ModelType.Perceptron;
+  }
+
+  public PerceptronModel(AbstractContextTable params, IndexTable pmap, String[] outcomeNames) {
+    super(new EvalParameters(params,outcomeNames.length),pmap,outcomeNames);
+    modelType = ModelType.Perceptron;
+  }
   
   public double[] eval(String[] context) {
     return eval(context,new double[evalParams.getNumOutcomes()]);
@@ -52,12 +64,12 @@ public class PerceptronModel extends AbstractModel {
   }
 
   public double[] eval(String[] context, float[] values,double[] outsums) {
-    int[] scontexts = new int[context.length];
+    return eval(context,values,outsums,new EvalScratch());
+  }
+
+  public double[] eval(String[] context, float[] values, double[] outsums, EvalScratch scratch) {
     java.util.Arrays.fill(outsums, 0);
-    for (int i=0; i<context.length; i++) {
-      Integer ci = pmap.get(context[i]);
-      scontexts[i] = ci == null ? -1 : ci;
-    }
+    int[] scontexts = indexContext(context,scratch);
     return eval(scontexts,values,outsums,evalParams,true);
   }
   
@@ -66,50 +78,106 @@ public class PerceptronModel extends AbstractModel {
   }
   
   public static double[] eval(int[] context, float[] values, double[] prior, EvalParameters model, boolean normalize) {
-    Context[] params = model.getParams();
-    double[] activeParameters;
-    int[] activeOutcomes;
+    addParameters(context,0,context.length,values,model,prior,0);
+    if (normalize) {
+      normalize(prior,0,model.getNumOutcomes());
+    }
+    return prior;
+  }
+
+  protected void evalRows(int[] contexts, int[] offsets, float[] values, int fromRow, int toRow, double[] out, EvalScratch scratch) {
+    int numOutcomes = evalParams.getNumOutcomes();
+    java.util.Arrays.fill(out,fromRow*numOutcomes,toRow*numOutcomes,0);
+    for (int ri = fromRow; ri < toRow; ri++) {
+      addParameters(contexts,offsets[ri],offsets[ri+1],values,evalParams,out,ri*numOutcomes);
+    }
+    for (int ri = fromRow; ri < toRow; ri++) {
+      normalize(out,ri*numOutcomes,numOutcomes);
+    }
+  }
+
+  protected double[] evalScores(String[] context, float[] values, EvalScratch scratch) {
+    double[] scores = scratch.getProbs(evalParams.getNumOutcomes());
+    java.util.Arrays.fill(scores, 0);
+    int[] scontexts = indexContext(context,scratch);
+    return eval(scontexts,values,scores,evalParams,false);
+  }
+
+  protected void toProbabilities(double[] scores, int[] outcomes, int count, double[] probs) {
+    normalize(scores,0,scores.length);
+    for (int i = 0; i < count; i++) {
+      probs[i] = scores[outcomes[i]];
+    }
+  }
+
+  /**
+   * Adds the parameters of the predicates <code>context[start]</code> to <code>context[end-1]</code>
+   * to the scores starting at <code>scoreOffset</code>.
+   */
+  private static void addParameters(int[] context, int start, int end, float[] values, EvalParameters model, double[] scores, int scoreOffset) {
     double value = 1;
-    for (int ci = 0; ci < context.length; ci++) {
-      if (context[ci] >= 0) {
-        Context predParams = params[context[ci]];
-        activeOutcomes = predParams.getOutcomes();
-        activeParameters = predParams.getParameters();
-        if (values != null) {
-          value = values[ci];
-        }
-        for (int ai = 0; ai < activeOutcomes.length; ai++) {
-          int oid = activeOutcomes[ai];
-          prior[oid] += activeParameters[ai] * value;
+    AbstractContextTable table = model.getContextTable();
+    if (table != null) {
+      for (int ci = start; ci < end; ci++) {
+        int pid = context[ci];
+        if (pid >= 0) {
+          if (values != null) {
+            value = values[ci];
+          }
+          table.addParameters(pid,value,scores,scoreOffset);
         }
       }
-    }    
-    if (normalize) {
-      double normal = 0.0;
-      double min = prior[0];
-      for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-        if (prior[oid] < min) {
-          min = prior[oid];
+    }
+    else {
+      Context[] params = model.getParams();
+      double[] activeParameters;
+      int[] activeOutcomes;
+      for (int ci = start; ci < end; ci++) {
+        if (context[ci] >= 0) {
+          Context predParams = params[context[ci]];
+          activeOutcomes = predParams.getOutcomes();
+          activeParameters = predParams.getParameters();
+          if (values != null) {
+            value = values[ci];
+          }
+          for (int ai = 0; ai < activeOutcomes.length; ai++) {
+            int oid = activeOutcomes[ai] + scoreOffset;
+            scores[oid] += activeParameters[ai] * value;
+          }
         }
       }
-      for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-        if (min < 0) {
-          prior[oid]+=(-1*min);
-        }
-        normal += prior[oid];
+    }
+  }
+
+  /**
+   * Shifts the <code>numOutcomes</code> scores starting at <code>start</code> so that none are negative
+   * and scales them to sum to 1.
+   */
+  private static void normalize(double[] scores, int start, int numOutcomes) {
+    int end = start + numOutcomes;
+    double normal = 0.0;
+    double min = scores[start];
+    for (int oid = start; oid < end; oid++) {
+      if (scores[oid] < min) {
+        min = scores[oid];
       }
-      if (normal == 0.0) {
-        for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-          prior[oid] = (double) 1/model.getNumOutcomes();
-        }
+    }
+    for (int oid = start; oid < end; oid++) {
+      if (min < 0) {
+        scores[oid]+=(-1*min);
       }
-      else {
-        for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-          prior[oid] /= normal;
-        }
+      normal += scores[oid];
+    }
+    if (normal == 0.0) {
+      for (int oid = start; oid < end; oid++) {
+        scores[oid] = (double) 1/numOutcomes;
+      }
+    }
+    else {
+      for (int oid = start; oid < end; oid++) {
+        scores[oid] /= normal;
       }
     }
-    return prior;
   }
   
   public static void main(String[] args) throws java.io.IOException {
@@ -22,7 +22,7 @@ import java.io.IOException;
 
 import opennlp.model.AbstractModel;
 import opennlp.model.AbstractModelReader;
-import opennlp.model.Context;
+import opennlp.model.ContextTable;
 import opennlp.model.DataReader;
 
 /**
@@ -64,7 +64,7 @@ public class PerceptronModelReader extends AbstractModelReader {
       String[] outcomeLabels = getOutcomes();
       int[][] outcomePatterns = getOutcomePatterns();
       String[] predLabels = getPredicates();
-      Context[] params = getParameters(outcomePatterns);
+      ContextTable params = getParameters(outcomePatterns);
     
       return new PerceptronModel(params,
                           predLabels,
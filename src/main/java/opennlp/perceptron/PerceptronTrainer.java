@@ -18,8 +18,13 @@
 package opennlp.perceptron;
 
 import opennlp.model.AbstractModel;
+import opennlp.model.ArrayEventStore;
+import opennlp.model.ContextTable;
 import opennlp.model.DataIndexer;
 import opennlp.model.EvalParameters;
+import opennlp.model.EventCursor;
+import opennlp.model.EventStore;
+import opennlp.model.IndexedLabels;
 import opennlp.model.MutableContext;
 /**
  * Trains models using the perceptron algorithm.  Each outcome is represented as
@@ -40,17 +45,8 @@ public class PerceptronTrainer {
   private int numPreds; 
   /** Number of outcomes. */
   private int numOutcomes; 
-  /** Records the array of predicates seen in each event. */
-  private int[][] contexts;
-
-  /** The value associates with each context. If null then context values are assumes to be 1. */
-  private float[][] values;
-
-  /** List of outcomes for each event i, in context[i]. */
-  private int[] outcomeList;
-
-  /** Records the num of times an event has been seen for each event i, in context[i]. */
-  private int[] numTimesEventsSeen;
+  /** The predicates, values, outcome and number of times seen of each event. */
+  private EventStore events;
   
   /** Stores the String names of the outcomes.  The GIS only tracks outcomes
   as ints, and so this array is needed to save the model to disk and
@@ -90,19 +86,30 @@ public class PerceptronTrainer {
   }
   
   public AbstractModel trainModel(int iterations, DataIndexer di, int cutoff, boolean useAverage) {
+    return trainModel(iterations,di,new ArrayEventStore(di),cutoff,useAverage);
+  }
+
+  /**
+   * Trains a model on events which are read from the specified store, such as a
+   * {@link opennlp.model.CompactEventStore}.
+   * @param iterations The number of passes over the events.
+   * @param labels The labels and the number of events.
+   * @param eventStore The events.
+   * @param cutoff The number of times a predicate must occur to be used in a model.
+   * @param useAverage Whether the parameters are averaged over all updates.
+   * @return The trained model.
+   */
+  public AbstractModel trainModel(int iterations, IndexedLabels labels, EventStore eventStore, int cutoff, boolean useAverage) {
     display("Incorporating indexed data for training...  \n");
     this.useAverage = useAverage;
-    contexts = di.getContexts();
-    values = di.getValues();
-    numTimesEventsSeen = di.getNumTimesEventsSeen();
-    numEvents = di.getNumEvents();
-    numUniqueEvents = contexts.length;
+    events = eventStore;
+    numEvents = labels.getNumEvents();
+    numUniqueEvents = events.size();
 
     this.iterations = iterations;
-    outcomeLabels = di.getOutcomeLabels();
-    outcomeList = di.getOutcomeList();
+    outcomeLabels = labels.getOutcomeLabels();
 
-    predLabels = di.getPredLabels();
+    predLabels = labels.getPredLabels();
     numPreds = predLabels.length;
     numOutcomes = outcomeLabels.length;
     if (useAverage) updates = new int[numPreds][numOutcomes][3];
@@ -139,10 +146,10 @@ public class PerceptronTrainer {
 
     /*************** Create and return the model ******************/
     if (useAverage) {
-      return new PerceptronModel(averageParams, predLabels, outcomeLabels);
+      return new PerceptronModel(ContextTable.fromContexts(averageParams), predLabels, outcomeLabels);
     }
     else {
-      return new PerceptronModel(params, predLabels, outcomeLabels);
+      return new PerceptronModel(ContextTable.fromContexts(params), predLabels, outcomeLabels);
     }
   }
 
@@ -169,48 +176,44 @@ public class PerceptronTrainer {
       trainingStats(params);
     }
     // kill a bunch of these big objects now that we don't need them
-    numTimesEventsSeen = null;
-    contexts = null;
+    events = null;
   }
   
   /* Compute one iteration of Perceptron and return log-likelihood.*/
   private void nextIteration(int iteration) {
     iteration--; //move to 0-based index
     int numCorrect = 0;
-    int oei = 0;
-    for (int ei = 0; ei < numUniqueEvents; ei++,oei++) {
-      //Arrays.sort(contexts[ei]); only needed for debugging
-      for (int ni=0;ni<this.numTimesEventsSeen[ei];ni++) {
-        //System.err.print("contexts["+ei+"]=");for (int ci=0;ci<contexts[ei].length;ci++) { System.err.print(" "+contexts[ei][ci]+" ");} System.err.println();
+    EventCursor cursor = events.getCursor(0,numUniqueEvents);
+    for (int ei = 0; cursor.next(); ei++) {
+      int[] context = cursor.getContext();
+      int length = cursor.getLength();
+      float[] eventValues = cursor.getValues();
+      int outcome = cursor.getOutcome();
+      for (int ni=0;ni<cursor.getNumTimesSeen();ni++) {
         for (int oi = 0; oi < numOutcomes; oi++) {
           modelDistribution[oi] = 0;
         }
-        if (values != null) {
-          PerceptronModel.eval(contexts[ei], values[ei], modelDistribution, evalParams,false);
-        }
-        else {
-          PerceptronModel.eval(contexts[ei], null, modelDistribution, evalParams, false);
-        }
+        PerceptronModel.eval(context, eventValues, modelDistribution, evalParams, false);
         int max = 0;
         for (int oi = 1; oi < numOutcomes; oi++) {
           if (modelDistribution[oi] > modelDistribution[max]) {
             max = oi;
           }
         }
-        boolean correct = max == outcomeList[oei]; 
+        boolean correct = max == outcome; 
         if (correct) {
           numCorrect ++;
         }
         for (int oi = 0;oi<numOutcomes;oi++) {
-          if (oi == outcomeList[oei]) {
+          if (oi == outcome) {
             if (modelDistribution[oi] <= 0) {
-              for (int ci = 0; ci < contexts[ei].length; ci++) {
-                int pi = contexts[ei][ci];
-                if (values == null) {
+              for (int ci = 0; ci < length; ci++) {
+                int pi = context[ci];
+                if (eventValues == null) {
                   params[pi].updateParameter(oi, 1);
                 }
                 else {
-                  params[pi].updateParameter(oi, values[ei][ci]);
+                  params[pi].updateParameter(oi, eventValues[ci]);
                 }
                 if (useAverage) {
                   if (updates[pi][oi][VALUE] != 0) {
@@ -227,13 +230,13 @@ public class PerceptronTrainer {
           }
           else {
             if (modelDistribution[oi] > 0) {
-              for (int ci = 0; ci < contexts[ei].length; ci++) {
-                int pi = contexts[ei][ci];
-                if (values == null) {
+              for (int ci = 0; ci < length; ci++) {
+                int pi = context[ci];
+                if (eventValues == null) {
                   params[pi].updateParameter(oi, -1);
                 }
                 else {
-                  params[pi].updateParameter(oi, -1*values[ei][ci]);
+                  params[pi].updateParameter(oi, -1*eventValues[ci]);
                 }
                 if (useAverage) {
                   if (updates[pi][oi][VALUE] != 0) {
@@ -273,24 +276,20 @@ public class PerceptronTrainer {
   
   private void trainingStats(MutableContext[] params) {
     int numCorrect = 0;
-    for (int ei = 0; ei < numUniqueEvents; ei++) {
-      for (int ni=0;ni<this.numTimesEventsSeen[ei];ni++) {
+    EventCursor cursor = events.getCursor(0,numUniqueEvents);
+    while (cursor.next()) {
+      for (int ni=0;ni<cursor.getNumTimesSeen();ni++) {
         for (int oi = 0; oi < numOutcomes; oi++) {
           modelDistribution[oi] = 0;
         }
-        if (values != null) {
-          PerceptronModel.eval(contexts[ei], values[ei], modelDistribution, evalParams,false);
-        }
-        else {
-          PerceptronModel.eval(contexts[ei], null, modelDistribution, evalParams, false);
-        }
+        PerceptronModel.eval(cursor.getContext(), cursor.getValues(), modelDistribution, evalParams, false);
         int max = 0;
         for (int oi = 1; oi < numOutcomes; oi++) {
           if (modelDistribution[oi] > modelDistribution[max]) {
             max = oi;
           }
         }
-        if (max == outcomeList[ei]) {
+        if (max == cursor.getOutcome()) {
           numCorrect ++;
         }
       }
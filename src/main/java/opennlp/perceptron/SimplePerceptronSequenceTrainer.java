@@ -23,6 +23,7 @@ import java.util.Map;
 import opennlp.model.AbstractModel;
 import opennlp.model.DataIndexer;
 import opennlp.model.Event;
+import opennlp.model.IndexHashTable;
 import opennlp.model.MutableContext;
 import opennlp.model.OnePassDataIndexer;
 import opennlp.model.Sequence;
@@ -61,7 +62,7 @@ public class SimplePerceptronSequenceTrainer {
   private MutableContext[] averageParams;
   
   /** Mapping between context and an integer */ 
-  private Map<String,Integer> pmap;
+  private IndexHashTable pmap;
 
   private Map<String,Integer> omap;
   
@@ -87,10 +88,7 @@ public class SimplePerceptronSequenceTrainer {
     }
     outcomeList  = di.getOutcomeList();
     predLabels = di.getPredLabels();
-    pmap = new HashMap<String,Integer>();
-    for (int pli=0;pli<predLabels.length;pli++) {
-      pmap.put(predLabels[pli], pli);
-    }
+    pmap = new IndexHashTable(predLabels);
     display("Incorporating indexed data for training...  \n");
     this.useAverage = useAverage;
     numEvents = di.getNumEvents();
@@ -141,16 +139,13 @@ public class SimplePerceptronSequenceTrainer {
     /*************** Create and return the model ******************/
     String[] updatedPredLabels = predLabels;
     /*
-    String[] updatedPredLabels = new String[pmap.size()];
-    for (String pred : pmap.keySet()) {
-      updatedPredLabels[pmap.get(pred)]=pred;
-    }
+    String[] updatedPredLabels = pmap.toArray();
     */
     if (useAverage) {
-      return new PerceptronModel(averageParams, updatedPredLabels, outcomeLabels);
+      return new PerceptronModel(averageParams, updatedPredLabels, pmap, outcomeLabels);
     }
     else {
-      return new PerceptronModel(params, updatedPredLabels, outcomeLabels);
+      return new PerceptronModel(params, updatedPredLabels, pmap, outcomeLabels);
     }
   }
 
@@ -254,8 +249,8 @@ public class SimplePerceptronSequenceTrainer {
         }
         for (int oi=0;oi<numOutcomes;oi++) {
           for (String feature : featureCounts[oi].keySet()) {
-            Integer pi = pmap.get(feature);
-            if (pi != null) {
+            int pi = pmap.get(feature);
+            if (pi != -1) {
               //System.err.println(si+" "+outcomeLabels[oi]+" "+feature+" "+featureCounts[oi].get(feature));
               params[pi].updateParameter(oi, featureCounts[oi].get(feature));
               if (useAverage) {
@@ -299,7 +294,7 @@ public class SimplePerceptronSequenceTrainer {
     int numCorrect = 0;
     int oei=0;
     for (Sequence sequence : sequenceStream) {
-      Event[] taggerEvents = sequenceStream.updateContext(sequence, new PerceptronModel(params,predLabels,outcomeLabels));
+      Event[] taggerEvents = sequenceStream.updateContext(sequence, new PerceptronModel(params,predLabels,pmap,outcomeLabels));
       for (int ei=0;ei<taggerEvents.length;ei++,oei++) {
         int max = omap.get(taggerEvents[ei].getOutcome());
         if (max == outcomeList[oei]) {
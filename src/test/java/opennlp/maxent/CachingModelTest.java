@@ -0,0 +1,124 @@
+package opennlp.maxent;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import opennlp.model.AbstractModel;
+import opennlp.model.FileEventStream;
+import opennlp.model.MaxentModel;
+import opennlp.model.OnePassDataIndexer;
+import opennlp.model.TestModels;
+
+public class CachingModelTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+
+  private static final String[][] CONTEXTS = new String[][] {
+      {"feature1","feature2"},{"feature2","feature1"},{"feature5","unknown","feature2"},{"feature3"},{}
+  };
+  private static final float[][] VALUES = new float[][] {
+      {5.5f,6.1f},{6.1f,5.5f},{1.8f,2f,6.1f},{0.5f},{}
+  };
+
+  public void testSameDistributionsAsModel() throws IOException {
+    AbstractModel model = TestModels.gisModel(100);
+    CachingModel cache = new CachingModel(model,64);
+    for (int pass = 0; pass < 3; pass++) {
+      for (int ci = 0; ci < CONTEXTS.length; ci++) {
+        assertTrue(Arrays.equals(model.eval(CONTEXTS[ci]),cache.eval(CONTEXTS[ci])));
+        assertTrue(Arrays.equals(model.eval(CONTEXTS[ci],VALUES[ci]),cache.eval(CONTEXTS[ci],VALUES[ci])));
+        double[] probs = new double[model.getNumOutcomes()];
+        assertSame(probs,cache.eval(CONTEXTS[ci],probs));
+        assertTrue(Arrays.equals(model.eval(CONTEXTS[ci]),probs));
+      }
+    }
+    assertEquals(2 * CONTEXTS.length,cache.getMisses());
+    assertEquals(7 * CONTEXTS.length,cache.getHits());
+  }
+
+  public void testReturnedArraysAreNotShared() throws IOException {
+    AbstractModel model = TestModels.gisModel(100);
+    CachingModel cache = new CachingModel(model,64);
+    double[] first = cache.eval(CONTEXTS[0]);
+    Arrays.fill(first,-1);
+    assertTrue(Arrays.equals(model.eval(CONTEXTS[0]),cache.eval(CONTEXTS[0])));
+    assertEquals(1,cache.getHits());
+  }
+
+  public void testEvalBatch() throws IOException {
+    AbstractModel model = TestModels.gisModel(100);
+    CachingModel cache = new CachingModel(model,64);
+    double[][] out = new double[CONTEXTS.length][model.getNumOutcomes()];
+    cache.evalBatch(CONTEXTS,VALUES,out);
+    cache.evalBatch(CONTEXTS,VALUES,out);
+    for (int ci = 0; ci < CONTEXTS.length; ci++) {
+      assertTrue(Arrays.equals(model.eval(CONTEXTS[ci],VALUES[ci]),out[ci]));
+    }
+    assertEquals(CONTEXTS.length,cache.getHits());
+  }
+
+  public void testSetModelInvalidates() throws IOException {
+    AbstractModel first = TestModels.gisModel(100);
+    AbstractModel second = TestModels.gisModel(3);
+    CachingModel cache = new CachingModel(first,64);
+    cache.eval(CONTEXTS[0]);
+    cache.setModel(second);
+    assertSame(second,cache.getModel());
+    assertTrue(Arrays.equals(second.eval(CONTEXTS[0]),cache.eval(CONTEXTS[0])));
+    assertEquals(0,cache.getHits());
+    assertEquals(2,cache.getMisses());
+  }
+
+  public void testSmallCacheStaysCorrect() throws IOException {
+    AbstractModel model = GIS.trainModel(10,new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),1));
+    CachingModel cache = new CachingModel(model,2);
+    Random random = new Random(3);
+    String[] names = new String[] {"a","b","c","d","e","f","g","h"};
+    for (int i = 0; i < 2000; i++) {
+      String[] context = new String[random.nextInt(4)];
+      for (int pi = 0; pi < context.length; pi++) {
+        context[pi] = names[random.nextInt(names.length)];
+      }
+      assertTrue(Arrays.equals(model.eval(context),cache.eval(context)));
+    }
+    assertEquals(2000,cache.getHits() + cache.getMisses());
+  }
+
+  public void testConcurrentEvalWhileSwapping() throws IOException, InterruptedException {
+    final AbstractModel first = TestModels.gisModel(100);
+    final AbstractModel second = TestModels.gisModel(3);
+    final CachingModel cache = new CachingModel(first,16);
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for (int ti = 0; ti < threads.length; ti++) {
+      final int seed = ti;
+      threads[ti] = new Thread() {
+        public void run() {
+          Random random = new Random(seed);
+          for (int i = 0; i < 20000; i++) {
+            int ci = random.nextInt(CONTEXTS.length);
+            double[] probs = cache.eval(CONTEXTS[ci],VALUES[ci]);
+            if (!Arrays.equals(first.eval(CONTEXTS[ci],VALUES[ci]),probs)
+                && !Arrays.equals(second.eval(CONTEXTS[ci],VALUES[ci]),probs)) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[ti].start();
+    }
+    for (int si = 0; si < 1000; si++) {
+      cache.setModel(si % 2 == 0 ? second : first);
+      Thread.yield();
+    }
+    for (int ti = 0; ti < threads.length; ti++) {
+      threads[ti].join();
+    }
+    assertEquals(0,failures.get());
+    MaxentModel last = cache.getModel();
+    assertTrue(Arrays.equals(last.eval(CONTEXTS[0]),cache.eval(CONTEXTS[0])));
+  }
+}
@@ -0,0 +1,68 @@
+package opennlp.maxent;
+
+import java.io.File;
+import java.io.IOException;
+
+import opennlp.model.DataIndexer;
+import opennlp.model.FileEventStore;
+import opennlp.model.IndexedDataWriter;
+import opennlp.model.MappedDataIndexer;
+import opennlp.model.OnePassRealValueDataIndexer;
+import opennlp.model.RealValueFileEventStream;
+
+import junit.framework.TestCase;
+
+public class FileEventStoreGISTest extends TestCase {
+
+  private static final String[] CONTEXT = new String[] {"feature1","feature2","feature3","feature4","feature5"};
+  private static final float[] VALUES = new float[] {5.5f, 6.1f, 9.1f, 4.0f, 1.8f};
+
+  private File file;
+
+  protected void setUp() throws IOException {
+    file = File.createTempFile("indexed",".data");
+    DataIndexer indexer = new OnePassRealValueDataIndexer(new RealValueFileEventStream("src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt"),1);
+    new IndexedDataWriter(indexer,file).persist();
+  }
+
+  protected void tearDown() {
+    file.delete();
+  }
+
+  public void testSameModelAsInMemoryTraining() throws IOException {
+    for (int threads = 1; threads <= 3; threads += 2) {
+      GISModel memoryModel = GIS.trainModel(100,new MappedDataIndexer(file),false,false,null,0,threads);
+      FileEventStore events = new FileEventStore(file,2,2);
+      GISModel fileModel;
+      try {
+        fileModel = GIS.trainModel(100,new MappedDataIndexer(file),events,false,false,null,0,threads);
+      }
+      finally {
+        events.close();
+      }
+      double[] memoryResults = memoryModel.eval(CONTEXT,VALUES);
+      double[] fileResults = fileModel.eval(CONTEXT,VALUES);
+      for (int oi = 0; oi < memoryResults.length; oi++) {
+        assertEquals(memoryResults[oi],fileResults[oi],0d);
+      }
+    }
+  }
+
+  public void testTrainFromFile() throws IOException {
+    GISModel memoryModel = GIS.trainModel(100,new MappedDataIndexer(file),false,false,null,0,2);
+    boolean printMessages = GIS.PRINT_MESSAGES;
+    GIS.PRINT_MESSAGES = false;
+    GISModel fileModel;
+    try {
+      fileModel = GIS.trainModel(100,file,2);
+    }
+    finally {
+      GIS.PRINT_MESSAGES = printMessages;
+    }
+    double[] memoryResults = memoryModel.eval(CONTEXT,VALUES);
+    double[] fileResults = fileModel.eval(CONTEXT,VALUES);
+    for (int oi = 0; oi < memoryResults.length; oi++) {
+      assertEquals(memoryResults[oi],fileResults[oi],0d);
+    }
+  }
+}
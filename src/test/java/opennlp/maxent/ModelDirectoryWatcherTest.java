@@ -0,0 +1,168 @@
+package opennlp.maxent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+import opennlp.model.AbstractModel;
+import opennlp.model.Event;
+import opennlp.model.EventCollector;
+import opennlp.model.EventCollectorAsStream;
+import opennlp.model.EventStream;
+import opennlp.model.GenericModelWriter;
+import opennlp.model.MaxentModel;
+import opennlp.model.OnePassDataIndexer;
+
+public class ModelDirectoryWatcherTest extends TestCase {
+
+  private File directory;
+  private File staging;
+
+  protected void setUp() throws IOException {
+    directory = createDirectory();
+    staging = createDirectory();
+  }
+
+  private static File createDirectory() throws IOException {
+    File dir = File.createTempFile("models",null);
+    dir.delete();
+    dir.mkdir();
+    return dir;
+  }
+
+  protected void tearDown() {
+    delete(directory);
+    delete(staging);
+  }
+
+  private static void delete(File dir) {
+    File[] files = dir.listFiles();
+    for (int fi = 0; fi < files.length; fi++) {
+      files[fi].delete();
+    }
+    dir.delete();
+  }
+
+  private static AbstractModel train(String[] outcomes) throws IOException {
+    final Event[] events = new Event[outcomes.length];
+    for (int oi = 0; oi < outcomes.length; oi++) {
+      events[oi] = new Event(outcomes[oi],new String[] {"p" + oi});
+    }
+    EventStream stream = new EventCollectorAsStream(new EventCollector() {
+      public Event[] getEvents() {
+        return events;
+      }
+
+      public Event[] getEvents(boolean evalMode) {
+        return events;
+      }
+    });
+    return GIS.trainModel(5,new OnePassDataIndexer(stream,0));
+  }
+
+  /**
+   * Writes the model to the staging directory and moves it to the model directory, giving it
+   * a new modification time.
+   */
+  private void deploy(String name, AbstractModel model, long modified) throws IOException {
+    File temp = new File(staging,name + ".bin.gz");
+    new GenericModelWriter(model,temp).persist();
+    File file = new File(directory,name + ".bin.gz");
+    file.delete();
+    assertTrue(temp.renameTo(file));
+    file.setLastModified(modified);
+  }
+
+  public void testLoadsAndReloadsChangedModels() throws IOException {
+    deploy("a",train(new String[] {"x","y"}),10000);
+    final List<MaxentModel> released = Collections.synchronizedList(new ArrayList<MaxentModel>());
+    ModelDirectoryWatcher watcher = new ModelDirectoryWatcher(directory,ModelDirectoryWatcher.DEFAULT_SUFFIX,1000000,
+        new ModelReleaseListener() {
+          public void modelReleased(MaxentModel model) {
+            released.add(model);
+          }
+        });
+    watcher.start();
+    try {
+      MaxentModel first = watcher.getModel("a");
+      assertEquals(2,first.getNumOutcomes());
+      try {
+        watcher.getModel("b");
+        fail();
+      }
+      catch (NoSuchElementException e) {
+        // expected
+      }
+
+      SwappableModel.Lease lease = watcher.acquire("a");
+      deploy("a",train(new String[] {"x","y","z"}),20000);
+      deploy("b",train(new String[] {"u","v"}),20000);
+      // a changed file is only loaded once it is the same in two polls
+      watcher.poll();
+      assertSame(first,watcher.getModel("a"));
+      assertFalse(watcher.getNames().contains("b"));
+      watcher.poll();
+      assertEquals(3,watcher.getModel("a").getNumOutcomes());
+      assertEquals(2,watcher.getModel("b").getNumOutcomes());
+      assertSame(first,lease.getModel());
+      assertTrue(released.isEmpty());
+      lease.release();
+      assertEquals(1,released.size());
+      assertSame(first,released.get(0));
+
+      // an unchanged file is not loaded again
+      MaxentModel second = watcher.getModel("a");
+      watcher.poll();
+      assertSame(second,watcher.getModel("a"));
+    }
+    finally {
+      watcher.stop();
+    }
+  }
+
+  public void testInvalidFileKeepsPreviousModel() throws IOException {
+    deploy("a",train(new String[] {"x","y"}),10000);
+    ModelDirectoryWatcher watcher = new ModelDirectoryWatcher(directory,1000000);
+    watcher.start();
+    try {
+      MaxentModel first = watcher.getModel("a");
+      File file = new File(directory,"a.bin.gz");
+      FileOutputStream out = new FileOutputStream(file);
+      out.write("not a model".getBytes("UTF-8"));
+      out.close();
+      file.setLastModified(20000);
+      watcher.poll();
+      watcher.poll();
+      assertSame(first,watcher.getModel("a"));
+      deploy("a",train(new String[] {"x","y","z"}),30000);
+      watcher.poll();
+      watcher.poll();
+      assertEquals(3,watcher.getModel("a").getNumOutcomes());
+    }
+    finally {
+      watcher.stop();
+    }
+  }
+
+  public void testBackgroundPolling() throws IOException, InterruptedException {
+    ModelDirectoryWatcher watcher = new ModelDirectoryWatcher(directory,10);
+    watcher.start();
+    try {
+      assertTrue(watcher.getNames().isEmpty());
+      deploy("a",train(new String[] {"x","y"}),10000);
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!watcher.getNames().contains("a") && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(2,watcher.getModel("a").getNumOutcomes());
+    }
+    finally {
+      watcher.stop();
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package opennlp.maxent;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import opennlp.model.AbstractModel;
+import opennlp.model.Context;
+import opennlp.model.FileEventStream;
+import opennlp.model.MaxentModel;
+import opennlp.model.OnePassDataIndexer;
+
+public class ModelRegistryTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+
+  private static class Domain implements ModelDomain {
+
+    private final String name;
+
+    Domain(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof Domain && ((Domain) o).name.equals(name);
+    }
+
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+  /**
+   * Loads a model whose single outcome is the name of the domain.
+   */
+  private static class CountingLoader implements ModelLoader {
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    public MaxentModel loadModel(ModelDomain domain) throws IOException {
+      loads.incrementAndGet();
+      return new GISModel(new Context[0],new String[0],new String[] {domain.getName()},1,0);
+    }
+  }
+
+  /**
+   * A registry which counts every model as 1 byte.
+   */
+  private static class UnitRegistry extends ModelRegistry {
+
+    UnitRegistry(ModelLoader loader, long budget) {
+      super(loader,budget);
+    }
+
+    protected long estimateSize(MaxentModel model) {
+      return 1;
+    }
+  }
+
+  public void testLoadsOnce() throws IOException {
+    CountingLoader loader = new CountingLoader();
+    ModelRegistry registry = new UnitRegistry(loader,10);
+    MaxentModel model = registry.getModel(new Domain("a"));
+    assertEquals("a",model.getOutcome(0));
+    assertSame(model,registry.getModel(new Domain("a")));
+    assertEquals(1,loader.loads.get());
+    assertEquals(1,registry.getSize());
+  }
+
+  public void testEvictsLeastRecentlyUsed() throws IOException {
+    CountingLoader loader = new CountingLoader();
+    ModelRegistry registry = new UnitRegistry(loader,3);
+    registry.getModel(new Domain("a"));
+    registry.getModel(new Domain("b"));
+    registry.getModel(new Domain("c"));
+    registry.getModel(new Domain("a"));
+    registry.getModel(new Domain("d"));
+    assertEquals(3,registry.getSize());
+    assertTrue(registry.isResident(new Domain("a")));
+    assertFalse(registry.isResident(new Domain("b")));
+    assertTrue(registry.isResident(new Domain("c")));
+    assertTrue(registry.isResident(new Domain("d")));
+    registry.getModel(new Domain("b"));
+    assertEquals(5,loader.loads.get());
+    assertFalse(registry.isResident(new Domain("c")));
+    registry.removeModel(new Domain("a"));
+    assertEquals(2,registry.getSize());
+    registry.setModel(new Domain("b"),new CountingLoader().loadModel(new Domain("x")));
+    assertEquals("x",registry.getModel(new Domain("b")).getOutcome(0));
+    assertEquals(2,registry.getSize());
+  }
+
+  public void testFrequentlyUsedModelSurvivesEvictions() throws IOException {
+    CountingLoader loader = new CountingLoader();
+    ModelRegistry registry = new UnitRegistry(loader,3);
+    registry.getModel(new Domain("hot"));
+    for (int di = 0; di < 100; di++) {
+      registry.getModel(new Domain("hot"));
+      registry.getModel(new Domain(Integer.toString(di)));
+      assertTrue(registry.isResident(new Domain("hot")));
+      assertTrue(registry.getSize() <= 3);
+    }
+    assertEquals(101,loader.loads.get());
+    registry.removeModel(new Domain("hot"));
+    for (int di = 0; di < 100; di++) {
+      registry.removeModel(new Domain(Integer.toString(di)));
+    }
+    assertEquals(0,registry.getSize());
+    assertTrue(registry.getDomains().isEmpty());
+  }
+
+  public void testModelLargerThanBudgetStaysUntilNextLoad() throws IOException {
+    ModelRegistry registry = new UnitRegistry(new CountingLoader(),0);
+    registry.getModel(new Domain("a"));
+    assertTrue(registry.isResident(new Domain("a")));
+    registry.getModel(new Domain("b"));
+    assertFalse(registry.isResident(new Domain("a")));
+    assertEquals(1,registry.getSize());
+  }
+
+  public void testConcurrentMissesLoadOnce() throws InterruptedException {
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountingLoader counting = new CountingLoader();
+    final ModelRegistry registry = new UnitRegistry(new ModelLoader() {
+      public MaxentModel loadModel(ModelDomain domain) throws IOException {
+        loading.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          throw new IOException("interrupted");
+        }
+        return counting.loadModel(domain);
+      }
+    },10);
+    final MaxentModel[] models = new MaxentModel[8];
+    Thread[] threads = new Thread[models.length];
+    for (int ti = 0; ti < threads.length; ti++) {
+      final int index = ti;
+      threads[ti] = new Thread() {
+        public void run() {
+          try {
+            models[index] = registry.getModel(new Domain("a"));
+          }
+          catch (IOException e) {
+            // models[index] stays null
+          }
+        }
+      };
+      threads[ti].start();
+    }
+    loading.await();
+    release.countDown();
+    for (int ti = 0; ti < threads.length; ti++) {
+      threads[ti].join();
+    }
+    assertEquals(1,counting.loads.get());
+    for (int ti = 0; ti < models.length; ti++) {
+      assertSame(models[0],models[ti]);
+    }
+  }
+
+  public void testConcurrentReplacementsKeepTheSize() throws InterruptedException {
+    final ModelRegistry registry = new UnitRegistry(new CountingLoader(),3);
+    final MaxentModel model = new GISModel(new Context[0],new String[0],new String[] {"x"},1,0);
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for (int ti = 0; ti < threads.length; ti++) {
+      final int seed = ti;
+      threads[ti] = new Thread() {
+        public void run() {
+          try {
+            for (int i = 0; i < 5000; i++) {
+              Domain domain = new Domain(String.valueOf((i * 7 + seed) % 6));
+              if (i % 5 == 0) {
+                registry.removeModel(domain);
+              }
+              else if (i % 2 == 0) {
+                registry.setModel(domain,model);
+              }
+              else {
+                registry.getModel(domain);
+              }
+            }
+          }
+          catch (Exception e) {
+            failures.incrementAndGet();
+          }
+        }
+      };
+      threads[ti].start();
+    }
+    for (int ti = 0; ti < threads.length; ti++) {
+      threads[ti].join();
+    }
+    assertEquals(0,failures.get());
+    // every resident model counts 1, so the size must match the resident domains
+    assertEquals(registry.getDomains().size(),registry.getSize());
+    assertTrue(registry.getSize() <= 3);
+  }
+
+  public void testFailedLoadIsRetried() throws IOException {
+    final AtomicInteger attempts = new AtomicInteger();
+    final CountingLoader counting = new CountingLoader();
+    ModelRegistry registry = new UnitRegistry(new ModelLoader() {
+      public MaxentModel loadModel(ModelDomain domain) throws IOException {
+        if (attempts.incrementAndGet() == 1) {
+          throw new IOException("unavailable");
+        }
+        return counting.loadModel(domain);
+      }
+    },10);
+    try {
+      registry.getModel(new Domain("a"));
+      fail();
+    }
+    catch (IOException e) {
+      assertEquals("unavailable",e.getMessage());
+    }
+    assertFalse(registry.isResident(new Domain("a")));
+    assertEquals(0,registry.getSize());
+    assertEquals("a",registry.getModel(new Domain("a")).getOutcome(0));
+    assertEquals(2,attempts.get());
+  }
+
+  public void testHeapSizeEstimate() throws IOException {
+    AbstractModel model = GIS.trainModel(10,new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),1));
+    long size = model.getHeapSize();
+    assertTrue(size > 0);
+    ModelRegistry registry = new ModelRegistry(new CountingLoader(),Long.MAX_VALUE);
+    registry.setModel(new Domain("a"),model);
+    assertEquals(size,registry.getSize());
+  }
+}
@@ -0,0 +1,44 @@
+package opennlp.maxent;
+
+import java.io.IOException;
+
+import opennlp.model.DataIndexer;
+import opennlp.model.FileEventStream;
+import opennlp.model.OnePassRealValueDataIndexer;
+
+import junit.framework.TestCase;
+
+public class MultiThreadedGISTest extends TestCase {
+
+  private static final String[] CONTEXT = new String[] {"feature1","feature2","feature3","feature4","feature5"};
+  private static final float[] VALUES = new float[] {5.5f, 6.1f, 9.1f, 4.0f, 1.8f};
+
+  private DataIndexer createIndexer() throws IOException {
+    return new OnePassRealValueDataIndexer(new FileEventStream("src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt"),1);
+  }
+
+  public void testThreadsGiveSameModel() throws IOException {
+    GISModel serialModel = GIS.trainModel(100,createIndexer(),1);
+    GISModel parallelModel = GIS.trainModel(100,createIndexer(),4);
+    GISModel repeatModel = GIS.trainModel(100,createIndexer(),4);
+
+    double[] serialResults = serialModel.eval(CONTEXT,VALUES);
+    double[] parallelResults = parallelModel.eval(CONTEXT,VALUES);
+    double[] repeatResults = repeatModel.eval(CONTEXT,VALUES);
+    for (int oi=0;oi<serialResults.length;oi++) {
+      assertEquals(serialResults[oi],parallelResults[oi],1e-9);
+      // the reduction is done in thread order, so the same number of threads gives the same model
+      assertEquals(parallelResults[oi],repeatResults[oi],0d);
+    }
+  }
+
+  public void testMoreThreadsThanEvents() throws IOException {
+    GISModel serialModel = GIS.trainModel(10,createIndexer(),1);
+    GISModel parallelModel = GIS.trainModel(10,createIndexer(),1000);
+    double[] serialResults = serialModel.eval(CONTEXT,VALUES);
+    double[] parallelResults = parallelModel.eval(CONTEXT,VALUES);
+    for (int oi=0;oi<serialResults.length;oi++) {
+      assertEquals(serialResults[oi],parallelResults[oi],1e-9);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package opennlp.maxent;
+
+import junit.framework.TestCase;
+
+public class ObservedCountsTest extends TestCase {
+
+  public void testCountsMatchDenseTable() {
+    int numPreds = 2000;
+    int numOutcomes = 7;
+    int[][] contexts = new int[5000][];
+    float[][] values = new float[contexts.length][];
+    int[] outcomeList = new int[contexts.length];
+    int[] numTimesEventsSeen = new int[contexts.length];
+    java.util.Random random = new java.util.Random(17);
+    float[][] dense = new float[numPreds][numOutcomes];
+    for (int ti = 0; ti < contexts.length; ti++) {
+      contexts[ti] = new int[1 + random.nextInt(5)];
+      values[ti] = ti % 3 == 0 ? null : new float[contexts[ti].length];
+      outcomeList[ti] = random.nextInt(numOutcomes);
+      numTimesEventsSeen[ti] = 1 + random.nextInt(3);
+      for (int j = 0; j < contexts[ti].length; j++) {
+        contexts[ti][j] = random.nextInt(numPreds);
+        if (values[ti] != null) {
+          values[ti][j] = random.nextFloat();
+          dense[contexts[ti][j]][outcomeList[ti]] += numTimesEventsSeen[ti]*values[ti][j];
+        }
+        else {
+          dense[contexts[ti][j]][outcomeList[ti]] += numTimesEventsSeen[ti];
+        }
+      }
+    }
+
+    ObservedCounts counts = new ObservedCounts(contexts,values,outcomeList,numTimesEventsSeen,numPreds);
+    for (int pi = 0; pi < numPreds; pi++) {
+      int ai = counts.getStart(pi);
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        if (ai < counts.getStart(pi+1) && counts.getOutcome(ai) == oi) {
+          assertEquals(dense[pi][oi],counts.getCount(ai),0f);
+          ai++;
+        }
+        else {
+          assertEquals(0f,dense[pi][oi],0f);
+        }
+      }
+      assertEquals(counts.getStart(pi+1),ai);
+    }
+  }
+}
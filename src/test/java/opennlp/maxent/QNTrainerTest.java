@@ -0,0 +1,76 @@
+package opennlp.maxent;
+
+import java.io.IOException;
+
+import opennlp.model.Event;
+import opennlp.model.FileEventStream;
+import opennlp.model.OnePassRealValueDataIndexer;
+import opennlp.model.RealValueFileEventStream;
+
+import junit.framework.TestCase;
+
+public class QNTrainerTest extends TestCase {
+
+  private static final String[][] CONTEXTS = new String[][] {
+    {"feature2","feature5"},
+    {"feature1","feature3"},
+    {"feature4"},
+    {"feature1","feature2","feature3","feature4","feature5"}
+  };
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+
+  public void testLBFGSFitsBetterThanGIS() throws IOException {
+    GISModel gisModel = GIS.trainModel(100,new OnePassRealValueDataIndexer(new FileEventStream(TRAINING_DATA),1));
+    GISModel qnModel = GIS.trainLBFGSModel(30,new OnePassRealValueDataIndexer(new FileEventStream(TRAINING_DATA),1),false,100,0);
+    assertTrue(logLikelihood(qnModel) > logLikelihood(gisModel));
+  }
+
+  public void testPriorShrinksParameters() throws IOException {
+    GISModel weakPrior = GIS.trainLBFGSModel(100,new OnePassRealValueDataIndexer(new FileEventStream(TRAINING_DATA),1),false,100,0);
+    GISModel strongPrior = GIS.trainLBFGSModel(100,new OnePassRealValueDataIndexer(new FileEventStream(TRAINING_DATA),1),false,0.1,0);
+    assertTrue(logLikelihood(weakPrior) > logLikelihood(strongPrior));
+    // a strong prior keeps the distribution close to uniform
+    double[] probs = strongPrior.eval(CONTEXTS[0]);
+    for (int oi=0;oi<probs.length;oi++) {
+      assertEquals(1.0/probs.length,probs[oi],0.2);
+    }
+  }
+
+  public void testRejectedCorrectionKeepsTheRing() {
+    QNTrainer.Corrections corrections = new QNTrainer.Corrections(2,2);
+    assertTrue(corrections.add(new double[] {0,0},new double[] {1,0},new double[] {0,0},new double[] {2,0.5}));
+    assertTrue(corrections.add(new double[] {1,0},new double[] {1,1},new double[] {2,0.5},new double[] {2.3,1.5}));
+    assertEquals(2,corrections.size());
+    double[] g = new double[] {1,1};
+    double[] expected = new double[2];
+    corrections.direction(g,expected);
+    // negative curvature, so the pair must not replace the oldest one
+    assertFalse(corrections.add(new double[] {1,1},new double[] {2,2},new double[] {2.3,1.5},new double[] {1.3,0.5}));
+    assertEquals(2,corrections.size());
+    double[] direction = new double[2];
+    corrections.direction(g,direction);
+    assertEquals(expected[0],direction[0],0);
+    assertEquals(expected[1],direction[1],0);
+  }
+
+  private double logLikelihood(GISModel model) throws IOException {
+    FileEventStream es = new FileEventStream(TRAINING_DATA);
+    double loglikelihood = 0;
+    while (es.hasNext()) {
+      Event event = es.next();
+      loglikelihood += Math.log(model.eval(event.getContext())[model.getIndex(event.getOutcome())]);
+    }
+    return loglikelihood;
+  }
+
+  public void testRealValuedLBFGS() throws IOException {
+    GISModel realModel = GIS.trainLBFGSModel(100,new OnePassRealValueDataIndexer(new RealValueFileEventStream("src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt"),1));
+    GISModel repeatModel = GIS.trainLBFGSModel(100,new OnePassRealValueDataIndexer(new FileEventStream("src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt"),1));
+    double[] realResults = realModel.eval(CONTEXTS[0]);
+    double[] repeatResults = repeatModel.eval(CONTEXTS[0]);
+    for (int oi=0;oi<realResults.length;oi++) {
+      assertEquals(realResults[oi],repeatResults[oi],0.01);
+    }
+  }
+}
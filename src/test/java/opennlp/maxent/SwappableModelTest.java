@@ -0,0 +1,109 @@
+package opennlp.maxent;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import opennlp.model.Context;
+import opennlp.model.MaxentModel;
+
+public class SwappableModelTest extends TestCase {
+
+  private static MaxentModel newModel(String outcome) {
+    return new GISModel(new Context[0],new String[0],new String[] {outcome},1,0);
+  }
+
+  public void testReleaseAfterLastLease() {
+    final Map<MaxentModel,Integer> released = Collections.synchronizedMap(new IdentityHashMap<MaxentModel,Integer>());
+    ModelReleaseListener listener = new ModelReleaseListener() {
+      public void modelReleased(MaxentModel model) {
+        Integer count = released.get(model);
+        released.put(model,count == null ? 1 : count.intValue() + 1);
+      }
+    };
+    MaxentModel first = newModel("a");
+    MaxentModel second = newModel("b");
+    SwappableModel swappable = new SwappableModel(first,listener);
+    SwappableModel.Lease lease1 = swappable.acquire();
+    SwappableModel.Lease lease2 = swappable.acquire();
+    assertSame(first,lease1.getModel());
+    assertSame(first,swappable.replaceModel(second));
+    assertSame(second,swappable.getModel());
+    assertSame(second,swappable.acquire().getModel());
+    assertTrue(released.isEmpty());
+    lease1.release();
+    assertTrue(released.isEmpty());
+    lease2.release();
+    assertEquals(Integer.valueOf(1),released.get(first));
+    assertNull(released.get(second));
+    try {
+      lease2.release();
+      fail();
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testReplaceWithoutLeasesReleasesImmediately() {
+    final AtomicReference<MaxentModel> released = new AtomicReference<MaxentModel>();
+    MaxentModel first = newModel("a");
+    SwappableModel swappable = new SwappableModel(first,new ModelReleaseListener() {
+      public void modelReleased(MaxentModel model) {
+        released.set(model);
+      }
+    });
+    swappable.replaceModel(newModel("b"));
+    assertSame(first,released.get());
+  }
+
+  public void testConcurrentReadersNeverSeeReleasedModels() throws InterruptedException {
+    final Map<MaxentModel,Boolean> released = Collections.synchronizedMap(new IdentityHashMap<MaxentModel,Boolean>());
+    final AtomicInteger releaseCount = new AtomicInteger();
+    final SwappableModel swappable = new SwappableModel(newModel("0"),new ModelReleaseListener() {
+      public void modelReleased(MaxentModel model) {
+        if (released.put(model,Boolean.TRUE) != null) {
+          throw new IllegalStateException("released twice");
+        }
+        releaseCount.incrementAndGet();
+      }
+    });
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] readers = new Thread[4];
+    for (int ti = 0; ti < readers.length; ti++) {
+      readers[ti] = new Thread() {
+        public void run() {
+          while (!stop.get()) {
+            SwappableModel.Lease lease = swappable.acquire();
+            MaxentModel model = lease.getModel();
+            if (released.containsKey(model) || model.getNumOutcomes() != 1) {
+              failures.incrementAndGet();
+            }
+            Thread.yield();
+            if (released.containsKey(model)) {
+              failures.incrementAndGet();
+            }
+            lease.release();
+          }
+        }
+      };
+      readers[ti].start();
+    }
+    int swaps = 2000;
+    for (int si = 1; si <= swaps; si++) {
+      swappable.replaceModel(newModel(Integer.toString(si)));
+    }
+    stop.set(true);
+    for (int ti = 0; ti < readers.length; ti++) {
+      readers[ti].join();
+    }
+    assertEquals(0,failures.get());
+    assertEquals(swaps,releaseCount.get());
+    assertFalse(released.containsKey(swappable.getModel()));
+  }
+}
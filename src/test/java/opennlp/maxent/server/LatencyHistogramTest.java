@@ -0,0 +1,66 @@
+package opennlp.maxent.server;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0,histogram.getCount());
+    assertEquals(0,histogram.getPercentile(99));
+    assertEquals(0,histogram.getMax());
+    assertEquals(0d,histogram.getMean(),0d);
+  }
+
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int v = 1; v <= 20; v++) {
+      histogram.record(v);
+    }
+    assertEquals(10,histogram.getPercentile(50));
+    assertEquals(20,histogram.getPercentile(100));
+    assertEquals(1,histogram.getPercentile(0));
+    assertEquals(10.5,histogram.getMean(),0d);
+  }
+
+  public void testPercentilesWithinBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(5);
+    long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.exp(random.nextDouble() * 20);
+      histogram.record(values[i]);
+    }
+    java.util.Arrays.sort(values);
+    double[] percentiles = new double[] {1, 50, 90, 99, 99.9};
+    for (int pi = 0; pi < percentiles.length; pi++) {
+      long expected = values[(int) Math.ceil(percentiles[pi] / 100 * values.length) - 1];
+      long actual = histogram.getPercentile(percentiles[pi]);
+      assertTrue(percentiles[pi] + ": " + actual + " vs " + expected, actual >= expected && actual <= expected + expected / 32 + 1);
+    }
+    assertEquals(values[values.length - 1],histogram.getMax());
+    assertEquals(values[values.length - 1],histogram.getPercentile(100));
+  }
+
+  public void testConcurrentRecording() throws InterruptedException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[4];
+    for (int ti = 0; ti < threads.length; ti++) {
+      threads[ti] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            histogram.record(i);
+          }
+        }
+      };
+      threads[ti].start();
+    }
+    for (int ti = 0; ti < threads.length; ti++) {
+      threads[ti].join();
+    }
+    assertEquals(40000,histogram.getCount());
+    assertEquals(9999,histogram.getMax());
+  }
+}
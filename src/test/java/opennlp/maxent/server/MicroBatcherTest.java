@@ -0,0 +1,200 @@
+package opennlp.maxent.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import opennlp.maxent.GISModel;
+import opennlp.model.AbstractModel;
+import opennlp.model.Context;
+import opennlp.model.MaxentModel;
+import opennlp.model.TestModels;
+
+public class MicroBatcherTest extends TestCase {
+
+  /**
+   * A model whose batches wait until they are released.
+   */
+  private static class BlockingModel implements MaxentModel {
+
+    private final MaxentModel model;
+    private final CountDownLatch entered;
+    private final CountDownLatch release;
+    private final AtomicInteger largest;
+
+    BlockingModel(MaxentModel model, CountDownLatch entered, CountDownLatch release, AtomicInteger largest) {
+      this.model = model;
+      this.entered = entered;
+      this.release = release;
+      this.largest = largest;
+    }
+
+    public void evalBatch(String[][] contexts, float[][] values, double[][] out) {
+      entered.countDown();
+      try {
+        release.await();
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      largest.set(Math.max(largest.get(),contexts.length));
+      model.evalBatch(contexts,values,out);
+    }
+
+    public double[] eval(String[] context) {
+      return model.eval(context);
+    }
+
+    public double[] eval(String[] context, double[] probs) {
+      return model.eval(context,probs);
+    }
+
+    public double[] eval(String[] context, float[] values) {
+      return model.eval(context,values);
+    }
+
+    public String getBestOutcome(double[] outcomes) {
+      return model.getBestOutcome(outcomes);
+    }
+
+    public String getAllOutcomes(double[] outcomes) {
+      return model.getAllOutcomes(outcomes);
+    }
+
+    public String getOutcome(int i) {
+      return model.getOutcome(i);
+    }
+
+    public int getIndex(String outcome) {
+      return model.getIndex(outcome);
+    }
+
+    public Object[] getDataStructures() {
+      return model.getDataStructures();
+    }
+
+    public int getNumOutcomes() {
+      return model.getNumOutcomes();
+    }
+  }
+
+  public void testResultsMatchEval() throws IOException, InterruptedException {
+    AbstractModel model = TestModels.gisModel();
+    MicroBatcher batcher = new MicroBatcher(model,2,0);
+    try {
+      double[][] probs = batcher.eval(TestModels.CONTEXTS,TestModels.VALUES);
+      for (int ci = 0; ci < TestModels.CONTEXTS.length; ci++) {
+        assertTrue(Arrays.equals(model.eval(TestModels.CONTEXTS[ci],TestModels.VALUES[ci]),probs[ci]));
+      }
+      probs = batcher.eval(TestModels.CONTEXTS,null);
+      for (int ci = 0; ci < TestModels.CONTEXTS.length; ci++) {
+        assertTrue(Arrays.equals(model.eval(TestModels.CONTEXTS[ci]),probs[ci]));
+      }
+      assertEquals(2,batcher.getRequests());
+      assertEquals(2 * TestModels.CONTEXTS.length,batcher.getContexts());
+      assertEquals(2,batcher.getBatches());
+      assertEquals(2,batcher.getLatencies().getCount());
+    }
+    finally {
+      batcher.close();
+    }
+  }
+
+  public void testConcurrentRequestsAreCombined() throws IOException, InterruptedException {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger largest = new AtomicInteger();
+    MaxentModel model = new BlockingModel(new GISModel(new Context[0],new String[0],new String[] {"A","B"},1,0),entered,release,largest);
+    final MicroBatcher batcher = new MicroBatcher(model,100,0);
+    try {
+      Thread[] threads = new Thread[6];
+      final AtomicInteger failures = new AtomicInteger();
+      for (int ti = 0; ti < threads.length; ti++) {
+        threads[ti] = new Thread() {
+          public void run() {
+            try {
+              double[][] probs = batcher.eval(TestModels.CONTEXTS,null);
+              if (probs.length != TestModels.CONTEXTS.length || probs[0][0] != 0.5) {
+                failures.incrementAndGet();
+              }
+            }
+            catch (Exception e) {
+              failures.incrementAndGet();
+            }
+          }
+        };
+      }
+      threads[0].start();
+      entered.await();
+      // the first batch is being evaluated, so the other requests queue up
+      for (int ti = 1; ti < threads.length; ti++) {
+        threads[ti].start();
+      }
+      while (batcher.getQueueLength() < threads.length - 1) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+      for (int ti = 0; ti < threads.length; ti++) {
+        threads[ti].join();
+      }
+      assertEquals(0,failures.get());
+      assertEquals(2,batcher.getBatches());
+      assertEquals(5 * TestModels.CONTEXTS.length,largest.get());
+    }
+    finally {
+      release.countDown();
+      batcher.close();
+    }
+  }
+
+  public void testLargeRequestIsNotSplit() throws IOException, InterruptedException {
+    AbstractModel model = TestModels.gisModel();
+    MicroBatcher batcher = new MicroBatcher(model,1,0);
+    try {
+      double[][] probs = batcher.eval(TestModels.CONTEXTS,TestModels.VALUES);
+      assertEquals(TestModels.CONTEXTS.length,probs.length);
+      assertEquals(1,batcher.getBatches());
+    }
+    finally {
+      batcher.close();
+    }
+  }
+
+  public void testIdleThreadStopsAndRestarts() throws IOException, InterruptedException {
+    AbstractModel model = TestModels.gisModel();
+    MicroBatcher batcher = new MicroBatcher(model,10,0);
+    batcher.setIdleTimeout(20);
+    try {
+      assertFalse(batcher.isRunning());
+      batcher.eval(TestModels.CONTEXTS,TestModels.VALUES);
+      long deadline = System.currentTimeMillis() + 10000;
+      while (batcher.isRunning()) {
+        assertTrue("the idle thread must stop",System.currentTimeMillis() < deadline);
+        Thread.sleep(5);
+      }
+      double[][] probs = batcher.eval(TestModels.CONTEXTS,null);
+      for (int ci = 0; ci < TestModels.CONTEXTS.length; ci++) {
+        assertTrue(Arrays.equals(model.eval(TestModels.CONTEXTS[ci]),probs[ci]));
+      }
+      assertEquals(2,batcher.getBatches());
+    }
+    finally {
+      batcher.close();
+    }
+  }
+
+  public void testClosedBatcherRejectsRequests() throws IOException, InterruptedException {
+    AbstractModel model = TestModels.gisModel();
+    MicroBatcher batcher = new MicroBatcher(model,10,0);
+    batcher.close();
+    try {
+      batcher.eval(TestModels.CONTEXTS,null);
+      fail("a closed batcher must not evaluate");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package opennlp.maxent.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import opennlp.maxent.ModelDomain;
+import opennlp.maxent.ModelLoader;
+import opennlp.maxent.ModelRegistry;
+import opennlp.model.AbstractModel;
+import opennlp.model.MaxentModel;
+import opennlp.model.TestModels;
+
+public class ScoringServerTest extends TestCase {
+
+  private AbstractModel strong;
+  private AbstractModel weak;
+  private ModelLoader loader;
+  private ScoringServer server;
+
+  protected void setUp() throws IOException {
+    strong = TestModels.gisModel();
+    weak = TestModels.gisModel(3);
+    loader = new ModelLoader() {
+      public MaxentModel loadModel(ModelDomain domain) throws IOException {
+        if (domain.getName().equals("strong")) {
+          return strong;
+        }
+        if (domain.getName().equals("weak")) {
+          return weak;
+        }
+        throw new IOException("No model named " + domain.getName());
+      }
+    };
+    server = new ScoringServer(new ModelRegistry(loader,Long.MAX_VALUE),0);
+    server.start();
+  }
+
+  protected void tearDown() {
+    server.stop();
+  }
+
+  public void testEval() throws IOException {
+    ScoringClient client = new ScoringClient("localhost",server.getPort());
+    try {
+      double[][] probs = client.eval("strong",TestModels.CONTEXTS);
+      for (int ci = 0; ci < TestModels.CONTEXTS.length; ci++) {
+        assertTrue(Arrays.equals(strong.eval(TestModels.CONTEXTS[ci]),probs[ci]));
+      }
+      assertTrue(Arrays.equals(weak.eval(TestModels.CONTEXTS[0]),client.eval("weak",TestModels.CONTEXTS[0])));
+      assertTrue(Arrays.equals(strong.eval(new String[] {"feature1","feature2"},new float[] {5.5f,6.1f}),
+          client.eval("strong",new String[] {"feature1=5.5","feature2=6.1"})));
+      String[] outcomes = client.getOutcomes("strong");
+      assertEquals(strong.getNumOutcomes(),outcomes.length);
+      for (int oi = 0; oi < outcomes.length; oi++) {
+        assertEquals(strong.getOutcome(oi),outcomes[oi]);
+      }
+      String stats = client.getStats("strong");
+      assertTrue(stats,stats.startsWith("requests=2 contexts=" + (TestModels.CONTEXTS.length + 1) + " batches=2 count=2 "));
+    }
+    finally {
+      client.close();
+    }
+  }
+
+  public void testErrorsKeepTheConnectionUsable() throws IOException {
+    ScoringClient client = new ScoringClient("localhost",server.getPort());
+    try {
+      try {
+        client.eval("missing",TestModels.CONTEXTS);
+        fail("an unknown model must be reported");
+      }
+      catch (IOException e) {
+        assertTrue(e.getMessage().indexOf("missing") != -1);
+      }
+      try {
+        client.eval("strong",new String[] {"feature1=-1"});
+        fail("a negative value must be reported");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      try {
+        client.getStats("weak");
+        fail("a model which has not been used has no statistics");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      assertTrue(Arrays.equals(strong.eval(TestModels.CONTEXTS[0]),client.eval("strong",TestModels.CONTEXTS[0])));
+    }
+    finally {
+      client.close();
+    }
+  }
+
+  public void testLoadGenerator() throws IOException, InterruptedException {
+    LoadGenerator generator = new LoadGenerator("localhost",server.getPort(),"strong",TestModels.CONTEXTS);
+    LatencyHistogram latencies = generator.run(4,50,3);
+    assertEquals(200,latencies.getCount());
+    MicroBatcher batcher = server.getBatcher("strong");
+    assertEquals(200,batcher.getRequests());
+    assertEquals(600,batcher.getContexts());
+    assertTrue(batcher.getBatches() <= 200);
+  }
+
+  public void testNamesOutsideTheModelDirectoryAreRejected() throws IOException {
+    final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+    ModelLoader recording = new ModelLoader() {
+      public MaxentModel loadModel(ModelDomain domain) throws IOException {
+        loaded.add(domain.getName());
+        return loader.loadModel(domain);
+      }
+    };
+    ScoringServer checked = new ScoringServer(new ModelRegistry(recording,Long.MAX_VALUE),0);
+    checked.start();
+    try {
+      ScoringClient client = new ScoringClient("localhost",checked.getPort());
+      try {
+        String[] names = new String[] {"../strong","a/b","a\\b","..","/etc/strong"};
+        for (int ni = 0; ni < names.length; ni++) {
+          try {
+            client.eval(names[ni],TestModels.CONTEXTS[0]);
+            fail(names[ni] + " must be rejected");
+          }
+          catch (IOException e) {
+            assertTrue(e.getMessage(),e.getMessage().indexOf("Invalid model name") != -1);
+          }
+        }
+        assertTrue(loaded.toString(),loaded.isEmpty());
+        assertTrue(Arrays.equals(strong.eval(TestModels.CONTEXTS[0]),client.eval("strong",TestModels.CONTEXTS[0])));
+      }
+      finally {
+        client.close();
+      }
+    }
+    finally {
+      checked.stop();
+    }
+  }
+
+  public void testListensOnLoopbackByDefault() {
+    assertTrue(server.getAddress().isLoopbackAddress());
+  }
+
+  public void testTooManyContextsClosesTheConnection() throws IOException {
+    server.setMaxContexts(TestModels.CONTEXTS.length - 1);
+    ScoringClient client = new ScoringClient("localhost",server.getPort());
+    try {
+      assertTrue(Arrays.equals(strong.eval(TestModels.CONTEXTS[0]),client.eval("strong",TestModels.CONTEXTS[0])));
+      try {
+        client.eval("strong",TestModels.CONTEXTS);
+        fail("a request with too many contexts must be rejected");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      try {
+        client.eval("strong",TestModels.CONTEXTS[0]);
+        fail("the connection must have been closed");
+      }
+      catch (IOException e) {
+        // expected
+      }
+    }
+    finally {
+      client.close();
+    }
+  }
+
+  public void testLongLineClosesTheConnection() throws IOException {
+    server.setMaxLineLength(100);
+    Socket socket = new Socket("localhost",server.getPort());
+    try {
+      socket.setSoTimeout(10000);
+      OutputStream out = socket.getOutputStream();
+      // one character too many and no line terminator, so the server has to stop reading
+      byte[] line = new byte[101];
+      Arrays.fill(line,(byte) 'a');
+      out.write(line);
+      out.flush();
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),"UTF-8"));
+      String reply = in.readLine();
+      assertTrue(reply,reply.startsWith("ERROR Line too long"));
+      assertNull(in.readLine());
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  public void testIdleConnectionsAreClosed() throws IOException, InterruptedException {
+    ScoringServer limited = new ScoringServer(new ModelRegistry(loader,Long.MAX_VALUE),0);
+    limited.setMaxConnections(1);
+    limited.setReadTimeout(100);
+    limited.start();
+    try {
+      Socket idle = new Socket("localhost",limited.getPort());
+      try {
+        idle.setSoTimeout(10000);
+        BufferedReader in = new BufferedReader(new InputStreamReader(idle.getInputStream(),"UTF-8"));
+        String reply = in.readLine();
+        assertTrue(reply,reply.startsWith("ERROR No request"));
+        assertNull(in.readLine());
+      }
+      finally {
+        idle.close();
+      }
+      // the permit of the idle connection is returned
+      long deadline = System.currentTimeMillis() + 10000;
+      while (true) {
+        ScoringClient client = new ScoringClient("localhost",limited.getPort());
+        try {
+          assertTrue(Arrays.equals(strong.eval(TestModels.CONTEXTS[0]),client.eval("strong",TestModels.CONTEXTS[0])));
+          break;
+        }
+        catch (IOException e) {
+          assertTrue(e.getMessage(),System.currentTimeMillis() < deadline);
+          Thread.sleep(10);
+        }
+        finally {
+          client.close();
+        }
+      }
+    }
+    finally {
+      limited.stop();
+    }
+  }
+
+  public void testConnectionsAreLimited() throws IOException, InterruptedException {
+    ScoringServer limited = new ScoringServer(new ModelRegistry(loader,Long.MAX_VALUE),0);
+    limited.setMaxConnections(1);
+    limited.start();
+    try {
+      ScoringClient first = new ScoringClient("localhost",limited.getPort());
+      try {
+        first.eval("strong",TestModels.CONTEXTS[0]);
+        ScoringClient second = new ScoringClient("localhost",limited.getPort());
+        try {
+          second.eval("strong",TestModels.CONTEXTS[0]);
+          fail("the second connection must be refused");
+        }
+        catch (IOException e) {
+          // expected
+        }
+        finally {
+          second.close();
+        }
+      }
+      finally {
+        first.close();
+      }
+      // the permit of the first connection is returned once the server sees it close
+      long deadline = System.currentTimeMillis() + 10000;
+      while (true) {
+        ScoringClient third = new ScoringClient("localhost",limited.getPort());
+        try {
+          assertTrue(Arrays.equals(strong.eval(TestModels.CONTEXTS[0]),third.eval("strong",TestModels.CONTEXTS[0])));
+          break;
+        }
+        catch (IOException e) {
+          assertTrue(e.getMessage(),System.currentTimeMillis() < deadline);
+          Thread.sleep(10);
+        }
+        finally {
+          third.close();
+        }
+      }
+    }
+    finally {
+      limited.stop();
+    }
+  }
+
+  public void testStopClosesConnections() throws IOException {
+    ScoringClient client = new ScoringClient("localhost",server.getPort());
+    try {
+      client.eval("strong",TestModels.CONTEXTS[0]);
+      server.stop();
+      try {
+        client.eval("strong",TestModels.CONTEXTS[0]);
+        fail("the connection must have been closed");
+      }
+      catch (IOException e) {
+        // expected
+      }
+    }
+    finally {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class BinaryEventFileTest extends TestCase {
+
+  private static final String REAL_VALUED_TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  public void testRoundTrip() throws IOException {
+    char[] longPredicate = new char[100000];
+    Arrays.fill(longPredicate,'\u00e9');
+    String[] many = new String[20];
+    float[] manyValues = new float[20];
+    for (int pi = 0; pi < many.length; pi++) {
+      many[pi] = "p" + pi;
+      manyValues[pi] = pi % 3 == 0 ? 1 : pi / 7f;
+    }
+    Event[] events = new Event[] {
+        new Event("a",new String[] {"x","y"}),
+        new Event("\u00fcber",new String[] {"\u4e2d\u6587","\ud834\udd1e","","x"},
+            new float[] {0.5f,1f,-0f,Float.intBitsToFloat(0x7fc00001)}),
+        new Event("b",new String[0]),
+        new Event("b",new String[0],new float[0]),
+        new Event("a",new String[] {"x"},new float[] {1f}),
+        new Event("c",new String[] {new String(longPredicate),"z"},new float[] {Float.MIN_VALUE,Float.MAX_VALUE}),
+        new Event("c",many,manyValues)
+    };
+    File file = File.createTempFile("events",".bin");
+    try {
+      BinaryEventFileWriter writer = new BinaryEventFileWriter(file);
+      for (int ei = 0; ei < events.length; ei++) {
+        writer.write(events[ei]);
+      }
+      writer.close();
+      BinaryEventFileStream stream = new BinaryEventFileStream(file);
+      assertEquals(events.length,stream.getNumEvents());
+      assertTrue(Arrays.equals(new String[] {"a","\u00fcber","b","c"},stream.getOutcomes()));
+      for (int ei = 0; ei < events.length; ei++) {
+        assertTrue(stream.hasNext());
+        assertSameEvent(events[ei],stream.next());
+      }
+      assertFalse(stream.hasNext());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testConvertedTextFile() throws IOException {
+    File text = new File(REAL_VALUED_TRAINING_DATA);
+    File file = File.createTempFile("events",".bin");
+    try {
+      BinaryEventFileWriter writer = new BinaryEventFileWriter(file);
+      long count = writer.write(new RealValueFileEventStream(text));
+      writer.close();
+      assertTrue(file.length() < text.length());
+      EventStream expected = new RealValueFileEventStream(text);
+      EventStream actual = new BinaryEventFileStream(file);
+      for (long ei = 0; ei < count; ei++) {
+        assertTrue(expected.hasNext());
+        assertTrue(actual.hasNext());
+        assertSameEvent(expected.next(),actual.next());
+      }
+      assertFalse(expected.hasNext());
+      assertFalse(actual.hasNext());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testEmptyFile() throws IOException {
+    File file = File.createTempFile("events",".bin");
+    try {
+      new BinaryEventFileWriter(file).close();
+      assertFalse(new BinaryEventFileStream(file).hasNext());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testUnclosedFileIsRejected() throws IOException {
+    File file = File.createTempFile("events",".bin");
+    try {
+      BinaryEventFileWriter writer = new BinaryEventFileWriter(file);
+      writer.write(new Event("a",new String[] {"x"}));
+      try {
+        new BinaryEventFileStream(file);
+        fail();
+      }
+      catch (IOException e) {
+        // expected
+      }
+      writer.close();
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private static void assertSameEvent(Event expected, Event actual) {
+    assertEquals(expected.getOutcome(),actual.getOutcome());
+    assertTrue(Arrays.equals(expected.getContext(),actual.getContext()));
+    float[] expectedValues = expected.getValues();
+    float[] actualValues = actual.getValues();
+    if (expectedValues == null) {
+      assertNull(actualValues);
+      return;
+    }
+    assertEquals(expectedValues.length,actualValues.length);
+    for (int vi = 0; vi < expectedValues.length; vi++) {
+      assertEquals(Float.floatToRawIntBits(expectedValues[vi]),Float.floatToRawIntBits(actualValues[vi]));
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ByteFileEventStreamTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+  private static final String REAL_VALUED_TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  public void testMatchesFileEventStream() throws IOException {
+    assertSameEvents(new FileEventStream(new File(TRAINING_DATA)),new ByteFileEventStream(new File(TRAINING_DATA),false));
+    // a buffer smaller than a line forces refills and growth
+    assertSameEvents(new FileEventStream(new File(TRAINING_DATA)),new ByteFileEventStream(new File(TRAINING_DATA),false,4));
+  }
+
+  public void testMatchesRealValueFileEventStream() throws IOException {
+    assertSameEvents(new RealValueFileEventStream(new File(REAL_VALUED_TRAINING_DATA)),
+        new ByteFileEventStream(new File(REAL_VALUED_TRAINING_DATA),true));
+    assertSameEvents(new RealValueFileEventStream(new File(REAL_VALUED_TRAINING_DATA)),
+        new ByteFileEventStream(new File(REAL_VALUED_TRAINING_DATA),true,7));
+  }
+
+  public void testLineEndingsAndUnicode() throws IOException {
+    File file = write("a x=1.5 \u00fcber=0.25\r\n\r\n  b\t\u4e2d\u6587  y=z= =2 w=\n c q=1e3 r=abc");
+    try {
+      ByteFileEventStream stream = new ByteFileEventStream(file,true,8);
+      assertTrue(stream.hasNext());
+      assertEvent(stream.next(),"a",new String[] {"x","\u00fcber"},new float[] {1.5f,0.25f});
+      assertTrue(stream.hasNext());
+      assertEvent(stream.next(),"b",new String[] {"\u4e2d\u6587","y=z=","=2","w="},null);
+      assertTrue(stream.hasNext());
+      assertEvent(stream.next(),"c",new String[] {"q","r=abc"},new float[] {1000f,1f});
+      assertFalse(stream.hasNext());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testNegativeValue() throws IOException {
+    File file = write("a x=-1\n");
+    try {
+      ByteFileEventStream stream = new ByteFileEventStream(file,true);
+      try {
+        stream.hasNext();
+        fail();
+      }
+      catch (RuntimeException e) {
+        // expected
+      }
+      stream.close();
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testInternedIds() throws IOException {
+    File file = write("a x y\nb y z x\na z\n");
+    try {
+      ByteFileEventStream stream = new ByteFileEventStream(file,false);
+      int[][] expected = new int[][] {{0,1},{1,2,0},{2}};
+      int[] expectedOutcomes = new int[] {0,1,0};
+      for (int ei = 0; ei < expected.length; ei++) {
+        assertTrue(stream.nextIds());
+        assertEquals(expectedOutcomes[ei],stream.getOutcomeId());
+        assertEquals(expected[ei].length,stream.getLength());
+        for (int ci = 0; ci < expected[ei].length; ci++) {
+          assertEquals(expected[ei][ci],stream.getPredicateIds()[ci]);
+        }
+        assertNull(stream.getValues());
+      }
+      assertFalse(stream.nextIds());
+      assertEquals(3,stream.getNumPredicates());
+      assertEquals(2,stream.getNumOutcomes());
+      assertEquals("z",stream.getPredicate(2));
+      assertEquals("b",stream.getOutcome(1));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testParseFloatMatchesFloatParseFloat() throws IOException {
+    Random random = new Random(17);
+    String[] fixed = new String[] {"0","-0","0.0","000.500","1","16777216","16777217","123456789012",
+        "0.1","0.3","3.4028235E38","1e-50","1.4E-45",".5","5.","+2.5","NaN","Infinity",
+        "0.00000000001","9999999999","1.00000000000000000001","0.1000000000","33554431.5"};
+    for (int i = 0; i < fixed.length; i++) {
+      assertParsesLikeFloat(fixed[i]);
+    }
+    for (int i = 0; i < 200000; i++) {
+      String s;
+      switch (i % 4) {
+        case 0: s = Float.toString(random.nextFloat() * (float) Math.pow(10, random.nextInt(20) - 10)); break;
+        case 1: s = Integer.toString(random.nextInt(1 << 25)); break;
+        case 2: s = random.nextInt(100000) + "." + random.nextInt(100000); break;
+        default: s = Double.toString(random.nextDouble() * random.nextInt(1000));
+      }
+      assertParsesLikeFloat(s);
+    }
+  }
+
+  private void assertParsesLikeFloat(String s) throws IOException {
+    byte[] bytes = s.getBytes("UTF-8");
+    byte[] buffer = new byte[bytes.length + 2];
+    buffer[0] = (byte) '=';
+    System.arraycopy(bytes,0,buffer,1,bytes.length);
+    buffer[bytes.length + 1] = (byte) ' ';
+    float expected = Float.parseFloat(s);
+    float actual = EventLineParser.parseFloat(buffer,1,bytes.length + 1);
+    assertEquals(s,Float.floatToRawIntBits(expected),Float.floatToRawIntBits(actual));
+  }
+
+  private static File write(String text) throws IOException {
+    File file = File.createTempFile("events",null);
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(text.getBytes("UTF-8"));
+    out.close();
+    return file;
+  }
+
+  private static void assertEvent(Event event, String outcome, String[] context, float[] values) {
+    assertEquals(outcome,event.getOutcome());
+    assertTrue(Arrays.equals(context,event.getContext()));
+    assertTrue(Arrays.equals(values,event.getValues()));
+  }
+
+  private static void assertSameEvents(EventStream expected, ByteFileEventStream actual) {
+    int count = 0;
+    while (expected.hasNext()) {
+      assertTrue(actual.hasNext());
+      Event expectedEvent = expected.next();
+      assertEvent(actual.next(),expectedEvent.getOutcome(),expectedEvent.getContext(),expectedEvent.getValues());
+      count++;
+    }
+    assertFalse(actual.hasNext());
+    assertTrue(count > 0);
+  }
+}
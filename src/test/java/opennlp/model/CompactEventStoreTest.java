@@ -0,0 +1,120 @@
+package opennlp.model;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import opennlp.maxent.GIS;
+import opennlp.perceptron.PerceptronTrainer;
+
+public class CompactEventStoreTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  public void testRandomEventsRoundTrip() {
+    Random random = new Random(11);
+    int numEvents = 2000;
+    int[][] contexts = new int[numEvents][];
+    float[][] values = new float[numEvents][];
+    int[] outcomes = new int[numEvents];
+    int[] seen = new int[numEvents];
+    for (int ei = 0; ei < numEvents; ei++) {
+      contexts[ei] = new int[1 + random.nextInt(20)];
+      for (int ci = 0; ci < contexts[ei].length; ci++) {
+        contexts[ei][ci] = random.nextInt(ei % 3 == 0 ? Integer.MAX_VALUE : 1000);
+      }
+      if (ei % 2 == 0) {
+        // sorted as by the indexers
+        Arrays.sort(contexts[ei]);
+      }
+      if (ei % 4 == 1) {
+        values[ei] = new float[contexts[ei].length];
+        for (int ci = 0; ci < values[ei].length; ci++) {
+          values[ei][ci] = random.nextBoolean() ? 1f : random.nextFloat() * 10;
+        }
+      }
+      outcomes[ei] = random.nextInt(ei % 5 == 0 ? 100000 : 5);
+      seen[ei] = 1 + random.nextInt(ei % 7 == 0 ? 1000000 : 3);
+    }
+    EventStore expected = new ArrayEventStore(contexts,values,outcomes,seen);
+    CompactEventStore actual = new CompactEventStore(expected);
+    assertEquals(numEvents,actual.size());
+    IndexAssert.assertSameEvents(expected.getCursor(0,numEvents),actual.getCursor(0,numEvents));
+    IndexAssert.assertSameEvents(expected.getCursor(17,1001),actual.getCursor(17,1001));
+    IndexAssert.assertSameEvents(expected.getCursor(5,5),actual.getCursor(5,5));
+  }
+
+  public void testSmallerThanArrays() throws IOException {
+    DataIndexer indexer = new OnePassDataIndexer(new FileEventStream("src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt"),1);
+    CompactEventStore store = new CompactEventStore(indexer);
+    long entries = 0;
+    int[][] contexts = indexer.getContexts();
+    for (int ei = 0; ei < contexts.length; ei++) {
+      entries += contexts[ei].length;
+    }
+    assertTrue(store.getDataSize() < 4 * entries);
+  }
+
+  public void testTrainersGiveSameModels() throws IOException {
+    DataIndexer indexer = new OnePassRealValueDataIndexer(new RealValueFileEventStream(TRAINING_DATA),1);
+    CompactEventStore store = new CompactEventStore(indexer);
+    String[] context = new String[] {"feature1","feature2","feature5"};
+    float[] values = new float[] {5.5f,6.1f,1.8f};
+
+    AbstractModel expected = GIS.trainModel(50,indexer,false,false,null,0,1);
+    AbstractModel actual = GIS.trainModel(50,indexer,store,false,false,null,0,1);
+    assertTrue(Arrays.equals(expected.eval(context,values),actual.eval(context,values)));
+
+    expected = new PerceptronTrainer().trainModel(10,indexer,1,true);
+    actual = new PerceptronTrainer().trainModel(10,indexer,store,1,true);
+    Context[] expectedParams = (Context[]) expected.getDataStructures()[0];
+    Context[] actualParams = (Context[]) actual.getDataStructures()[0];
+    for (int pi = 0; pi < expectedParams.length; pi++) {
+      assertTrue(Arrays.equals(expectedParams[pi].getParameters(),actualParams[pi].getParameters()));
+    }
+  }
+
+  public void testCursorDoesNotAllocate() throws IOException {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+    if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isThreadAllocatedMemoryEnabled()) {
+      return;
+    }
+    Random random = new Random(3);
+    int numEvents = 200000;
+    int[][] contexts = new int[numEvents][];
+    float[][] values = new float[numEvents][];
+    for (int ei = 0; ei < numEvents; ei++) {
+      contexts[ei] = new int[8];
+      values[ei] = new float[8];
+      for (int ci = 0; ci < 8; ci++) {
+        contexts[ei][ci] = random.nextInt(10000);
+        values[ei][ci] = random.nextInt(3);
+      }
+    }
+    CompactEventStore store = new CompactEventStore(new ArrayEventStore(contexts,values,new int[numEvents],new int[numEvents]));
+    EventCursor cursor = store.getCursor(0,numEvents);
+    // size the buffers and get the decoding compiled
+    int sum = 0;
+    for (int ei = 0; ei < numEvents / 2; ei++) {
+      cursor.next();
+      sum += cursor.getContext()[0];
+    }
+    long threadId = Thread.currentThread().getId();
+    long overheadStart = threadBean.getThreadAllocatedBytes(threadId);
+    long overhead = threadBean.getThreadAllocatedBytes(threadId) - overheadStart;
+
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    while (cursor.next()) {
+      sum += cursor.getContext()[0];
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+    assertEquals(0,allocated);
+    assertTrue(sum >= 0);
+  }
+}
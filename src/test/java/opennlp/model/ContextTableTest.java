@@ -0,0 +1,117 @@
+package opennlp.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import opennlp.maxent.GISModel;
+
+public class ContextTableTest extends TestCase {
+
+  public void testTableMatchesContexts() throws IOException {
+    GISModel model = TestModels.gisModel();
+    Object[] data = model.getDataStructures();
+    Context[] contexts = (Context[]) data[0];
+    ContextTable table = ContextTable.fromContexts(contexts);
+    assertEquals(contexts.length,table.getNumContexts());
+    Context[] copy = table.toContexts();
+    for (int pid=0;pid<contexts.length;pid++) {
+      assertEquals(contexts[pid].getOutcomes().length,copy[pid].getOutcomes().length);
+      for (int ai=0;ai<contexts[pid].getOutcomes().length;ai++) {
+        assertEquals(contexts[pid].getOutcomes()[ai],copy[pid].getOutcomes()[ai]);
+        assertEquals(contexts[pid].getParameters()[ai],copy[pid].getParameters()[ai],0d);
+      }
+    }
+
+    String[] predLabels = ((IndexHashTable) data[1]).toArray();
+    String[] outcomeLabels = (String[]) data[2];
+    int correctionConstant = ((Integer) data[3]).intValue();
+    double correctionParam = ((Double) data[4]).doubleValue();
+    GISModel objectModel = new GISModel(contexts,predLabels,outcomeLabels,correctionConstant,correctionParam);
+    String[] context = new String[] {"feature1","feature2","feature3","feature4","feature5"};
+    float[] values = new float[] {5.5f, 6.1f, 9.1f, 4.0f, 1.8f};
+    assertSameDistribution(objectModel.eval(context,values),model.eval(context,values));
+  }
+
+  public void testReadModelMatchesTrainedModel() throws IOException {
+    GISModel model = TestModels.gisModel();
+    File file = File.createTempFile("model", ".bin");
+    try {
+      new GenericModelWriter(model,file).persist();
+      AbstractModel readModel = new GenericModelReader(file).getModel();
+      String[] context = new String[] {"feature2","feature5"};
+      assertSameDistribution(model.eval(context),readModel.eval(context));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testReadModelFollowsTheWriterSuffixes() throws IOException {
+    GISModel model = TestModels.gisModel();
+    String[] context = new String[] {"feature2","feature5"};
+    String[] suffixes = new String[] {".bin",".bin.gz",".txt",".txt.gz",".model"};
+    for (int si = 0; si < suffixes.length; si++) {
+      File file = File.createTempFile("model",suffixes[si]);
+      try {
+        new GenericModelWriter(model,file).persist();
+        assertSameDistribution(model.eval(context),GenericModelReader.readModel(file).eval(context));
+      }
+      finally {
+        file.delete();
+      }
+    }
+  }
+
+  public void testPatternsWhichDoNotCoverThePredicatesAreRejected() throws IOException {
+    GISModel model = TestModels.gisModel();
+    File file = File.createTempFile("model", ".txt");
+    try {
+      new GenericModelWriter(model,file).persist();
+      List<String> lines = new ArrayList<String>();
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+      reader.close();
+      // the first outcome pattern follows the outcome labels and the number of patterns
+      int patternLine = 5 + Integer.parseInt(lines.get(3));
+      String pattern = lines.get(patternLine);
+      int si = pattern.indexOf(' ');
+      int count = Integer.parseInt(pattern.substring(0,si));
+      int[] changes = new int[] {-1, 1};
+      for (int ci = 0; ci < changes.length; ci++) {
+        lines.set(patternLine,(count + changes[ci]) + pattern.substring(si));
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        for (int li = 0; li < lines.size(); li++) {
+          writer.println(lines.get(li));
+        }
+        writer.close();
+        try {
+          new GenericModelReader(file).getModel();
+          fail("patterns covering " + changes[ci] + " predicates too many must be rejected");
+        }
+        catch (IOException e) {
+          // expected
+        }
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private void assertSameDistribution(double[] expected, double[] actual) {
+    assertEquals(expected.length,actual.length);
+    for (int oi=0;oi<expected.length;oi++) {
+      assertEquals(expected[oi],actual[oi],1e-12);
+    }
+  }
+}
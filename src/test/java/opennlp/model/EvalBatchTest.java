@@ -0,0 +1,60 @@
+package opennlp.model;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class EvalBatchTest extends TestCase {
+
+  public void testGISBatchMatchesEval() throws IOException {
+    AbstractModel model = TestModels.gisModel();
+    assertBatchMatchesEval(model);
+  }
+
+  public void testPerceptronBatchMatchesEval() throws IOException {
+    AbstractModel model = TestModels.perceptronModel();
+    assertBatchMatchesEval(model);
+  }
+
+  private void assertBatchMatchesEval(AbstractModel model) {
+    // enough rows to span several blocks
+    int numRows = 3 * AbstractModel.BATCH_BLOCK_SIZE;
+    String[][] contexts = new String[numRows][];
+    float[][] values = new float[numRows][];
+    for (int ri=0;ri<numRows;ri++) {
+      contexts[ri] = TestModels.CONTEXTS[ri % TestModels.CONTEXTS.length];
+      values[ri] = TestModels.VALUES[ri % TestModels.VALUES.length];
+    }
+    int numOutcomes = model.getNumOutcomes();
+
+    double[][] out = new double[numRows][numOutcomes];
+    model.evalBatch(contexts,values,out);
+    double[][] unweighted = new double[numRows][numOutcomes];
+    model.evalBatch(contexts,null,unweighted);
+
+    int[] offsets = new int[numRows+1];
+    for (int ri=0;ri<numRows;ri++) {
+      offsets[ri+1] = offsets[ri] + contexts[ri].length;
+    }
+    int[] ids = new int[offsets[numRows]];
+    float[] vals = new float[offsets[numRows]];
+    for (int ri=0;ri<numRows;ri++) {
+      for (int ci=0;ci<contexts[ri].length;ci++) {
+        ids[offsets[ri]+ci] = model.getPredicateIndex(contexts[ri][ci]);
+        vals[offsets[ri]+ci] = values[ri] == null ? 1f : values[ri][ci];
+      }
+    }
+    double[] flat = new double[numRows*numOutcomes];
+    model.evalBatch(ids,offsets,vals,flat);
+
+    for (int ri=0;ri<numRows;ri++) {
+      double[] expected = values[ri] == null ? model.eval(contexts[ri]) : model.eval(contexts[ri],values[ri]);
+      double[] expectedUnweighted = model.eval(contexts[ri]);
+      for (int oi=0;oi<numOutcomes;oi++) {
+        assertEquals(expected[oi],out[ri][oi],0d);
+        assertEquals(expected[oi],flat[ri*numOutcomes+oi],0d);
+        assertEquals(expectedUnweighted[oi],unweighted[ri][oi],0d);
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package opennlp.model;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import opennlp.maxent.GISModel;
+
+public class EvalScratchTest extends TestCase {
+
+  private static final String[] CONTEXT = TestModels.CONTEXTS[0];
+  private static final float[] VALUES = TestModels.VALUES[0];
+
+  public void testScratchEvalMatchesEval() throws IOException {
+    assertScratchEvalMatchesEval(TestModels.gisModel());
+    assertScratchEvalMatchesEval(TestModels.perceptronModel());
+  }
+
+  private void assertScratchEvalMatchesEval(AbstractModel model) {
+    EvalScratch scratch = new EvalScratch();
+    double[] expected = model.eval(CONTEXT,VALUES);
+    double[] actual = model.eval(CONTEXT,VALUES,new double[model.getNumOutcomes()],scratch);
+    for (int oi=0;oi<expected.length;oi++) {
+      assertEquals(expected[oi],actual[oi],0d);
+    }
+    // a shorter context after a longer one must not see stale predicates
+    expected = model.eval(new String[] {"feature2"});
+    actual = model.eval(new String[] {"feature2"},scratch);
+    for (int oi=0;oi<expected.length;oi++) {
+      assertEquals(expected[oi],actual[oi],0d);
+    }
+  }
+
+  /**
+   * A uniform prior which reads the value of every predicate it is given, as a prior
+   * which weights the predicates would.
+   */
+  private static class ValueReadingPrior extends UniformPrior {
+
+    public void logPrior(double[] dist, int[] context, float[] values) {
+      if (values != null) {
+        for (int ci = 0; ci < context.length; ci++) {
+          if (values[ci] < 0) {
+            throw new IllegalArgumentException("negative value");
+          }
+        }
+      }
+      super.logPrior(dist,context,values);
+    }
+  }
+
+  public void testPriorSeesExactContextAfterLongerOne() throws IOException {
+    GISModel trained = TestModels.gisModel();
+    Object[] data = trained.getDataStructures();
+    String[] outcomeLabels = (String[]) data[2];
+    String[] predLabels = ((IndexHashTable) data[1]).toArray();
+    GISModel model = new GISModel((Context[]) data[0],predLabels,outcomeLabels,
+        ((Integer) data[3]).intValue(),((Double) data[4]).doubleValue(),new ValueReadingPrior());
+    String[] shortContext = new String[] {"feature2","feature5"};
+    float[] shortValues = new float[] {6.1f,1.8f};
+    EvalScratch scratch = new EvalScratch();
+    model.eval(CONTEXT,VALUES,new double[model.getNumOutcomes()],scratch);
+    double[] expected = trained.eval(shortContext,shortValues);
+    double[] actual = model.eval(shortContext,shortValues,new double[model.getNumOutcomes()],scratch);
+    for (int oi=0;oi<expected.length;oi++) {
+      assertEquals(expected[oi],actual[oi],0d);
+    }
+    // the rows of a batch share one scratch object as well
+    double[][] batch = new double[2][model.getNumOutcomes()];
+    model.evalBatch(new String[][] {CONTEXT,shortContext},new float[][] {VALUES,shortValues},batch);
+    for (int oi=0;oi<expected.length;oi++) {
+      assertEquals(expected[oi],batch[1][oi],0d);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package opennlp.model;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class EvalTopKTest extends TestCase {
+
+  public void testSelectTopK() {
+    double[] scores = new double[] {0.5, 2.0, -1.0, 2.0, 3.0};
+    int[] best = new int[3];
+    assertEquals(3,AbstractModel.selectTopK(scores,best));
+    assertEquals(4,best[0]);
+    assertEquals(1,best[1]);
+    assertEquals(3,best[2]);
+    best = new int[7];
+    assertEquals(5,AbstractModel.selectTopK(scores,best));
+    assertEquals(0,best[3]);
+    assertEquals(2,best[4]);
+  }
+
+  public void testGISTopKMatchesEval() throws IOException {
+    AbstractModel model = TestModels.gisModel();
+    assertTopKMatchesEval(model);
+  }
+
+  public void testPerceptronTopKMatchesEval() throws IOException {
+    AbstractModel model = TestModels.perceptronModel();
+    assertTopKMatchesEval(model);
+  }
+
+  public void testKIsValidated() throws IOException {
+    AbstractModel model = TestModels.gisModel();
+    int[] ks = new int[] {0, -1};
+    for (int ki=0;ki<ks.length;ki++) {
+      try {
+        model.evalTopK(TestModels.CONTEXTS[0],ks[ki]);
+        fail("k of " + ks[ki] + " must be rejected");
+      }
+      catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testKLargerThanNumOutcomes() throws IOException {
+    AbstractModel model = TestModels.gisModel();
+    double[] probs = new double[model.getNumOutcomes()];
+    int[] outcomes = model.evalTopK(TestModels.CONTEXTS[0],null,model.getNumOutcomes()+5,probs);
+    assertEquals(model.getNumOutcomes(),outcomes.length);
+    double[] expected = model.eval(TestModels.CONTEXTS[0]);
+    for (int i=0;i<outcomes.length;i++) {
+      assertEquals(expected[outcomes[i]],probs[i],1e-12);
+    }
+  }
+
+  private void assertTopKMatchesEval(AbstractModel model) {
+    for (int ci=0;ci<TestModels.CONTEXTS.length;ci++) {
+      double[] expected = model.eval(TestModels.CONTEXTS[ci]);
+      assertEquals(model.getBestOutcome(expected),model.getOutcome(model.evalBest(TestModels.CONTEXTS[ci])));
+
+      double[] probs = new double[model.getNumOutcomes()];
+      int[] outcomes = model.evalTopK(TestModels.CONTEXTS[ci],null,model.getNumOutcomes(),probs);
+      assertEquals(model.getNumOutcomes(),outcomes.length);
+      for (int i=0;i<outcomes.length;i++) {
+        assertEquals(expected[outcomes[i]],probs[i],1e-12);
+        if (i > 0) {
+          assertTrue(probs[i-1] >= probs[i]);
+        }
+      }
+      assertEquals(outcomes[0],model.evalTopK(TestModels.CONTEXTS[ci],1)[0]);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package opennlp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time taken to remove duplicate events by sorting and by hashing.
+ * <p>
+ * Usage: EventMergeBenchmark [numEvents] [numPredicates] [numOutcomes]
+ * <p>
+ * The default is 20 million events, which needs a heap of several gigabytes.
+ */
+public class EventMergeBenchmark {
+
+  private static class Merger extends AbstractDataIndexer {
+
+    Merger(List events, boolean hashMerge) {
+      setHashMerge(hashMerge);
+      sortAndMerge(events,true);
+    }
+  }
+
+  private static List createEvents(int numEvents, int numPredicates, int numOutcomes) {
+    Random random = new Random(1);
+    List events = new ArrayList(numEvents);
+    for (int ei = 0; ei < numEvents; ei++) {
+      int[] pids = new int[1 + random.nextInt(4)];
+      for (int pi = 0; pi < pids.length; pi++) {
+        pids[pi] = random.nextInt(numPredicates);
+      }
+      events.add(new ComparableEvent(random.nextInt(numOutcomes),pids));
+    }
+    return events;
+  }
+
+  private static void run(String name, int numEvents, int numPredicates, int numOutcomes, boolean hashMerge) {
+    List events = createEvents(numEvents,numPredicates,numOutcomes);
+    System.gc();
+    long start = System.nanoTime();
+    Merger merger = new Merger(events,hashMerge);
+    long time = System.nanoTime() - start;
+    System.err.println(name + ": " + numEvents + " events merged to " + merger.getContexts().length
+        + " in " + (time / 1000000) + " ms");
+  }
+
+  public static void main(String[] args) {
+    int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+    int numPredicates = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int numOutcomes = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    for (int ri = 0; ri < 3; ri++) {
+      run("sort",numEvents,numPredicates,numOutcomes,false);
+      run("hash",numEvents,numPredicates,numOutcomes,true);
+    }
+  }
+}
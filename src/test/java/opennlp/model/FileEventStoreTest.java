@@ -0,0 +1,95 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FileEventStoreTest extends TestCase {
+
+  private static final String REAL_VALUED_TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  private File file;
+
+  protected void setUp() throws IOException {
+    file = File.createTempFile("indexed",".data");
+  }
+
+  protected void tearDown() {
+    file.delete();
+  }
+
+  public void testCursorsMatchArrays() throws IOException {
+    DataIndexer indexer = new OnePassRealValueDataIndexer(new RealValueFileEventStream(REAL_VALUED_TRAINING_DATA),1);
+    new IndexedDataWriter(indexer,file).persist();
+    EventStore expected = new ArrayEventStore(indexer);
+    int[] blockSizes = new int[] {1,2,3,1000};
+    for (int bi = 0; bi < blockSizes.length; bi++) {
+      FileEventStore actual = new FileEventStore(file,blockSizes[bi],2);
+      try {
+        assertEquals(expected.size(),actual.size());
+        assertEquals(indexer.getNumEvents(),actual.getNumEvents());
+        assertTrue(Arrays.equals(indexer.getOutcomeLabels(),actual.getOutcomeLabels()));
+        assertTrue(Arrays.equals(indexer.getPredLabels(),actual.getPredLabels()));
+        assertTrue(Arrays.equals(indexer.getPredCounts(),actual.getPredCounts()));
+        IndexAssert.assertSameEvents(expected.getCursor(0,expected.size()),actual.getCursor(0,actual.size()));
+        IndexAssert.assertSameEvents(expected.getCursor(1,expected.size()-1),actual.getCursor(1,actual.size()-1));
+        IndexAssert.assertSameEvents(expected.getCursor(2,2),actual.getCursor(2,2));
+      }
+      finally {
+        actual.close();
+      }
+    }
+  }
+
+  public void testMixedValuesAndLengths() throws IOException {
+    int[][] contexts = new int[][] {{0,1,2,3},{1},{2,3},{0,1,2}};
+    float[][] values = new float[][] {{1,2,3,4},null,{0.5f,0.25f},null};
+    final ArrayEventStore expected = new ArrayEventStore(contexts,values,new int[] {0,1,1,0},new int[] {1,2,3,4});
+    DataIndexer indexer = new DataIndexer() {
+      public int[][] getContexts() { return new int[][] {{0,1,2,3},{1},{2,3},{0,1,2}}; }
+      public int[] getNumTimesEventsSeen() { return new int[] {1,2,3,4}; }
+      public int[] getOutcomeList() { return new int[] {0,1,1,0}; }
+      public String[] getPredLabels() { return new String[] {"a","b","c","d"}; }
+      public int[] getPredCounts() { return new int[] {5,10,8,4}; }
+      public String[] getOutcomeLabels() { return new String[] {"x","y"}; }
+      public float[][] getValues() { return new float[][] {{1,2,3,4},null,{0.5f,0.25f},null}; }
+      public int getNumEvents() { return 10; }
+    };
+    new IndexedDataWriter(indexer,file).persist();
+    FileEventStore actual = new FileEventStore(file,3,1);
+    try {
+      EventCursor cursor = actual.getCursor(0,actual.size());
+      assertTrue(cursor.next());
+      assertTrue(cursor.next());
+      // the shorter context after a longer one has an array of its own length
+      assertEquals(1,cursor.getLength());
+      assertEquals(1,cursor.getContext().length);
+      assertEquals(1,cursor.getContext()[0]);
+      assertNull(cursor.getValues());
+      cursor.close();
+      IndexAssert.assertSameEvents(expected.getCursor(0,expected.size()),actual.getCursor(0,actual.size()));
+    }
+    finally {
+      actual.close();
+    }
+  }
+
+  public void testEarlyClose() throws IOException {
+    DataIndexer indexer = new OnePassRealValueDataIndexer(new RealValueFileEventStream(REAL_VALUED_TRAINING_DATA),1);
+    new IndexedDataWriter(indexer,file).persist();
+    FileEventStore store = new FileEventStore(file,1,1);
+    try {
+      for (int i = 0; i < 20; i++) {
+        EventCursor cursor = store.getCursor(0,store.size());
+        assertTrue(cursor.next());
+        cursor.close();
+        assertFalse(cursor.next());
+      }
+    }
+    finally {
+      store.close();
+    }
+  }
+}
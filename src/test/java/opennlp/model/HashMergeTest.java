@@ -0,0 +1,90 @@
+package opennlp.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HashMergeTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+
+  public void testSameEventsAsSortMerge() throws IOException {
+    DataIndexer sorted = new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),1,true);
+    DataIndexer hashed = new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),1,true,true);
+    assertEquals(counts(sorted),counts(hashed));
+    assertEquals(sorted.getNumEvents(),hashed.getNumEvents());
+  }
+
+  public void testKeepsFirstSeenOrder() {
+    Random random = new Random(5);
+    List events = new ArrayList();
+    for (int ei = 0; ei < 10000; ei++) {
+      int[] pids = new int[1 + random.nextInt(3)];
+      for (int pi = 0; pi < pids.length; pi++) {
+        pids[pi] = random.nextInt(8);
+      }
+      events.add(new ComparableEvent(random.nextInt(3),pids));
+    }
+    List expected = new ArrayList();
+    Map<String,Integer> seen = new HashMap<String,Integer>();
+    for (int ei = 0; ei < events.size(); ei++) {
+      String key = events.get(ei).toString();
+      Integer count = seen.get(key);
+      if (count == null) {
+        expected.add(key);
+        count = 0;
+      }
+      seen.put(key,count + 1);
+    }
+
+    TestIndexer indexer = new TestIndexer(events);
+    int[][] contexts = indexer.getContexts();
+    assertEquals(expected.size(),contexts.length);
+    for (int ei = 0; ei < contexts.length; ei++) {
+      String key = new ComparableEvent(indexer.getOutcomeList()[ei],contexts[ei]).toString();
+      assertEquals(expected.get(ei),key);
+      assertEquals(seen.get(key).intValue(),indexer.getNumTimesEventsSeen()[ei]);
+    }
+    assertEquals(events.size(),indexer.getNumEvents());
+  }
+
+  public void testMissingValuesEqualOnes() {
+    List events = new ArrayList();
+    events.add(new ComparableEvent(0,new int[] {2,1},new float[] {1f,1f}));
+    events.add(new ComparableEvent(0,new int[] {1,2}));
+    events.add(new ComparableEvent(0,new int[] {1,2},new float[] {1f,-0f}));
+    events.add(new ComparableEvent(0,new int[] {1,2},new float[] {1f,0f}));
+    TestIndexer indexer = new TestIndexer(events);
+    assertEquals(2,indexer.getContexts().length);
+    assertEquals(2,indexer.getNumTimesEventsSeen()[0]);
+    assertEquals(2,indexer.getNumTimesEventsSeen()[1]);
+  }
+
+  public void testNoEvents() {
+    TestIndexer indexer = new TestIndexer(new ArrayList());
+    assertEquals(0,indexer.getContexts().length);
+  }
+
+  private static Map<String,Integer> counts(DataIndexer indexer) {
+    Map<String,Integer> counts = new HashMap<String,Integer>();
+    int[][] contexts = indexer.getContexts();
+    for (int ei = 0; ei < contexts.length; ei++) {
+      String key = new ComparableEvent(indexer.getOutcomeList()[ei],contexts[ei]).toString();
+      assertNull(counts.put(key,indexer.getNumTimesEventsSeen()[ei]));
+    }
+    return counts;
+  }
+
+  private static class TestIndexer extends AbstractDataIndexer {
+
+    TestIndexer(List events) {
+      setHashMerge(true);
+      sortAndMerge(events,true);
+    }
+  }
+}
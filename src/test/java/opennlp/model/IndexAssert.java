@@ -0,0 +1,73 @@
+package opennlp.model;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+/**
+ * Assertions shared by the tests of the indexers and event stores.
+ */
+class IndexAssert extends Assert {
+
+  private IndexAssert() {
+  }
+
+  /**
+   * Asserts that two indexers produced the same labels, counts, events and values.
+   */
+  static void assertSameIndex(DataIndexer expected, DataIndexer actual) {
+    assertEquals(expected.getNumEvents(),actual.getNumEvents());
+    assertTrue(Arrays.equals(expected.getPredLabels(),actual.getPredLabels()));
+    assertTrue(Arrays.equals(expected.getOutcomeLabels(),actual.getOutcomeLabels()));
+    assertTrue(Arrays.equals(expected.getPredCounts(),actual.getPredCounts()));
+    assertTrue(Arrays.equals(expected.getOutcomeList(),actual.getOutcomeList()));
+    assertTrue(Arrays.equals(expected.getNumTimesEventsSeen(),actual.getNumTimesEventsSeen()));
+    int[][] expectedContexts = expected.getContexts();
+    int[][] actualContexts = actual.getContexts();
+    assertEquals(expectedContexts.length,actualContexts.length);
+    for (int ei = 0; ei < expectedContexts.length; ei++) {
+      assertTrue(Arrays.equals(expectedContexts[ei],actualContexts[ei]));
+    }
+    float[][] expectedValues = expected.getValues();
+    float[][] actualValues = actual.getValues();
+    if (expectedValues != null) {
+      assertEquals(expectedValues.length,actualValues.length);
+      for (int ei = 0; ei < expectedValues.length; ei++) {
+        assertTrue(Arrays.equals(expectedValues[ei],actualValues[ei]));
+      }
+    }
+  }
+
+  /**
+   * Asserts that two cursors return the same events.  Values which are all 1 must be
+   * returned as null, and the contexts and values must have exactly one entry per predicate.
+   */
+  static void assertSameEvents(EventCursor expected, EventCursor actual) {
+    while (expected.next()) {
+      assertTrue(actual.next());
+      int length = expected.getLength();
+      assertEquals(length,actual.getLength());
+      assertEquals(length,actual.getContext().length);
+      for (int ci = 0; ci < length; ci++) {
+        assertEquals(expected.getContext()[ci],actual.getContext()[ci]);
+      }
+      float[] expectedValues = expected.getValues();
+      boolean allOnes = true;
+      for (int ci = 0; expectedValues != null && ci < length; ci++) {
+        allOnes &= expectedValues[ci] == 1f;
+      }
+      if (allOnes) {
+        assertNull(actual.getValues());
+      }
+      else {
+        assertEquals(length,actual.getValues().length);
+        for (int ci = 0; ci < length; ci++) {
+          assertEquals(Float.floatToIntBits(expectedValues[ci]),Float.floatToIntBits(actual.getValues()[ci]));
+        }
+      }
+      assertEquals(expected.getOutcome(),actual.getOutcome());
+      assertEquals(expected.getNumTimesSeen(),actual.getNumTimesSeen());
+    }
+    assertFalse(actual.next());
+  }
+}
@@ -0,0 +1,31 @@
+package opennlp.model;
+
+import junit.framework.TestCase;
+
+public class IndexHashTableTest extends TestCase {
+
+  public void testLookup() {
+    String[] keys = new String[1000];
+    for (int ki=0;ki<keys.length;ki++) {
+      keys[ki] = "pred" + ki;
+    }
+    IndexHashTable table = new IndexHashTable(keys);
+    assertEquals(keys.length,table.size());
+    for (int ki=0;ki<keys.length;ki++) {
+      assertEquals(ki,table.get(new String(keys[ki])));
+      assertEquals(keys[ki],table.getKey(ki));
+    }
+    assertEquals(-1,table.get("pred1000"));
+    assertEquals(-1,table.get(""));
+  }
+
+  public void testCollidingHashCodes() {
+    // "Aa" and "BB" have the same hash code
+    IndexHashTable table = new IndexHashTable(new String[] {"Aa","BB","AaBB","BBAa"},0.9);
+    assertEquals(0,table.get("Aa"));
+    assertEquals(1,table.get("BB"));
+    assertEquals(2,table.get("AaBB"));
+    assertEquals(3,table.get("BBAa"));
+    assertEquals(-1,table.get("AaAa"));
+  }
+}
@@ -0,0 +1,93 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import opennlp.maxent.GIS;
+
+public class MappedDataIndexerTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+  private static final String REAL_VALUED_TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  private File file;
+
+  protected void setUp() throws IOException {
+    file = File.createTempFile("indexed",".data");
+  }
+
+  protected void tearDown() {
+    file.delete();
+  }
+
+  public void testRoundTrip() throws IOException {
+    DataIndexer expected = new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),1);
+    new IndexedDataWriter(expected,file).persist();
+    DataIndexer actual = new MappedDataIndexer(file);
+    IndexAssert.assertSameIndex(expected,actual);
+    assertNull(actual.getValues());
+  }
+
+  public void testRealValuedRoundTrip() throws IOException {
+    DataIndexer expected = new OnePassRealValueDataIndexer(new RealValueFileEventStream(REAL_VALUED_TRAINING_DATA),1);
+    new IndexedDataWriter(expected,file).persist();
+    DataIndexer actual = new MappedDataIndexer(file);
+    IndexAssert.assertSameIndex(expected,actual);
+
+    AbstractModel expectedModel = GIS.trainModel(50,expected);
+    AbstractModel actualModel = GIS.trainModel(50,actual);
+    String[] context = new String[] {"feature1","feature2","feature5"};
+    float[] values = new float[] {5.5f,6.1f,1.8f};
+    assertTrue(Arrays.equals(expectedModel.eval(context,values),actualModel.eval(context,values)));
+  }
+
+  public void testMixedValues() throws IOException {
+    final float[][] values = new float[][] {null,{0.5f,2f},null};
+    DataIndexer expected = new DataIndexer() {
+      public int[][] getContexts() { return new int[][] {{0},{0,1},{1}}; }
+      public int[] getNumTimesEventsSeen() { return new int[] {1,2,3}; }
+      public int[] getOutcomeList() { return new int[] {0,1,0}; }
+      public String[] getPredLabels() { return new String[] {"p","\u00e9"}; }
+      public int[] getPredCounts() { return new int[] {3,5}; }
+      public String[] getOutcomeLabels() { return new String[] {"a","b"}; }
+      public float[][] getValues() { return values; }
+      public int getNumEvents() { return 6; }
+    };
+    new IndexedDataWriter(expected,file).persist();
+    DataIndexer actual = new MappedDataIndexer(file);
+    IndexAssert.assertSameIndex(expected,actual);
+  }
+
+  public void testSectionLimit() throws IOException {
+    DataIndexer indexer = new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),1);
+    long numEntries = 0;
+    int[][] contexts = indexer.getContexts();
+    for (int ei = 0; ei < contexts.length; ei++) {
+      numEntries += contexts[ei].length;
+    }
+    file.delete();
+    try {
+      // the contexts section is the largest
+      new IndexedDataWriter(indexer,file,4 * numEntries - 1).persist();
+      fail();
+    }
+    catch (IOException e) {
+      assertEquals("Section of " + 4 * numEntries + " bytes is too large to be mapped",e.getMessage());
+    }
+    assertFalse(file.exists());
+    new IndexedDataWriter(indexer,file,4 * numEntries).persist();
+    IndexAssert.assertSameIndex(indexer,new MappedDataIndexer(file));
+  }
+
+  public void testNotIndexedData() throws IOException {
+    try {
+      new MappedDataIndexer(new File(TRAINING_DATA));
+      fail();
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class MappedModelTest extends TestCase {
+
+  public void testMappedGISModelMatchesTrainedModel() throws IOException {
+    AbstractModel model = TestModels.gisModel();
+    assertMappedModelMatches(model);
+  }
+
+  public void testMappedPerceptronModelMatchesTrainedModel() throws IOException {
+    AbstractModel model = TestModels.perceptronModel();
+    assertMappedModelMatches(model);
+  }
+
+  public void testEncodedModels() throws IOException {
+    AbstractModel model = TestModels.gisModel();
+    assertEncodedModelsMatch(model);
+    model = TestModels.perceptronModel();
+    assertEncodedModelsMatch(model);
+  }
+
+  private void assertEncodedModelsMatch(AbstractModel model) throws IOException {
+    double[] tolerances = new double[] {0, 1e-5, 0.05};
+    ParameterEncoding[] encodings = ParameterEncoding.values();
+    for (int ni=0;ni<encodings.length;ni++) {
+      AbstractModel encoded = QuantizedModelEval.encode(model,encodings[ni]);
+      File file = File.createTempFile("model", ".mmap");
+      file.deleteOnExit();
+      new MappedModelWriter(model,file,encodings[ni]).persist();
+      AbstractModel mapped = new MappedModelReader(file).getModel();
+      for (int ci=0;ci<TestModels.CONTEXTS.length;ci++) {
+        double[] expected = model.eval(TestModels.CONTEXTS[ci]);
+        double[] heap = encoded.eval(TestModels.CONTEXTS[ci]);
+        double[] actual = mapped.eval(TestModels.CONTEXTS[ci]);
+        for (int oi=0;oi<expected.length;oi++) {
+          assertEquals(heap[oi],actual[oi],0d);
+          assertEquals(expected[oi],actual[oi],tolerances[ni]);
+        }
+      }
+    }
+  }
+
+  public void testMaxEntries() {
+    assertEquals(Integer.MAX_VALUE / 8,MappedModelWriter.getMaxEntries(ParameterEncoding.Float64));
+    assertEquals(Integer.MAX_VALUE / 4,MappedModelWriter.getMaxEntries(ParameterEncoding.Float32));
+    assertEquals(Integer.MAX_VALUE / 4,MappedModelWriter.getMaxEntries(ParameterEncoding.Int8));
+  }
+
+  public void testQuantize() {
+    ContextTable table = new ContextTable(new int[] {0,3,3,4},new int[] {0,1,2,1},new double[] {1.27,-0.5,0.01,-2.0});
+    QuantizedContextTable quantized = QuantizedContextTable.fromTable(table);
+    assertEquals(0.01f,quantized.getScale(0),1e-7);
+    assertEquals(127,quantized.getLevel(0));
+    assertEquals(-50,quantized.getLevel(1));
+    assertEquals(1,quantized.getLevel(2));
+    assertEquals(0f,quantized.getScale(1),0f);
+    assertEquals(-127,quantized.getLevel(3));
+    assertEquals(-2.0,quantized.getParameter(3),1e-6);
+    assertEquals(-0.5,quantized.getParameter(1),1e-6);
+  }
+
+  public void testRejectsOtherFormats() throws IOException {
+    AbstractModel model = TestModels.gisModel(10);
+    File file = File.createTempFile("model", ".bin");
+    try {
+      new GenericModelWriter(model,file).persist();
+      new MappedModelReader(file).getModel();
+      fail("a binary GIS model is not a mapped model");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private void assertMappedModelMatches(AbstractModel model) throws IOException {
+    File file = File.createTempFile("model", ".mmap");
+    file.deleteOnExit();
+    new MappedModelWriter(model,file).persist();
+    AbstractModel mapped = new MappedModelReader(file).getModel();
+    assertEquals(model.getModelType(),mapped.getModelType());
+    assertEquals(model.getNumOutcomes(),mapped.getNumOutcomes());
+    for (int oi=0;oi<model.getNumOutcomes();oi++) {
+      assertEquals(model.getOutcome(oi),mapped.getOutcome(oi));
+    }
+    String[] predLabels = ((IndexTable) model.getDataStructures()[1]).toArray();
+    IndexTable mappedPreds = (IndexTable) mapped.getDataStructures()[1];
+    assertEquals(predLabels.length,mappedPreds.size());
+    for (int pi=0;pi<predLabels.length;pi++) {
+      assertEquals(pi,mappedPreds.get(predLabels[pi]));
+      assertEquals(predLabels[pi],mappedPreds.getKey(pi));
+    }
+    assertEquals(-1,mappedPreds.get("unknown"));
+    for (int ci=0;ci<TestModels.CONTEXTS.length;ci++) {
+      double[] expected = model.eval(TestModels.CONTEXTS[ci]);
+      double[] actual = mapped.eval(TestModels.CONTEXTS[ci]);
+      for (int oi=0;oi<expected.length;oi++) {
+        assertEquals(expected[oi],actual[oi],0d);
+      }
+    }
+
+    // a mapped model can be written in the other formats
+    File binFile = File.createTempFile("model", ".bin");
+    try {
+      new GenericModelWriter(mapped,binFile).persist();
+      AbstractModel readModel = new GenericModelReader(binFile).getModel();
+      double[] expected = model.eval(TestModels.CONTEXTS[0]);
+      double[] actual = readModel.eval(TestModels.CONTEXTS[0]);
+      for (int oi=0;oi<expected.length;oi++) {
+        assertEquals(expected[oi],actual[oi],1e-12);
+      }
+    }
+    finally {
+      binFile.delete();
+    }
+  }
+}
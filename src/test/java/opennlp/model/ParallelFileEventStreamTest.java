@@ -0,0 +1,135 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ParallelFileEventStreamTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+  private static final String REAL_VALUED_TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  public void testOrderedMatchesByteFileEventStream() throws IOException {
+    File file = new File(TRAINING_DATA);
+    List<String> expected = lines(new ByteFileEventStream(file,false));
+    int[] chunkSizes = new int[] {1,2,3,7,64,1 << 20};
+    for (int ci = 0; ci < chunkSizes.length; ci++) {
+      for (int threads = 1; threads <= 3; threads++) {
+        assertEquals(expected,lines(new ParallelFileEventStream(file,false,threads,true,chunkSizes[ci])));
+      }
+    }
+  }
+
+  public void testUnorderedHasSameEvents() throws IOException {
+    File file = new File(REAL_VALUED_TRAINING_DATA);
+    List<String> expected = lines(new ByteFileEventStream(file,true));
+    Collections.sort(expected);
+    int[] chunkSizes = new int[] {1,5,16,1 << 20};
+    for (int ci = 0; ci < chunkSizes.length; ci++) {
+      List<String> actual = lines(new ParallelFileEventStream(file,true,3,false,chunkSizes[ci]));
+      Collections.sort(actual);
+      assertEquals(expected,actual);
+    }
+  }
+
+  public void testLinesSpanningChunks() throws IOException {
+    StringBuffer sb = new StringBuffer();
+    for (int li = 0; li < 500; li++) {
+      sb.append("o").append(li % 7);
+      for (int pi = 0; pi < li % 40; pi++) {
+        sb.append(' ').append("p").append(pi * li);
+      }
+      sb.append(li % 3 == 0 ? "\r\n" : "\n");
+      if (li % 50 == 0) {
+        sb.append("\n");
+      }
+    }
+    sb.append("last x y");
+    File file = write(sb.toString());
+    try {
+      List<String> expected = lines(new ByteFileEventStream(file,false));
+      assertEquals(501,expected.size());
+      int[] chunkSizes = new int[] {1,13,100,4096};
+      for (int ci = 0; ci < chunkSizes.length; ci++) {
+        assertEquals(expected,lines(new ParallelFileEventStream(file,false,4,true,chunkSizes[ci])));
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testEmptyFile() throws IOException {
+    File file = write("");
+    try {
+      assertFalse(new ParallelFileEventStream(file,false,2,true,16).hasNext());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testParseErrorIsPropagated() throws IOException {
+    StringBuffer sb = new StringBuffer();
+    for (int li = 0; li < 100; li++) {
+      sb.append("a x=1\n");
+    }
+    sb.append("a x=-1\n");
+    File file = write(sb.toString());
+    try {
+      EventStream stream = new ParallelFileEventStream(file,true,2,true,32);
+      try {
+        while (stream.hasNext()) {
+          stream.next();
+        }
+        fail();
+      }
+      catch (RuntimeException e) {
+        assertTrue(e.getMessage().indexOf("Negitive") != -1);
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public void testCloseBeforeEnd() throws IOException {
+    ParallelFileEventStream stream = new ParallelFileEventStream(new File(TRAINING_DATA),false,2,false,8);
+    assertTrue(stream.hasNext());
+    stream.next();
+    stream.close();
+    stream.close();
+  }
+
+  public void testIndexersMatchSerialStream() throws IOException {
+    DataIndexer expected = new OnePassDataIndexer(new FileEventStream(new File(TRAINING_DATA)),1);
+    DataIndexer actual = new OnePassDataIndexer(new ParallelFileEventStream(new File(TRAINING_DATA),false,2,true,32),1);
+    assertTrue(Arrays.equals(expected.getPredLabels(),actual.getPredLabels()));
+    assertTrue(Arrays.equals(expected.getOutcomeList(),actual.getOutcomeList()));
+    assertTrue(Arrays.equals(expected.getNumTimesEventsSeen(),actual.getNumTimesEventsSeen()));
+  }
+
+  private static List<String> lines(EventStream stream) {
+    List<String> lines = new ArrayList<String>();
+    while (stream.hasNext()) {
+      Event event = stream.next();
+      lines.add(event.getOutcome() + " " + Arrays.asList(event.getContext()) + " "
+          + Arrays.toString(event.getValues()));
+    }
+    return lines;
+  }
+
+  private static File write(String text) throws IOException {
+    File file = File.createTempFile("events",null);
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(text.getBytes("UTF-8"));
+    out.close();
+    return file;
+  }
+}
@@ -0,0 +1,78 @@
+package opennlp.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ParallelOnePassDataIndexerTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+
+  public void testFileEventsMatchSerialIndexer() throws IOException {
+    for (int cutoff = 0; cutoff <= 3; cutoff++) {
+      DataIndexer expected = new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),cutoff);
+      DataIndexer actual = new ParallelOnePassDataIndexer(new FileEventStream(TRAINING_DATA),cutoff,3);
+      IndexAssert.assertSameIndex(expected,actual);
+    }
+  }
+
+  public void testRandomEventsMatchSerialIndexer() {
+    List<Event> events = randomEvents(new Random(17),5000);
+    int[] cutoffs = new int[] {0,1,3,10};
+    for (int ci = 0; ci < cutoffs.length; ci++) {
+      for (int threads = 1; threads <= 5; threads += 2) {
+        for (int si = 0; si < 2; si++) {
+          boolean sort = si == 0;
+          DataIndexer expected = new OnePassDataIndexer(new ListEventStream(events),cutoffs[ci],sort);
+          DataIndexer actual = new ParallelOnePassDataIndexer(new ListEventStream(events),cutoffs[ci],sort,threads);
+          IndexAssert.assertSameIndex(expected,actual);
+        }
+      }
+    }
+  }
+
+  public void testFewerEventsThanThreads() {
+    List<Event> events = randomEvents(new Random(3),2);
+    IndexAssert.assertSameIndex(new OnePassDataIndexer(new ListEventStream(events),0),
+        new ParallelOnePassDataIndexer(new ListEventStream(events),0,8));
+  }
+
+  private static List<Event> randomEvents(Random random, int numEvents) {
+    List<Event> events = new ArrayList<Event>();
+    for (int ei = 0; ei < numEvents; ei++) {
+      String[] context = new String[1 + random.nextInt(6)];
+      for (int ci = 0; ci < context.length; ci++) {
+        // skewed so that some predicates are rare and some are common
+        int pred = (int) Math.abs(random.nextGaussian() * 200);
+        context[ci] = "p" + pred;
+      }
+      events.add(new Event("o" + random.nextInt(1 + ei % 7),context));
+    }
+    return events;
+  }
+
+  private static class ListEventStream implements EventStream {
+
+    private final Iterator<Event> events;
+
+    ListEventStream(List<Event> events) {
+      this.events = events.iterator();
+    }
+
+    public boolean hasNext() {
+      return events.hasNext();
+    }
+
+    public Event next() {
+      return events.next();
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PrefetchingEventStreamTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+
+  /**
+   * A stream of numbered events which fails or never ends as configured.
+   */
+  private static class CountingEventStream extends AbstractEventStream {
+
+    private final int failAt;
+    private final int size;
+    volatile int count;
+    volatile Thread thread;
+
+    CountingEventStream(int size, int failAt) {
+      this.size = size;
+      this.failAt = failAt;
+    }
+
+    public boolean hasNext() {
+      thread = Thread.currentThread();
+      if (count == failAt) {
+        throw new IllegalStateException("failed at " + count);
+      }
+      return size == -1 || count < size;
+    }
+
+    public Event next() {
+      return new Event(Integer.toString(count++),new String[] {"p"});
+    }
+  }
+
+  public void testSameEventsInOrder() {
+    int[] batchSizes = new int[] {1,3,256};
+    for (int bi = 0; bi < batchSizes.length; bi++) {
+      for (int depth = 1; depth <= 3; depth++) {
+        for (int size = 0; size <= 10; size += 5) {
+          CountingEventStream counting = new CountingEventStream(size,-1);
+          PrefetchingEventStream stream = new PrefetchingEventStream(counting,batchSizes[bi],depth);
+          for (int ei = 0; ei < size; ei++) {
+            assertTrue(stream.hasNext());
+            assertEquals(Integer.toString(ei),stream.next().getOutcome());
+          }
+          assertFalse(stream.hasNext());
+          assertFalse(stream.hasNext());
+          assertNotSame(Thread.currentThread(),counting.thread);
+        }
+      }
+    }
+  }
+
+  public void testExceptionIsPropagatedAfterEarlierEvents() {
+    PrefetchingEventStream stream = new PrefetchingEventStream(new CountingEventStream(-1,7),3,2);
+    for (int ei = 0; ei < 7; ei++) {
+      assertTrue(stream.hasNext());
+      assertEquals(Integer.toString(ei),stream.next().getOutcome());
+    }
+    // a caller which carries on after the error must not see a stream which ended normally
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try {
+        stream.hasNext();
+        fail();
+      }
+      catch (RuntimeException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+
+  public void testCloseStopsProducer() throws InterruptedException {
+    CountingEventStream counting = new CountingEventStream(-1,-1);
+    PrefetchingEventStream stream = new PrefetchingEventStream(counting,4,2);
+    assertTrue(stream.hasNext());
+    stream.next();
+    stream.close();
+    assertFalse(stream.hasNext());
+    Thread producer = counting.thread;
+    producer.join(10000);
+    assertFalse(producer.isAlive());
+    // the producer is bounded by the batches it could fill before it saw the close
+    assertTrue(counting.count <= 4 * 3);
+  }
+
+  public void testIndexerMatchesUnderlyingStream() throws IOException {
+    DataIndexer expected = new OnePassDataIndexer(new FileEventStream(new File(TRAINING_DATA)),1);
+    DataIndexer actual = new OnePassDataIndexer(new PrefetchingEventStream(new FileEventStream(new File(TRAINING_DATA)),2,2),1);
+    assertTrue(Arrays.equals(expected.getPredLabels(),actual.getPredLabels()));
+    assertTrue(Arrays.equals(expected.getOutcomeList(),actual.getOutcomeList()));
+    assertTrue(Arrays.equals(expected.getNumTimesEventsSeen(),actual.getNumTimesEventsSeen()));
+  }
+}
@@ -0,0 +1,76 @@
+package opennlp.model;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import opennlp.maxent.GIS;
+import opennlp.maxent.GISModel;
+import opennlp.perceptron.PerceptronTrainer;
+
+/**
+ * Models and contexts shared by the tests of the eval methods and of the classes which
+ * serve models.  Each model is trained once and then shared, so the tests must not
+ * change them.
+ */
+public class TestModels {
+
+  public static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  /**
+   * Contexts with known and unknown predicates, and an empty one.
+   */
+  public static final String[][] CONTEXTS = new String[][] {
+    {"feature1","feature2","unknown","feature5"},
+    {"feature2"},
+    {"feature3","feature4","feature1"},
+    {"unknown"},
+    {}
+  };
+
+  /**
+   * The values of the {@link #CONTEXTS}.  The second context has none.
+   */
+  public static final float[][] VALUES = new float[][] {
+    {5.5f, 6.1f, 2.0f, 1.8f},
+    null,
+    {0.5f, 2f, 1.5f},
+    {3f},
+    {}
+  };
+
+  private static final Map<Integer, GISModel> gisModels = new HashMap<Integer, GISModel>();
+  private static AbstractModel perceptronModel;
+
+  private TestModels() {
+  }
+
+  /**
+   * Returns a GIS model trained on {@link #TRAINING_DATA} for 100 iterations.
+   */
+  public static GISModel gisModel() throws IOException {
+    return gisModel(100);
+  }
+
+  /**
+   * Returns a GIS model trained on {@link #TRAINING_DATA} for the specified number of iterations.
+   */
+  public static synchronized GISModel gisModel(int iterations) throws IOException {
+    GISModel model = gisModels.get(iterations);
+    if (model == null) {
+      model = GIS.trainModel(iterations,new OnePassRealValueDataIndexer(new RealValueFileEventStream(TRAINING_DATA),1));
+      gisModels.put(iterations,model);
+    }
+    return model;
+  }
+
+  /**
+   * Returns a perceptron model trained on {@link #TRAINING_DATA} for 10 iterations.
+   */
+  public static synchronized AbstractModel perceptronModel() throws IOException {
+    if (perceptronModel == null) {
+      perceptronModel = new PerceptronTrainer().trainModel(10,new OnePassRealValueDataIndexer(new RealValueFileEventStream(TRAINING_DATA),1),1);
+    }
+    return perceptronModel;
+  }
+}
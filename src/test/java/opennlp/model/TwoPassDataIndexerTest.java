@@ -0,0 +1,67 @@
+package opennlp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TwoPassDataIndexerTest extends TestCase {
+
+  private static final String TRAINING_DATA = "src/test/resources/data/opennlp/maxent/repeat-weighting-training-data.txt";
+  private static final String REAL_VALUED_TRAINING_DATA = "src/test/resources/data/opennlp/maxent/real-valued-weights-training-data.txt";
+
+  public void testMatchesOnePassIndexer() throws IOException {
+    for (int cutoff = 0; cutoff <= 2; cutoff++) {
+      IndexAssert.assertSameIndex(new OnePassDataIndexer(new FileEventStream(TRAINING_DATA),cutoff),
+          new TwoPassDataIndexer(new FileEventStream(TRAINING_DATA),cutoff));
+    }
+  }
+
+  public void testRealValuesMatchOnePassIndexer() throws IOException {
+    // a cutoff above 1 drops predicates, whose values must be dropped with them
+    for (int cutoff = 1; cutoff <= 3; cutoff++) {
+      DataIndexer expected = new OnePassRealValueDataIndexer(new RealValueFileEventStream(REAL_VALUED_TRAINING_DATA),cutoff);
+      DataIndexer actual = new TwoPassRealValueDataIndexer(new RealValueFileEventStream(REAL_VALUED_TRAINING_DATA),cutoff);
+      IndexAssert.assertSameIndex(expected,actual);
+      float[][] expectedValues = expected.getValues();
+      float[][] actualValues = actual.getValues();
+      assertEquals(expectedValues.length,actualValues.length);
+      for (int ei = 0; ei < expectedValues.length; ei++) {
+        assertEquals(expected.getContexts()[ei].length,expectedValues[ei].length);
+        assertTrue(Arrays.equals(expectedValues[ei],actualValues[ei]));
+      }
+    }
+  }
+
+  public void testSpoolRoundTrip() throws IOException {
+    char[] longPredicate = new char[100000];
+    Arrays.fill(longPredicate,'\u00e9');
+    Event[] events = new Event[] {
+        new Event("a",new String[] {"x","y"}),
+        new Event("\u00fcber",new String[] {"\u4e2d\u6587","\ud834\udd1e",""},new float[] {0.5f,2f,-0f}),
+        new Event("b",new String[0]),
+        new Event("c",new String[] {new String(longPredicate),"z"},new float[] {Float.MIN_VALUE,Float.MAX_VALUE})
+    };
+    File file = File.createTempFile("spool",null);
+    try {
+      EventSpoolWriter writer = new EventSpoolWriter(file);
+      for (int ei = 0; ei < events.length; ei++) {
+        writer.write(events[ei]);
+      }
+      writer.close();
+      EventSpoolReader reader = new EventSpoolReader(file);
+      for (int ei = 0; ei < events.length; ei++) {
+        assertTrue(reader.hasNext());
+        Event event = reader.next();
+        assertEquals(events[ei].getOutcome(),event.getOutcome());
+        assertTrue(Arrays.equals(events[ei].getContext(),event.getContext()));
+        assertTrue(Arrays.equals(events[ei].getValues(),event.getValues()));
+      }
+      assertFalse(reader.hasNext());
+    }
+    finally {
+      file.delete();
+    }
+  }
+}